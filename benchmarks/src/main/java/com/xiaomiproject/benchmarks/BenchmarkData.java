@@ -0,0 +1,41 @@
+package com.xiaomiproject.benchmarks;
+
+import java.util.Random;
+
+/**
+ * 基准测试共用的合成数据 (固定随机种子，每次运行数据相同)
+ */
+final class BenchmarkData {
+
+    private static final String[] PRODUCTS = {
+            "小米14", "小米14 Pro", "Redmi K70", "Redmi Note 13", "小米手环8", "小米平板6",
+            "小米电视S75", "米家扫地机器人", "小米路由器AX3000", "小米空气净化器4"
+    };
+    private static final String[] TOPICS = {
+            "怎么开启快充", "保修期是多久", "支持无线充电吗", "如何恢复出厂设置", "电池续航怎么样",
+            "能不能插内存卡", "屏幕坏了怎么维修", "怎么连接蓝牙耳机", "系统怎么升级", "发票怎么开",
+            "退货流程是什么", "支持NFC吗", "防水等级是多少", "怎么绑定米家APP", "充电器是多少瓦的"
+    };
+    private static final String SENTENCE = "您好，关于这个问题，建议您先进入设置页面查看相关选项，"
+            + "如果仍无法解决，可以携带购机凭证前往就近的小米之家或授权服务中心检测处理。";
+
+    private BenchmarkData() {
+    }
+
+    static String question(int i) {
+        return PRODUCTS[i % PRODUCTS.length] + TOPICS[(i / PRODUCTS.length) % TOPICS.length]
+                + (i >= PRODUCTS.length * TOPICS.length ? "（" + i + "）" : "");
+    }
+
+    /**
+     * 长度约为 chars 个字符的客服回答
+     */
+    static String answer(Random random, int chars) {
+        StringBuilder answer = new StringBuilder(chars + SENTENCE.length());
+        while (answer.length() < chars) {
+            int start = random.nextInt(SENTENCE.length() / 2);
+            answer.append(SENTENCE, start, SENTENCE.length());
+        }
+        return answer.substring(0, chars);
+    }
+}
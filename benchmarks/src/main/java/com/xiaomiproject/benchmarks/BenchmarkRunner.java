@@ -0,0 +1,30 @@
+package com.xiaomiproject.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 基准测试入口：在命令行参数 (与 JMH 自带入口相同，如 -wi 3 -i 5 -f 1 SseDecode) 的基础上
+ * 固定加上 GC 分析器，报告每个操作的分配字节数 (gc.alloc.rate.norm)，结果另存为 JSON 便于对比。
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine)
+                .addProfiler(GCProfiler.class);
+        if (!commandLine.getResult().hasValue() && !commandLine.getResultFormat().hasValue()) {
+            builder.result("jmh-result.json")
+                    .resultFormat(ResultFormatType.JSON);
+        }
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+}
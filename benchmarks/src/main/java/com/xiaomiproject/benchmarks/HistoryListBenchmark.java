@@ -0,0 +1,137 @@
+package com.xiaomiproject.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.xiaomiproject.dto.ConversationPage;
+import com.xiaomiproject.entity.ConversationHistory;
+import com.xiaomiproject.entity.ConversationSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 历史对话列表接口在应用侧的开销 (数据库读取不计入)，每个操作生成一次响应体：
+ * <ul>
+ *     <li>legacyGroupAndSort：原 HistoryController.getUserHistory，读出用户全部问答后按 conversationId 分组、
+ *     每组取最早一条、按时间倒序排序，整个列表序列化返回</li>
+ *     <li>summaryPage：当前做法，对话摘要表已按 (user_id, last_activity) 索引排好序，
+ *     取一页 (多取一条判断是否有下一页)、生成游标后序列化</li>
+ * </ul>
+ * 两者返回的每个对话字段相同；历史行数 = conversations × turnsPerConversation，回答按 600 字计。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryListBenchmark {
+
+    @Param({"20", "200", "1000"})
+    private int conversations;
+
+    @Param({"8"})
+    private int turnsPerConversation;
+
+    @Param({"50"})
+    private int pageSize;
+
+    private ObjectMapper objectMapper;
+    private List<ConversationHistory> histories;
+    private List<ConversationSummary> summaries;
+
+    @Setup
+    public void setup() {
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        Random random = new Random(42);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 9, 0);
+        histories = new ArrayList<>(conversations * turnsPerConversation);
+        summaries = new ArrayList<>(conversations);
+        long id = 1;
+        for (int c = 0; c < conversations; c++) {
+            String conversationId = "conv-" + c + "-" + Long.toHexString(random.nextLong());
+            LocalDateTime time = start.plusMinutes(random.nextInt(60 * 24 * 180));
+            ConversationSummary summary = new ConversationSummary();
+            summary.setConversationId(conversationId);
+            summary.setUserId(1L);
+            summary.setTimestamp(time);
+            for (int t = 0; t < turnsPerConversation; t++) {
+                ConversationHistory history = new ConversationHistory();
+                history.setId(id++);
+                history.setUserId(1L);
+                history.setConversationId(conversationId);
+                history.setQuestion(BenchmarkData.question(random.nextInt(1000)));
+                history.setAnswer(BenchmarkData.answer(random, 600));
+                history.setTimestamp(time);
+                histories.add(history);
+                if (t == 0) {
+                    summary.setQuestion(history.getQuestion());
+                }
+                time = time.plusSeconds(30 + random.nextInt(300));
+            }
+            summary.setLastActivity(time);
+            summary.setTurnCount(turnsPerConversation);
+            summaries.add(summary);
+        }
+        // 原接口 findByUserIdOrderByTimestampDesc 的返回顺序
+        histories.sort(Comparator.comparing(ConversationHistory::getTimestamp).reversed());
+        // 摘要表索引的顺序
+        summaries.sort(Comparator.comparing(ConversationSummary::getLastActivity)
+                .thenComparing(ConversationSummary::getConversationId).reversed());
+    }
+
+    @Benchmark
+    public byte[] legacyGroupAndSort() throws JsonProcessingException {
+        List<ConversationHistory> distinctConversations = histories.stream()
+                .collect(Collectors.groupingBy(
+                        ConversationHistory::getConversationId,
+                        Collectors.minBy(Comparator.comparing(ConversationHistory::getTimestamp))
+                ))
+                .values().stream()
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .sorted(Comparator.comparing(ConversationHistory::getTimestamp).reversed())
+                .collect(Collectors.toList());
+        return objectMapper.writeValueAsBytes(distinctConversations);
+    }
+
+    @Benchmark
+    public byte[] summaryPage() throws JsonProcessingException {
+        // 对应 ConversationSummaryService.listPage：数据库返回 pageSize + 1 行
+        List<ConversationSummary> rows = summaries.subList(0, Math.min(pageSize + 1, summaries.size()));
+        ConversationPage page;
+        if (rows.size() <= pageSize) {
+            page = new ConversationPage(rows, null);
+        } else {
+            List<ConversationSummary> items = rows.subList(0, pageSize);
+            ConversationSummary last = items.get(pageSize - 1);
+            String raw = last.getLastActivity() + "|" + last.getConversationId();
+            String cursor = Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+            page = new ConversationPage(items, cursor);
+        }
+        return objectMapper.writeValueAsBytes(page.getItems());
+    }
+}
@@ -0,0 +1,154 @@
+package com.xiaomiproject.benchmarks;
+
+import com.xiaomiproject.service.ChatService;
+import com.xiaomiproject.service.cache.AnswerCache;
+import com.xiaomiproject.service.cache.GeneratedAnswerStore;
+import com.xiaomiproject.service.cache.NoopAnswerCacheL2;
+import com.xiaomiproject.service.knowledge.KnowledgeIndex;
+import com.xiaomiproject.service.knowledge.KnowledgeMatcher;
+import com.xiaomiproject.service.metrics.ChatMetrics;
+import com.xiaomiproject.service.semantic.SemanticAnswerCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatService.checkLocalSources 在多线程并发下的吞吐：答案缓存、知识库倒排索引、
+ * 大模型答案缓存、语义缓存依次查找，与线上共用同一组实例 (不启动 Spring 容器，按字段注入)。
+ * <ul>
+ *     <li>cacheHit：热门问题，一级答案缓存命中</li>
+ *     <li>knowledgeHit：知识库问题换了说法 (加客套话) 后第一次被问到：缓存未命中，倒排索引匹配后写入缓存。
+ *     这组使用容量极小的答案缓存，保证每次都走完这条路径</li>
+ *     <li>miss：与任何来源都不匹配，四个来源全部查一遍 (即每个最终交给大模型的问题的本地开销)</li>
+ * </ul>
+ * 默认 8 个线程，可用 -t 调整。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class LocalSourcesBenchmark {
+
+    private static final int HOT_QUESTIONS = 1024;
+    private static final String MODEL = "deepseek";
+
+    @Param({"2000"})
+    private int knowledgeEntries;
+
+    @Param({"5000"})
+    private int semanticEntries;
+
+    private ChatService chatService;
+    private ChatService uncachedChatService;
+    private String[] hotQuestions;
+    private String[] paraphrasedQuestions;
+    private String[] unknownQuestions;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next() {
+            return next++ & (HOT_QUESTIONS - 1);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        KnowledgeMatcher knowledgeMatcher = new KnowledgeMatcher();
+        setField(knowledgeMatcher, "minConfidence", 0.65);
+        KnowledgeIndex index = (KnowledgeIndex) getField(knowledgeMatcher, "index");
+        for (int i = 0; i < knowledgeEntries; i++) {
+            index.upsert((long) i, BenchmarkData.question(i), BenchmarkData.answer(random, 200));
+        }
+
+        AnswerCache answerCache = new AnswerCache(4_000_000L, 3600, 300, new NoopAnswerCacheL2(), event -> { }, registry);
+        AnswerCache tinyAnswerCache = new AnswerCache(1L, 3600, 300, new NoopAnswerCacheL2(), event -> { }, registry);
+
+        SemanticAnswerCache semanticAnswerCache = new SemanticAnswerCache(256);
+        setField(semanticAnswerCache, "enabled", true);
+        setField(semanticAnswerCache, "minSimilarity", 0.92);
+        setField(semanticAnswerCache, "maxEntries", semanticEntries);
+        setField(semanticAnswerCache, "efSearch", 64);
+        for (int i = 0; i < semanticEntries; i++) {
+            semanticAnswerCache.put("用户提问" + i + "：" + BenchmarkData.question(i * 7 + 3), BenchmarkData.answer(random, 300), MODEL);
+        }
+
+        ChatMetrics chatMetrics = new ChatMetrics(registry);
+        chatService = newChatService(knowledgeMatcher, answerCache, semanticAnswerCache, chatMetrics);
+        uncachedChatService = newChatService(knowledgeMatcher, tinyAnswerCache, semanticAnswerCache, chatMetrics);
+
+        hotQuestions = new String[HOT_QUESTIONS];
+        paraphrasedQuestions = new String[HOT_QUESTIONS];
+        unknownQuestions = new String[HOT_QUESTIONS];
+        for (int i = 0; i < HOT_QUESTIONS; i++) {
+            int id = random.nextInt(knowledgeEntries);
+            hotQuestions[i] = BenchmarkData.question(id);
+            paraphrasedQuestions[i] = "你好，请问一下" + BenchmarkData.question(random.nextInt(knowledgeEntries)) + "？谢谢";
+            unknownQuestions[i] = "帮我写一首关于第" + i + "个秋天的诗，要求押韵";
+            // 预热答案缓存
+            chatService.checkLocalSources(hotQuestions[i], MODEL);
+        }
+    }
+
+    @Benchmark
+    public Optional<String> cacheHit(Cursor cursor) {
+        return chatService.checkLocalSources(hotQuestions[cursor.next()], MODEL);
+    }
+
+    @Benchmark
+    public Optional<String> knowledgeHit(Cursor cursor) {
+        return uncachedChatService.checkLocalSources(paraphrasedQuestions[cursor.next()], MODEL);
+    }
+
+    @Benchmark
+    public Optional<String> miss(Cursor cursor) {
+        return chatService.checkLocalSources(unknownQuestions[cursor.next()], MODEL);
+    }
+
+    private static ChatService newChatService(KnowledgeMatcher knowledgeMatcher, AnswerCache answerCache,
+                                              SemanticAnswerCache semanticAnswerCache, ChatMetrics chatMetrics) {
+        ChatService service = new ChatService();
+        setField(service, "knowledgeMatcher", knowledgeMatcher);
+        setField(service, "answerCache", answerCache);
+        setField(service, "semanticAnswerCache", semanticAnswerCache);
+        // 未注入数据库，enabled 为 false：只测内存中的几级来源
+        setField(service, "generatedAnswerStore", new GeneratedAnswerStore());
+        setField(service, "chatMetrics", chatMetrics);
+        return service;
+    }
+
+    private static void setField(Object target, String name, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    private static Object getField(Object target, String name) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        ReflectionUtils.makeAccessible(field);
+        return ReflectionUtils.getField(field, target);
+    }
+}
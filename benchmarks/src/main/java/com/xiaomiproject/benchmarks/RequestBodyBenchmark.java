@@ -0,0 +1,76 @@
+package com.xiaomiproject.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiaomiproject.dto.LlmRequest;
+import com.xiaomiproject.dto.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发给 DeepSeek / DashScope 的请求体序列化 (WebClient 的 Jackson 编码器做的事情)：
+ * <ul>
+ *     <li>llmRequest：当前 OpenAiCompatibleApi 的做法，{@link LlmRequest} 对象直接序列化</li>
+ *     <li>legacyHashMap：原 DeepSeekApi/DashScopeApi 的做法，每次请求新建 HashMap 拼装 model/messages/stream</li>
+ * </ul>
+ * contextTurns 为随问题一起发送的历史轮数 (0 即原先只发当前问题)，每轮回答按 300 字计。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBodyBenchmark {
+
+    @Param({"0", "6"})
+    private int contextTurns;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<Message> messages;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        messages = new ArrayList<>(contextTurns * 2 + 1);
+        for (int i = 0; i < contextTurns; i++) {
+            messages.add(new Message("user", BenchmarkData.question(random.nextInt(1000))));
+            messages.add(new Message("assistant", BenchmarkData.answer(random, 300)));
+        }
+        messages.add(new Message("user", BenchmarkData.question(random.nextInt(1000))));
+    }
+
+    @Benchmark
+    public byte[] llmRequest() throws JsonProcessingException {
+        LlmRequest request = new LlmRequest();
+        request.setModel("deepseek-chat");
+        request.setMessages(messages);
+        request.setStream(true);
+        return objectMapper.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public byte[] legacyHashMap() throws JsonProcessingException {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", "deepseek-chat");
+        requestBody.put("messages", messages);
+        requestBody.put("stream", true);
+        return objectMapper.writeValueAsBytes(requestBody);
+    }
+}
@@ -0,0 +1,123 @@
+package com.xiaomiproject.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiaomiproject.service.llm.SseTokenDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大模型流式回答的 SSE 解码：每个操作解码一整个回答 (tokens 个增量事件 + [DONE])。
+ * <ul>
+ *     <li>decoder：当前的 {@link SseTokenDecoder}，输入按 chunkSize 字节切分的网络数据块，事件可能跨块</li>
+ *     <li>legacySplitReadTree：原 ChatController 的做法，每个数据块转成字符串后按 "data: " 切分，
+ *     再用 readTree 构建整棵 JSON 树取 content。按它最有利的情况输入 (每块恰好一个完整事件)，与 chunkSize 无关</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SseDecodeBenchmark {
+
+    @Param({"64", "1024", "8192"})
+    private int chunkSize;
+
+    @Param({"300"})
+    private int tokens;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private List<byte[]> byteChunks;
+    private List<String> eventStrings;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        eventStrings = new ArrayList<>(tokens + 1);
+        long created = 1718000000L;
+        for (int i = 0; i < tokens; i++) {
+            String content = BenchmarkData.answer(random, 1 + random.nextInt(4));
+            eventStrings.add("data: {\"id\":\"chatcmpl-7f3a\",\"object\":\"chat.completion.chunk\",\"created\":" + created
+                    + ",\"model\":\"deepseek-chat\",\"system_fingerprint\":\"fp_3a5770e1b4\","
+                    + "\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + content + "\"},"
+                    + "\"logprobs\":null,\"finish_reason\":null}]}\n\n");
+        }
+        eventStrings.add("data: [DONE]\n\n");
+
+        StringBuilder stream = new StringBuilder();
+        for (String event : eventStrings) {
+            stream.append(event);
+        }
+        byte[] bytes = stream.toString().getBytes(StandardCharsets.UTF_8);
+        byteChunks = new ArrayList<>(bytes.length / chunkSize + 1);
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            byte[] chunk = new byte[Math.min(chunkSize, bytes.length - offset)];
+            System.arraycopy(bytes, offset, chunk, 0, chunk.length);
+            byteChunks.add(chunk);
+        }
+    }
+
+    @Benchmark
+    public int decoder(Blackhole blackhole) {
+        SseTokenDecoder decoder = new SseTokenDecoder();
+        int count = 0;
+        for (byte[] chunk : byteChunks) {
+            for (String token : decoder.decode(chunk, 0, chunk.length)) {
+                blackhole.consume(token);
+                count++;
+            }
+        }
+        for (String token : decoder.finish()) {
+            blackhole.consume(token);
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int legacySplitReadTree(Blackhole blackhole) {
+        int count = 0;
+        for (String rawContent : eventStrings) {
+            String[] chunks = rawContent.split("data: ");
+            for (String chunk : chunks) {
+                if (chunk.trim().isEmpty() || "[DONE]".equalsIgnoreCase(chunk.trim())) {
+                    continue;
+                }
+                try {
+                    JsonNode rootNode = objectMapper.readTree(chunk);
+                    JsonNode deltaNode = rootNode.path("choices").path(0).path("delta");
+                    if (deltaNode.has("content")) {
+                        String textContent = deltaNode.get("content").asText();
+                        if (textContent != null && !textContent.isEmpty() && !"null".equalsIgnoreCase(textContent)) {
+                            blackhole.consume(textContent);
+                            count++;
+                        }
+                    }
+                } catch (IOException e) {
+                    // 与原实现一致，忽略单个块的解析错误
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,155 @@
+package com.xiaomiproject.loadtest;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 大模型客户端连接复用对比：直接向 MockLlmServer 发起流式请求，分别用
+ * <ul>
+ *     <li>per-request：每次请求新建客户端，不使用连接池 (每次请求都建立并关闭一个 TCP 连接)；</li>
+ *     <li>pooled：与 LlmWebClientFactory 相同配置的长期客户端和连接池 (最大连接数、空闲回收、keep-alive)。</li>
+ * </ul>
+ * 两种方式各自预热后以相同并发发送相同数量的请求，输出新建连接数、首 token 延迟 (TTFT) 和整个流的耗时百分位。
+ * 首 token 延迟建议设为 0 (模拟服务加上 --first-token-delay-ms=0 --first-token-jitter-ms=0)，只比较客户端一侧的开销。
+ * <pre>
+ * java -cp target/loadtest.jar com.xiaomiproject.loadtest.MockLlmServer --port=18081 --first-token-delay-ms=0 --first-token-jitter-ms=0 --tokens=20 --tokens-per-second=0
+ * java -cp target/loadtest.jar com.xiaomiproject.loadtest.ClientReuseBenchmark --url=http://127.0.0.1:18081/chat/completions
+ * </pre>
+ * 参数：
+ * <ul>
+ *     <li>--url (http://127.0.0.1:18080/chat/completions)</li>
+ *     <li>--requests (5000)、--warmup-requests (500)、--concurrency (16)</li>
+ *     <li>--max-connections (200)、--max-idle-time-ms (30000)：连接池配置，与 llm.http.* 默认值一致</li>
+ * </ul>
+ */
+public class ClientReuseBenchmark {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 100};
+
+    private static final String REQUEST_BODY = "{\"model\":\"mock-chat\",\"stream\":true,"
+            + "\"messages\":[{\"role\":\"user\",\"content\":\"手机充电很慢怎么办\"}]}";
+
+    private final String url;
+    private final int requests;
+    private final int warmupRequests;
+    private final int concurrency;
+    private final int maxConnections;
+    private final long maxIdleTimeMs;
+
+    ClientReuseBenchmark(Options options) {
+        this.url = options.get("url", "http://127.0.0.1:18080/chat/completions");
+        this.requests = options.getInt("requests", 5000);
+        this.warmupRequests = options.getInt("warmup-requests", 500);
+        this.concurrency = options.getInt("concurrency", 16);
+        this.maxConnections = options.getInt("max-connections", 200);
+        this.maxIdleTimeMs = options.getLong("max-idle-time-ms", 30000);
+    }
+
+    public static void main(String[] args) {
+        ClientReuseBenchmark benchmark = new ClientReuseBenchmark(new Options(args));
+        System.out.println("目标 " + benchmark.url + "，请求 " + benchmark.requests + "，并发 " + benchmark.concurrency);
+        benchmark.run(false);
+        benchmark.run(true);
+        System.exit(0);
+    }
+
+    /**
+     * 一种客户端方式：先预热，再计量
+     */
+    private void run(boolean pooled) {
+        AtomicLong connections = new AtomicLong();
+        ConnectionProvider provider = pooled
+                ? ConnectionProvider.builder("benchmark")
+                .maxConnections(maxConnections)
+                .maxIdleTime(Duration.ofMillis(maxIdleTimeMs))
+                .build()
+                : null;
+        HttpClient shared = pooled ? newClient(provider, connections) : null;
+
+        round(shared, connections, warmupRequests, new LatencyRecorder(), new LatencyRecorder());
+        connections.set(0);
+        LatencyRecorder ttft = new LatencyRecorder();
+        LatencyRecorder total = new LatencyRecorder();
+        long start = System.nanoTime();
+        long failed = round(shared, connections, requests, ttft, total);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format("%-11s 新建连接 %d，失败 %d，%.0f 请求/秒 | TTFT %s | 总耗时 %s",
+                pooled ? "pooled" : "per-request", connections.get(), failed, requests / seconds,
+                format(ttft), format(total)));
+        if (provider != null) {
+            provider.disposeLater().block(Duration.ofSeconds(5));
+        }
+    }
+
+    /**
+     * 以固定并发发送 count 个请求，返回失败数
+     * @param shared 为 null 时每个请求新建客户端
+     */
+    private long round(HttpClient shared, AtomicLong connections, int count,
+                       LatencyRecorder ttft, LatencyRecorder total) {
+        LongAdder failed = new LongAdder();
+        Flux.range(0, count)
+                .flatMap(i -> stream(shared != null ? shared : newClient(ConnectionProvider.newConnection(), connections),
+                        ttft, total)
+                        .onErrorResume(e -> {
+                            failed.increment();
+                            return Mono.empty();
+                        }), concurrency)
+                .blockLast();
+        return failed.sum();
+    }
+
+    private HttpClient newClient(ConnectionProvider provider, AtomicLong connections) {
+        return HttpClient.create(provider)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                // 只在新建连接时调用 (从连接池取出已有连接时不会)
+                .doOnChannelInit((observer, channel, remoteAddress) -> connections.incrementAndGet())
+                .headers(h -> h.set(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                        .set(HttpHeaderNames.AUTHORIZATION, "Bearer benchmark")
+                        .set(HttpHeaderNames.ACCEPT, "text/event-stream"));
+    }
+
+    private Mono<Void> stream(HttpClient client, LatencyRecorder ttft, LatencyRecorder total) {
+        return Mono.defer(() -> {
+            long begin = System.nanoTime();
+            long[] firstEventAt = {0};
+            SseEventCounter counter = new SseEventCounter();
+            return client.post()
+                    .uri(url)
+                    .send(Mono.fromSupplier(() -> Unpooled.wrappedBuffer(REQUEST_BODY.getBytes(StandardCharsets.UTF_8))))
+                    .response((response, body) -> {
+                        if (response.status().code() != 200) {
+                            return body.then(Mono.<Void>error(new IllegalStateException("HTTP " + response.status())));
+                        }
+                        return body.doOnNext(buf -> {
+                            if (counter.feed(buf) > 0 && firstEventAt[0] == 0) {
+                                firstEventAt[0] = System.nanoTime();
+                            }
+                        }).then();
+                    })
+                    .then()
+                    .doOnSuccess(v -> {
+                        if (firstEventAt[0] != 0) {
+                            ttft.record(firstEventAt[0] - begin);
+                            total.record(System.nanoTime() - begin);
+                        }
+                    });
+        });
+    }
+
+    private static String format(LatencyRecorder recorder) {
+        double[] values = recorder.percentilesMs(PERCENTILES);
+        return String.format("p50 %.2fms p90 %.2fms p99 %.2fms max %.2fms", values[0], values[1], values[2], values[3]);
+    }
+}
@@ -0,0 +1,40 @@
+package com.xiaomiproject.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * 记录全部延迟样本 (纳秒)，结束时排序计算百分位 (线程安全)
+ */
+final class LatencyRecorder {
+
+    private long[] samples = new long[4096];
+    private int count;
+
+    synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    synchronized int count() {
+        return count;
+    }
+
+    /**
+     * 各百分位 (毫秒)，没有样本时为 0
+     */
+    synchronized double[] percentilesMs(double... percentiles) {
+        double[] result = new double[percentiles.length];
+        if (count == 0) {
+            return result;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        for (int i = 0; i < percentiles.length; i++) {
+            int index = (int) Math.ceil(percentiles[i] / 100.0 * count) - 1;
+            result[i] = sorted[Math.max(0, Math.min(index, count - 1))] / 1e6;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,336 @@
+package com.xiaomiproject.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 端到端压测客户端：注册并登录一批用户，然后保持 concurrency 个并发的 SSE 问答流 (每个流结束后立即发起下一个)，
+ * 持续 duration-seconds 秒，输出吞吐量、首 token 延迟 (TTFT) 百分位，以及从服务端 /actuator/prometheus
+ * 采样的线程数和堆内存。
+ * <pre>
+ * java -jar target/loadtest.jar --base-url=http://127.0.0.1:8080 --concurrency=2000 --duration-seconds=120
+ * </pre>
+ * 参数：
+ * <ul>
+ *     <li>--base-url (http://127.0.0.1:8080)、--path (/api/chat/stream-ask，也可以是 /api/chat/stream-ask/reactive)、--model</li>
+ *     <li>--users (100)、--password：压测账号数 (loadtest-user-N，不存在时自动注册)，并发流轮流使用这些账号的会话</li>
+ *     <li>--concurrency (1000)、--ramp-up-seconds (10)、--duration-seconds (60)、--think-time-ms (0)</li>
+ *     <li>--question-pool (0)：0 表示每个问题都不同 (全部交给大模型)，大于 0 时从固定数量的问题中循环选取 (测缓存命中)</li>
+ *     <li>--turns-per-conversation (1)：同一对话连续提问的轮数 (大于 1 时带上下文)</li>
+ *     <li>--stream-timeout-seconds (300)、--sample-interval-seconds (5)、--report-file：结果另存为 JSON</li>
+ * </ul>
+ */
+public class LoadDriver {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 100};
+
+    private final String baseUrl;
+    private final String path;
+    private final String model;
+    private final int users;
+    private final String password;
+    private final int concurrency;
+    private final Duration rampUp;
+    private final Duration duration;
+    private final Duration thinkTime;
+    private final int questionPool;
+    private final int turnsPerConversation;
+    private final Duration streamTimeout;
+    private final Duration sampleInterval;
+    private final String reportFile;
+
+    private final HttpClient client;
+    private final List<String> sessions = new ArrayList<>();
+
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final LatencyRecorder ttft = new LatencyRecorder();
+    private final LatencyRecorder streamDuration = new LatencyRecorder();
+    private final AtomicLong questionSeq = new AtomicLong();
+
+    private final ServerSampler sampler;
+
+    LoadDriver(Options options) {
+        this.baseUrl = options.get("base-url", "http://127.0.0.1:8080");
+        this.path = options.get("path", "/api/chat/stream-ask");
+        this.model = options.get("model", "");
+        this.users = options.getInt("users", 100);
+        this.password = options.get("password", "loadtest-password");
+        this.concurrency = options.getInt("concurrency", 1000);
+        this.rampUp = Duration.ofSeconds(options.getInt("ramp-up-seconds", 10));
+        this.duration = Duration.ofSeconds(options.getInt("duration-seconds", 60));
+        this.thinkTime = Duration.ofMillis(options.getInt("think-time-ms", 0));
+        this.questionPool = options.getInt("question-pool", 0);
+        this.turnsPerConversation = Math.max(1, options.getInt("turns-per-conversation", 1));
+        this.streamTimeout = Duration.ofSeconds(options.getInt("stream-timeout-seconds", 300));
+        this.sampleInterval = Duration.ofSeconds(options.getInt("sample-interval-seconds", 5));
+        this.reportFile = options.get("report-file", null);
+
+        // 每个 SSE 流占用一个连接
+        ConnectionProvider connections = ConnectionProvider.builder("loadtest")
+                .maxConnections(concurrency + 64)
+                .pendingAcquireMaxCount(-1)
+                .pendingAcquireTimeout(Duration.ofMinutes(1))
+                .build();
+        this.client = HttpClient.create(connections).baseUrl(baseUrl);
+        this.sampler = new ServerSampler(client);
+    }
+
+    public static void main(String[] args) throws IOException {
+        LoadDriver driver = new LoadDriver(new Options(args));
+        driver.login();
+        Map<String, Object> report = driver.run();
+        driver.print(report);
+        if (driver.reportFile != null) {
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(new File(driver.reportFile), report);
+            System.out.println("结果已保存到 " + driver.reportFile);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * 注册 (已存在时忽略) 并登录压测账号，保存各自的会话 Cookie
+     */
+    void login() {
+        System.out.println("登录 " + users + " 个压测账号 ...");
+        List<String> cookies = Flux.range(0, users)
+                .flatMapSequential(i -> {
+                    String body = "{\"username\":\"loadtest-user-" + i + "\",\"password\":\"" + password + "\"}";
+                    return post("/api/auth/register", body, false)
+                            .onErrorResume(e -> Mono.empty())
+                            .then(post("/api/auth/login", body, true));
+                }, 16)
+                .collectList()
+                .block(Duration.ofMinutes(10));
+        sessions.addAll(cookies);
+        if (sessions.isEmpty()) {
+            throw new IllegalStateException("没有登录成功的压测账号");
+        }
+    }
+
+    private Mono<String> post(String uri, String json, boolean expectSession) {
+        return client.headers(h -> h.set(HttpHeaderNames.CONTENT_TYPE, "application/json"))
+                .post()
+                .uri(uri)
+                .send(Mono.fromSupplier(() -> Unpooled.wrappedBuffer(json.getBytes(StandardCharsets.UTF_8))))
+                .responseSingle((response, body) -> body.asString().defaultIfEmpty("").flatMap(text -> {
+                    if (!expectSession) {
+                        return Mono.just(text);
+                    }
+                    if (response.status().code() != 200) {
+                        return Mono.error(new IllegalStateException("登录失败 " + response.status() + ": " + text));
+                    }
+                    for (String setCookie : response.responseHeaders().getAll(HttpHeaderNames.SET_COOKIE)) {
+                        if (setCookie.startsWith("JSESSIONID=")) {
+                            return Mono.just(setCookie.substring(0, setCookie.indexOf(';') > 0 ? setCookie.indexOf(';') : setCookie.length()));
+                        }
+                    }
+                    return Mono.error(new IllegalStateException("登录响应中没有会话 Cookie"));
+                }));
+    }
+
+    Map<String, Object> run() {
+        System.out.println("开始压测: 并发 " + concurrency + "，持续 " + duration.getSeconds() + " 秒，接口 " + baseUrl + path);
+        long startNanos = System.nanoTime();
+        long deadline = startNanos + rampUp.toNanos() + duration.toNanos();
+        sampler.start(sampleInterval, this::progressLine);
+
+        Flux.range(0, concurrency)
+                .flatMap(worker -> Mono.delay(Duration.ofNanos(rampUp.toNanos() * worker / concurrency))
+                        .then(worker(worker, deadline)), concurrency)
+                .blockLast();
+
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        sampler.stop();
+        return report(elapsedSeconds);
+    }
+
+    /**
+     * 一个并发槽位：连续发起问答直到截止时间
+     */
+    private Mono<Void> worker(int worker, long deadline) {
+        String session = sessions.get(worker % sessions.size());
+        AtomicLong turn = new AtomicLong();
+        String[] conversationId = new String[1];
+        return Mono.defer(() -> {
+                    if (turn.getAndIncrement() % turnsPerConversation == 0) {
+                        conversationId[0] = turnsPerConversation > 1 ? UUID.randomUUID().toString() : null;
+                    }
+                    Mono<Void> stream = stream(session, nextQuestion(worker), conversationId[0]);
+                    return thinkTime.isZero() ? stream : stream.then(Mono.delay(thinkTime)).then();
+                })
+                .repeat(() -> System.nanoTime() < deadline)
+                .then();
+    }
+
+    private String nextQuestion(int worker) {
+        long seq = questionSeq.getAndIncrement();
+        if (questionPool > 0) {
+            return "压测问题 " + (seq % questionPool) + "：手机充电很慢怎么办";
+        }
+        return "压测问题 " + worker + "-" + seq + "：手机充电很慢怎么办";
+    }
+
+    private Mono<Void> stream(String session, String question, String conversationId) {
+        StringBuilder uri = new StringBuilder(path).append("?question=").append(encode(question));
+        if (conversationId != null) {
+            uri.append("&conversationId=").append(conversationId);
+        }
+        if (!model.isEmpty()) {
+            uri.append("&model=").append(encode(model));
+        }
+        long begin = System.nanoTime();
+        long[] firstEventAt = {0};
+        SseEventCounter counter = new SseEventCounter();
+        return Mono.defer(() -> {
+                    started.increment();
+                    activeStreams.incrementAndGet();
+                    return client.headers(h -> h.set(HttpHeaderNames.COOKIE, session)
+                                    .set(HttpHeaderNames.ACCEPT, "text/event-stream"))
+                            .get()
+                            .uri(uri.toString())
+                            .response((response, body) -> {
+                                int status = response.status().code();
+                                if (status != 200) {
+                                    return body.then(Mono.<Void>error(new StatusException(status)));
+                                }
+                                return body.doOnNext(buf -> {
+                                    if (counter.feed(buf) > 0 && firstEventAt[0] == 0) {
+                                        firstEventAt[0] = System.nanoTime();
+                                    }
+                                }).then();
+                            })
+                            .then()
+                            .timeout(streamTimeout);
+                })
+                .doOnSuccess(v -> {
+                    if (counter.events() == 0) {
+                        fail("empty");
+                        return;
+                    }
+                    succeeded.increment();
+                    tokens.add(counter.events());
+                    ttft.record(firstEventAt[0] - begin);
+                    streamDuration.record(System.nanoTime() - begin);
+                })
+                .doOnError(e -> fail(e instanceof StatusException ? "http_" + ((StatusException) e).status
+                        : e instanceof TimeoutException ? "timeout" : e.getClass().getSimpleName()))
+                .doFinally(signal -> activeStreams.decrementAndGet())
+                .onErrorResume(e -> Mono.empty());
+    }
+
+    private void fail(String reason) {
+        failures.computeIfAbsent(reason, r -> new LongAdder()).increment();
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long lastSucceeded;
+    private long lastTokens;
+    private long lastProgressNanos = System.nanoTime();
+
+    private String progressLine(ServerSampler.Sample sample) {
+        long now = System.nanoTime();
+        double seconds = (now - lastProgressNanos) / 1e9;
+        long ok = succeeded.sum();
+        long tokenCount = tokens.sum();
+        String line = String.format("进行中 %d，完成 %d (%.1f/s)，token %.0f/s，失败 %d | 服务端线程 %s，堆 %s MB，SSE %s",
+                activeStreams.get(), ok, (ok - lastSucceeded) / seconds, (tokenCount - lastTokens) / seconds,
+                failureCount(), sample == null ? "-" : String.valueOf(sample.threads),
+                sample == null ? "-" : String.valueOf(sample.heapBytes / (1024 * 1024)),
+                sample == null ? "-" : String.valueOf(sample.activeSse));
+        lastSucceeded = ok;
+        lastTokens = tokenCount;
+        lastProgressNanos = now;
+        return line;
+    }
+
+    private long failureCount() {
+        long total = 0;
+        for (LongAdder adder : failures.values()) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    private Map<String, Object> report(double elapsedSeconds) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("baseUrl", baseUrl + path);
+        report.put("concurrency", concurrency);
+        report.put("elapsedSeconds", round(elapsedSeconds));
+        report.put("started", started.sum());
+        report.put("succeeded", succeeded.sum());
+        Map<String, Long> failureCounts = new LinkedHashMap<>();
+        failures.forEach((reason, count) -> failureCounts.put(reason, count.sum()));
+        report.put("failures", failureCounts);
+        report.put("streamsPerSecond", round(succeeded.sum() / elapsedSeconds));
+        report.put("tokensPerSecond", round(tokens.sum() / elapsedSeconds));
+        report.put("ttftMs", percentileMap(ttft));
+        report.put("streamDurationMs", percentileMap(streamDuration));
+        report.put("server", sampler.summary());
+        return report;
+    }
+
+    private static Map<String, Object> percentileMap(LatencyRecorder recorder) {
+        double[] values = recorder.percentilesMs(PERCENTILES);
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("p50", round(values[0]));
+        map.put("p90", round(values[1]));
+        map.put("p99", round(values[2]));
+        map.put("p999", round(values[3]));
+        map.put("max", round(values[4]));
+        return map;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    private void print(Map<String, Object> report) {
+        System.out.println("========== 压测结果 ==========");
+        for (Map.Entry<String, Object> entry : report.entrySet()) {
+            System.out.println(entry.getKey() + ": " + entry.getValue());
+        }
+    }
+
+    private static final class StatusException extends RuntimeException {
+        final int status;
+
+        StatusException(int status) {
+            super("HTTP " + status, null, false, false);
+            this.status = status;
+        }
+    }
+}
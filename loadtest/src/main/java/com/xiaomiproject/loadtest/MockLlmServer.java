@@ -0,0 +1,207 @@
+package com.xiaomiproject.loadtest;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地模拟的 OpenAI 兼容流式接口 (POST /chat/completions、/v1/chat/completions)。
+ * <p>
+ * 按配置的首 token 延迟和 token 速率推送 chat.completion.chunk 事件，最后发送 data: [DONE]；
+ * 可以把事件合并或拆碎后写出 (检验解码器对跨块事件的处理)，也可以按比例注入故障：
+ * HTTP 500、流中途返回 error 事件、首个 token 之后不再发送 (卡住)、流中途断开连接。
+ * <pre>
+ * java -cp target/loadtest.jar com.xiaomiproject.loadtest.MockLlmServer --port=18080 --tokens-per-second=40
+ * </pre>
+ * 参数：
+ * <ul>
+ *     <li>--port (18080)</li>
+ *     <li>--first-token-delay-ms (500)、--first-token-jitter-ms (200)：首 token 延迟及随机抖动</li>
+ *     <li>--tokens (200)、--tokens-per-second (50，0 表示不限速)、--token-chars (2)：回答长度和生成速度</li>
+ *     <li>--events-per-write (1)：每次写出合并的事件数；--fragment-bytes (0)：每次写出再按字节数拆分，0 表示不拆</li>
+ *     <li>--error-rate、--midstream-error-rate、--stall-rate、--reset-rate (均为 0)：各类故障的注入比例</li>
+ * </ul>
+ */
+public class MockLlmServer {
+
+    private static final String ANSWER_TEXT = "您好，感谢您的咨询。这款产品支持快速充电，使用原装充电器约半小时可以充到百分之八十。"
+            + "如果遇到充电缓慢的情况，建议先检查充电线和充电头是否为原装配件，再尝试重启手机或在设置中关闭省电模式。"
+            + "保修期内出现的非人为故障可以携带购机凭证到就近的授权服务中心免费检测维修。";
+
+    private final int firstTokenDelayMs;
+    private final int firstTokenJitterMs;
+    private final int tokens;
+    private final int tokensPerSecond;
+    private final int tokenChars;
+    private final int eventsPerWrite;
+    private final int fragmentBytes;
+    private final double errorRate;
+    private final double midstreamErrorRate;
+    private final double stallRate;
+    private final double resetRate;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong active = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong injectedMidstreamErrors = new AtomicLong();
+    private final AtomicLong injectedStalls = new AtomicLong();
+    private final AtomicLong injectedResets = new AtomicLong();
+    private final AtomicLong tokensSent = new AtomicLong();
+
+    MockLlmServer(Options options) {
+        this.firstTokenDelayMs = options.getInt("first-token-delay-ms", 500);
+        this.firstTokenJitterMs = options.getInt("first-token-jitter-ms", 200);
+        this.tokens = options.getInt("tokens", 200);
+        this.tokensPerSecond = options.getInt("tokens-per-second", 50);
+        this.tokenChars = Math.max(1, options.getInt("token-chars", 2));
+        this.eventsPerWrite = Math.max(1, options.getInt("events-per-write", 1));
+        this.fragmentBytes = options.getInt("fragment-bytes", 0);
+        this.errorRate = options.getDouble("error-rate", 0);
+        this.midstreamErrorRate = options.getDouble("midstream-error-rate", 0);
+        this.stallRate = options.getDouble("stall-rate", 0);
+        this.resetRate = options.getDouble("reset-rate", 0);
+    }
+
+    public static void main(String[] args) {
+        Options options = new Options(args);
+        MockLlmServer server = new MockLlmServer(options);
+        DisposableServer disposable = server.start(options.getInt("port", 18080));
+        System.out.println("模拟大模型服务已启动: http://127.0.0.1:" + disposable.port() + "/chat/completions");
+        Flux.interval(Duration.ofSeconds(10)).subscribe(tick -> System.out.println(server.statsLine()));
+        disposable.onDispose().block();
+    }
+
+    DisposableServer start(int port) {
+        return HttpServer.create()
+                .port(port)
+                .route(routes -> routes
+                        .post("/chat/completions", this::handle)
+                        .post("/v1/chat/completions", this::handle))
+                .bindNow();
+    }
+
+    private Publisher<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+        requests.incrementAndGet();
+        // 读完请求体再响应 (内容不使用)
+        return request.receive().then(Mono.defer(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < errorRate) {
+                injectedErrors.incrementAndGet();
+                return response.status(HttpResponseStatus.INTERNAL_SERVER_ERROR)
+                        .header("Content-Type", "application/json")
+                        .sendString(Mono.just("{\"error\":{\"message\":\"mock upstream error\",\"type\":\"server_error\"}}"))
+                        .then();
+            }
+            active.incrementAndGet();
+            Flux<ByteBuf> body = toWrites(events(random), response.alloc())
+                    .doOnComplete(completed::incrementAndGet)
+                    .doOnCancel(cancelled::incrementAndGet)
+                    .doFinally(signal -> active.decrementAndGet());
+            return response.header("Content-Type", "text/event-stream")
+                    .header("Cache-Control", "no-cache")
+                    .send(body, buf -> true)
+                    .then();
+        }));
+    }
+
+    /**
+     * 一次回答的全部 SSE 事件 (含注入的故障)
+     */
+    private Flux<String> events(ThreadLocalRandom random) {
+        String id = "chatcmpl-mock" + Long.toHexString(random.nextLong());
+        long created = System.currentTimeMillis() / 1000;
+        long firstDelay = firstTokenDelayMs + (firstTokenJitterMs > 0 ? random.nextInt(firstTokenJitterMs + 1) : 0);
+        int start = random.nextInt(ANSWER_TEXT.length());
+
+        Flux<Integer> ticks = tokensPerSecond > 0
+                ? Flux.interval(Duration.ofMillis(firstDelay), Duration.ofNanos(1_000_000_000L / tokensPerSecond))
+                .map(Long::intValue)
+                .take(tokens)
+                : Mono.delay(Duration.ofMillis(firstDelay)).thenMany(Flux.range(0, tokens));
+        Flux<String> tokenEvents = ticks.map(i -> {
+            tokensSent.incrementAndGet();
+            return chunk(id, created, "\"content\":\"" + tokenText(start + i * tokenChars) + "\"", "null");
+        });
+
+        double fault = random.nextDouble();
+        if (fault < midstreamErrorRate) {
+            injectedMidstreamErrors.incrementAndGet();
+            return tokenEvents.take(tokens / 2)
+                    .concatWith(Mono.just("data: {\"error\":{\"message\":\"mock error during generation\",\"type\":\"server_error\"}}\n\n"));
+        }
+        fault -= midstreamErrorRate;
+        if (fault < stallRate) {
+            injectedStalls.incrementAndGet();
+            return tokenEvents.take(1).concatWith(Flux.never());
+        }
+        fault -= stallRate;
+        if (fault < resetRate) {
+            injectedResets.incrementAndGet();
+            return tokenEvents.take(tokens / 2).concatWith(Flux.error(new IOException("mock connection reset")));
+        }
+        return Flux.just(chunk(id, created, "\"role\":\"assistant\",\"content\":\"\"", "null"))
+                .concatWith(tokenEvents)
+                .concatWith(Flux.just(chunk(id, created, "", "\"stop\""), "data: [DONE]\n\n"));
+    }
+
+    private static String chunk(String id, long created, String delta, String finishReason) {
+        return "data: {\"id\":\"" + id + "\",\"object\":\"chat.completion.chunk\",\"created\":" + created
+                + ",\"model\":\"mock-chat\",\"choices\":[{\"index\":0,\"delta\":{" + delta + "},"
+                + "\"logprobs\":null,\"finish_reason\":" + finishReason + "}]}\n\n";
+    }
+
+    private String tokenText(int offset) {
+        StringBuilder text = new StringBuilder(tokenChars);
+        for (int i = 0; i < tokenChars; i++) {
+            text.append(ANSWER_TEXT.charAt((offset + i) % ANSWER_TEXT.length()));
+        }
+        return text.toString();
+    }
+
+    /**
+     * 按 events-per-write 合并、按 fragment-bytes 拆分后的写出序列，每个元素单独 flush
+     */
+    private Flux<ByteBuf> toWrites(Flux<String> events, ByteBufAllocator alloc) {
+        Flux<byte[]> writes = eventsPerWrite > 1
+                ? events.buffer(eventsPerWrite).map(group -> String.join("", group).getBytes(StandardCharsets.UTF_8))
+                : events.map(event -> event.getBytes(StandardCharsets.UTF_8));
+        if (fragmentBytes > 0) {
+            writes = writes.concatMapIterable(this::fragment);
+        }
+        return writes.map(bytes -> alloc.buffer(bytes.length).writeBytes(bytes));
+    }
+
+    private List<byte[]> fragment(byte[] bytes) {
+        List<byte[]> pieces = new ArrayList<>(bytes.length / fragmentBytes + 1);
+        for (int offset = 0; offset < bytes.length; offset += fragmentBytes) {
+            byte[] piece = new byte[Math.min(fragmentBytes, bytes.length - offset)];
+            System.arraycopy(bytes, offset, piece, 0, piece.length);
+            pieces.add(piece);
+        }
+        return pieces;
+    }
+
+    String statsLine() {
+        return "[mock] 请求 " + requests.get() + "，进行中 " + active.get() + "，完成 " + completed.get()
+                + "，客户端取消 " + cancelled.get() + "，已发送 token " + tokensSent.get()
+                + "，注入故障 (500/中途错误/卡住/断开) " + injectedErrors.get() + "/" + injectedMidstreamErrors.get()
+                + "/" + injectedStalls.get() + "/" + injectedResets.get();
+    }
+}
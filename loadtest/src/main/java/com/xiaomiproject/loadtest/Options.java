@@ -0,0 +1,50 @@
+package com.xiaomiproject.loadtest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 命令行参数：--name=value 形式，未给出的取默认值
+ */
+final class Options {
+
+    private final Map<String, String> values = new LinkedHashMap<>();
+
+    Options(String[] args) {
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("参数格式应为 --name=value: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                values.put(arg.substring(2), "true");
+            } else {
+                values.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+    }
+
+    String get(String name, String defaultValue) {
+        return values.getOrDefault(name, defaultValue);
+    }
+
+    int getInt(String name, int defaultValue) {
+        String value = values.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    long getLong(String name, long defaultValue) {
+        String value = values.get(name);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    double getDouble(String name, double defaultValue) {
+        String value = values.get(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    boolean getBoolean(String name, boolean defaultValue) {
+        String value = values.get(name);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
@@ -0,0 +1,126 @@
+package com.xiaomiproject.loadtest;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 定时抓取被测服务的 /actuator/prometheus，记录 JVM 线程数、堆内存和活跃 SSE 连接数的最新值与峰值
+ */
+final class ServerSampler {
+
+    static final class Sample {
+        final long threads;
+        final long heapBytes;
+        final long activeSse;
+
+        Sample(long threads, long heapBytes, long activeSse) {
+            this.threads = threads;
+            this.heapBytes = heapBytes;
+            this.activeSse = activeSse;
+        }
+    }
+
+    private final HttpClient client;
+    private Disposable task;
+    private volatile Sample last;
+    private long peakThreads;
+    private long peakHeapBytes;
+    private long peakActiveSse;
+    private boolean warned;
+
+    ServerSampler(HttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * 按间隔采样，每次采样后把 progress 返回的进度行打印出来 (采样失败时传入 null)
+     */
+    void start(Duration interval, Function<Sample, String> progress) {
+        task = Flux.interval(interval, interval)
+                .concatMap(tick -> scrape()
+                        .map(sample -> progress.apply(sample))
+                        .onErrorResume(e -> {
+                            if (!warned) {
+                                warned = true;
+                                System.out.println("无法读取服务端指标 (/actuator/prometheus): " + e.getMessage());
+                            }
+                            return Mono.fromSupplier(() -> progress.apply(null));
+                        }))
+                .subscribe(System.out::println);
+    }
+
+    void stop() {
+        if (task != null) {
+            task.dispose();
+        }
+        // 结束时再采一次
+        scrape().onErrorResume(e -> Mono.empty()).block(Duration.ofSeconds(10));
+    }
+
+    private Mono<Sample> scrape() {
+        return client.get()
+                .uri("/actuator/prometheus")
+                .responseSingle((response, body) -> {
+                    if (response.status().code() != 200) {
+                        return Mono.error(new IllegalStateException("HTTP " + response.status().code()));
+                    }
+                    return body.asString();
+                })
+                .timeout(Duration.ofSeconds(10))
+                .map(this::parse);
+    }
+
+    private synchronized Sample parse(String text) {
+        double threads = 0;
+        double heap = 0;
+        double sse = 0;
+        for (String line : text.split("\n")) {
+            if (line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("jvm_threads_live_threads")) {
+                threads += valueOf(line);
+            } else if (line.startsWith("jvm_memory_used_bytes") && line.contains("area=\"heap\"")) {
+                heap += valueOf(line);
+            } else if (line.startsWith("chat_sse_active")) {
+                sse += valueOf(line);
+            }
+        }
+        Sample sample = new Sample((long) threads, (long) heap, (long) sse);
+        peakThreads = Math.max(peakThreads, sample.threads);
+        peakHeapBytes = Math.max(peakHeapBytes, sample.heapBytes);
+        peakActiveSse = Math.max(peakActiveSse, sample.activeSse);
+        last = sample;
+        return sample;
+    }
+
+    private static double valueOf(String line) {
+        int space = line.lastIndexOf(' ');
+        try {
+            return Double.parseDouble(line.substring(space + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    synchronized Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        if (last == null) {
+            summary.put("available", false);
+            return summary;
+        }
+        summary.put("threads", last.threads);
+        summary.put("peakThreads", peakThreads);
+        summary.put("heapMb", last.heapBytes / (1024 * 1024));
+        summary.put("peakHeapMb", peakHeapBytes / (1024 * 1024));
+        summary.put("peakActiveSse", peakActiveSse);
+        return summary;
+    }
+}
@@ -0,0 +1,52 @@
+package com.xiaomiproject.loadtest;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 在字节流上增量统计 SSE 事件数 (带 data 字段、以空行结束的事件)，不解码文本
+ */
+final class SseEventCounter {
+
+    private static final byte[] DATA_FIELD = {'d', 'a', 't', 'a', ':'};
+
+    private int lineLength;
+    private int prefixMatched;
+    private boolean eventHasData;
+    private long events;
+
+    /**
+     * @return 本块中结束的事件数
+     */
+    int feed(ByteBuf buf) {
+        int completed = 0;
+        for (int i = buf.readerIndex(), end = buf.writerIndex(); i < end; i++) {
+            byte b = buf.getByte(i);
+            if (b == '\r') {
+                continue;
+            }
+            if (b == '\n') {
+                if (lineLength == 0) {
+                    if (eventHasData) {
+                        completed++;
+                        eventHasData = false;
+                    }
+                } else if (prefixMatched == DATA_FIELD.length) {
+                    eventHasData = true;
+                }
+                lineLength = 0;
+                prefixMatched = 0;
+                continue;
+            }
+            if (lineLength == prefixMatched && prefixMatched < DATA_FIELD.length && b == DATA_FIELD[prefixMatched]) {
+                prefixMatched++;
+            }
+            lineLength++;
+        }
+        events += completed;
+        return completed;
+    }
+
+    long events() {
+        return events;
+    }
+}
@@ -0,0 +1,25 @@
+package com.xiaomiproject.config;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+/**
+ * 登录用户的身份信息，在 Spring Security 的 UserDetails 基础上带上用户ID。
+ * 认证成功后作为 principal 保存在会话中，后续请求直接从中取用户ID，不再查询 users 表。
+ */
+public class AuthenticatedUser extends User {
+
+    private final Long userId;
+
+    public AuthenticatedUser(Long userId, String username, String password,
+                             Collection<? extends GrantedAuthority> authorities) {
+        super(username, password, authorities);
+        this.userId = userId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+}
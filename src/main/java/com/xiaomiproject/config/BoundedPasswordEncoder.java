@@ -0,0 +1,95 @@
+package com.xiaomiproject.config;
+
+import com.xiaomiproject.service.ChatOverloadedException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 在专用的有界线程池上执行 BCrypt 计算的密码编码器。
+ * BCrypt 每次校验要消耗几十毫秒 CPU，登录高峰时如果在请求线程上直接计算，会挤占问答请求的 CPU；
+ * 这里同时计算的数量不超过线程数，排队已满或等待超时的登录直接以 503 拒绝，由客户端稍后重试。
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity, long timeoutMs) {
+        this.delegate = delegate;
+        this.timeoutMs = timeoutMs;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("bcrypt-");
+        threadFactory.setDaemon(true);
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T run(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            throw new ChatOverloadedException("登录请求过多，请稍后重试", 1);
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeoutCount.incrementAndGet();
+            throw new ChatOverloadedException("登录请求过多，请稍后重试", 1);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("密码校验被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    public Map<String, Object> statsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("threads", executor.getMaximumPoolSize());
+        snapshot.put("active", executor.getActiveCount());
+        snapshot.put("queued", executor.getQueue().size());
+        snapshot.put("completed", executor.getCompletedTaskCount());
+        snapshot.put("rejectedCount", rejectedCount.get());
+        snapshot.put("timeoutCount", timeoutCount.get());
+        return snapshot;
+    }
+}
@@ -0,0 +1,80 @@
+package com.xiaomiproject.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 问答相关线程池的统一配置。
+ * chat.executor.mode=platform (默认) 使用有界线程池 + 有界队列，队列满时直接拒绝；
+ * chat.executor.mode=virtual 在 JDK 21+ 上改用虚拟线程 (每个任务一个)，低版本 JDK 自动退回 platform 模式。
+ * 两种模式下并发数都由 {@link com.xiaomiproject.service.ChatAdmissionService} 控制。
+ */
+@Configuration
+@EnableAsync
+public class ChatExecutorConfig {
+
+    @Value("${chat.executor.mode:platform}")
+    private String mode;
+
+    /**
+     * 执行问答请求中阻塞操作 (查本地来源、保存历史、写续传缓冲) 的线程池，即 chatBlockingScheduler 使用的线程池
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService chatExecutor(@Value("${chat.executor.core-size:16}") int coreSize,
+                                        @Value("${chat.executor.max-size:64}") int maxSize,
+                                        @Value("${chat.executor.queue-capacity:200}") int queueCapacity) {
+        return newExecutor("chat-", coreSize, maxSize, queueCapacity);
+    }
+
+    /**
+     * Spring MVC 异步请求 (SseEmitter、Flux 返回值) 写出数据使用的线程池
+     */
+    @Bean
+    public AsyncTaskExecutor mvcTaskExecutor(@Value("${chat.executor.mvc.core-size:8}") int coreSize,
+                                             @Value("${chat.executor.mvc.max-size:32}") int maxSize,
+                                             @Value("${chat.executor.mvc.queue-capacity:1000}") int queueCapacity) {
+        return new TaskExecutorAdapter(newExecutor("mvc-async-", coreSize, maxSize, queueCapacity));
+    }
+
+    private ExecutorService newExecutor(String threadNamePrefix, int coreSize, int maxSize, int queueCapacity) {
+        if ("virtual".equalsIgnoreCase(mode)) {
+            ExecutorService virtual = newVirtualThreadExecutor();
+            if (virtual != null) {
+                return virtual;
+            }
+            System.err.println("当前JDK不支持虚拟线程，" + threadNamePrefix + " 线程池改用 platform 模式");
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(coreSize, Math.max(coreSize, maxSize),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new CustomizableThreadFactory(threadNamePrefix),
+                // 队列满时抛出 RejectedExecutionException，由调用方转换为 503
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 项目按 Java 8 编译，通过反射调用 JDK 21 的 Executors.newVirtualThreadPerTaskExecutor()
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.xiaomiproject.config;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 为每个大模型服务商创建一个长期复用的 WebClient，各自拥有独立的连接池：
+ * 限制最大连接数和排队数、空闲连接定期回收、开启 TCP keep-alive，
+ * HTTPS 地址通过 ALPN 协商优先使用 HTTP/2，不支持时自动回落到 HTTP/1.1。
+ */
+@Component
+public class LlmWebClientFactory {
+
+    @Autowired
+    private WebClient.Builder webClientBuilder;
+
+    @Value("${llm.http.max-connections:200}")
+    private int maxConnections;
+
+    @Value("${llm.http.pending-acquire-max-count:1000}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${llm.http.pending-acquire-timeout-ms:5000}")
+    private long pendingAcquireTimeoutMs;
+
+    @Value("${llm.http.max-idle-time-ms:30000}")
+    private long maxIdleTimeMs;
+
+    @Value("${llm.http.max-life-time-ms:300000}")
+    private long maxLifeTimeMs;
+
+    @Value("${llm.http.evict-interval-ms:30000}")
+    private long evictIntervalMs;
+
+    @Value("${llm.http.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+
+    // 两次读取之间允许的最长间隔，流式响应中相当于"卡住多久算超时"
+    @Value("${llm.http.response-timeout-ms:60000}")
+    private long responseTimeoutMs;
+
+    private final List<ConnectionProvider> providers = new CopyOnWriteArrayList<>();
+    // 连接池名称 + 远端地址 -> 连接池指标
+    private final Map<String, ConnectionPoolMetrics> poolMetrics = new ConcurrentHashMap<>();
+
+    public WebClient create(String name, String baseUrl, String apiKey, boolean http2) {
+        ConnectionProvider provider = ConnectionProvider.builder("llm-" + name)
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofMillis(maxIdleTimeMs))
+                .maxLifeTime(Duration.ofMillis(maxLifeTimeMs))
+                .evictInBackground(Duration.ofMillis(evictIntervalMs))
+                .metrics(true, () -> (poolName, id, remoteAddress, metrics) ->
+                        poolMetrics.put(poolName + "@" + remoteAddress, metrics))
+                .build();
+        providers.add(provider);
+
+        HttpClient httpClient = HttpClient.create(provider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs));
+        // HTTP/2 需要 TLS + ALPN，明文地址 (例如本地模拟服务) 保持 HTTP/1.1
+        if (http2 && baseUrl.startsWith("https://")) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+
+        return webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .baseUrl(baseUrl)
+                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+                .build();
+    }
+
+    /**
+     * 各连接池的当前状态，用于观察连接复用情况
+     */
+    public Map<String, Map<String, Object>> poolStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        poolMetrics.forEach((pool, metrics) -> {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("acquired", metrics.acquiredSize());
+            snapshot.put("allocated", metrics.allocatedSize());
+            snapshot.put("idle", metrics.idleSize());
+            snapshot.put("pendingAcquire", metrics.pendingAcquireSize());
+            snapshot.put("maxAllocated", metrics.maxAllocatedSize());
+            snapshot.put("maxPendingAcquire", metrics.maxPendingAcquireSize());
+            stats.put(pool, snapshot);
+        });
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ConnectionProvider provider : providers) {
+            provider.disposeLater().block(Duration.ofSeconds(5));
+        }
+    }
+}
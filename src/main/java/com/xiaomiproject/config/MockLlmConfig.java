@@ -0,0 +1,69 @@
+package com.xiaomiproject.config;
+
+import com.xiaomiproject.service.llm.MockLlmApi;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * 按配置注册本地模拟的模型服务 ({@link MockLlmApi})，默认不注册任何模拟服务。
+ * 例如：
+ * <pre>
+ * llm.mock.providers=mock-slow,mock-fast
+ * llm.mock.mock-slow.first-token-delay-ms=8000
+ * llm.mock.mock-fast.first-token-delay-ms=200
+ * llm.mock.mock-fast.failure-rate=0.1
+ * llm.mock.mock-fast.fail-after-tokens=3
+ * llm.default.model=mock-slow
+ * </pre>
+ * 注册后与真实模型一样参与模型选择、对冲和熔断，可以用 model 参数直接指定。
+ */
+@Configuration
+public class MockLlmConfig {
+
+    @Bean
+    public static BeanDefinitionRegistryPostProcessor mockLlmRegistrar() {
+        return new MockLlmRegistrar();
+    }
+
+    static class MockLlmRegistrar implements BeanDefinitionRegistryPostProcessor, EnvironmentAware {
+
+        private Environment environment;
+
+        @Override
+        public void setEnvironment(Environment environment) {
+            this.environment = environment;
+        }
+
+        @Override
+        public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) {
+            String providers = environment.getProperty("llm.mock.providers", "");
+            for (String name : providers.split(",")) {
+                String modelType = name.trim();
+                if (modelType.isEmpty()) {
+                    continue;
+                }
+                String prefix = "llm.mock." + modelType + ".";
+                long firstTokenDelayMs = environment.getProperty(prefix + "first-token-delay-ms", Long.class, 200L);
+                long tokenDelayMs = environment.getProperty(prefix + "token-delay-ms", Long.class, 20L);
+                double failureRate = environment.getProperty(prefix + "failure-rate", Double.class, 0.0);
+                int failAfterTokens = environment.getProperty(prefix + "fail-after-tokens", Integer.class, 0);
+                String answer = environment.getProperty(prefix + "answer", "这是来自 " + modelType + " 的模拟回答，用于本地测试。");
+                registry.registerBeanDefinition("mockLlmApi-" + modelType,
+                        BeanDefinitionBuilder.genericBeanDefinition(MockLlmApi.class,
+                                () -> new MockLlmApi(modelType, firstTokenDelayMs, tokenDelayMs, failureRate,
+                                        failAfterTokens, answer))
+                                .getBeanDefinition());
+            }
+        }
+
+        @Override
+        public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+        }
+    }
+}
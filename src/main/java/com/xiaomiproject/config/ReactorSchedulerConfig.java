@@ -0,0 +1,22 @@
+package com.xiaomiproject.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ExecutorService;
+
+@Configuration
+public class ReactorSchedulerConfig {
+
+    /**
+     * 响应式流水线中执行阻塞操作 (JPA、Redis) 的调度器，运行在问答线程池 chatExecutor 上。
+     * 线程数和排队任务数都有上限 (chat.executor.*)，阻塞操作再慢也不会拖住 Netty/Servlet 线程或无限创建线程；
+     * 准入控制按该线程池的排队深度拒绝新的问答
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler chatBlockingScheduler(ExecutorService chatExecutor) {
+        return Schedulers.fromExecutorService(chatExecutor, "chat-blocking");
+    }
+}
@@ -1,16 +1,22 @@
 package com.xiaomiproject.config;
 
 
+import com.xiaomiproject.service.TokenService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.authentication.HttpStatusEntryPoint;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 @Configuration
 @EnableWebSecurity
@@ -19,10 +25,28 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
     @Autowired
     private UserDetailsServiceImpl userDetailsService;
 
-    // 定义密码编码器，用于对密码进行加密和验证
+    @Autowired
+    private TokenService tokenService;
+
+    // session = 服务端会话 (JSESSIONID，默认)；token = 无状态的签名令牌，不创建会话，任何节点都能独立校验
+    @Value("${chat.auth.mode:session}")
+    private String authMode;
+
+    // BCrypt 专用线程池的线程数 (默认为CPU核数)、排队上限和等待超时
+    @Value("${chat.auth.bcrypt.threads:0}")
+    private int bcryptThreads;
+
+    @Value("${chat.auth.bcrypt.queue-capacity:64}")
+    private int bcryptQueueCapacity;
+
+    @Value("${chat.auth.bcrypt.timeout-ms:5000}")
+    private long bcryptTimeoutMs;
+
+    // 定义密码编码器，用于对密码进行加密和验证 (在有界线程池上执行，见 BoundedPasswordEncoder)
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        int threads = bcryptThreads > 0 ? bcryptThreads : Runtime.getRuntime().availableProcessors();
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(), threads, bcryptQueueCapacity, bcryptTimeoutMs);
     }
 
     // 暴露AuthenticationManager, 用于在Controller中手动进行登录认证
@@ -50,7 +74,25 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .authorizeRequests()
                 // 允许对 /api/auth/** 下的所有请求进行匿名访问 (注册和登录)
                 .antMatchers("/api/auth/**").permitAll()
+                // 健康检查和 Prometheus 抓取不需要登录 (生产环境应只在内网开放 /actuator)
+                .antMatchers("/actuator/health", "/actuator/health/**", "/actuator/prometheus").permitAll()
+                .antMatchers("/actuator/**").hasRole("ADMIN")
+                // 管理接口 (缓存统计、清理等) 仅管理员可访问
+                .antMatchers("/api/admin/**").hasRole("ADMIN")
                 // 其他所有请求都需要身份认证
                 .anyRequest().authenticated();
+
+        if ("token".equalsIgnoreCase(authMode)) {
+            if (!tokenService.hasConfiguredSecret()) {
+                System.err.println("未配置 chat.auth.token.secret，使用随机密钥：重启后令牌失效，多节点之间令牌不通用");
+            }
+            http
+                    // 不创建也不读取会话，每个请求凭访问令牌认证
+                    .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                    .and()
+                    .addFilterBefore(new TokenAuthenticationFilter(tokenService), UsernamePasswordAuthenticationFilter.class)
+                    // 未携带或令牌已过期时返回 401，客户端据此刷新令牌
+                    .exceptionHandling().authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED));
+        }
     }
 }
@@ -0,0 +1,64 @@
+package com.xiaomiproject.config;
+
+import com.xiaomiproject.service.TokenService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * 令牌模式下的认证过滤器：从 Authorization: Bearer 请求头取访问令牌，校验通过后设置当前请求的登录用户。
+ * 浏览器的 EventSource 不能设置请求头，GET 请求也可以用 access_token 参数携带令牌。
+ * 校验只在本地计算签名，不访问数据库和会话；令牌无效时按未登录处理，由后续的访问控制返回 401。
+ */
+public class TokenAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final String TOKEN_PARAMETER = "access_token";
+
+    private final TokenService tokenService;
+
+    public TokenAuthenticationFilter(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String token = tokenOf(request);
+        if (token != null) {
+            Optional<AuthenticatedUser> user = tokenService.verify(token, TokenService.TYPE_ACCESS);
+            if (user.isPresent()) {
+                SecurityContextHolder.getContext().setAuthentication(
+                        new UsernamePasswordAuthenticationToken(user.get(), null, user.get().getAuthorities()));
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * SseEmitter、Flux 等异步响应结束时会再次分派请求，同样需要恢复登录用户
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    private static String tokenOf(HttpServletRequest request) {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header != null && header.startsWith(BEARER_PREFIX)) {
+            return header.substring(BEARER_PREFIX.length()).trim();
+        }
+        if ("GET".equals(request.getMethod())) {
+            return request.getParameter(TOKEN_PARAMETER);
+        }
+        return null;
+    }
+}
@@ -3,6 +3,7 @@ package com.xiaomiproject.config;
 
 import com.xiaomiproject.entity.User;
 import com.xiaomiproject.repository.UserRepository;
+import com.xiaomiproject.service.UserIdentityService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -18,14 +19,19 @@ public class UserDetailsServiceImpl implements UserDetailsService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserIdentityService userIdentityService;
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         // 从数据库中查找用户
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with username: " + username));
 
-        // 返回Spring Security需要的UserDetails对象
-        return new org.springframework.security.core.userdetails.User(
+        userIdentityService.remember(user.getUsername(), user.getId());
+        // 返回Spring Security需要的UserDetails对象，附带用户ID，之后的请求无需再查询用户表
+        return new AuthenticatedUser(
+                user.getId(),
                 user.getUsername(),
                 user.getPassword(), // 数据库中存储的已加密的密码
                 Collections.singletonList(new SimpleGrantedAuthority(user.getRoles()))
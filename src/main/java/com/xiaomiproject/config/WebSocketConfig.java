@@ -0,0 +1,49 @@
+package com.xiaomiproject.config;
+
+import com.xiaomiproject.controller.ChatWebSocketHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistration;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+
+/**
+ * WebSocket 问答通道。握手请求经过 Spring Security，与 HTTP 接口使用同一种登录方式
+ * (会话 Cookie，或令牌模式下的 Authorization 头 / access_token 参数)。
+ */
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    @Autowired
+    private ChatWebSocketHandler chatWebSocketHandler;
+
+    // 允许跨域连接的来源 (逗号分隔，支持通配符)；为空时只允许同源页面连接
+    @Value("${chat.ws.allowed-origins:}")
+    private String[] allowedOrigins;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        WebSocketHandlerRegistration registration = registry.addHandler(chatWebSocketHandler, "/ws/chat");
+        if (allowedOrigins.length > 0) {
+            registration.setAllowedOriginPatterns(allowedOrigins);
+        }
+    }
+
+    /**
+     * 单个消息的大小上限 (问题文本不会很长) 和空闲超时
+     */
+    @Bean
+    public ServletServerContainerFactoryBean webSocketContainer(
+            @Value("${chat.ws.max-message-bytes:65536}") int maxMessageBytes,
+            @Value("${chat.ws.idle-timeout-ms:300000}") long idleTimeoutMs) {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(maxMessageBytes);
+        container.setMaxSessionIdleTimeout(idleTimeoutMs);
+        return container;
+    }
+}
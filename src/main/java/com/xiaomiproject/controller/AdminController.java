@@ -0,0 +1,232 @@
+package com.xiaomiproject.controller;
+
+import com.xiaomiproject.config.BoundedPasswordEncoder;
+import com.xiaomiproject.config.LlmWebClientFactory;
+import com.xiaomiproject.service.ChatAdmissionService;
+import com.xiaomiproject.service.LlmService;
+import com.xiaomiproject.service.LoginActivityRecorder;
+import com.xiaomiproject.service.cache.AnswerCache;
+import com.xiaomiproject.service.cache.GeneratedAnswerStore;
+import com.xiaomiproject.service.context.ConversationContextService;
+import com.xiaomiproject.service.history.HistoryArchiver;
+import com.xiaomiproject.service.history.HistoryWriter;
+import com.xiaomiproject.service.knowledge.KnowledgeImportService;
+import com.xiaomiproject.service.llm.ResilientLlmRouter;
+import com.xiaomiproject.service.scheduling.LlmCallScheduler;
+import com.xiaomiproject.service.semantic.SemanticAnswerCache;
+import com.xiaomiproject.service.stream.ResumableStreamService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    @Autowired
+    private AnswerCache answerCache;
+
+    @Autowired
+    private SemanticAnswerCache semanticAnswerCache;
+
+    @Autowired
+    private GeneratedAnswerStore generatedAnswerStore;
+
+    @Autowired
+    private LlmService llmService;
+
+    @Autowired
+    private LlmWebClientFactory llmWebClientFactory;
+
+    @Autowired
+    private ChatAdmissionService chatAdmissionService;
+
+    @Autowired
+    private HistoryWriter historyWriter;
+
+    @Autowired
+    private HistoryArchiver historyArchiver;
+
+    @Autowired
+    private ConversationContextService conversationContextService;
+
+    @Autowired
+    private ResumableStreamService resumableStreamService;
+
+    @Autowired
+    private ResilientLlmRouter resilientLlmRouter;
+
+    @Autowired
+    private LlmCallScheduler llmCallScheduler;
+
+    @Autowired
+    private KnowledgeImportService knowledgeImportService;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private LoginActivityRecorder loginActivityRecorder;
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(answerCache.statsSnapshot());
+    }
+
+    /**
+     * 清理问答缓存：指定question时只清理该问题，否则清空全部
+     */
+    @DeleteMapping("/cache")
+    public ResponseEntity<?> evictCache(@RequestParam(required = false) String question) {
+        if (question != null) {
+            answerCache.invalidate(AnswerCache.keyOf(question));
+        } else {
+            answerCache.invalidateAll();
+        }
+        return ResponseEntity.ok("缓存已清理。");
+    }
+
+    @GetMapping("/generated-cache/stats")
+    public ResponseEntity<Map<String, Object>> getGeneratedCacheStats() {
+        return ResponseEntity.ok(generatedAnswerStore.statsSnapshot());
+    }
+
+    /**
+     * 清除持久化的大模型答案：指定model时只清除该模型的答案，否则全部清除。
+     * 内存中的问答缓存同时清空，避免继续返回已清除的答案
+     */
+    @DeleteMapping("/generated-cache")
+    public ResponseEntity<?> purgeGeneratedCache(@RequestParam(required = false) String model) {
+        int purged = generatedAnswerStore.purge(model);
+        answerCache.invalidateAll();
+        return ResponseEntity.ok("已清除持久化答案: " + purged + " 条。");
+    }
+
+    @GetMapping("/semantic-cache/stats")
+    public ResponseEntity<Map<String, Object>> getSemanticCacheStats() {
+        return ResponseEntity.ok(semanticAnswerCache.statsSnapshot());
+    }
+
+    @DeleteMapping("/semantic-cache")
+    public ResponseEntity<?> clearSemanticCache() {
+        semanticAnswerCache.clear();
+        return ResponseEntity.ok("语义缓存已清空。");
+    }
+
+    @GetMapping("/llm/in-flight")
+    public ResponseEntity<Map<String, Object>> getInFlightStats() {
+        return ResponseEntity.ok(llmService.inFlightStats());
+    }
+
+    @GetMapping("/llm/pools")
+    public ResponseEntity<Map<String, Map<String, Object>>> getConnectionPoolStats() {
+        return ResponseEntity.ok(llmWebClientFactory.poolStats());
+    }
+
+    /**
+     * 各模型服务的首 token 延迟百分位、熔断状态，以及对冲和故障转移次数
+     */
+    @GetMapping("/llm/resilience")
+    public ResponseEntity<Map<String, Object>> getResilienceStats() {
+        return ResponseEntity.ok(resilientLlmRouter.statsSnapshot());
+    }
+
+    @GetMapping("/llm/scheduler")
+    public ResponseEntity<Map<String, Object>> getLlmSchedulerStats() {
+        return ResponseEntity.ok(llmCallScheduler.statsSnapshot());
+    }
+
+    @GetMapping("/chat/admission")
+    public ResponseEntity<Map<String, Object>> getAdmissionStats() {
+        return ResponseEntity.ok(chatAdmissionService.statsSnapshot());
+    }
+
+    @GetMapping("/history/writer")
+    public ResponseEntity<Map<String, Object>> getHistoryWriterStats() {
+        return ResponseEntity.ok(historyWriter.statsSnapshot());
+    }
+
+    @GetMapping("/history/archive")
+    public ResponseEntity<Map<String, Object>> getHistoryArchiveStats() {
+        return ResponseEntity.ok(historyArchiver.statsSnapshot());
+    }
+
+    /**
+     * 立即执行一轮归档 (不受 enabled 开关限制)
+     */
+    @PostMapping("/history/archive")
+    public ResponseEntity<?> runHistoryArchive() {
+        int archived = historyArchiver.runArchive();
+        if (archived < 0) {
+            return ResponseEntity.status(409).body("归档任务正在运行。");
+        }
+        return ResponseEntity.ok("归档完成，本次归档对话数: " + archived);
+    }
+
+    @GetMapping("/chat/context")
+    public ResponseEntity<Map<String, Object>> getContextStats() {
+        return ResponseEntity.ok(conversationContextService.statsSnapshot());
+    }
+
+    @GetMapping("/chat/resumable")
+    public ResponseEntity<Map<String, Object>> getResumableStreamStats() {
+        return ResponseEntity.ok(resumableStreamService.statsSnapshot());
+    }
+
+    /**
+     * 批量导入知识库：请求体即文件内容 (UTF-8)，边读边写入，不会整体读入内存。
+     * 例: curl -X POST -H 'Content-Type: text/csv' --data-binary @knowledge.csv .../api/admin/knowledge/import
+     * @param format csv 或 jsonl，不指定时按 Content-Type 判断
+     * @param overwrite 已有同一问题时是否覆盖答案
+     */
+    @PostMapping("/knowledge/import")
+    public ResponseEntity<?> importKnowledge(HttpServletRequest request,
+                                             @RequestParam(required = false) String format,
+                                             @RequestParam(defaultValue = "true") boolean overwrite) throws IOException {
+        KnowledgeImportService.Format importFormat = KnowledgeImportService.Format.of(format, request.getContentType());
+        if (importFormat == null) {
+            return ResponseEntity.badRequest().body("无法识别导入格式，请指定 format=csv 或 format=jsonl。");
+        }
+        if (knowledgeImportService.isRunning()) {
+            return ResponseEntity.status(409).body("知识库导入任务正在运行。");
+        }
+        Map<String, Object> report;
+        try (InputStream in = request.getInputStream()) {
+            report = knowledgeImportService.importFrom(in, importFormat, overwrite);
+        }
+        if (report == null) {
+            return ResponseEntity.status(409).body("知识库导入任务正在运行。");
+        }
+        return ResponseEntity.ok(report);
+    }
+
+    @GetMapping("/knowledge/import")
+    public ResponseEntity<Map<String, Object>> getKnowledgeImportStats() {
+        return ResponseEntity.ok(knowledgeImportService.statsSnapshot());
+    }
+
+    /**
+     * 密码校验线程池和最后登录时间写回的状态
+     */
+    @GetMapping("/auth/stats")
+    public ResponseEntity<Map<String, Object>> getAuthStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        if (passwordEncoder instanceof BoundedPasswordEncoder) {
+            stats.put("bcrypt", ((BoundedPasswordEncoder) passwordEncoder).statsSnapshot());
+        }
+        stats.put("loginTime", loginActivityRecorder.statsSnapshot());
+        return ResponseEntity.ok(stats);
+    }
+}
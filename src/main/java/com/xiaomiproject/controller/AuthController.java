@@ -1,20 +1,33 @@
 package com.xiaomiproject.controller;
 
+import com.xiaomiproject.config.AuthenticatedUser;
+import com.xiaomiproject.config.UserDetailsServiceImpl;
 import com.xiaomiproject.dto.LoginRequest;
+import com.xiaomiproject.dto.RefreshTokenRequest;
 import com.xiaomiproject.dto.RegisterRequest;
-import com.xiaomiproject.repository.UserRepository;
+import com.xiaomiproject.dto.TokenResponse;
 import com.xiaomiproject.service.AuthService;
+import com.xiaomiproject.service.ChatOverloadedException;
+import com.xiaomiproject.service.LoginActivityRecorder;
+import com.xiaomiproject.service.TokenService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import java.time.LocalDateTime;
+
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/auth")
@@ -27,7 +40,17 @@ public class AuthController {
     private AuthenticationManager authenticationManager;
 
     @Autowired
-    private UserRepository userRepository;
+    private LoginActivityRecorder loginActivityRecorder;
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private UserDetailsServiceImpl userDetailsService;
+
+    // session = 服务端会话 (JSESSIONID)，token = 无状态的签名令牌
+    @Value("${chat.auth.mode:session}")
+    private String authMode;
 
     @PostMapping("/register")
     public ResponseEntity<?> registerUser(@RequestBody RegisterRequest registerRequest) {
@@ -41,24 +64,68 @@ public class AuthController {
 
     @PostMapping("/login")
     public ResponseEntity<?> authenticateUser(@RequestBody LoginRequest loginRequest) {
-        // 使用AuthenticationManager进行认证
+        // 使用AuthenticationManager进行认证 (BCrypt 校验在专用的有界线程池上执行)
         Authentication authentication = authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(loginRequest.getUsername(), loginRequest.getPassword())
         );
 
+        // 更新最后登录时间：认证时已加载用户，直接用其中的用户ID；异步合并写入，不等待数据库
+        AuthenticatedUser user = (AuthenticatedUser) authentication.getPrincipal();
+        loginActivityRecorder.recordLogin(user.getUserId());
+
+        if (isTokenMode()) {
+            return ResponseEntity.ok(issueTokens(user));
+        }
+
         // 如果认证成功，将Authentication对象设置到SecurityContext中
         // Spring Security会自动处理Session，并在响应头中返回Set-Cookie: JSESSIONID=...
         SecurityContextHolder.getContext().setAuthentication(authentication);
+        return ResponseEntity.ok("用户登录成功!");
+    }
 
-        // --- 新增逻辑：更新最后登录时间 ---
-        // 认证成功后，从 authentication 对象中获取用户名
-        String username = authentication.getName();
-        // 使用 Java 8 的 Optional 和 Lambda 表达式，代码更优雅
-        userRepository.findByUsername(username).ifPresent(user -> {
-            user.setLastLoginTime(LocalDateTime.now());
-            userRepository.save(user); // 保存更新后的用户信息
-        });
+    /**
+     * 用刷新令牌换取新的访问令牌和刷新令牌。
+     * 这里重新读取一次用户，角色变化或用户被删除在刷新时生效
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refreshToken(@RequestBody RefreshTokenRequest request) {
+        if (!isTokenMode()) {
+            return ResponseEntity.badRequest().body("当前未启用令牌登录。");
+        }
+        Optional<AuthenticatedUser> claims = tokenService.verify(request.getRefreshToken(), TokenService.TYPE_REFRESH);
+        if (!claims.isPresent()) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("刷新令牌无效或已过期，请重新登录。");
+        }
+        AuthenticatedUser user;
+        try {
+            user = (AuthenticatedUser) userDetailsService.loadUserByUsername(claims.get().getUsername());
+        } catch (UsernameNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("用户不存在，请重新登录。");
+        }
+        // 用户被删除后同名重新注册的是另一个用户
+        if (!user.getUserId().equals(claims.get().getUserId())) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("用户不存在，请重新登录。");
+        }
+        return ResponseEntity.ok(issueTokens(user));
+    }
 
-        return ResponseEntity.ok("用户登录成功!");
+    private TokenResponse issueTokens(AuthenticatedUser user) {
+        return new TokenResponse(tokenService.issueAccessToken(user), tokenService.issueRefreshToken(user),
+                "Bearer", tokenService.getAccessTtlSeconds());
+    }
+
+    private boolean isTokenMode() {
+        return "token".equalsIgnoreCase(authMode);
+    }
+
+    /**
+     * 密码校验线程池已满：返回 503，客户端稍后重试
+     */
+    @ExceptionHandler(ChatOverloadedException.class)
+    public ResponseEntity<String> handleOverloaded(ChatOverloadedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage());
     }
 }
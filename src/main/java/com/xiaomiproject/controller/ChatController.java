@@ -1,103 +1,273 @@
 package com.xiaomiproject.controller;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.xiaomiproject.dto.QuestionRequest;
+import com.xiaomiproject.service.ChatAdmissionService;
+import com.xiaomiproject.service.ChatOverloadedException;
 import com.xiaomiproject.service.ChatService;
+import com.xiaomiproject.service.QuotaExceededException;
+import com.xiaomiproject.service.UserIdentityService;
+import com.xiaomiproject.service.metrics.ChatMetrics;
+import com.xiaomiproject.service.stream.ResumableStreamService;
+import com.xiaomiproject.service.stream.StreamEvent;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
 
 import java.io.IOException;
 import java.security.Principal;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 @RestController
 @RequestMapping("/api/chat")
 public class ChatController {
 
+    private static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
     @Autowired
     private ChatService chatService;
 
     @Value("${llm.default.model}")
     private String defaultModel;
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final ExecutorService sseExecutor = Executors.newCachedThreadPool();
+    @Autowired
+    private ChatAdmissionService admissionService;
+
+    @Autowired
+    private UserIdentityService userIdentityService;
+
+    @Autowired
+    private ChatMetrics chatMetrics;
+
+    @Autowired
+    private ResumableStreamService resumableStreamService;
+
+    @Autowired
+    private Scheduler chatBlockingScheduler;
+
+    // SseEmitter 超时时间 (毫秒)，超时后结束推送并取消上游调用
+    @Value("${chat.stream.emitter-timeout-ms:600000}")
+    private long emitterTimeoutMs;
 
+    /**
+     * 流式问答。每个答案片段带有事件ID，客户端断线后带 Last-Event-ID 请求头 (EventSource 重连时自动携带)
+     * 或 lastEventId 参数重新请求，从断点继续接收，不会重新生成回答；回答结束时推送具名事件 end。
+     */
     @GetMapping(value = "/stream-ask", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter streamAskQuestion(@RequestParam String question,
                                         @RequestParam(required = false) String conversationId,
                                         @RequestParam(required = false) String model, // 接收模型类型参数
+                                        @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) String lastEventIdHeader,
+                                        @RequestParam(required = false) String lastEventId,
                                         Principal principal) {
-        if (principal == null) {
+        // 用户ID直接取自登录信息，不查询用户表
+        Long userId = userIdentityService.userIdOf(principal).orElse(null);
+        if (userId == null) {
             SseEmitter emitter = new SseEmitter();
             emitter.completeWithError(new IllegalStateException("User not authenticated"));
             return emitter;
         }
 
-        SseEmitter emitter = new SseEmitter(Long.MAX_VALUE);
-        final String finalConversationId = (conversationId == null || conversationId.trim().isEmpty())
+        String resumeFrom = lastEventIdHeader != null ? lastEventIdHeader : lastEventId;
+
+        // 断线重连：从重放缓冲续传，不占用问答许可，也不再调用大模型
+        Optional<Flux<StreamEvent>> resumed = resumableStreamService.resume(resumeFrom, userId);
+        if (resumed.isPresent()) {
+            SseConnection connection = new SseConnection();
+            // 缓冲中的片段会在订阅时立即发出，不在请求线程上写出
+            connection.pipe(resumed.get().subscribeOn(chatBlockingScheduler));
+            return connection.emitter;
+        }
+
+        // 并发已满时抛出 ChatOverloadedException (503)；配额在确定需要调用大模型时才检查，用完时在流中报错
+        Flux<StreamEvent> events = openAnswer(question, conversationId, model, resumeFrom, userId);
+        SseConnection connection = new SseConnection();
+        connection.pipe(events);
+        return connection.emitter;
+    }
+
+    /**
+     * 开始一次新的回答：申请许可，把 {@link ChatService#streamAnswer} 包装为可续传的事件流。
+     * 客户端断开后回答继续生成以便续传，许可在回答结束时归还。
+     */
+    private Flux<StreamEvent> openAnswer(String question, String conversationId, String model, String resumeFrom,
+                                         Long userId) {
+        String finalConversationId = (conversationId == null || conversationId.trim().isEmpty())
                 ? UUID.randomUUID().toString()
                 : conversationId;
-
         // 如果未指定模型，则使用默认模型
-        final String modelType = (model == null || model.trim().isEmpty()) ? defaultModel : model;
+        String modelType = (model == null || model.trim().isEmpty()) ? defaultModel : model;
+
+        ChatAdmissionService.Permit permit = admissionService.acquire();
+        try {
+            return withResetMarker(resumableStreamService.open(userId,
+                    chatService.streamAnswer(question, finalConversationId, userId, modelType)
+                            .doFinally(signal -> permit.release())), resumeFrom);
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 一个 SseEmitter 连接：把事件流逐条写入 emitter，正常结束后关闭连接。
+     * 完成、出错、超时或客户端断开都只关闭一次：取消对事件流的订阅 (可续传的回答只是断开连接，生成继续进行)
+     * 并记录指标。写出与关闭在 emitter 上互斥，关闭后的事件直接丢弃——客户端断开后 Servlet 容器会回收响应对象，
+     * 之后再写出的数据可能落到复用该对象的其他请求上。
+     */
+    private final class SseConnection {
+        final SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        private Disposable subscription;
+        private boolean closed;
 
-        sseExecutor.execute(() -> {
-            try {
-                Optional<String> localAnswer = chatService.checkLocalSources(question);
+        SseConnection() {
+            chatMetrics.sseOpened();
+            emitter.onTimeout(() -> {
+                close("timeout");
+                emitter.complete();
+            });
+            emitter.onError(e -> close("error"));
+            // emitter 在异步处理开始前就已结束时不会回调，此时已由 pipe 的结束处理关闭
+            emitter.onCompletion(() -> close("completed"));
+        }
 
-                if (localAnswer.isPresent()) {
-                    emitter.send(SseEmitter.event().data(localAnswer.get()));
-                    chatService.saveHistory(finalConversationId, question, localAnswer.get(), principal.getName());
-                    emitter.complete();
+        void pipe(Flux<StreamEvent> events) {
+            Disposable disposable = events.subscribe(
+                    this::send,
+                    e -> {
+                        if (close("error")) {
+                            emitter.completeWithError(e);
+                        }
+                    },
+                    () -> {
+                        if (close("completed")) {
+                            emitter.complete();
+                        }
+                    });
+            synchronized (emitter) {
+                if (closed) {
+                    disposable.dispose();
                 } else {
-                    StringBuilder fullResponse = new StringBuilder();
-                    QuestionRequest request = new QuestionRequest();
-                    request.setQuestion(question);
-                    request.setConversationId(finalConversationId);
-
-                    chatService.getAnswerStream(request, principal.getName(), modelType) // 传递模型类型
-                            .subscribe(
-                                    rawContent -> {
-                                        String[] chunks = rawContent.split("data: ");
-                                        for (String chunk : chunks) {
-                                            if (chunk.trim().isEmpty() || "[DONE]".equalsIgnoreCase(chunk.trim())) {
-                                                continue;
-                                            }
-                                            try {
-                                                JsonNode rootNode = objectMapper.readTree(chunk);
-                                                JsonNode deltaNode = rootNode.path("choices").path(0).path("delta");
-                                                if (deltaNode.has("content")) {
-                                                    String textContent = deltaNode.get("content").asText();
-                                                    if (textContent != null && !textContent.isEmpty() && !"null".equalsIgnoreCase(textContent)) {
-                                                        emitter.send(SseEmitter.event().data(textContent));
-                                                        fullResponse.append(textContent);
-                                                    }
-                                                }
-                                            } catch (IOException e) {
-                                                // 忽略单个块的解析错误
-                                            }
-                                        }
-                                    },
-                                    emitter::completeWithError,
-                                    () -> {
-                                        emitter.complete();
-                                        chatService.saveHistory(finalConversationId, question, fullResponse.toString(), principal.getName());
-                                    }
-                            );
+                    subscription = disposable;
+                }
+            }
+        }
+
+        private void send(StreamEvent event) {
+            synchronized (emitter) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    emitter.send(toSseEvent(event));
+                } catch (IOException e) {
+                    // 客户端已断开，容器随后会回调 onError/onCompletion，这里不再调用 completeWithError
+                    close("error");
+                }
+            }
+        }
+
+        /**
+         * @return 是否由本次调用关闭
+         */
+        private boolean close(String outcome) {
+            Disposable disposable;
+            synchronized (emitter) {
+                if (closed) {
+                    return false;
                 }
-            } catch (Exception e) {
-                emitter.completeWithError(e);
+                closed = true;
+                disposable = subscription;
+            }
+            chatMetrics.sseClosed(outcome);
+            if (disposable != null) {
+                disposable.dispose();
             }
-        });
+            return true;
+        }
+    }
+
+    private static SseEmitter.SseEventBuilder toSseEvent(StreamEvent event) {
+        SseEmitter.SseEventBuilder builder = SseEmitter.event();
+        if (event.getId() != null) {
+            builder.id(event.getId());
+        }
+        if (event.getName() != null) {
+            builder.name(event.getName());
+        }
+        return builder.data(event.getData());
+    }
+
+    private static ServerSentEvent<String> toServerSentEvent(StreamEvent event) {
+        return ServerSentEvent.builder(event.getData()).id(event.getId()).event(event.getName()).build();
+    }
+
+    /**
+     * 客户端带着无法续传的断点重连时，先推送 reset 事件，提示丢弃已显示的部分答案
+     */
+    private static Flux<StreamEvent> withResetMarker(Flux<StreamEvent> events, String resumeFrom) {
+        if (resumeFrom == null || resumeFrom.isEmpty()) {
+            return events;
+        }
+        return Flux.concat(Mono.just(StreamEvent.reset()), events);
+    }
+
+    /**
+     * 响应式版本的流式问答：直接返回 Flux，由 Spring MVC 按客户端的写出进度逐个拉取数据，
+     * 不为每个请求占用一个线程，单节点可同时保持的连接数只受内存限制。断线续传的方式与 /stream-ask 相同。
+     */
+    @GetMapping(value = "/stream-ask/reactive", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> reactiveStreamAskQuestion(@RequestParam String question,
+                                                                   @RequestParam(required = false) String conversationId,
+                                                                   @RequestParam(required = false) String model,
+                                                                   @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) String lastEventIdHeader,
+                                                                   @RequestParam(required = false) String lastEventId,
+                                                                   Principal principal) {
+        Long userId = userIdentityService.userIdOf(principal).orElse(null);
+        if (userId == null) {
+            return Flux.error(new IllegalStateException("User not authenticated"));
+        }
+        String resumeFrom = lastEventIdHeader != null ? lastEventIdHeader : lastEventId;
+        Optional<Flux<StreamEvent>> resumed = resumableStreamService.resume(resumeFrom, userId);
+        Flux<StreamEvent> events = resumed.isPresent()
+                ? resumed.get()
+                : openAnswer(question, conversationId, model, resumeFrom, userId);
+        return events
+                .map(ChatController::toServerSentEvent)
+                .doOnSubscribe(s -> chatMetrics.sseOpened())
+                .doFinally(signal -> chatMetrics.sseClosed(signal == SignalType.ON_COMPLETE ? "completed"
+                        : signal == SignalType.ON_ERROR ? "error" : "cancelled"));
+    }
+
+    /**
+     * 配额已用完：返回 429，并通过 Retry-After 告诉客户端下一次配额何时可用
+     */
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<String> handleQuotaExceeded(QuotaExceededException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage());
+    }
 
-        return emitter;
+    /**
+     * 并发已满：快速返回 503，并通过 Retry-After 告诉客户端多久后重试
+     */
+    @ExceptionHandler(ChatOverloadedException.class)
+    public ResponseEntity<String> handleOverloaded(ChatOverloadedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage());
     }
 }
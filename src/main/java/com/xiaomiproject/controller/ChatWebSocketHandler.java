@@ -0,0 +1,284 @@
+package com.xiaomiproject.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiaomiproject.dto.ChatFrame;
+import com.xiaomiproject.service.ChatAdmissionService;
+import com.xiaomiproject.service.ChatOverloadedException;
+import com.xiaomiproject.service.ChatService;
+import com.xiaomiproject.service.UserIdentityService;
+import com.xiaomiproject.service.metrics.ChatMetrics;
+import org.reactivestreams.Subscription;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.SignalType;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * WebSocket 问答通道 (/ws/chat)：一个登录用户保持一条连接，在上面同时进行多个问答。
+ * <p>
+ * 帧格式见 {@link ChatFrame}。每个 ask 帧开启一个流，走与 /api/chat/stream-ask/reactive 相同的
+ * {@link ChatService#streamAnswer} 流程 (本地来源、大模型、历史记录、上下文)，并像 HTTP 接口一样占用一个准入许可。
+ * 流控基于额度：服务端只在客户端给出的额度内推送 token，额度直接转换为对答案流的请求量，
+ * 客户端处理不过来时背压会一直传到大模型的上游连接。cancel 帧或连接断开会取消对应的流。
+ * <p>
+ * 登录只在握手时校验一次，之后每个问题不再经过认证和建立连接的开销。
+ */
+@Component
+public class ChatWebSocketHandler extends TextWebSocketHandler {
+
+    private static final String STATE_ATTRIBUTE = ChatWebSocketHandler.class.getName() + ".state";
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private ChatAdmissionService admissionService;
+
+    @Autowired
+    private UserIdentityService userIdentityService;
+
+    @Autowired
+    private ChatMetrics chatMetrics;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${llm.default.model}")
+    private String defaultModel;
+
+    // 一条连接上同时进行的问答数上限
+    @Value("${chat.ws.max-streams-per-connection:8}")
+    private int maxStreamsPerConnection;
+
+    // ask 帧未带 credits 时的初始额度
+    @Value("${chat.ws.initial-credits:64}")
+    private long initialCredits;
+
+    // 发送缓冲：单条消息发送的最长时间和未发出数据的上限，客户端长期不读时关闭连接
+    @Value("${chat.ws.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${chat.ws.send-buffer-bytes:524288}")
+    private int sendBufferBytes;
+
+    /**
+     * 一条连接的状态
+     */
+    private final class Connection {
+        // WebSocketSession 不支持并发发送，多个流的数据经由该装饰器串行写出
+        final WebSocketSession session;
+        final Long userId;
+        final Map<String, StreamSubscriber> streams = new ConcurrentHashMap<>();
+
+        Connection(WebSocketSession session, Long userId) {
+            this.session = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMs, sendBufferBytes);
+            this.userId = userId;
+        }
+
+        void send(ChatFrame frame) throws IOException {
+            session.sendMessage(new TextMessage(objectMapper.writeValueAsString(frame)));
+        }
+
+        /**
+         * 发送失败 (连接已断开或发送缓冲已满) 时只记录，连接关闭后会取消所有流
+         */
+        void trySend(ChatFrame frame) {
+            try {
+                send(frame);
+            } catch (IOException | RuntimeException e) {
+                closeQuietly(session, CloseStatus.SESSION_NOT_RELIABLE);
+            }
+        }
+    }
+
+    /**
+     * 一个问答流：按客户端给出的额度向答案流请求数据
+     */
+    private final class StreamSubscriber extends BaseSubscriber<String> {
+        final Connection connection;
+        final String id;
+        final ChatAdmissionService.Permit permit;
+        final long credits;
+
+        StreamSubscriber(Connection connection, String id, ChatAdmissionService.Permit permit, long credits) {
+            this.connection = connection;
+            this.id = id;
+            this.permit = permit;
+            this.credits = credits;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            request(credits);
+        }
+
+        @Override
+        protected void hookOnNext(String token) {
+            ChatFrame frame = ChatFrame.of("token", id);
+            frame.setData(token);
+            try {
+                connection.send(frame);
+            } catch (IOException | RuntimeException e) {
+                cancel();
+                closeQuietly(connection.session, CloseStatus.SESSION_NOT_RELIABLE);
+            }
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            connection.trySend(ChatFrame.of("end", id));
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            ChatFrame frame = ChatFrame.of("error", id);
+            frame.setMessage(throwable.getMessage() != null ? throwable.getMessage() : "回答失败");
+            if (throwable instanceof ChatOverloadedException) {
+                // 配额用完或排队超时
+                frame.setRetryAfter(((ChatOverloadedException) throwable).getRetryAfterSeconds());
+            }
+            connection.trySend(frame);
+        }
+
+        @Override
+        protected void hookFinally(SignalType type) {
+            permit.release();
+            connection.streams.remove(id, this);
+            chatMetrics.wsStreamClosed(type == SignalType.ON_COMPLETE ? "completed"
+                    : type == SignalType.ON_ERROR ? "error" : "cancelled");
+        }
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        Long userId = userIdentityService.userIdOf(session.getPrincipal()).orElse(null);
+        if (userId == null) {
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("User not authenticated"));
+            return;
+        }
+        session.getAttributes().put(STATE_ATTRIBUTE, new Connection(session, userId));
+        chatMetrics.wsOpened();
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        Connection connection = (Connection) session.getAttributes().get(STATE_ATTRIBUTE);
+        if (connection == null) {
+            return;
+        }
+        ChatFrame frame;
+        try {
+            frame = objectMapper.readValue(message.getPayload(), ChatFrame.class);
+        } catch (IOException e) {
+            connection.trySend(error(null, "无法解析的消息"));
+            return;
+        }
+        String type = frame.getType() == null ? "" : frame.getType();
+        switch (type) {
+            case "ask":
+                ask(connection, frame);
+                break;
+            case "credit":
+                StreamSubscriber stream = frame.getId() == null ? null : connection.streams.get(frame.getId());
+                if (stream != null && frame.getCredits() != null && frame.getCredits() > 0) {
+                    stream.request(frame.getCredits());
+                }
+                break;
+            case "cancel":
+                StreamSubscriber cancelled = frame.getId() == null ? null : connection.streams.get(frame.getId());
+                if (cancelled != null) {
+                    cancelled.dispose();
+                }
+                break;
+            case "ping":
+                connection.trySend(ChatFrame.of("pong", frame.getId()));
+                break;
+            default:
+                connection.trySend(error(frame.getId(), "未知的消息类型: " + frame.getType()));
+                break;
+        }
+    }
+
+    private void ask(Connection connection, ChatFrame frame) {
+        String id = frame.getId();
+        if (id == null || id.isEmpty()) {
+            connection.trySend(error(null, "缺少流ID"));
+            return;
+        }
+        if (frame.getQuestion() == null || frame.getQuestion().trim().isEmpty()) {
+            connection.trySend(error(id, "问题不能为空"));
+            return;
+        }
+        if (connection.streams.containsKey(id)) {
+            connection.trySend(error(id, "流ID已在使用"));
+            return;
+        }
+        if (connection.streams.size() >= maxStreamsPerConnection) {
+            connection.trySend(error(id, "同时进行的问答过多"));
+            return;
+        }
+        String modelType = (frame.getModel() == null || frame.getModel().trim().isEmpty()) ? defaultModel : frame.getModel();
+        ChatAdmissionService.Permit permit;
+        try {
+            permit = admissionService.acquire();
+        } catch (ChatOverloadedException e) {
+            ChatFrame overloaded = error(id, e.getMessage());
+            overloaded.setRetryAfter(e.getRetryAfterSeconds());
+            connection.trySend(overloaded);
+            return;
+        }
+        String conversationId = (frame.getConversationId() == null || frame.getConversationId().trim().isEmpty())
+                ? UUID.randomUUID().toString()
+                : frame.getConversationId();
+        long credits = frame.getCredits() != null && frame.getCredits() > 0 ? frame.getCredits() : initialCredits;
+
+        StreamSubscriber subscriber = new StreamSubscriber(connection, id, permit, credits);
+        connection.streams.put(id, subscriber);
+        ChatFrame start = ChatFrame.of("start", id);
+        start.setConversationId(conversationId);
+        connection.trySend(start);
+        chatService.streamAnswer(frame.getQuestion(), conversationId, connection.userId, modelType).subscribe(subscriber);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        Connection connection = (Connection) session.getAttributes().remove(STATE_ATTRIBUTE);
+        if (connection == null) {
+            return;
+        }
+        for (StreamSubscriber stream : connection.streams.values()) {
+            stream.dispose();
+        }
+        chatMetrics.wsClosed();
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        closeQuietly(session, CloseStatus.SERVER_ERROR);
+    }
+
+    private static ChatFrame error(String id, String message) {
+        ChatFrame frame = ChatFrame.of("error", id);
+        frame.setMessage(message);
+        return frame;
+    }
+
+    private static void closeQuietly(WebSocketSession session, CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (IOException ignored) {
+            // 连接已关闭
+        }
+    }
+}
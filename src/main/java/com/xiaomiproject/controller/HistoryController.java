@@ -1,95 +1,142 @@
 package com.xiaomiproject.controller;
 
 
-import com.xiaomiproject.entity.ConversationHistory;
-import com.xiaomiproject.entity.User;
-import com.xiaomiproject.repository.ConversationHistoryRepository;
-import com.xiaomiproject.repository.UserRepository;
+import com.xiaomiproject.dto.ConversationPage;
+import com.xiaomiproject.entity.ConversationSummary;
+import com.xiaomiproject.repository.ConversationSummaryRepository;
+import com.xiaomiproject.repository.HistoryJdbcRepository;
+import com.xiaomiproject.service.UserIdentityService;
+import com.xiaomiproject.service.context.ConversationContextService;
+import com.xiaomiproject.service.history.ConversationDetailService;
+import com.xiaomiproject.service.history.ConversationSummaryService;
+import com.xiaomiproject.service.history.HistoryWriter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.DeleteMapping;
-import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.security.Principal;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/history")
 public class HistoryController {
 
     @Autowired
-    private ConversationHistoryRepository historyRepository;
+    private HistoryJdbcRepository historyJdbcRepository;
+
+    @Autowired
+    private ConversationSummaryRepository conversationSummaryRepository;
+
+    @Autowired
+    private UserIdentityService userIdentityService;
+
+    @Autowired
+    private HistoryWriter historyWriter;
+
+    @Autowired
+    private ConversationSummaryService conversationSummaryService;
+
+    @Autowired
+    private ConversationDetailService conversationDetailService;
 
     @Autowired
-    private UserRepository userRepository;
+    private ConversationContextService conversationContextService;
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /**
+     * 对话列表 (每个对话一条，按最后活跃时间倒序)，只查询对话摘要表，不读取问答正文。
+     * 支持游标分页：响应头 X-Next-Cursor 为下一页游标，作为 cursor 参数传回即可继续翻页；没有该响应头表示已到最后一页。
+     */
     @GetMapping
-    public ResponseEntity<List<ConversationHistory>> getUserHistory(Principal principal) {
+    public ResponseEntity<List<ConversationSummary>> getUserHistory(@RequestParam(required = false) String cursor,
+                                                                    @RequestParam(required = false) Integer limit,
+                                                                    Principal principal) {
         if (principal == null) {
             return ResponseEntity.status(401).build(); // 未授权
         }
-        // 根据用户名查找用户
-        Optional<User> userOpt = userRepository.findByUsername(principal.getName());
-        if (!userOpt.isPresent()) {
+        // 用户ID取自登录信息，不查询用户表
+        Optional<Long> userIdOpt = userIdentityService.userIdOf(principal);
+        if (!userIdOpt.isPresent()) {
             // 理论上不会发生，因为用户已登录
             return ResponseEntity.status(404).body(Collections.emptyList());
         }
-        // 获取用户ID并查询历史记录
-        Long userId = userOpt.get().getId();
-        List<ConversationHistory> histories = historyRepository.findByUserIdOrderByTimestampDesc(userId);
-        // --- 使用Java 8 Stream API进行聚合 ---
-        // 1. 按 conversationId 分组
-        // 2. 对于每组，取时间戳最早的那条记录（即该对话的第一个问题）
-        // 3. 收集成一个新的List
-        List<ConversationHistory> distinctConversations = histories.stream()
-                .collect(Collectors.groupingBy(
-                        ConversationHistory::getConversationId,
-                        // 找到每组中时间戳最早的那个
-                        Collectors.minBy(Comparator.comparing(ConversationHistory::getTimestamp))
-                ))
-                .values().stream()
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                // 按时间倒序排列聚合后的对话列表
-                .sorted(Comparator.comparing(ConversationHistory::getTimestamp).reversed())
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(distinctConversations);
+        ConversationPage page;
+        try {
+            page = conversationSummaryService.listPage(userIdOpt.get(), cursor, limit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
     }
 
+    /**
+     * 对话详情：先做归属校验 (按主键查询对话摘要)，再把各轮问答从数据库游标直接流式写出。
+     * 可选的 cursor/limit 参数用于按轮次分页，详见 {@link ConversationDetailService#streamTurns}
+     */
     @GetMapping("/{conversationId}")
-    public ResponseEntity<List<ConversationHistory>> getConversationDetails(@PathVariable String conversationId, Principal principal) {
-        // (可选) 可以在这里加一层权限校验，确保只有该用户能查看自己的对话
-        List<ConversationHistory> conversation = historyRepository.findByConversationIdOrderByTimestampAsc(conversationId);
-        return ResponseEntity.ok(conversation);
+    public ResponseEntity<StreamingResponseBody> getConversationDetails(@PathVariable String conversationId,
+                                                                        @RequestParam(required = false) String cursor,
+                                                                        @RequestParam(required = false) Integer limit,
+                                                                        Principal principal) {
+        Long userId = userIdentityService.userIdOf(principal).orElse(null);
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
+        }
+        // 不属于当前用户的对话按不存在处理，不暴露其是否存在。
+        // 摘要由写入线程异步生成，刚回答完的对话先按尚未写库的记录确认归属，再等这些记录写完
+        if (!conversationDetailService.isOwner(conversationId, userId)
+                && !isPendingOwner(conversationId, userId)) {
+            return ResponseEntity.status(404).build();
+        }
+        historyWriter.awaitWritten(conversationId);
+        StreamingResponseBody body;
+        try {
+            body = conversationDetailService.streamTurns(conversationId, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 
     @DeleteMapping("/{conversationId}")
     public ResponseEntity<?> deleteConversation(@PathVariable String conversationId, Principal principal) {
-        if (principal == null) {
+        Long userId = userIdentityService.userIdOf(principal).orElse(null);
+        if (userId == null) {
             return ResponseEntity.status(401).build();
         }
-        // 1. 权限校验 (重要)：确保只有对话的所有者才能删除它
-        // 我们先找到这条对话的第一条记录，然后检查其userId是否与当前登录用户匹配。
-        List<ConversationHistory> conversation = historyRepository.findByConversationIdOrderByTimestampAsc(conversationId);
-        if (conversation.isEmpty()) {
-            return ResponseEntity.ok("对话已不存在或已被删除。"); // 或者返回 404
-        }
-        Long ownerUserId = conversation.get(0).getUserId();
-        Long currentUserId = userRepository.findByUsername(principal.getName()).get().getId();
-        if (!ownerUserId.equals(currentUserId)) {
+        // 1. 权限校验 (重要)：确保只有对话的所有者才能删除它 (一次主键查询)；
+        // 刚回答完的对话摘要可能还没写库，此时按尚未写库的记录确认归属
+        Optional<Long> pendingOwner = historyWriter.pendingOwner(conversationId);
+        if (!conversationDetailService.isOwner(conversationId, userId)
+                && !pendingOwner.filter(userId::equals).isPresent()) {
+            if (!pendingOwner.isPresent() && !conversationSummaryRepository.existsById(conversationId)) {
+                return ResponseEntity.ok("对话已不存在或已被删除。"); // 或者返回 404
+            }
             // 如果用户ID不匹配，禁止删除
             return ResponseEntity.status(403).body("您没有权限删除此对话。");
         }
-        // 2. 执行删除操作
-        historyRepository.deleteByConversationId(conversationId);
+        // 2. 执行删除操作：丢弃尚未写库的记录 (并等待正在写入的批次写完)，再用集合删除语句删除历史和摘要
+        historyWriter.discardPending(conversationId);
+        historyJdbcRepository.deleteConversation(conversationId);
+        conversationContextService.invalidate(conversationId);
         return ResponseEntity.ok("对话删除成功。");
     }
+
+    private boolean isPendingOwner(String conversationId, Long userId) {
+        return historyWriter.pendingOwner(conversationId).filter(userId::equals).isPresent();
+    }
 }
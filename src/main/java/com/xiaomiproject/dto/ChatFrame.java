@@ -0,0 +1,39 @@
+package com.xiaomiproject.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * WebSocket 问答通道 (/ws/chat) 的消息帧，每个 WebSocket 文本消息是一个 JSON 帧。
+ * <p>
+ * 客户端发送：
+ * <ul>
+ *     <li>ask: 在新的流上提问 (id 由客户端指定，同一连接内不能重复)，可带 conversationId、model 和初始额度 credits</li>
+ *     <li>credit: 为流 id 增加 credits 个额度，服务端每推送一个 token 消耗一个</li>
+ *     <li>cancel: 取消流 id，服务端停止生成</li>
+ *     <li>ping: 心跳</li>
+ * </ul>
+ * 服务端发送：start (带实际使用的 conversationId)、token (data 为答案片段)、end、error (message，
+ * 过载时带 retryAfter 秒数)、pong。
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChatFrame {
+    private String type;
+    // 流ID，一条连接上的多个问答以此区分
+    private String id;
+    private String question;
+    private String conversationId;
+    private String model;
+    private Long credits;
+    private String data;
+    private String message;
+    private Long retryAfter;
+
+    public static ChatFrame of(String type, String id) {
+        ChatFrame frame = new ChatFrame();
+        frame.setType(type);
+        frame.setId(id);
+        return frame;
+    }
+}
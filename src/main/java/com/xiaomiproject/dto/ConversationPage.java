@@ -0,0 +1,16 @@
+package com.xiaomiproject.dto;
+
+import com.xiaomiproject.entity.ConversationSummary;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationPage {
+    private List<ConversationSummary> items;
+    private String nextCursor; // 没有下一页时为 null
+}
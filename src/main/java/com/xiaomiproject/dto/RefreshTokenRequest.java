@@ -0,0 +1,8 @@
+package com.xiaomiproject.dto;
+
+import lombok.Data;
+
+@Data
+public class RefreshTokenRequest {
+    private String refreshToken;
+}
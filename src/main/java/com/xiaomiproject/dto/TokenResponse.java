@@ -0,0 +1,19 @@
+package com.xiaomiproject.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 令牌模式下登录和刷新的返回值
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenResponse {
+    private String accessToken;
+    private String refreshToken;
+    private String tokenType;
+    // 访问令牌的有效期 (秒)
+    private long expiresIn;
+}
@@ -0,0 +1,37 @@
+package com.xiaomiproject.entity;
+
+import lombok.Data;
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 归档索引：记录一段已归档的对话历史在归档文件中的位置。
+ * 归档文件按月份划分 (如 history-2024-05.ndjson.gz)，每段是一个独立的 gzip 成员，
+ * 按 memberOffset/memberLength 直接定位读取，不需要解压整个文件。
+ * 同一对话归档后又有新的问答，再次归档时会追加一段，因此一个对话可能对应多行。
+ */
+@Entity
+@Table(name = "conversation_archive", indexes = {
+        @Index(name = "idx_archive_conversation", columnList = "conversationId, firstTime")
+})
+@Data
+public class ConversationArchive {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(nullable = false)
+    private String conversationId;
+    @Column(nullable = false)
+    private Long userId;
+    // 归档文件名 (相对于归档目录)
+    @Column(nullable = false, length = 64)
+    private String segment;
+    private long memberOffset;
+    private long memberLength;
+    // 本段第一轮和最后一轮的时间，最后一轮的 id 用于分页游标
+    private LocalDateTime firstTime;
+    private LocalDateTime lastTime;
+    private long lastHistoryId;
+    private int turnCount;
+    private LocalDateTime archivedAt;
+}
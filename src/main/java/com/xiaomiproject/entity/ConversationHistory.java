@@ -5,6 +5,10 @@ import javax.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_history_user_time", columnList = "userId, timestamp"),
+        @Index(name = "idx_history_conversation_time", columnList = "conversationId, timestamp")
+})
 @Data
 public class ConversationHistory {
     @Id
@@ -0,0 +1,32 @@
+package com.xiaomiproject.entity;
+
+import lombok.Data;
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 对话摘要：每个对话一行，随对话历史写入时同步维护。
+ * 历史列表只查询本表，不再读取问答正文。字段名与原先列表接口返回的 ConversationHistory 保持一致
+ * (conversationId、question、timestamp)，前端无需修改。
+ */
+@Entity
+@Table(name = "conversation_summary", indexes = {
+        // 按用户列出对话，按最后活跃时间倒序翻页
+        @Index(name = "idx_summary_user_activity", columnList = "userId, lastActivity, conversationId"),
+        // 归档任务按最后活跃时间查找冷对话
+        @Index(name = "idx_summary_activity", columnList = "lastActivity")
+})
+@Data
+public class ConversationSummary {
+    @Id
+    private String conversationId;
+    @Column(nullable = false)
+    private Long userId;
+    // 对话的第一个问题 (截断到500字)，作为列表标题
+    @Column(length = 500)
+    private String question;
+    // 对话开始时间
+    private LocalDateTime timestamp;
+    private LocalDateTime lastActivity;
+    private int turnCount;
+}
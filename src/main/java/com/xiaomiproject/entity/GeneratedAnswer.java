@@ -0,0 +1,38 @@
+package com.xiaomiproject.entity;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 大模型生成的答案 (持久化的问答缓存)：同一归一化问题、同一模型只保留一条，
+ * 到期或超出条数上限后由 GeneratedAnswerStore 定期清理。读写都通过 GeneratedAnswerJdbcRepository。
+ */
+@Entity
+@Table(name = "generated_answers", indexes = {
+        @Index(name = "uk_generated_question_model", columnList = "questionHash, modelType", unique = true),
+        // 清理过期条目
+        @Index(name = "idx_generated_expires", columnList = "expiresAt"),
+        // 超出条数上限时淘汰最久未命中的条目
+        @Index(name = "idx_generated_last_hit", columnList = "lastHitAt")
+})
+@Data
+public class GeneratedAnswer {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    // 归一化问题的 SHA-256 (TextNormalizer.questionHash)
+    @Column(length = 64, nullable = false)
+    private String questionHash;
+    @Column(length = 32, nullable = false)
+    private String modelType;
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String question;
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String answer;
+    private LocalDateTime createdAt;
+    private LocalDateTime expiresAt;
+    private LocalDateTime lastHitAt;
+    private long hitCount;
+}
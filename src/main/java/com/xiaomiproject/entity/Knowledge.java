@@ -1,10 +1,16 @@
 package com.xiaomiproject.entity;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import javax.persistence.*;
 
 @Entity
-@Table(name = "knowledges")
+@Table(name = "knowledges", indexes = {
+        // 归一化问题的哈希，同一问题 (忽略空格、标点、全半角和大小写) 只保留一条，批量导入按它去重
+        @Index(name = "uk_knowledge_question_hash", columnList = "questionHash", unique = true)
+})
+@EntityListeners(KnowledgeEntityListener.class)
 @Data
 public class Knowledge {
     @Id
@@ -14,4 +20,13 @@ public class Knowledge {
     private String question;
     @Column(columnDefinition = "TEXT", nullable = false)
     private String answer;
+    // 由 question 计算 (TextNormalizer.questionHash)，保存前自动填充
+    @Column(length = 64)
+    private String questionHash;
+
+    // 加载时的问题文本，用于在问题被修改后让旧问题的缓存失效 (不持久化)
+    @Transient
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private String originalQuestion;
 }
@@ -0,0 +1,50 @@
+package com.xiaomiproject.entity;
+
+import com.xiaomiproject.event.KnowledgeChangedEvent;
+import com.xiaomiproject.service.knowledge.TextNormalizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+
+/**
+ * 知识库实体监听器：把JPA生命周期回调转换为 {@link KnowledgeChangedEvent}。
+ * Spring Boot 为 Hibernate 配置了 SpringBeanContainer，因此这里可以直接注入Spring Bean。
+ */
+public class KnowledgeEntityListener {
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @PostLoad
+    public void onLoad(Knowledge knowledge) {
+        knowledge.setOriginalQuestion(knowledge.getQuestion());
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void beforeSave(Knowledge knowledge) {
+        knowledge.setQuestionHash(TextNormalizer.questionHash(knowledge.getQuestion()));
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSave(Knowledge knowledge) {
+        String previous = knowledge.getOriginalQuestion() != null ? knowledge.getOriginalQuestion() : knowledge.getQuestion();
+        eventPublisher.publishEvent(new KnowledgeChangedEvent(KnowledgeChangedEvent.Type.SAVED,
+                knowledge.getId(), knowledge.getQuestion(), knowledge.getAnswer(), previous));
+        knowledge.setOriginalQuestion(knowledge.getQuestion());
+    }
+
+    @PostRemove
+    public void onRemove(Knowledge knowledge) {
+        String previous = knowledge.getOriginalQuestion() != null ? knowledge.getOriginalQuestion() : knowledge.getQuestion();
+        eventPublisher.publishEvent(new KnowledgeChangedEvent(KnowledgeChangedEvent.Type.DELETED,
+                knowledge.getId(), knowledge.getQuestion(), knowledge.getAnswer(), previous));
+    }
+}
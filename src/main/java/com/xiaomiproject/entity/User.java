@@ -10,6 +10,7 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Table(name = "users") // 建议显式指定表名
+@EntityListeners(UserEntityListener.class)
 @Data
 public class User {
     @Id
@@ -0,0 +1,23 @@
+package com.xiaomiproject.entity;
+
+import com.xiaomiproject.event.UserChangedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * 用户实体监听器：用户被修改或删除时发布 {@link UserChangedEvent}
+ */
+public class UserEntityListener {
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @PostUpdate
+    @PostRemove
+    public void onChange(User user) {
+        eventPublisher.publishEvent(new UserChangedEvent(user.getId(), user.getUsername()));
+    }
+}
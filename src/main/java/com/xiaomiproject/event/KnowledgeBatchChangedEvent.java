@@ -0,0 +1,29 @@
+package com.xiaomiproject.event;
+
+import com.xiaomiproject.entity.Knowledge;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 批量导入写入一批知识库条目后发布 (每批一次，已提交)。
+ * 索引和缓存按批增量刷新，不再为每个条目单独发布 {@link KnowledgeChangedEvent}。
+ */
+@Getter
+public class KnowledgeBatchChangedEvent {
+
+    // 新增的条目 (此前不存在，不会有来源于它们的缓存)
+    private final List<Knowledge> inserted;
+    // 答案或问题文本被更新的条目 (归一化后的问题不变)
+    private final List<Knowledge> updated;
+
+    public KnowledgeBatchChangedEvent(List<Knowledge> inserted, List<Knowledge> updated) {
+        this.inserted = inserted;
+        this.updated = updated;
+    }
+
+    @Override
+    public String toString() {
+        return "KnowledgeBatchChangedEvent(inserted=" + inserted.size() + ", updated=" + updated.size() + ")";
+    }
+}
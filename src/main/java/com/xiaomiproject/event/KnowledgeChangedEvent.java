@@ -0,0 +1,30 @@
+package com.xiaomiproject.event;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 知识库条目发生变化 (新增/修改/删除) 时发布的事件，
+ * 各级缓存和索引监听该事件完成失效或增量刷新。
+ */
+@Getter
+@ToString
+public class KnowledgeChangedEvent {
+
+    public enum Type { SAVED, DELETED }
+
+    private final Type type;
+    private final Long knowledgeId;
+    private final String question;
+    private final String answer;
+    // 修改前的问题文本；问题本身未被修改时与 question 相同
+    private final String previousQuestion;
+
+    public KnowledgeChangedEvent(Type type, Long knowledgeId, String question, String answer, String previousQuestion) {
+        this.type = type;
+        this.knowledgeId = knowledgeId;
+        this.question = question;
+        this.answer = answer;
+        this.previousQuestion = previousQuestion;
+    }
+}
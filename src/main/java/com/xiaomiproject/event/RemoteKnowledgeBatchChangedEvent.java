@@ -0,0 +1,20 @@
+package com.xiaomiproject.event;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * 其他节点批量导入了一批知识库条目，本节点需从数据库加载这些条目更新索引
+ */
+@Getter
+@ToString
+public class RemoteKnowledgeBatchChangedEvent {
+
+    private final List<Long> knowledgeIds;
+
+    public RemoteKnowledgeBatchChangedEvent(List<Long> knowledgeIds) {
+        this.knowledgeIds = knowledgeIds;
+    }
+}
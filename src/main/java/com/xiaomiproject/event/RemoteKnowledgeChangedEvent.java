@@ -0,0 +1,18 @@
+package com.xiaomiproject.event;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 其他节点修改了知识库条目 (通过缓存失效广播得知)，本节点需从数据库重新加载该条目
+ */
+@Getter
+@ToString
+public class RemoteKnowledgeChangedEvent {
+
+    private final Long knowledgeId;
+
+    public RemoteKnowledgeChangedEvent(Long knowledgeId) {
+        this.knowledgeId = knowledgeId;
+    }
+}
@@ -0,0 +1,20 @@
+package com.xiaomiproject.event;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 用户信息被修改或删除时发布的事件，用于让用户身份缓存失效
+ */
+@Getter
+@ToString
+public class UserChangedEvent {
+
+    private final Long userId;
+    private final String username;
+
+    public UserChangedEvent(Long userId, String username) {
+        this.userId = userId;
+        this.username = username;
+    }
+}
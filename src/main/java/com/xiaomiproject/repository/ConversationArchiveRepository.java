@@ -0,0 +1,14 @@
+package com.xiaomiproject.repository;
+
+import com.xiaomiproject.entity.ConversationArchive;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface ConversationArchiveRepository extends JpaRepository<ConversationArchive, Long> {
+
+    /**
+     * 对话的所有归档段，按时间先后排列
+     */
+    List<ConversationArchive> findByConversationIdOrderByFirstTimeAsc(String conversationId);
+}
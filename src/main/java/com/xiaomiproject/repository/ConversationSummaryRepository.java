@@ -0,0 +1,38 @@
+package com.xiaomiproject.repository;
+
+import com.xiaomiproject.entity.ConversationSummary;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface ConversationSummaryRepository extends JpaRepository<ConversationSummary, String> {
+
+    /**
+     * 第一页：按最后活跃时间倒序 (相同时间按对话ID倒序，保证顺序稳定)
+     */
+    @Query("select s from ConversationSummary s where s.userId = :userId "
+            + "order by s.lastActivity desc, s.conversationId desc")
+    List<ConversationSummary> findFirstPage(@Param("userId") Long userId, Pageable pageable);
+
+    /**
+     * 后续页 (keyset 分页)：从上一页最后一条之后继续，直接走 (user_id, last_activity, conversation_id) 索引，
+     * 不像 OFFSET 那样需要扫描并丢弃前面的所有行
+     */
+    @Query("select s from ConversationSummary s where s.userId = :userId "
+            + "and (s.lastActivity < :lastActivity "
+            + "or (s.lastActivity = :lastActivity and s.conversationId < :conversationId)) "
+            + "order by s.lastActivity desc, s.conversationId desc")
+    List<ConversationSummary> findPageAfter(@Param("userId") Long userId,
+                                            @Param("lastActivity") LocalDateTime lastActivity,
+                                            @Param("conversationId") String conversationId,
+                                            Pageable pageable);
+
+    /**
+     * 对话归属校验：按主键查一行，不加载对话内容
+     */
+    boolean existsByConversationIdAndUserId(String conversationId, Long userId);
+}
@@ -0,0 +1,136 @@
+package com.xiaomiproject.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 持久化问答缓存 (generated_answers) 的 JDBC 读写。
+ * 查询只读取ID和答案；命中次数由调用方在内存中累计后批量更新，不为每次命中写一次库。
+ */
+@Repository
+public class GeneratedAnswerJdbcRepository {
+
+    // 同一问题、同一模型重新生成时覆盖旧答案并重新计算有效期
+    private static final String UPSERT_SQL = "INSERT INTO generated_answers "
+            + "(question_hash, model_type, question, answer, created_at, expires_at, last_hit_at, hit_count) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, 0) "
+            + "ON DUPLICATE KEY UPDATE question = VALUES(question), answer = VALUES(answer), "
+            + "created_at = VALUES(created_at), expires_at = VALUES(expires_at)";
+
+    private static final String FIND_SQL = "SELECT id, answer FROM generated_answers "
+            + "WHERE question_hash = ? AND model_type = ? AND expires_at > ?";
+
+    private static final String RECORD_HITS_SQL = "UPDATE generated_answers "
+            + "SET hit_count = hit_count + ?, last_hit_at = GREATEST(last_hit_at, ?) WHERE id = ?";
+
+    /**
+     * 命中的条目
+     */
+    public static final class Hit {
+        public final long id;
+        public final String answer;
+
+        Hit(long id, String answer) {
+            this.id = id;
+            this.answer = answer;
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public Hit find(String questionHash, String modelType, LocalDateTime now) {
+        List<Hit> hits = jdbcTemplate.query(FIND_SQL, (rs, rowNum) -> new Hit(rs.getLong("id"), rs.getString("answer")),
+                questionHash, modelType, Timestamp.valueOf(now));
+        return hits.isEmpty() ? null : hits.get(0);
+    }
+
+    public void upsert(String questionHash, String modelType, String question, String answer,
+                       LocalDateTime now, LocalDateTime expiresAt) {
+        Timestamp created = Timestamp.valueOf(now);
+        jdbcTemplate.update(UPSERT_SQL, questionHash, modelType, question, answer, created,
+                Timestamp.valueOf(expiresAt), created);
+    }
+
+    /**
+     * 批量累加命中次数并推进最后命中时间
+     * @param hits 条目ID -> 这段时间内的命中次数
+     */
+    public void recordHits(Map<Long, Integer> hits, LocalDateTime hitAt) {
+        List<Map.Entry<Long, Integer>> rows = new ArrayList<>(hits.entrySet());
+        Timestamp timestamp = Timestamp.valueOf(hitAt);
+        jdbcTemplate.batchUpdate(RECORD_HITS_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setInt(1, rows.get(i).getValue());
+                ps.setTimestamp(2, timestamp);
+                ps.setLong(3, rows.get(i).getKey());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+    }
+
+    public long count() {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM generated_answers", Long.class);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * 分批删除已过期的条目，每条语句最多删除 chunk 行，避免长时间锁表
+     * @return 删除的行数
+     */
+    public int deleteExpired(LocalDateTime now, int chunk) {
+        return deleteInChunks("DELETE FROM generated_answers WHERE expires_at <= ? LIMIT " + chunk,
+                chunk, Timestamp.valueOf(now));
+    }
+
+    /**
+     * 条目数超过 maxEntries 时，删除最久未命中的条目直到不超过上限 (同一时刻命中的条目会一起删除)
+     * @return 删除的行数
+     */
+    public int trimToSize(long maxEntries, int chunk) {
+        Timestamp cutoff;
+        try {
+            cutoff = jdbcTemplate.queryForObject("SELECT last_hit_at FROM generated_answers "
+                    + "ORDER BY last_hit_at DESC LIMIT 1 OFFSET ?", Timestamp.class, maxEntries);
+        } catch (EmptyResultDataAccessException e) {
+            return 0;
+        }
+        return deleteInChunks("DELETE FROM generated_answers WHERE last_hit_at <= ? LIMIT " + chunk, chunk, cutoff);
+    }
+
+    /**
+     * 清除某个模型的全部条目，modelType 为 null 时清空整个表
+     */
+    public int purge(String modelType, int chunk) {
+        if (modelType == null) {
+            return deleteInChunks("DELETE FROM generated_answers LIMIT " + chunk, chunk);
+        }
+        return deleteInChunks("DELETE FROM generated_answers WHERE model_type = ? LIMIT " + chunk, chunk, modelType);
+    }
+
+    private int deleteInChunks(String sql, int chunk, Object... args) {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(sql, args);
+            total += deleted;
+        } while (deleted >= chunk);
+        return total;
+    }
+}
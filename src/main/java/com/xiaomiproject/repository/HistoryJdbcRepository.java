@@ -0,0 +1,342 @@
+package com.xiaomiproject.repository;
+
+import com.xiaomiproject.entity.ConversationArchive;
+import com.xiaomiproject.entity.ConversationHistory;
+import com.xiaomiproject.entity.ConversationSummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 对话历史的 JDBC 批量写入。
+ * 实体主键为 IDENTITY 自增，Hibernate 无法对其批量插入，这里绕过 JPA 直接使用 JDBC batch；
+ * 配合连接参数 rewriteBatchedStatements=true，MySQL 驱动会把一批 INSERT 合并为一条多值语句。
+ */
+@Repository
+public class HistoryJdbcRepository {
+
+    // 与 ConversationSummary.question 的列长度一致
+    private static final int SUMMARY_QUESTION_LENGTH = 500;
+
+    private static final String INSERT_SQL = "INSERT INTO conversation_history "
+            + "(user_id, conversation_id, question, answer, timestamp) VALUES (?, ?, ?, ?, ?)";
+
+    // 对话摘要：不存在则插入，已存在则累加轮数并推进最后活跃时间
+    private static final String UPSERT_SUMMARY_SQL = "INSERT INTO conversation_summary "
+            + "(conversation_id, user_id, question, timestamp, last_activity, turn_count) VALUES (?, ?, ?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE last_activity = GREATEST(last_activity, VALUES(last_activity)), "
+            + "turn_count = turn_count + VALUES(turn_count)";
+
+    // 从已有历史数据生成摘要 (只在摘要表为空时执行一次)；同一时刻有多条首问时 INSERT IGNORE 只保留一条
+    private static final String BACKFILL_SUMMARY_SQL = "INSERT IGNORE INTO conversation_summary "
+            + "(conversation_id, user_id, question, timestamp, last_activity, turn_count) "
+            + "SELECT h.conversation_id, h.user_id, LEFT(h.question, " + SUMMARY_QUESTION_LENGTH + "), "
+            + "g.first_time, g.last_time, g.turns "
+            + "FROM (SELECT conversation_id, MIN(timestamp) AS first_time, MAX(timestamp) AS last_time, COUNT(*) AS turns "
+            + "FROM conversation_history GROUP BY conversation_id) g "
+            + "JOIN conversation_history h ON h.conversation_id = g.conversation_id AND h.timestamp = g.first_time";
+
+    // 按 (timestamp, id) 顺序读取对话的各轮问答，走 (conversation_id, timestamp) 索引
+    private static final String SELECT_TURNS_SQL = "SELECT id, user_id, conversation_id, question, answer, timestamp "
+            + "FROM conversation_history WHERE conversation_id = ? ";
+    private static final String TURNS_AFTER_SQL = "AND (timestamp > ? OR (timestamp = ? AND id > ?)) ";
+    private static final String TURNS_ORDER_SQL = "ORDER BY timestamp, id";
+
+    // 最后活跃时间早于截止时间、且热表中还有问答的对话 (已归档后又续聊的对话也会再次入选)
+    private static final String ARCHIVE_CANDIDATES_SQL = "SELECT s.conversation_id, s.user_id, s.last_activity "
+            + "FROM conversation_summary s WHERE s.last_activity < ? "
+            + "AND EXISTS (SELECT 1 FROM conversation_history h WHERE h.conversation_id = s.conversation_id) "
+            + "ORDER BY s.last_activity LIMIT ?";
+
+    // 对话在归档过程中被删除时摘要已不存在，不再写入索引
+    private static final String INSERT_ARCHIVE_SQL = "INSERT INTO conversation_archive "
+            + "(conversation_id, user_id, segment, member_offset, member_length, first_time, last_time, "
+            + "last_history_id, turn_count, archived_at) "
+            + "SELECT ?, ?, ?, ?, ?, ?, ?, ?, ?, ? FROM conversation_summary WHERE conversation_id = ?";
+
+    // 只删除已写入归档的行：归档期间新写入的问答留在热表
+    private static final String DELETE_ARCHIVED_SQL = "DELETE FROM conversation_history WHERE conversation_id = ? "
+            + "AND (timestamp < ? OR (timestamp = ? AND id <= ?))";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 逐行读取长对话使用的 JdbcTemplate：MySQL 驱动在 fetchSize = Integer.MIN_VALUE 时按行流式返回结果，
+    // 不会把整个结果集读入内存
+    private JdbcTemplate streamingJdbcTemplate;
+
+    @Value("${chat.history.stream-fetch-size:" + Integer.MIN_VALUE + "}")
+    private int streamFetchSize;
+
+    @PostConstruct
+    public void init() {
+        streamingJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streamingJdbcTemplate.setFetchSize(streamFetchSize);
+    }
+
+    /**
+     * 在同一事务中写入一批历史记录，并更新涉及的对话摘要
+     */
+    @Transactional
+    public void saveBatch(List<ConversationHistory> histories) {
+        batchInsert(histories);
+        upsertSummaries(histories);
+    }
+
+    public void batchInsert(List<ConversationHistory> histories) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ConversationHistory history = histories.get(i);
+                ps.setLong(1, history.getUserId());
+                ps.setString(2, history.getConversationId());
+                ps.setString(3, history.getQuestion());
+                ps.setString(4, history.getAnswer());
+                ps.setTimestamp(5, Timestamp.valueOf(history.getTimestamp()));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return histories.size();
+            }
+        });
+    }
+
+    /**
+     * 先在内存中按对话聚合，一批记录中同一对话的多轮只更新一次摘要
+     */
+    private void upsertSummaries(List<ConversationHistory> histories) {
+        Map<String, SummaryDelta> deltas = new LinkedHashMap<>();
+        for (ConversationHistory history : histories) {
+            SummaryDelta delta = deltas.get(history.getConversationId());
+            if (delta == null) {
+                deltas.put(history.getConversationId(), new SummaryDelta(history));
+            } else {
+                delta.add(history);
+            }
+        }
+        List<SummaryDelta> rows = new ArrayList<>(deltas.values());
+        jdbcTemplate.batchUpdate(UPSERT_SUMMARY_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                SummaryDelta delta = rows.get(i);
+                ps.setString(1, delta.conversationId);
+                ps.setLong(2, delta.userId);
+                ps.setString(3, delta.firstQuestion);
+                ps.setTimestamp(4, Timestamp.valueOf(delta.firstTime));
+                ps.setTimestamp(5, Timestamp.valueOf(delta.lastTime));
+                ps.setInt(6, delta.turns);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+    }
+
+    /**
+     * 摘要表为空而历史表有数据时 (升级后首次启动)，从历史数据生成摘要
+     * @return 生成的摘要数
+     */
+    @Transactional
+    public int backfillSummariesIfEmpty() {
+        Integer existing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM conversation_summary", Integer.class);
+        if (existing != null && existing > 0) {
+            return 0;
+        }
+        return jdbcTemplate.update(BACKFILL_SUMMARY_SQL);
+    }
+
+    /**
+     * 流式读取对话的各轮问答 (只读、单向游标)，每读到一行回调一次
+     * @param afterTime 从该位置之后开始读 (keyset 分页)，为 null 时从头读
+     * @param limit 最多读取的行数，小于等于0表示不限
+     */
+    public void streamTurns(String conversationId, LocalDateTime afterTime, Long afterId, int limit,
+                            RowCallbackHandler handler) {
+        StringBuilder sql = new StringBuilder(SELECT_TURNS_SQL);
+        List<Object> args = new ArrayList<>();
+        args.add(conversationId);
+        if (afterTime != null) {
+            sql.append(TURNS_AFTER_SQL);
+            Timestamp after = Timestamp.valueOf(afterTime);
+            args.add(after);
+            args.add(after);
+            args.add(afterId);
+        }
+        sql.append(TURNS_ORDER_SQL);
+        if (limit > 0) {
+            sql.append(" LIMIT ").append(limit);
+        }
+        streamingJdbcTemplate.query(sql.toString(), handler, args.toArray());
+    }
+
+    /**
+     * 读取对话最近的 limit 轮问答 (按时间正序返回)
+     */
+    public List<ConversationHistory> findRecentTurns(String conversationId, int limit) {
+        List<ConversationHistory> turns = jdbcTemplate.query("SELECT user_id, question, answer FROM conversation_history "
+                + "WHERE conversation_id = ? ORDER BY timestamp DESC, id DESC LIMIT ?", (rs, rowNum) -> {
+            ConversationHistory history = new ConversationHistory();
+            history.setUserId(rs.getLong("user_id"));
+            history.setQuestion(rs.getString("question"));
+            history.setAnswer(rs.getString("answer"));
+            return history;
+        }, conversationId, limit);
+        Collections.reverse(turns);
+        return turns;
+    }
+
+    /**
+     * 用集合删除语句删除整个对话 (热表、摘要和归档索引)，不逐条加载实体。
+     * 归档文件中的数据随索引一起变为不可访问，文件本身按月整体清理。
+     */
+    @Transactional
+    public int deleteConversation(String conversationId) {
+        int deleted = jdbcTemplate.update("DELETE FROM conversation_history WHERE conversation_id = ?", conversationId);
+        jdbcTemplate.update("DELETE FROM conversation_summary WHERE conversation_id = ?", conversationId);
+        jdbcTemplate.update("DELETE FROM conversation_archive WHERE conversation_id = ?", conversationId);
+        return deleted;
+    }
+
+    /**
+     * 查找待归档的对话 (只读取摘要的 conversationId、userId、lastActivity)
+     */
+    public List<ConversationSummary> findArchiveCandidates(LocalDateTime cutoff, int limit) {
+        return jdbcTemplate.query(ARCHIVE_CANDIDATES_SQL, (rs, rowNum) -> {
+            ConversationSummary summary = new ConversationSummary();
+            summary.setConversationId(rs.getString("conversation_id"));
+            summary.setUserId(rs.getLong("user_id"));
+            summary.setLastActivity(rs.getTimestamp("last_activity").toLocalDateTime());
+            return summary;
+        }, Timestamp.valueOf(cutoff), limit);
+    }
+
+    /**
+     * 归档文件落盘后调用：在同一事务中写入归档索引并从热表删除已归档的行
+     * @return 从热表删除的行数
+     */
+    @Transactional
+    public int completeArchive(List<ConversationArchive> archives) {
+        jdbcTemplate.batchUpdate(INSERT_ARCHIVE_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ConversationArchive archive = archives.get(i);
+                ps.setString(1, archive.getConversationId());
+                ps.setLong(2, archive.getUserId());
+                ps.setString(3, archive.getSegment());
+                ps.setLong(4, archive.getMemberOffset());
+                ps.setLong(5, archive.getMemberLength());
+                ps.setTimestamp(6, Timestamp.valueOf(archive.getFirstTime()));
+                ps.setTimestamp(7, Timestamp.valueOf(archive.getLastTime()));
+                ps.setLong(8, archive.getLastHistoryId());
+                ps.setInt(9, archive.getTurnCount());
+                ps.setTimestamp(10, Timestamp.valueOf(archive.getArchivedAt()));
+                ps.setString(11, archive.getConversationId());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return archives.size();
+            }
+        });
+        int[] deleted = jdbcTemplate.batchUpdate(DELETE_ARCHIVED_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ConversationArchive archive = archives.get(i);
+                Timestamp lastTime = Timestamp.valueOf(archive.getLastTime());
+                ps.setString(1, archive.getConversationId());
+                ps.setTimestamp(2, lastTime);
+                ps.setTimestamp(3, lastTime);
+                ps.setLong(4, archive.getLastHistoryId());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return archives.size();
+            }
+        });
+        int total = 0;
+        for (int count : deleted) {
+            // 合并执行的批量语句可能只返回 SUCCESS_NO_INFO (-2)
+            if (count > 0) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 清理一个过了保留期的归档文件对应的数据：
+     * 完全位于该文件中的对话 (热表和其他归档文件中都没有问答) 连同摘要一起删除，再删除该文件的索引
+     * @return 删除的对话数
+     */
+    @Transactional
+    public int purgeArchiveSegment(String segment) {
+        int conversations = jdbcTemplate.update("DELETE FROM conversation_summary WHERE conversation_id IN "
+                + "(SELECT a.conversation_id FROM conversation_archive a WHERE a.segment = ?) "
+                + "AND NOT EXISTS (SELECT 1 FROM conversation_history h "
+                + "WHERE h.conversation_id = conversation_summary.conversation_id) "
+                + "AND NOT EXISTS (SELECT 1 FROM conversation_archive o "
+                + "WHERE o.conversation_id = conversation_summary.conversation_id AND o.segment <> ?)", segment, segment);
+        jdbcTemplate.update("DELETE FROM conversation_archive WHERE segment = ?", segment);
+        return conversations;
+    }
+
+    private static String summaryQuestion(String question) {
+        if (question == null || question.length() <= SUMMARY_QUESTION_LENGTH) {
+            return question;
+        }
+        int end = SUMMARY_QUESTION_LENGTH;
+        // 不要把代理对 (如 emoji) 截成两半
+        if (Character.isHighSurrogate(question.charAt(end - 1))) {
+            end--;
+        }
+        return question.substring(0, end);
+    }
+
+    private static final class SummaryDelta {
+        final String conversationId;
+        final Long userId;
+        String firstQuestion;
+        LocalDateTime firstTime;
+        LocalDateTime lastTime;
+        int turns;
+
+        SummaryDelta(ConversationHistory history) {
+            this.conversationId = history.getConversationId();
+            this.userId = history.getUserId();
+            this.firstQuestion = summaryQuestion(history.getQuestion());
+            this.firstTime = history.getTimestamp();
+            this.lastTime = history.getTimestamp();
+            this.turns = 1;
+        }
+
+        void add(ConversationHistory history) {
+            if (history.getTimestamp().isBefore(firstTime)) {
+                firstTime = history.getTimestamp();
+                firstQuestion = summaryQuestion(history.getQuestion());
+            }
+            if (history.getTimestamp().isAfter(lastTime)) {
+                lastTime = history.getTimestamp();
+            }
+            turns++;
+        }
+    }
+}
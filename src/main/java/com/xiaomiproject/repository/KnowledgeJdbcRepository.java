@@ -0,0 +1,171 @@
+package com.xiaomiproject.repository;
+
+import com.xiaomiproject.entity.Knowledge;
+import com.xiaomiproject.service.knowledge.TextNormalizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 知识库的 JDBC 批量读写 (批量导入和启动时加载索引使用)。
+ * 与 {@link HistoryJdbcRepository} 相同，绕过 JPA 使用 JDBC batch，配合 rewriteBatchedStatements=true
+ * 一批 INSERT 会被合并为一条多值语句；这些写入不经过实体监听器，变更事件由调用方按批发布。
+ */
+@Repository
+public class KnowledgeJdbcRepository {
+
+    private static final RowMapper<Knowledge> KNOWLEDGE_MAPPER = (rs, rowNum) -> {
+        Knowledge knowledge = new Knowledge();
+        knowledge.setId(rs.getLong("id"));
+        knowledge.setQuestion(rs.getString("question"));
+        knowledge.setAnswer(rs.getString("answer"));
+        knowledge.setQuestionHash(rs.getString("question_hash"));
+        return knowledge;
+    };
+
+    // 其他请求并发写入了同一问题时唯一索引冲突，INSERT IGNORE 跳过该行而不是让整批失败
+    private static final String INSERT_IGNORE_SQL = "INSERT IGNORE INTO knowledges (question, answer, question_hash) "
+            + "VALUES (?, ?, ?)";
+
+    private static final String UPDATE_SQL = "UPDATE knowledges SET question = ?, answer = ? WHERE id = ?";
+
+    private static final String SELECT_BY_HASH_SQL = "SELECT id, question, answer, question_hash FROM knowledges "
+            + "WHERE question_hash IN (";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // 全表读取使用的 JdbcTemplate (按行流式返回，见 HistoryJdbcRepository)
+    private JdbcTemplate streamingJdbcTemplate;
+
+    @Value("${chat.history.stream-fetch-size:" + Integer.MIN_VALUE + "}")
+    private int streamFetchSize;
+
+    @PostConstruct
+    public void init() {
+        streamingJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streamingJdbcTemplate.setFetchSize(streamFetchSize);
+    }
+
+    /**
+     * 按归一化问题的哈希查找已有条目
+     */
+    public List<Knowledge> findByQuestionHashes(Collection<String> hashes) {
+        if (hashes.isEmpty()) {
+            return Collections.emptyList();
+        }
+        StringBuilder sql = new StringBuilder(SELECT_BY_HASH_SQL);
+        for (int i = 0; i < hashes.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+        return jdbcTemplate.query(sql.toString(), KNOWLEDGE_MAPPER, hashes.toArray());
+    }
+
+    /**
+     * 批量插入新条目 (questionHash 须已填充)，已存在相同哈希的行被跳过
+     */
+    public void insertIgnoreBatch(List<Knowledge> knowledges) {
+        jdbcTemplate.batchUpdate(INSERT_IGNORE_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Knowledge knowledge = knowledges.get(i);
+                ps.setString(1, knowledge.getQuestion());
+                ps.setString(2, knowledge.getAnswer());
+                ps.setString(3, knowledge.getQuestionHash());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return knowledges.size();
+            }
+        });
+    }
+
+    /**
+     * 按ID批量更新问题和答案 (归一化后的问题不变，哈希无需更新)
+     */
+    public void updateBatch(List<Knowledge> knowledges) {
+        jdbcTemplate.batchUpdate(UPDATE_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Knowledge knowledge = knowledges.get(i);
+                ps.setString(1, knowledge.getQuestion());
+                ps.setString(2, knowledge.getAnswer());
+                ps.setLong(3, knowledge.getId());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return knowledges.size();
+            }
+        });
+    }
+
+    /**
+     * 流式读取全部条目，每读到一行回调一次 (不会把整个表读入内存)
+     */
+    public void streamAll(RowCallbackHandler handler) {
+        streamingJdbcTemplate.query("SELECT id, question, answer FROM knowledges", handler);
+    }
+
+    /**
+     * 为升级前写入的条目补齐 questionHash (之后由实体监听器和批量导入维护)。
+     * 归一化后重复的问题只有第一条 (ID最小) 获得哈希，其余保持为空并打印出来，需人工合并
+     * @return 补齐的行数
+     */
+    @Transactional
+    public int backfillQuestionHashes() {
+        List<Knowledge> missing = jdbcTemplate.query("SELECT id, question FROM knowledges "
+                + "WHERE question_hash IS NULL ORDER BY id", (rs, rowNum) -> {
+            Knowledge knowledge = new Knowledge();
+            knowledge.setId(rs.getLong("id"));
+            knowledge.setQuestion(rs.getString("question"));
+            return knowledge;
+        });
+        if (missing.isEmpty()) {
+            return 0;
+        }
+        Set<String> taken = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT question_hash FROM knowledges WHERE question_hash IS NOT NULL", String.class));
+        List<Knowledge> rows = new ArrayList<>(missing.size());
+        for (Knowledge knowledge : missing) {
+            String hash = TextNormalizer.questionHash(knowledge.getQuestion());
+            if (hash == null || !taken.add(hash)) {
+                System.err.println("知识库条目问题重复或为空，未生成问题哈希: id=" + knowledge.getId()
+                        + ", question=" + knowledge.getQuestion());
+                continue;
+            }
+            knowledge.setQuestionHash(hash);
+            rows.add(knowledge);
+        }
+        jdbcTemplate.batchUpdate("UPDATE knowledges SET question_hash = ? WHERE id = ?", new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setString(1, rows.get(i).getQuestionHash());
+                ps.setLong(2, rows.get(i).getId());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+        return rows.size();
+    }
+}
@@ -5,7 +5,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import java.util.Optional;
 
 public interface KnowledgeRepository extends JpaRepository<Knowledge, Long> {
-    // 根据问题精确查找
+    // 根据问题精确查找 (聊天主链路已改用 KnowledgeMatcher 的内存索引)
     Optional<Knowledge> findByQuestion(String question);
 }
 
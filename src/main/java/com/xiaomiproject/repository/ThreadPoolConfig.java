@@ -1,24 +0,0 @@
-package com.xiaomiproject.repository;
-
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
-
-import java.util.concurrent.Executor;
-
-@Configuration
-@EnableAsync
-public class ThreadPoolConfig {
-
-    @Bean("llmApiExecutor")
-    public Executor llmApiExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(5); // 核心线程数
-        executor.setMaxPoolSize(10); // 最大线程数
-        executor.setQueueCapacity(25); // 任务队列容量
-        executor.setThreadNamePrefix("LlmApi-");
-        executor.initialize();
-        return executor;
-    }
-}
@@ -0,0 +1,49 @@
+package com.xiaomiproject.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用户表的 JDBC 批量更新 (不经过实体监听器，最后登录时间的变化不需要通知用户缓存)
+ */
+@Repository
+public class UserJdbcRepository {
+
+    // 批量写回时可能晚于同一用户更新的登录时间，只向后推进
+    private static final String UPDATE_LAST_LOGIN_SQL = "UPDATE users SET last_login_time = ? "
+            + "WHERE id = ? AND (last_login_time IS NULL OR last_login_time < ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param loginTimes 用户ID -> 最近一次登录时间
+     */
+    public void updateLastLoginTimes(Map<Long, LocalDateTime> loginTimes) {
+        List<Map.Entry<Long, LocalDateTime>> rows = new ArrayList<>(loginTimes.entrySet());
+        jdbcTemplate.batchUpdate(UPDATE_LAST_LOGIN_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Timestamp time = Timestamp.valueOf(rows.get(i).getValue());
+                ps.setTimestamp(1, time);
+                ps.setLong(2, rows.get(i).getKey());
+                ps.setTimestamp(3, time);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+    }
+}
@@ -0,0 +1,122 @@
+package com.xiaomiproject.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 问答请求的准入控制。
+ * 每个问答流从接受到结束 (完成、出错、超时或客户端断开) 都占用一个许可；
+ * 许可用完或问答线程池 (chatBlockingScheduler 所用的 chatExecutor) 排队过深时立即拒绝，而不是无限排队直到内存耗尽。
+ */
+@Service
+public class ChatAdmissionService {
+
+    @Autowired
+    private ExecutorService chatExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.admission.max-active-streams:500}")
+    private int maxActiveStreams;
+
+    @Value("${chat.admission.max-queue-depth:100}")
+    private int maxQueueDepth;
+
+    @Value("${chat.admission.retry-after-seconds:5}")
+    private long retryAfterSeconds;
+
+    private Semaphore permits;
+    private final AtomicLong admittedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * 单个问答流占用的许可，release 可重复调用
+     */
+    public final class Permit {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxActiveStreams);
+        bindMetrics(meterRegistry);
+    }
+
+    /**
+     * 申请一个许可，失败时抛出 {@link ChatOverloadedException}
+     */
+    public Permit acquire() {
+        if (queueDepth() >= maxQueueDepth || !permits.tryAcquire()) {
+            throw reject();
+        }
+        admittedCount.incrementAndGet();
+        return new Permit();
+    }
+
+    private ChatOverloadedException reject() {
+        rejectedCount.incrementAndGet();
+        return new ChatOverloadedException("服务繁忙，请稍后再试", retryAfterSeconds);
+    }
+
+    private int queueDepth() {
+        if (chatExecutor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) chatExecutor).getQueue().size();
+        }
+        // 虚拟线程模式没有排队，只受许可数限制
+        return 0;
+    }
+
+    /**
+     * 活跃问答流、排队深度、拒绝数，以及问答线程池的线程数、活跃线程数
+     */
+    private void bindMetrics(MeterRegistry registry) {
+        Gauge.builder("chat.admission.active", this, s -> maxActiveStreams - s.permits.availablePermits())
+                .description("正在进行的问答流")
+                .register(registry);
+        Gauge.builder("chat.admission.queue.depth", this, ChatAdmissionService::queueDepth)
+                .description("问答线程池排队的任务数")
+                .register(registry);
+        FunctionCounter.builder("chat.admission.admitted", admittedCount, AtomicLong::get).register(registry);
+        FunctionCounter.builder("chat.admission.rejected", rejectedCount, AtomicLong::get).register(registry);
+        new ExecutorServiceMetrics(chatExecutor, "chat", Tags.empty()).bindTo(registry);
+    }
+
+    public Map<String, Object> statsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("activeStreams", maxActiveStreams - permits.availablePermits());
+        snapshot.put("maxActiveStreams", maxActiveStreams);
+        snapshot.put("queueDepth", queueDepth());
+        snapshot.put("maxQueueDepth", maxQueueDepth);
+        if (chatExecutor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) chatExecutor;
+            snapshot.put("poolSize", pool.getPoolSize());
+            snapshot.put("activeThreads", pool.getActiveCount());
+        }
+        snapshot.put("executor", chatExecutor.getClass().getSimpleName());
+        snapshot.put("admittedCount", admittedCount.get());
+        snapshot.put("rejectedCount", rejectedCount.get());
+        return snapshot;
+    }
+}
@@ -0,0 +1,18 @@
+package com.xiaomiproject.service;
+
+/**
+ * 当前节点的问答并发已满，请求被拒绝 (接口返回 503 并附带 Retry-After)
+ */
+public class ChatOverloadedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public ChatOverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -1,66 +1,212 @@
 package com.xiaomiproject.service;
 
+import com.xiaomiproject.dto.Message;
 import com.xiaomiproject.dto.QuestionRequest;
 import com.xiaomiproject.entity.ConversationHistory;
-import com.xiaomiproject.entity.Knowledge;
-import com.xiaomiproject.repository.ConversationHistoryRepository;
-import com.xiaomiproject.repository.KnowledgeRepository;
-import com.xiaomiproject.repository.UserRepository;
+import com.xiaomiproject.service.cache.AnswerCache;
+import com.xiaomiproject.service.cache.AnswerReplayer;
+import com.xiaomiproject.service.cache.GeneratedAnswerStore;
+import com.xiaomiproject.service.context.ConversationContextService;
+import com.xiaomiproject.service.history.HistoryWriter;
+import com.xiaomiproject.service.knowledge.KnowledgeMatch;
+import com.xiaomiproject.service.knowledge.KnowledgeMatcher;
+import com.xiaomiproject.service.metrics.ChatMetrics;
+import com.xiaomiproject.service.metrics.ChatMetrics.AnswerSource;
+import com.xiaomiproject.service.scheduling.LlmCallScheduler;
+import com.xiaomiproject.service.semantic.SemanticAnswerCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.time.LocalDateTime;
-import java.util.Map;
+import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class ChatService {
 
     @Autowired
-    private KnowledgeRepository knowledgeRepository;
+    private KnowledgeMatcher knowledgeMatcher;
     @Autowired
-    private ConversationHistoryRepository historyRepository;
-    @Autowired
-    private UserRepository userRepository;
+    private HistoryWriter historyWriter;
     @Autowired
     private LlmService llmService;
+    @Autowired
+    private AnswerCache answerCache;
+    @Autowired
+    private SemanticAnswerCache semanticAnswerCache;
+    @Autowired
+    private GeneratedAnswerStore generatedAnswerStore;
+    @Autowired
+    private AnswerReplayer answerReplayer;
+    @Autowired
+    private Scheduler chatBlockingScheduler;
+    @Autowired
+    private ConversationContextService conversationContextService;
+    @Autowired
+    private ChatMetrics chatMetrics;
+    @Autowired
+    private LlmCallScheduler llmCallScheduler;
 
-    private final Map<String, String> questionCache = new ConcurrentHashMap<>();
+    public Optional<String> checkLocalSources(String question, String modelType) {
+        return checkLocalSources(question, modelType, true);
+    }
 
-    public Optional<String> checkLocalSources(String question) {
-        if (questionCache.containsKey(question)) {
-            System.out.println("命中缓存: " + question);
-            return Optional.of(questionCache.get(question));
+    /**
+     * 查找本地来源的答案
+     * @param standalone 是否为对话的第一轮；对话已有上下文时回答依赖上下文 (如"那它多少钱")，
+     *                   只使用知识库，不复用按问题缓存的大模型答案
+     */
+    public Optional<String> checkLocalSources(String question, String modelType, boolean standalone) {
+        String cacheKey = AnswerCache.keyOf(question);
+        Optional<String> cached = answerCache.get(cacheKey);
+        if (cached.isPresent()) {
+            chatMetrics.answerFrom(AnswerSource.ANSWER_CACHE);
+            return cached;
         }
 
-        Optional<Knowledge> knowledgeOpt = knowledgeRepository.findByQuestion(question);
-        if (knowledgeOpt.isPresent()) {
-            System.out.println("命中知识库: " + question);
-            String answer = knowledgeOpt.get().getAnswer();
-            questionCache.put(question, answer);
+        // 进程内倒排索引模糊匹配，容忍空格、标点、全半角和大小写差异
+        Optional<KnowledgeMatch> match = knowledgeMatcher.match(question);
+        if (match.isPresent()) {
+            chatMetrics.answerFrom(AnswerSource.KNOWLEDGE);
+            String answer = match.get().getAnswer();
+            answerCache.put(cacheKey, answer, match.get().getKnowledgeId());
             return Optional.of(answer);
         }
 
+        if (!standalone) {
+            return Optional.empty();
+        }
+
+        // 其他节点或之前由大模型生成过的同一问题的答案
+        Optional<String> generated = answerCache.get(AnswerCache.llmKeyOf(question, modelType));
+        if (generated.isPresent()) {
+            chatMetrics.answerFrom(AnswerSource.LLM_CACHE);
+            return generated;
+        }
+
+        // 持久化的大模型答案 (重启或内存缓存淘汰后仍可复用)，命中后回填内存缓存
+        Optional<String> stored = generatedAnswerStore.lookup(question, modelType);
+        if (stored.isPresent()) {
+            chatMetrics.answerFrom(AnswerSource.GENERATED_STORE);
+            answerCache.put(AnswerCache.llmKeyOf(question, modelType), stored.get());
+            return stored;
+        }
+
+        // 语义近似缓存：同一问题的不同问法复用大模型已生成的答案
+        Optional<String> similar = semanticAnswerCache.lookup(question, modelType);
+        if (similar.isPresent()) {
+            chatMetrics.answerFrom(AnswerSource.SEMANTIC_CACHE);
+            return similar;
+        }
+
         return Optional.empty();
     }
 
-    public void saveHistory(String conversationId, String question, String answer, String username) {
-        userRepository.findByUsername(username).ifPresent(user -> {
-            ConversationHistory history = new ConversationHistory();
-            history.setConversationId(conversationId);
-            history.setUserId(user.getId());
-            history.setQuestion(question);
-            history.setAnswer(answer);
-            history.setTimestamp(LocalDateTime.now());
-            historyRepository.save(history);
-        });
+    /**
+     * 该对话此前是否已有问答
+     */
+    public boolean hasContext(String conversationId, Long userId) {
+        return conversationContextService.hasContext(conversationId, userId);
+    }
+
+    /**
+     * 大模型回答完成后调用，把答案记入两级问答缓存、持久化答案缓存和语义缓存 (只应对没有上下文的问答调用)
+     */
+    public void rememberGeneratedAnswer(String question, String answer, String modelType) {
+        if (answer == null || answer.isEmpty()) {
+            return;
+        }
+        answerCache.put(AnswerCache.llmKeyOf(question, modelType), answer);
+        generatedAnswerStore.save(question, answer, modelType);
+        semanticAnswerCache.put(question, answer, modelType);
+    }
+
+    /**
+     * 保存一轮问答并追加到对话上下文；用户ID由调用方从登录信息中取得，这里不再查询用户表
+     */
+    public void saveHistory(String conversationId, String question, String answer, Long userId) {
+        ConversationHistory history = new ConversationHistory();
+        history.setConversationId(conversationId);
+        history.setUserId(userId);
+        history.setQuestion(question);
+        history.setAnswer(answer);
+        history.setTimestamp(LocalDateTime.now());
+        // 异步批量写库，不阻塞回答流程
+        historyWriter.enqueue(history);
+        conversationContextService.append(conversationId, userId, question, answer);
+    }
+
+    /**
+     * 流式调用大模型，连同该对话最近的上下文 (按模型的 token 预算裁剪) 一起发送；
+     * 实际发起的上游调用受用户/全局配额和上游名额的限制 (见 {@link LlmService})
+     */
+    public Flux<String> getAnswerStream(QuestionRequest request, Long userId, String modelType) {
+        chatMetrics.answerFrom(AnswerSource.LLM);
+        String resolvedModel = llmService.resolveModelType(modelType);
+        List<Message> messages = conversationContextService.messagesFor(request.getConversationId(), userId,
+                request.getQuestion(), resolvedModel);
+        return llmService.getCompletionStream(messages, modelType, userId);
+    }
+
+    /**
+     * 调用大模型前检查配额 (不扣减)，已用完时抛出 {@link QuotaExceededException}
+     */
+    public void checkQuota(Long userId, String modelType) {
+        llmCallScheduler.checkQuota(userId, llmService.resolveModelType(modelType));
+    }
+
+    /**
+     * 本地来源的答案按大模型回答的方式分段推送 (可配置节奏)
+     */
+    public Flux<String> replayAnswer(String answer) {
+        return answerReplayer.replay(answer);
+    }
+
+    /**
+     * 完整的响应式问答流程：本地来源 (缓存、知识库) 命中时分段回放答案，否则流式调用大模型。
+     * 配额已用完时 (只在需要调用大模型时检查) 流以 {@link QuotaExceededException} 结束。
+     * 查缓存、保存历史等阻塞操作都在有界的 chatBlockingScheduler 上执行，
+     * 调用方线程不会被阻塞；下游的请求量 (背压) 会一直传递到大模型的上游连接。
+     */
+    public Flux<String> streamAnswer(String question, String conversationId, Long userId, String modelType) {
+        return Mono.fromCallable(() -> hasContext(conversationId, userId))
+                .subscribeOn(chatBlockingScheduler)
+                .flatMapMany(hasContext -> {
+                    // 仍在 chatBlockingScheduler 上执行
+                    boolean standalone = !hasContext;
+                    Optional<String> localAnswer = checkLocalSources(question, modelType, standalone);
+                    if (localAnswer.isPresent()) {
+                        String answer = localAnswer.get();
+                        return replayAnswer(answer)
+                                .doOnComplete(() -> afterAnswered(conversationId, question, answer, userId, modelType, false));
+                    }
+                    // 只有需要调用大模型时才检查配额，缓存和知识库命中不受配额限制
+                    checkQuota(userId, modelType);
+                    QuestionRequest request = new QuestionRequest();
+                    request.setQuestion(question);
+                    request.setConversationId(conversationId);
+                    StringBuilder fullResponse = new StringBuilder();
+                    return getAnswerStream(request, userId, modelType)
+                            .doOnNext(fullResponse::append)
+                            .doOnComplete(() -> afterAnswered(conversationId, question, fullResponse.toString(), userId, modelType, standalone));
+                });
     }
 
-    public Flux<String> getAnswerStream(QuestionRequest request, String username, String modelType) {
-        System.out.println("调用大模型 (流式): " + request.getQuestion() + " 使用模型: " + modelType);
-        return llmService.getCompletionStream(request.getQuestion(), modelType);
+    /**
+     * 回答完成后异步保存历史记录；不依赖上下文的大模型答案同时写入缓存
+     */
+    private void afterAnswered(String conversationId, String question, String answer, Long userId,
+                               String modelType, boolean cacheable) {
+        Mono.fromRunnable(() -> {
+                    saveHistory(conversationId, question, answer, userId);
+                    if (cacheable) {
+                        rememberGeneratedAnswer(question, answer, modelType);
+                    }
+                })
+                .subscribeOn(chatBlockingScheduler)
+                .subscribe(null, e -> System.err.println("保存历史记录失败: " + e.getMessage()));
     }
 }
@@ -1,14 +1,24 @@
 package com.xiaomiproject.service;
 
+import com.xiaomiproject.dto.Message;
+import com.xiaomiproject.service.knowledge.TextNormalizer;
 import com.xiaomiproject.service.llm.LlmApi;
+import com.xiaomiproject.service.llm.ResilientLlmRouter;
+import com.xiaomiproject.service.scheduling.LlmCallScheduler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -17,6 +27,21 @@ public class LlmService {
     private final Map<String, LlmApi> llmApiMap;
     private final LlmApi defaultLlmApi;
 
+    @Autowired
+    private ResilientLlmRouter resilientLlmRouter;
+
+    @Autowired
+    private LlmCallScheduler llmCallScheduler;
+
+    @Value("${llm.single-flight.enabled:true}")
+    private boolean singleFlightEnabled;
+
+    // 正在进行中的上游请求: 模型类型 + 归一化问题 -> 共享的回答流
+    private final Map<String, Flux<String>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong upstreamCalls = new AtomicLong();
+    private final AtomicLong coalescedCalls = new AtomicLong();
+    private final AtomicLong contextualCalls = new AtomicLong();
+
     @Autowired
     public LlmService(List<LlmApi> llmApis, @Value("${llm.default.model}") String defaultModel) {
         // 通过依赖注入，Spring会自动找到所有LlmApi接口的实现类
@@ -37,9 +62,86 @@ public class LlmService {
     }
 
     /**
-     * 调用指定模型的流式API
+     * 调用指定模型的流式API。
+     * 相同模型、相同 (归一化后) 问题的并发请求只会向上游发起一次调用：
+     * 所有订阅者共享同一个上游流，中途加入的订阅者会先收到已经生成的内容，再继续接收后续内容。
+     * 真正发起上游调用时才经过调度器 (扣减发起者的配额、申请上游名额)，合并进来的请求不占配额也不排队。
+     * @param userId 发起提问的用户，用于配额和公平排队
+     */
+    public Flux<String> getCompletionStream(String question, String modelType, Long userId) {
+        LlmApi llmApi = getLlmApi(modelType);
+        if (!singleFlightEnabled) {
+            return schedule(userId, llmApi, () -> callUpstream(llmApi, question));
+        }
+        String key = llmApi.getModelType() + ":" + TextNormalizer.normalize(question);
+        return Flux.defer(() -> {
+            Flux<String> existing = inFlight.get(key);
+            if (existing != null) {
+                coalescedCalls.incrementAndGet();
+                return existing;
+            }
+            return inFlight.computeIfAbsent(key, k -> share(k, llmApi, question, userId));
+        });
+    }
+
+    /**
+     * 带对话上下文调用指定模型。回答依赖上下文，不能与其他请求合并，
+     * 只有没有历史消息 (只有当前问题) 时才走上面的合并逻辑。
+     * @param messages 按顺序排列的消息，最后一条是当前问题
+     */
+    public Flux<String> getCompletionStream(List<Message> messages, String modelType, Long userId) {
+        if (messages.size() == 1) {
+            return getCompletionStream(messages.get(0).getContent(), modelType, userId);
+        }
+        LlmApi llmApi = getLlmApi(modelType);
+        contextualCalls.incrementAndGet();
+        return schedule(userId, llmApi, () -> resilientLlmRouter.stream(llmApi, messages));
+    }
+
+    /**
+     * 实际使用的模型类型 (未知的模型类型回落到默认模型)
+     */
+    public String resolveModelType(String modelType) {
+        return getLlmApi(modelType).getModelType();
+    }
+
+    /**
+     * 把上游流包装为可共享的流：replay 缓存已发出的数据块供后加入者回放，
+     * refCount 在所有订阅者都取消时取消上游；上游结束 (完成/出错/取消) 后从登记表移除。
      */
-    public Flux<String> getCompletionStream(String question, String modelType) {
-        return getLlmApi(modelType).getCompletionStream(question);
+    private Flux<String> share(String key, LlmApi llmApi, String question, Long userId) {
+        AtomicReference<Flux<String>> self = new AtomicReference<>();
+        Flux<String> shared = schedule(userId, llmApi, () -> callUpstream(llmApi, question))
+                .doFinally(signal -> inFlight.remove(key, self.get()))
+                .replay()
+                .refCount();
+        self.set(shared);
+        return shared;
+    }
+
+    /**
+     * 在配额和上游名额的约束下发起一次上游调用 (订阅时才扣减配额、申请名额)
+     */
+    private Flux<String> schedule(Long userId, LlmApi llmApi, Supplier<Flux<String>> call) {
+        return llmCallScheduler.schedule(userId, llmApi.getModelType(), () -> {
+            upstreamCalls.incrementAndGet();
+            return call.get();
+        });
+    }
+
+    /**
+     * 经过容错层 (超时、对冲、故障转移、熔断) 调用上游
+     */
+    private Flux<String> callUpstream(LlmApi llmApi, String question) {
+        return resilientLlmRouter.stream(llmApi, Collections.singletonList(new Message("user", question)));
+    }
+
+    public Map<String, Object> inFlightStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", inFlight.size());
+        stats.put("upstreamCalls", upstreamCalls.get());
+        stats.put("coalescedCalls", coalescedCalls.get());
+        stats.put("contextualCalls", contextualCalls.get());
+        return stats;
     }
 }
@@ -0,0 +1,70 @@
+package com.xiaomiproject.service;
+
+import com.xiaomiproject.repository.UserJdbcRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 最后登录时间的异步合并写入：登录时只记入内存，定期把每个用户最近一次的登录时间批量写回 users 表。
+ * 登录接口不再等待数据库更新，同一用户在一个周期内多次登录只写一次。
+ * 进程异常退出时最多丢失一个周期内的登录时间，该字段只用于展示和统计。
+ */
+@Service
+public class LoginActivityRecorder {
+
+    @Autowired
+    private UserJdbcRepository userJdbcRepository;
+
+    private final Map<Long, LocalDateTime> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong recordedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+
+    public void recordLogin(Long userId) {
+        pending.merge(userId, LocalDateTime.now(), (a, b) -> a.isAfter(b) ? a : b);
+        recordedCount.incrementAndGet();
+    }
+
+    @Scheduled(fixedDelayString = "${chat.auth.login-time-flush-interval-ms:5000}")
+    @PreDestroy
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<Long, LocalDateTime> batch = new HashMap<>();
+        for (Long userId : pending.keySet()) {
+            LocalDateTime time = pending.remove(userId);
+            if (time != null) {
+                batch.put(userId, time);
+            }
+        }
+        try {
+            userJdbcRepository.updateLastLoginTimes(batch);
+            writtenCount.addAndGet(batch.size());
+        } catch (DataAccessException e) {
+            // 放回队列，下个周期重试 (期间的新登录时间更晚，保留较晚的)
+            for (Map.Entry<Long, LocalDateTime> entry : batch.entrySet()) {
+                pending.merge(entry.getKey(), entry.getValue(), (a, b) -> a.isAfter(b) ? a : b);
+            }
+            System.err.println("写回最后登录时间失败: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> statsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("pending", pending.size());
+        snapshot.put("recordedCount", recordedCount.get());
+        snapshot.put("writtenCount", writtenCount.get());
+        return snapshot;
+    }
+}
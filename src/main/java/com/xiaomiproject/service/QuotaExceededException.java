@@ -0,0 +1,11 @@
+package com.xiaomiproject.service;
+
+/**
+ * 用户或全局的大模型调用配额已用完 (接口返回 429 并附带 Retry-After)
+ */
+public class QuotaExceededException extends ChatOverloadedException {
+
+    public QuotaExceededException(String message, long retryAfterSeconds) {
+        super(message, retryAfterSeconds);
+    }
+}
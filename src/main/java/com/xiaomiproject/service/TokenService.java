@@ -0,0 +1,170 @@
+package com.xiaomiproject.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiaomiproject.config.AuthenticatedUser;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 无状态登录令牌 (chat.auth.mode=token 时使用)，格式与 HS256 签名的 JWT 相同。
+ * <p>
+ * 访问令牌有效期短 (默认15分钟)，声明中带有用户ID、用户名和角色，校验只需一次 HMAC 计算，
+ * 不查询数据库、不依赖会话，任何节点都能独立校验；刷新令牌有效期长，刷新时重新读取用户，
+ * 角色变化或用户被删除会在下次刷新时生效。
+ * 多节点部署时各节点必须配置相同的 chat.auth.token.secret。
+ */
+@Service
+public class TokenService {
+
+    public static final String TYPE_ACCESS = "access";
+    public static final String TYPE_REFRESH = "refresh";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final String HEADER = ENCODER.encodeToString(
+            "{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 签名密钥，为空时每次启动随机生成 (重启后已签发的令牌全部失效，只适合单节点调试)
+    @Value("${chat.auth.token.secret:}")
+    private String secret;
+
+    @Value("${chat.auth.token.access-ttl-seconds:900}")
+    private long accessTtlSeconds;
+
+    @Value("${chat.auth.token.refresh-ttl-seconds:604800}")
+    private long refreshTtlSeconds;
+
+    private SecretKeySpec key;
+    private ThreadLocal<Mac> macs;
+
+    @PostConstruct
+    public void init() {
+        byte[] keyBytes;
+        if (secret == null || secret.isEmpty()) {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        key = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+        macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * 未配置密钥时提醒 (只在令牌模式下调用)
+     */
+    public boolean hasConfiguredSecret() {
+        return secret != null && !secret.isEmpty();
+    }
+
+    public long getAccessTtlSeconds() {
+        return accessTtlSeconds;
+    }
+
+    public String issueAccessToken(AuthenticatedUser user) {
+        return issue(user, TYPE_ACCESS, accessTtlSeconds);
+    }
+
+    public String issueRefreshToken(AuthenticatedUser user) {
+        return issue(user, TYPE_REFRESH, refreshTtlSeconds);
+    }
+
+    private String issue(AuthenticatedUser user, String type, long ttlSeconds) {
+        long now = System.currentTimeMillis() / 1000;
+        List<String> roles = new ArrayList<>();
+        for (GrantedAuthority authority : user.getAuthorities()) {
+            roles.add(authority.getAuthority());
+        }
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("sub", user.getUsername());
+        claims.put("uid", user.getUserId());
+        claims.put("roles", roles);
+        claims.put("typ", type);
+        claims.put("iat", now);
+        claims.put("exp", now + ttlSeconds);
+        String payload;
+        try {
+            payload = ENCODER.encodeToString(objectMapper.writeValueAsBytes(claims));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        String signingInput = HEADER + "." + payload;
+        return signingInput + "." + ENCODER.encodeToString(sign(signingInput));
+    }
+
+    /**
+     * 校验签名、类型和有效期，通过时还原出登录用户 (不含密码)
+     */
+    public Optional<AuthenticatedUser> verify(String token, String expectedType) {
+        if (token == null) {
+            return Optional.empty();
+        }
+        int first = token.indexOf('.');
+        int second = token.lastIndexOf('.');
+        if (first <= 0 || second <= first || !HEADER.equals(token.substring(0, first))) {
+            return Optional.empty();
+        }
+        try {
+            byte[] signature = DECODER.decode(token.substring(second + 1));
+            if (!MessageDigest.isEqual(signature, sign(token.substring(0, second)))) {
+                return Optional.empty();
+            }
+            Map<String, Object> claims = objectMapper.readValue(DECODER.decode(token.substring(first + 1, second)),
+                    new TypeReference<Map<String, Object>>() { });
+            if (!expectedType.equals(claims.get("typ"))) {
+                return Optional.empty();
+            }
+            Object exp = claims.get("exp");
+            if (!(exp instanceof Number) || ((Number) exp).longValue() <= System.currentTimeMillis() / 1000) {
+                return Optional.empty();
+            }
+            List<SimpleGrantedAuthority> authorities = new ArrayList<>();
+            Object roles = claims.get("roles");
+            if (roles instanceof List) {
+                for (Object role : (List<?>) roles) {
+                    authorities.add(new SimpleGrantedAuthority(String.valueOf(role)));
+                }
+            }
+            Long userId = ((Number) claims.get("uid")).longValue();
+            return Optional.of(new AuthenticatedUser(userId, (String) claims.get("sub"), "", authorities));
+        } catch (IllegalArgumentException | IOException | ClassCastException | NullPointerException e) {
+            // 格式错误的令牌
+            return Optional.empty();
+        }
+    }
+
+    private byte[] sign(String signingInput) {
+        return macs.get().doFinal(signingInput.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,84 @@
+package com.xiaomiproject.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.xiaomiproject.config.AuthenticatedUser;
+import com.xiaomiproject.entity.User;
+import com.xiaomiproject.event.UserChangedEvent;
+import com.xiaomiproject.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * 用户身份 (用户名 -> 用户ID) 解析。
+ * 会话中的 principal 是 {@link AuthenticatedUser} 时直接取其中的用户ID；
+ * 其他情况 (如旧会话) 查本地缓存，未命中才查询数据库。用户信息变化时缓存随之失效。
+ */
+@Service
+public class UserIdentityService {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${chat.user-cache.max-size:100000}")
+    private long maxSize;
+
+    @Value("${chat.user-cache.ttl-seconds:3600}")
+    private long ttlSeconds;
+
+    private Cache<String, Long> userIds;
+
+    @PostConstruct
+    public void init() {
+        userIds = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    /**
+     * 当前登录用户的ID，用户不存在时返回 empty
+     */
+    public Optional<Long> userIdOf(Principal principal) {
+        if (principal == null) {
+            return Optional.empty();
+        }
+        if (principal instanceof Authentication) {
+            Object details = ((Authentication) principal).getPrincipal();
+            if (details instanceof AuthenticatedUser) {
+                return Optional.of(((AuthenticatedUser) details).getUserId());
+            }
+        }
+        return userIdOf(principal.getName());
+    }
+
+    public Optional<Long> userIdOf(String username) {
+        Long cached = userIds.getIfPresent(username);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<Long> userId = userRepository.findByUsername(username).map(User::getId);
+        userId.ifPresent(id -> userIds.put(username, id));
+        return userId;
+    }
+
+    /**
+     * 认证时已经查到了用户，顺便写入缓存
+     */
+    public void remember(String username, Long userId) {
+        userIds.put(username, userId);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        userIds.invalidate(event.getUsername());
+    }
+}
@@ -0,0 +1,234 @@
+package com.xiaomiproject.service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.xiaomiproject.entity.Knowledge;
+import com.xiaomiproject.event.KnowledgeBatchChangedEvent;
+import com.xiaomiproject.event.KnowledgeChangedEvent;
+import com.xiaomiproject.event.RemoteKnowledgeBatchChangedEvent;
+import com.xiaomiproject.event.RemoteKnowledgeChangedEvent;
+import com.xiaomiproject.service.knowledge.TextNormalizer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 问答缓存，两级结构：
+ * 一级为本地 Caffeine (W-TinyLFU 淘汰策略)，按字符数计算权重，总权重和存活时间都有上限，
+ * 无论用户输入多少种不同的问题，内存占用都保持平稳；
+ * 二级为各节点共享的 {@link AnswerCacheL2} (Redis)，新节点或一级缓存未命中时可复用其他节点的结果。
+ * 缓存失效通过 L2 的广播通道通知所有节点；一级缓存的TTL短于二级，作为丢失失效消息时的兜底。
+ */
+@Component
+public class AnswerCache {
+
+    private final Cache<String, CachedAnswer> cache;
+    private final AnswerCacheL2 l2;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Duration l2Ttl;
+    // 本节点标识，用于忽略自己发出的失效消息
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final AtomicLong l2HitCount = new AtomicLong();
+    private final AtomicLong l2MissCount = new AtomicLong();
+
+    public AnswerCache(@Value("${chat.cache.answer.max-weight:4000000}") long maxWeight,
+                       @Value("${chat.cache.answer.ttl-seconds:3600}") long ttlSeconds,
+                       @Value("${chat.cache.l1.ttl-seconds:300}") long l1TtlSeconds,
+                       AnswerCacheL2 l2,
+                       ApplicationEventPublisher eventPublisher,
+                       MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                // 权重 = 问题 + 答案的字符数，避免少量超长答案撑爆内存
+                .maximumWeight(maxWeight)
+                .weigher((String key, CachedAnswer value) -> key.length() + value.getAnswer().length())
+                .expireAfterWrite(Duration.ofSeconds(Math.min(ttlSeconds, l1TtlSeconds)))
+                .recordStats()
+                .build();
+        this.l2 = l2;
+        this.eventPublisher = eventPublisher;
+        this.l2Ttl = Duration.ofSeconds(ttlSeconds);
+        l2.subscribe(this::onInvalidationMessage);
+        // 一级缓存的命中率、淘汰数 (cache_gets_total 等)
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "answer");
+    }
+
+    /**
+     * 由问题文本生成缓存键 (归一化后的问题，忽略空格、标点、全半角和大小写差异)
+     */
+    public static String keyOf(String question) {
+        return TextNormalizer.normalize(question);
+    }
+
+    /**
+     * 大模型生成答案的缓存键：不同模型的回答分开缓存
+     */
+    public static String llmKeyOf(String question, String modelType) {
+        return "llm:" + modelType + ":" + keyOf(question);
+    }
+
+    public Optional<String> get(String key) {
+        CachedAnswer cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return Optional.of(cached.getAnswer());
+        }
+        Optional<CachedAnswer> remote = l2.get(key);
+        if (remote.isPresent()) {
+            l2HitCount.incrementAndGet();
+            cache.put(key, remote.get());
+            return Optional.of(remote.get().getAnswer());
+        }
+        l2MissCount.incrementAndGet();
+        return Optional.empty();
+    }
+
+    public void put(String key, String answer) {
+        put(key, answer, null);
+    }
+
+    /**
+     * 写入两级缓存，并记录答案来源的知识库条目，条目变化时可一并失效
+     */
+    public void put(String key, String answer, Long knowledgeId) {
+        CachedAnswer cached = new CachedAnswer(answer, knowledgeId);
+        cache.put(key, cached);
+        l2.put(key, cached, l2Ttl);
+    }
+
+    /**
+     * 使单个问题的缓存失效 (两级缓存，并通知其他节点)
+     */
+    public void invalidate(String key) {
+        cache.invalidate(key);
+        l2.evict(key);
+        l2.publishInvalidation(new InvalidationMessage(nodeId, InvalidationMessage.Type.KEY, key));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+        l2.evictAll();
+        l2.publishInvalidation(new InvalidationMessage(nodeId, InvalidationMessage.Type.ALL, null));
+    }
+
+    /**
+     * 知识库条目变化时，让新旧问题以及所有模糊匹配到该条目的缓存都失效，避免继续返回过期答案。
+     * 知识库修改频率很低，这里直接遍历本地缓存即可。
+     * 事务提交后再广播，保证其他节点收到消息时能从数据库读到新数据。
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onKnowledgeChanged(KnowledgeChangedEvent event) {
+        invalidate(keyOf(event.getQuestion()));
+        invalidate(keyOf(event.getPreviousQuestion()));
+        Long knowledgeId = event.getKnowledgeId();
+        if (knowledgeId != null) {
+            evictLocalByKnowledgeId(knowledgeId);
+            l2.evictByKnowledgeId(knowledgeId);
+            l2.publishInvalidation(new InvalidationMessage(nodeId, InvalidationMessage.Type.KNOWLEDGE, knowledgeId.toString()));
+        }
+    }
+
+    /**
+     * 批量导入的一批条目已提交：被更新的条目按新旧问题和条目ID失效 (整批只遍历一次本地缓存)，
+     * 新增的条目不会有来源于它们的缓存；整批条目ID合并为一条消息通知其他节点更新索引
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onKnowledgeBatchChanged(KnowledgeBatchChangedEvent event) {
+        Set<Long> updatedIds = new HashSet<>();
+        for (Knowledge knowledge : event.getUpdated()) {
+            String key = keyOf(knowledge.getQuestion());
+            cache.invalidate(key);
+            l2.evict(key);
+            l2.evictByKnowledgeId(knowledge.getId());
+            updatedIds.add(knowledge.getId());
+        }
+        if (!updatedIds.isEmpty()) {
+            cache.asMap().values().removeIf(cached -> updatedIds.contains(cached.getKnowledgeId()));
+        }
+        StringJoiner ids = new StringJoiner(",");
+        for (Knowledge knowledge : event.getInserted()) {
+            ids.add(knowledge.getId().toString());
+        }
+        for (Knowledge knowledge : event.getUpdated()) {
+            ids.add(knowledge.getId().toString());
+        }
+        if (ids.length() > 0) {
+            l2.publishInvalidation(new InvalidationMessage(nodeId, InvalidationMessage.Type.KNOWLEDGE_BATCH, ids.toString()));
+        }
+    }
+
+    /**
+     * 处理其他节点发来的失效消息：只清理本地一级缓存，二级缓存已由发送方清理
+     */
+    private void onInvalidationMessage(InvalidationMessage message) {
+        if (nodeId.equals(message.getOriginNode())) {
+            return;
+        }
+        switch (message.getType()) {
+            case KEY:
+                cache.invalidate(message.getValue());
+                break;
+            case KNOWLEDGE:
+                Long knowledgeId = Long.valueOf(message.getValue());
+                evictLocalByKnowledgeId(knowledgeId);
+                // 通知本节点的知识库索引从数据库重新加载该条目
+                eventPublisher.publishEvent(new RemoteKnowledgeChangedEvent(knowledgeId));
+                break;
+            case KNOWLEDGE_BATCH:
+                List<Long> knowledgeIds = new ArrayList<>();
+                for (String id : message.getValue().split(",")) {
+                    knowledgeIds.add(Long.valueOf(id));
+                }
+                Set<Long> idSet = new HashSet<>(knowledgeIds);
+                cache.asMap().values().removeIf(cached -> idSet.contains(cached.getKnowledgeId()));
+                eventPublisher.publishEvent(new RemoteKnowledgeBatchChangedEvent(knowledgeIds));
+                break;
+            case ALL:
+                cache.invalidateAll();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void evictLocalByKnowledgeId(Long knowledgeId) {
+        cache.asMap().values().removeIf(cached -> knowledgeId.equals(cached.getKnowledgeId()));
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * 以Map形式导出命中/未命中/淘汰计数，便于接口直接返回
+     */
+    public Map<String, Object> statsSnapshot() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("size", cache.estimatedSize());
+        snapshot.put("hitCount", stats.hitCount());
+        snapshot.put("missCount", stats.missCount());
+        snapshot.put("hitRate", stats.hitRate());
+        snapshot.put("evictionCount", stats.evictionCount());
+        snapshot.put("evictionWeight", stats.evictionWeight());
+        snapshot.put("l2Type", l2.getClass().getSimpleName());
+        snapshot.put("l2HitCount", l2HitCount.get());
+        snapshot.put("l2MissCount", l2MissCount.get());
+        return snapshot;
+    }
+}
@@ -0,0 +1,38 @@
+package com.xiaomiproject.service.cache;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * 问答缓存的二级 (跨节点共享) 存储，以及节点间的失效通知通道。
+ * 生产环境使用 Redis 实现；未启用 Redis 时使用进程内实现代替，便于单机运行和测试。
+ */
+public interface AnswerCacheL2 {
+
+    Optional<CachedAnswer> get(String key);
+
+    /**
+     * 写入缓存；答案来源于知识库条目时同时登记反向关系，条目变化时可按条目批量删除
+     */
+    void put(String key, CachedAnswer answer, Duration ttl);
+
+    void evict(String key);
+
+    /**
+     * 删除所有来源于指定知识库条目的缓存
+     */
+    void evictByKnowledgeId(Long knowledgeId);
+
+    void evictAll();
+
+    /**
+     * 向所有节点广播失效消息 (包括本节点，接收方自行忽略自己发出的消息)
+     */
+    void publishInvalidation(InvalidationMessage message);
+
+    /**
+     * 订阅其他节点发出的失效消息
+     */
+    void subscribe(Consumer<InvalidationMessage> listener);
+}
@@ -0,0 +1,60 @@
+package com.xiaomiproject.service.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 把本地来源 (缓存、知识库) 的完整答案拆成小段，按与大模型回答相同的方式逐段推送，
+ * 前端无需区分答案来源。可以设置段间隔模拟逐字输出，整段回放的总时长不超过 max-duration-ms。
+ */
+@Component
+public class AnswerReplayer {
+
+    // 每段的字符数 (按 Unicode 码点计)，0 表示整段一次推送
+    @Value("${chat.replay.chunk-chars:8}")
+    private int chunkChars;
+
+    // 段间隔 (毫秒)，0 表示不限速
+    @Value("${chat.replay.interval-ms:0}")
+    private long intervalMs;
+
+    @Value("${chat.replay.max-duration-ms:3000}")
+    private long maxDurationMs;
+
+    public Flux<String> replay(String answer) {
+        List<String> chunks = split(answer);
+        if (intervalMs <= 0 || chunks.size() <= 1) {
+            return Flux.fromIterable(chunks);
+        }
+        long interval = Math.min(intervalMs, maxDurationMs / (chunks.size() - 1));
+        if (interval <= 0) {
+            return Flux.fromIterable(chunks);
+        }
+        // 第一段立即发出，其后按间隔发出 (delayElements 遵循下游的请求量)
+        return Flux.concat(Flux.just(chunks.get(0)),
+                Flux.fromIterable(chunks.subList(1, chunks.size())).delayElements(Duration.ofMillis(interval)));
+    }
+
+    private List<String> split(String answer) {
+        if (chunkChars <= 0 || answer.length() <= chunkChars) {
+            return Collections.singletonList(answer);
+        }
+        List<String> chunks = new ArrayList<>(answer.length() / chunkChars + 1);
+        int start = 0;
+        while (start < answer.length()) {
+            int end = start;
+            for (int n = 0; n < chunkChars && end < answer.length(); n++) {
+                end += Character.charCount(answer.codePointAt(end));
+            }
+            chunks.add(answer.substring(start, end));
+            start = end;
+        }
+        return chunks;
+    }
+}
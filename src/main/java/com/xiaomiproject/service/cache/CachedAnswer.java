@@ -0,0 +1,30 @@
+package com.xiaomiproject.service.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 缓存值：答案文本，以及来源知识库条目ID (由大模型生成时为null)
+ */
+@Data
+@AllArgsConstructor
+public class CachedAnswer {
+    private String answer;
+    private Long knowledgeId;
+
+    /**
+     * 编码为单个字符串以便存入 Redis，格式: 知识库条目ID(可为空)|答案
+     */
+    public String encode() {
+        return (knowledgeId == null ? "" : knowledgeId.toString()) + "|" + answer;
+    }
+
+    public static CachedAnswer decode(String raw) {
+        int separator = raw.indexOf('|');
+        if (separator < 0) {
+            return new CachedAnswer(raw, null);
+        }
+        String id = raw.substring(0, separator);
+        return new CachedAnswer(raw.substring(separator + 1), id.isEmpty() ? null : Long.valueOf(id));
+    }
+}
@@ -0,0 +1,183 @@
+package com.xiaomiproject.service.cache;
+
+import com.xiaomiproject.repository.GeneratedAnswerJdbcRepository;
+import com.xiaomiproject.service.knowledge.TextNormalizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 持久化的大模型答案缓存 (generated_answers 表)，按归一化问题和模型类型保存，重启和节点扩容后仍然有效。
+ * <p>
+ * 位于 {@link AnswerCache} 之后：内存缓存未命中时查询本表，命中后回填内存缓存。
+ * 条目有有效期 (ttl-hours)，总条数超过 max-entries 时定期淘汰最久未命中的条目；
+ * 命中次数先在内存中累计，定期批量写回。数据库异常时按未命中处理，不影响问答。
+ */
+@Component
+public class GeneratedAnswerStore {
+
+    // 清理时每条 DELETE 语句最多删除的行数
+    private static final int DELETE_CHUNK = 1000;
+
+    @Autowired
+    private GeneratedAnswerJdbcRepository repository;
+
+    @Autowired
+    private Scheduler chatBlockingScheduler;
+
+    @Value("${chat.cache.generated.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.cache.generated.ttl-hours:72}")
+    private long ttlHours;
+
+    @Value("${chat.cache.generated.max-entries:100000}")
+    private long maxEntries;
+
+    // 超过该长度的答案不保存 (多为长篇解释，复用价值低)
+    @Value("${chat.cache.generated.max-answer-chars:8000}")
+    private int maxAnswerChars;
+
+    // 条目ID -> 尚未写回的命中次数
+    private final Map<Long, Integer> pendingHits = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong saveCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    /**
+     * 查找该问题、该模型已生成过的答案 (阻塞，须在阻塞线程上调用)
+     */
+    public Optional<String> lookup(String question, String modelType) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        String hash = TextNormalizer.questionHash(question);
+        if (hash == null) {
+            return Optional.empty();
+        }
+        GeneratedAnswerJdbcRepository.Hit hit;
+        try {
+            hit = repository.find(hash, modelType, LocalDateTime.now());
+        } catch (DataAccessException e) {
+            errorCount.incrementAndGet();
+            System.err.println("查询持久化答案缓存失败: " + e.getMessage());
+            return Optional.empty();
+        }
+        if (hit == null) {
+            missCount.incrementAndGet();
+            return Optional.empty();
+        }
+        hitCount.incrementAndGet();
+        pendingHits.merge(hit.id, 1, Integer::sum);
+        return Optional.of(hit.answer);
+    }
+
+    /**
+     * 保存一个完整生成的答案；在 chatBlockingScheduler 上异步写库，可以在响应式线程上调用
+     */
+    public void save(String question, String answer, String modelType) {
+        if (!enabled || answer == null || answer.isEmpty() || answer.length() > maxAnswerChars) {
+            return;
+        }
+        String hash = TextNormalizer.questionHash(question);
+        if (hash == null) {
+            return;
+        }
+        Mono.fromRunnable(() -> {
+                    LocalDateTime now = LocalDateTime.now();
+                    repository.upsert(hash, modelType, question, answer, now, now.plusHours(ttlHours));
+                    saveCount.incrementAndGet();
+                })
+                .subscribeOn(chatBlockingScheduler)
+                .subscribe(null, e -> {
+                    errorCount.incrementAndGet();
+                    System.err.println("保存持久化答案缓存失败: " + e.getMessage());
+                });
+    }
+
+    /**
+     * 定期把累计的命中次数批量写回 (淘汰时按最后命中时间排序)
+     */
+    @Scheduled(fixedDelayString = "${chat.cache.generated.hit-flush-interval-ms:10000}")
+    @PreDestroy
+    public void flushHits() {
+        if (pendingHits.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> hits = new HashMap<>();
+        for (Long id : pendingHits.keySet()) {
+            Integer count = pendingHits.remove(id);
+            if (count != null) {
+                hits.put(id, count);
+            }
+        }
+        try {
+            repository.recordHits(hits, LocalDateTime.now());
+        } catch (DataAccessException e) {
+            errorCount.incrementAndGet();
+            System.err.println("写回答案缓存命中次数失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 定期删除过期条目，并把总条数控制在上限以内
+     */
+    @Scheduled(fixedDelayString = "${chat.cache.generated.cleanup-interval-ms:600000}")
+    public void cleanup() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int expired = repository.deleteExpired(LocalDateTime.now(), DELETE_CHUNK);
+            expiredCount.addAndGet(expired);
+            int evicted = maxEntries > 0 ? repository.trimToSize(maxEntries, DELETE_CHUNK) : 0;
+            evictedCount.addAndGet(evicted);
+            if (expired + evicted > 0) {
+                System.out.println("持久化答案缓存清理: 过期 " + expired + " 条，超出上限淘汰 " + evicted + " 条");
+            }
+        } catch (DataAccessException e) {
+            errorCount.incrementAndGet();
+            System.err.println("清理持久化答案缓存失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 清除某个模型 (为 null 时为全部模型) 已保存的答案
+     * @return 删除的条数
+     */
+    public int purge(String modelType) {
+        return repository.purge(modelType, DELETE_CHUNK);
+    }
+
+    public Map<String, Object> statsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("size", enabled ? repository.count() : 0);
+        snapshot.put("maxEntries", maxEntries);
+        snapshot.put("ttlHours", ttlHours);
+        snapshot.put("hitCount", hitCount.get());
+        snapshot.put("missCount", missCount.get());
+        snapshot.put("saveCount", saveCount.get());
+        snapshot.put("expiredCount", expiredCount.get());
+        snapshot.put("evictedCount", evictedCount.get());
+        snapshot.put("errorCount", errorCount.get());
+        return snapshot;
+    }
+}
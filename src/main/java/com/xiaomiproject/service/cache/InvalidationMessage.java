@@ -0,0 +1,39 @@
+package com.xiaomiproject.service.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 节点间的缓存失效消息，格式: 来源节点|类型|值
+ */
+@Data
+@AllArgsConstructor
+public class InvalidationMessage {
+
+    public enum Type {
+        // 单个缓存键失效
+        KEY,
+        // 某个知识库条目被修改或删除
+        KNOWLEDGE,
+        // 批量导入的一批知识库条目，值为逗号分隔的条目ID
+        KNOWLEDGE_BATCH,
+        // 全部失效
+        ALL
+    }
+
+    private String originNode;
+    private Type type;
+    private String value;
+
+    public String encode() {
+        return originNode + "|" + type.name() + "|" + (value == null ? "" : value);
+    }
+
+    public static InvalidationMessage decode(String raw) {
+        String[] parts = raw.split("\\|", 3);
+        if (parts.length < 3) {
+            throw new IllegalArgumentException("Malformed invalidation message: " + raw);
+        }
+        return new InvalidationMessage(parts[0], Type.valueOf(parts[1]), parts[2].isEmpty() ? null : parts[2]);
+    }
+}
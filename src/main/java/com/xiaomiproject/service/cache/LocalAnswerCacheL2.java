@@ -0,0 +1,97 @@
+package com.xiaomiproject.service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 进程内的二级缓存替身：语义与 Redis 实现一致 (按条目TTL、按知识库条目删除、广播失效)，
+ * 多个 AnswerCache 共享同一个实例即可在单进程内模拟多节点，用于本地联调和测试。
+ */
+@Component
+@ConditionalOnProperty(name = "chat.cache.l2.type", havingValue = "local")
+public class LocalAnswerCacheL2 implements AnswerCacheL2 {
+
+    private static final class Entry {
+        final CachedAnswer answer;
+        final long ttlNanos;
+
+        Entry(CachedAnswer answer, Duration ttl) {
+            this.answer = answer;
+            this.ttlNanos = ttl.toNanos();
+        }
+    }
+
+    private final Cache<String, Entry> store;
+    private final List<Consumer<InvalidationMessage>> listeners = new CopyOnWriteArrayList<>();
+
+    public LocalAnswerCacheL2(@Value("${chat.cache.answer.max-weight:4000000}") long maxWeight) {
+        this.store = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((String key, Entry value) -> key.length() + value.answer.getAnswer().length())
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry value, long currentTime) {
+                        return value.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry value, long currentTime, long currentDuration) {
+                        return value.ttlNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public Optional<CachedAnswer> get(String key) {
+        Entry entry = store.getIfPresent(key);
+        return entry == null ? Optional.empty() : Optional.of(entry.answer);
+    }
+
+    @Override
+    public void put(String key, CachedAnswer answer, Duration ttl) {
+        store.put(key, new Entry(answer, ttl));
+    }
+
+    @Override
+    public void evict(String key) {
+        store.invalidate(key);
+    }
+
+    @Override
+    public void evictByKnowledgeId(Long knowledgeId) {
+        store.asMap().values().removeIf(entry -> knowledgeId.equals(entry.answer.getKnowledgeId()));
+    }
+
+    @Override
+    public void evictAll() {
+        store.invalidateAll();
+    }
+
+    @Override
+    public void publishInvalidation(InvalidationMessage message) {
+        for (Consumer<InvalidationMessage> listener : listeners) {
+            listener.accept(message);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<InvalidationMessage> listener) {
+        listeners.add(listener);
+    }
+}
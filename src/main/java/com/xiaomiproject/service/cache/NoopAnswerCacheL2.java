@@ -0,0 +1,45 @@
+package com.xiaomiproject.service.cache;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * 单节点部署时的默认实现：不使用二级缓存，只依赖本地一级缓存
+ */
+@Component
+@ConditionalOnProperty(name = "chat.cache.l2.type", havingValue = "none", matchIfMissing = true)
+public class NoopAnswerCacheL2 implements AnswerCacheL2 {
+
+    @Override
+    public Optional<CachedAnswer> get(String key) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void put(String key, CachedAnswer answer, Duration ttl) {
+    }
+
+    @Override
+    public void evict(String key) {
+    }
+
+    @Override
+    public void evictByKnowledgeId(Long knowledgeId) {
+    }
+
+    @Override
+    public void evictAll() {
+    }
+
+    @Override
+    public void publishInvalidation(InvalidationMessage message) {
+    }
+
+    @Override
+    public void subscribe(Consumer<InvalidationMessage> listener) {
+    }
+}
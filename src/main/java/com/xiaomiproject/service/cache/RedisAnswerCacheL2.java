@@ -0,0 +1,132 @@
+package com.xiaomiproject.service.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 基于 Redis 的二级缓存：答案存为带TTL的字符串，知识库条目到缓存键的反向关系存为Set，
+ * 失效消息通过 Redis Pub/Sub 广播。Redis 不可用时降级为未命中，不影响主流程。
+ */
+@Component
+@ConditionalOnProperty(name = "chat.cache.l2.type", havingValue = "redis")
+public class RedisAnswerCacheL2 implements AnswerCacheL2 {
+
+    private static final String KEY_PREFIX = "chat:answer:";
+    private static final String KNOWLEDGE_PREFIX = "chat:answer-kb:";
+    public static final String INVALIDATION_CHANNEL = "chat:answer:invalidate";
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Override
+    public Optional<CachedAnswer> get(String key) {
+        try {
+            return Optional.ofNullable(redisTemplate.opsForValue().get(KEY_PREFIX + key)).map(CachedAnswer::decode);
+        } catch (DataAccessException e) {
+            System.err.println("Redis二级缓存读取失败，按未命中处理: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void put(String key, CachedAnswer answer, Duration ttl) {
+        try {
+            redisTemplate.opsForValue().set(KEY_PREFIX + key, answer.encode(), ttl);
+            if (answer.getKnowledgeId() != null) {
+                String tagKey = KNOWLEDGE_PREFIX + answer.getKnowledgeId();
+                redisTemplate.opsForSet().add(tagKey, key);
+                redisTemplate.expire(tagKey, ttl);
+            }
+        } catch (DataAccessException e) {
+            System.err.println("Redis二级缓存写入失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void evict(String key) {
+        try {
+            redisTemplate.delete(KEY_PREFIX + key);
+        } catch (DataAccessException e) {
+            System.err.println("Redis二级缓存删除失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void evictByKnowledgeId(Long knowledgeId) {
+        try {
+            String tagKey = KNOWLEDGE_PREFIX + knowledgeId;
+            Set<String> keys = redisTemplate.opsForSet().members(tagKey);
+            List<String> toDelete = new ArrayList<>();
+            toDelete.add(tagKey);
+            if (keys != null) {
+                for (String key : keys) {
+                    toDelete.add(KEY_PREFIX + key);
+                }
+            }
+            redisTemplate.delete(toDelete);
+        } catch (DataAccessException e) {
+            System.err.println("Redis二级缓存删除失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void evictAll() {
+        try {
+            // 用 SCAN 分批查找，避免 KEYS 命令阻塞 Redis
+            List<String> keys = redisTemplate.execute((RedisCallback<List<String>>) connection -> {
+                List<String> found = new ArrayList<>();
+                ScanOptions options = ScanOptions.scanOptions().match("chat:answer*").count(1000).build();
+                try (Cursor<byte[]> cursor = connection.scan(options)) {
+                    while (cursor.hasNext()) {
+                        found.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                    }
+                }
+                return found;
+            });
+            if (keys != null && !keys.isEmpty()) {
+                redisTemplate.delete(keys);
+            }
+        } catch (DataAccessException e) {
+            System.err.println("Redis二级缓存清空失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void publishInvalidation(InvalidationMessage message) {
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, message.encode());
+        } catch (DataAccessException e) {
+            System.err.println("缓存失效消息发送失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<InvalidationMessage> listener) {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            try {
+                listener.accept(InvalidationMessage.decode(new String(message.getBody(), StandardCharsets.UTF_8)));
+            } catch (IllegalArgumentException e) {
+                System.err.println("忽略无法解析的缓存失效消息: " + e.getMessage());
+            }
+        }, new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+}
@@ -0,0 +1,139 @@
+package com.xiaomiproject.service.context;
+
+import com.xiaomiproject.dto.Message;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 一个对话的滚动上下文窗口 (线程安全)。
+ * 保存最近几轮完整的问答；超出窗口 token 上限的最早几轮折叠为摘要要点
+ * (问题和回答开头各截取一小段)，摘要同样有 token 上限，超出时丢弃最早的要点。
+ * 每轮结束后增量追加，不需要重新读取历史。
+ */
+public class ConversationContext {
+
+    private static final String SUMMARY_PREFIX = "以下是本次对话较早内容的要点，供回答时参考：";
+    // 折叠为要点时问题和回答各保留的字符数
+    private static final int POINT_QUESTION_CHARS = 60;
+    private static final int POINT_ANSWER_CHARS = 100;
+
+    private final Long userId;
+    private final Deque<Turn> turns = new ArrayDeque<>();
+    private final Deque<String> summaryPoints = new ArrayDeque<>();
+    private int turnTokens;
+    private int summaryTokens;
+
+    public ConversationContext(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public synchronized boolean isEmpty() {
+        return turns.isEmpty() && summaryPoints.isEmpty();
+    }
+
+    /**
+     * 追加一轮问答，并把超出窗口的最早几轮折叠为摘要要点 (最近一轮总是完整保留)
+     */
+    public synchronized void append(String question, String answer, int maxWindowTokens, int maxSummaryTokens) {
+        Turn turn = new Turn(question, answer);
+        turns.addLast(turn);
+        turnTokens += turn.tokens;
+        while (turnTokens > maxWindowTokens && turns.size() > 1) {
+            Turn oldest = turns.removeFirst();
+            turnTokens -= oldest.tokens;
+            addSummaryPoint(oldest, maxSummaryTokens);
+        }
+    }
+
+    private void addSummaryPoint(Turn turn, int maxSummaryTokens) {
+        String point = "- 问: " + abbreviate(turn.question, POINT_QUESTION_CHARS)
+                + " 答: " + abbreviate(turn.answer, POINT_ANSWER_CHARS);
+        summaryPoints.addLast(point);
+        summaryTokens += TokenEstimator.estimate(point);
+        while (summaryTokens > maxSummaryTokens && !summaryPoints.isEmpty()) {
+            summaryTokens -= TokenEstimator.estimate(summaryPoints.removeFirst());
+        }
+    }
+
+    /**
+     * 生成发给模型的消息列表：[摘要] + 最近几轮 + 当前问题，总量不超过 budget。
+     * 预算不足时优先保留最近的问答，其次是摘要；当前问题总是保留。
+     */
+    public synchronized List<Message> toMessages(String question, int budget) {
+        int remaining = budget - TokenEstimator.estimateMessage(question);
+        List<Turn> included = new ArrayList<>();
+        Iterator<Turn> newestFirst = turns.descendingIterator();
+        while (newestFirst.hasNext()) {
+            Turn turn = newestFirst.next();
+            if (turn.tokens > remaining) {
+                break;
+            }
+            included.add(turn);
+            remaining -= turn.tokens;
+        }
+        Collections.reverse(included);
+
+        List<Message> messages = new ArrayList<>(included.size() * 2 + 2);
+        if (!summaryPoints.isEmpty()
+                && summaryTokens + TokenEstimator.estimateMessage(SUMMARY_PREFIX) <= remaining) {
+            StringBuilder summary = new StringBuilder(SUMMARY_PREFIX);
+            for (String point : summaryPoints) {
+                summary.append('\n').append(point);
+            }
+            messages.add(new Message("system", summary.toString()));
+        }
+        for (Turn turn : included) {
+            messages.add(new Message("user", turn.question));
+            messages.add(new Message("assistant", turn.answer));
+        }
+        messages.add(new Message("user", question));
+        return messages;
+    }
+
+    /**
+     * 缓存权重：当前占用的 token 数
+     */
+    public synchronized int weight() {
+        return Math.max(1, turnTokens + summaryTokens);
+    }
+
+    public synchronized int turnCount() {
+        return turns.size();
+    }
+
+    private static String abbreviate(String text, int maxChars) {
+        if (text == null) {
+            return "";
+        }
+        String flat = text.replace('\n', ' ').trim();
+        if (flat.length() <= maxChars) {
+            return flat;
+        }
+        int end = maxChars;
+        if (Character.isHighSurrogate(flat.charAt(end - 1))) {
+            end--;
+        }
+        return flat.substring(0, end) + "…";
+    }
+
+    private static final class Turn {
+        final String question;
+        final String answer;
+        final int tokens;
+
+        Turn(String question, String answer) {
+            this.question = question;
+            this.answer = answer == null ? "" : answer;
+            this.tokens = TokenEstimator.estimateMessage(question) + TokenEstimator.estimateMessage(this.answer);
+        }
+    }
+}
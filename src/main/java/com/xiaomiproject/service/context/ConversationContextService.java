@@ -0,0 +1,171 @@
+package com.xiaomiproject.service.context;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.xiaomiproject.dto.Message;
+import com.xiaomiproject.entity.ConversationHistory;
+import com.xiaomiproject.repository.HistoryJdbcRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多轮对话上下文：每个 conversationId 在内存中保留一个滚动窗口 ({@link ConversationContext})。
+ * <p>
+ * 窗口按占用的 token 数计入 Caffeine 缓存的总权重，总量和空闲时间都有上限，超出时淘汰最久未用的对话。
+ * 每轮回答结束后增量追加；只有窗口不在内存中 (重启、被淘汰或由其他节点处理) 时，
+ * 才按 (conversation_id, timestamp) 索引读取最近几轮历史重建一次。
+ * 发送给模型时按各模型的 token 预算裁剪。窗口记录所属用户，
+ * 别人的对话ID不会带出其中的内容。
+ */
+@Service
+public class ConversationContextService {
+
+    private static final String MODEL_BUDGET_PREFIX = "chat.context.model-token-budget.";
+
+    @Autowired
+    private HistoryJdbcRepository historyJdbcRepository;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.context.enabled:true}")
+    private boolean enabled;
+
+    // 所有对话窗口合计的 token 上限
+    @Value("${chat.context.max-total-tokens:20000000}")
+    private long maxTotalTokens;
+
+    @Value("${chat.context.idle-minutes:60}")
+    private long idleMinutes;
+
+    // 单个对话窗口内完整问答的 token 上限，超出的最早几轮折叠为摘要
+    @Value("${chat.context.window-tokens:6000}")
+    private int windowTokens;
+
+    @Value("${chat.context.summary-tokens:500}")
+    private int summaryTokens;
+
+    // 未单独配置的模型使用的发送预算
+    @Value("${chat.context.token-budget:3000}")
+    private int defaultBudget;
+
+    // 重建窗口时最多读取的历史轮数
+    @Value("${chat.context.load-turns:20}")
+    private int loadTurns;
+
+    private Cache<String, ConversationContext> contexts;
+    private final Map<String, Integer> modelBudgets = new ConcurrentHashMap<>();
+    private final AtomicLong reloads = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        contexts = Caffeine.newBuilder()
+                .maximumWeight(maxTotalTokens)
+                .weigher((String key, ConversationContext context) -> context.weight())
+                .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, contexts, "conversation-context");
+    }
+
+    /**
+     * 该对话此前是否已有问答 (有上下文时回答依赖上下文，不能复用按问题缓存的大模型答案)
+     */
+    public boolean hasContext(String conversationId, Long userId) {
+        ConversationContext context = contextOf(conversationId, userId);
+        return context != null && !context.isEmpty();
+    }
+
+    /**
+     * 生成发给模型的消息列表 (含当前问题)，总量不超过该模型的 token 预算
+     */
+    public List<Message> messagesFor(String conversationId, Long userId, String question, String modelType) {
+        ConversationContext context = contextOf(conversationId, userId);
+        if (context == null) {
+            return Collections.singletonList(new Message("user", question));
+        }
+        return context.toMessages(question, budgetOf(modelType));
+    }
+
+    /**
+     * 一轮问答结束后追加到窗口。
+     * 只更新内存中已有的窗口 (回答前已加载过)，可能在响应式线程上调用，这里不访问数据库；
+     * 窗口已被淘汰时下次使用会从历史记录重建
+     */
+    public void append(String conversationId, Long userId, String question, String answer) {
+        if (!enabled || conversationId == null || userId == null) {
+            return;
+        }
+        ConversationContext context = contexts.getIfPresent(conversationId);
+        if (context == null || !userId.equals(context.getUserId())) {
+            // 对话ID属于其他用户时不混入对方的窗口
+            return;
+        }
+        context.append(question, answer, windowTokens, summaryTokens);
+        // 重新放入以更新缓存权重
+        contexts.put(conversationId, context);
+    }
+
+    public void invalidate(String conversationId) {
+        contexts.invalidate(conversationId);
+    }
+
+    /**
+     * 取对话窗口，不在内存中时从数据库重建；对话不属于该用户时返回 null
+     */
+    private ConversationContext contextOf(String conversationId, Long userId) {
+        if (!enabled || conversationId == null || userId == null) {
+            return null;
+        }
+        ConversationContext context = contexts.get(conversationId, id -> load(id, userId));
+        return userId.equals(context.getUserId()) ? context : null;
+    }
+
+    /**
+     * 从热表重建窗口；窗口的所属用户取自历史记录，新对话则属于第一个使用它的用户
+     */
+    private ConversationContext load(String conversationId, Long userId) {
+        reloads.incrementAndGet();
+        List<ConversationHistory> turns = historyJdbcRepository.findRecentTurns(conversationId, loadTurns);
+        ConversationContext context = new ConversationContext(turns.isEmpty() ? userId : turns.get(0).getUserId());
+        for (ConversationHistory turn : turns) {
+            context.append(turn.getQuestion(), turn.getAnswer(), windowTokens, summaryTokens);
+        }
+        return context;
+    }
+
+    private int budgetOf(String modelType) {
+        return modelBudgets.computeIfAbsent(modelType,
+                model -> environment.getProperty(MODEL_BUDGET_PREFIX + model, Integer.class, defaultBudget));
+    }
+
+    public Map<String, Object> statsSnapshot() {
+        CacheStats stats = contexts.stats();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("conversations", contexts.estimatedSize());
+        snapshot.put("hitCount", stats.hitCount());
+        snapshot.put("missCount", stats.missCount());
+        snapshot.put("reloads", reloads.get());
+        snapshot.put("evictionCount", stats.evictionCount());
+        snapshot.put("evictionWeight", stats.evictionWeight());
+        return snapshot;
+    }
+}
@@ -0,0 +1,48 @@
+package com.xiaomiproject.service.context;
+
+/**
+ * 粗略估算文本的 token 数，用于控制上下文长度，不依赖具体模型的分词器。
+ * 中日韩文字按每字 1 个 token 计，其他字符按每 4 个 1 个 token 计，
+ * 估算值通常略高于实际值，按它控制预算不会超出模型的上下文长度。
+ */
+public final class TokenEstimator {
+
+    // 每条消息的角色、分隔符等固定开销
+    public static final int MESSAGE_OVERHEAD = 4;
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            if (isCjk(cp)) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    /**
+     * 作为一条消息发送时的 token 数
+     */
+    public static int estimateMessage(String text) {
+        return estimate(text) + MESSAGE_OVERHEAD;
+    }
+
+    private static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,179 @@
+package com.xiaomiproject.service.history;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiaomiproject.entity.ConversationArchive;
+import com.xiaomiproject.entity.ConversationHistory;
+import com.xiaomiproject.repository.ConversationArchiveRepository;
+import com.xiaomiproject.repository.ConversationSummaryRepository;
+import com.xiaomiproject.repository.HistoryJdbcRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * 对话详情：校验归属后，把数据库游标读到的每一行直接写成 JSON 输出，
+ * 不构建实体列表，再长的对话内存占用也是常量。
+ * 已归档的部分先从归档文件中按段解压读出，热表中的问答接在其后。
+ */
+@Service
+public class ConversationDetailService {
+
+    @Autowired
+    private ConversationSummaryRepository summaryRepository;
+
+    @Autowired
+    private HistoryJdbcRepository historyJdbcRepository;
+
+    @Autowired
+    private ConversationArchiveRepository archiveRepository;
+
+    @Autowired
+    private HistoryArchiver historyArchiver;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${chat.history.max-page-size:200}")
+    private int maxPageSize;
+
+    public boolean isOwner(String conversationId, Long userId) {
+        return summaryRepository.existsByConversationIdAndUserId(conversationId, userId);
+    }
+
+    /**
+     * 生成对话详情的响应体。
+     * 不传 limit 时输出全部轮次的 JSON 数组 (与原接口格式一致)；
+     * 传 limit 时输出 {"items":[...],"nextCursor":"..."}，nextCursor 为 null 表示没有更多。
+     * @throws IllegalArgumentException 游标格式不正确
+     */
+    public StreamingResponseBody streamTurns(String conversationId, String cursor, Integer limit) {
+        HistoryCursor position = cursor == null || cursor.isEmpty() ? null : HistoryCursor.decode(cursor);
+        LocalDateTime afterTime = position == null ? null : position.time;
+        Long afterId = position == null ? null : Long.valueOf(position.key);
+        boolean paged = limit != null;
+        int size = paged ? Math.max(1, Math.min(limit, maxPageSize)) : 0;
+
+        // 归档索引每个对话只有寥寥几行，在请求线程上查出
+        List<ConversationArchive> archives = archiveRepository.findByConversationIdOrderByFirstTimeAsc(conversationId);
+        return out -> {
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+                if (paged) {
+                    json.writeStartObject();
+                    json.writeFieldName("items");
+                }
+                json.writeStartArray();
+                TurnWriter writer = new TurnWriter(json, size);
+                for (ConversationArchive archive : archives) {
+                    if (writer.hasMore) {
+                        break;
+                    }
+                    // 整段都在游标之前，不必解压
+                    if (afterTime != null && !isAfter(archive.getLastTime(), archive.getLastHistoryId(), afterTime, afterId)) {
+                        continue;
+                    }
+                    writeArchived(archive, afterTime, afterId, writer);
+                }
+                if (!writer.hasMore) {
+                    // 分页时多读一行，用于判断是否还有下一页
+                    historyJdbcRepository.streamTurns(conversationId, afterTime, afterId,
+                            paged ? size - writer.count + 1 : 0, writer);
+                }
+                json.writeEndArray();
+                if (paged) {
+                    json.writeStringField("nextCursor", writer.nextCursor());
+                    json.writeEndObject();
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    private void writeArchived(ConversationArchive archive, LocalDateTime afterTime, Long afterId,
+                               TurnWriter writer) throws IOException {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(historyArchiver.openMember(archive), StandardCharsets.UTF_8))) {
+            String line;
+            while (!writer.hasMore && (line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                ConversationHistory turn = objectMapper.readValue(line, ConversationHistory.class);
+                if (afterTime == null || isAfter(turn.getTimestamp(), turn.getId(), afterTime, afterId)) {
+                    writer.write(turn.getId(), turn.getUserId(), turn.getQuestion(), turn.getAnswer(),
+                            turn.getTimestamp(), turn.getConversationId());
+                }
+            }
+        }
+    }
+
+    private static boolean isAfter(LocalDateTime time, long id, LocalDateTime afterTime, long afterId) {
+        int compared = time.compareTo(afterTime);
+        return compared > 0 || (compared == 0 && id > afterId);
+    }
+
+    /**
+     * 逐行写出；字段与 ConversationHistory 实体的 JSON 一致
+     */
+    private static final class TurnWriter implements RowCallbackHandler {
+        private final JsonGenerator json;
+        private final int limit;
+        private int count;
+        private boolean hasMore;
+        private LocalDateTime lastTime;
+        private long lastId;
+
+        TurnWriter(JsonGenerator json, int limit) {
+            this.json = json;
+            this.limit = limit;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            write(rs.getLong("id"), rs.getLong("user_id"), rs.getString("question"), rs.getString("answer"),
+                    rs.getTimestamp("timestamp").toLocalDateTime(), rs.getString("conversation_id"));
+        }
+
+        void write(long id, long userId, String question, String answer, LocalDateTime timestamp,
+                   String conversationId) {
+            if (limit > 0 && count >= limit) {
+                hasMore = true;
+                return;
+            }
+            lastId = id;
+            lastTime = timestamp;
+            try {
+                json.writeStartObject();
+                json.writeNumberField("id", id);
+                json.writeNumberField("userId", userId);
+                json.writeStringField("question", question);
+                json.writeStringField("answer", answer);
+                json.writeStringField("timestamp", DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(timestamp));
+                json.writeStringField("conversationId", conversationId);
+                json.writeEndObject();
+            } catch (IOException e) {
+                // 客户端断开等写出错误：中止读取
+                throw new UncheckedIOException(e);
+            }
+            count++;
+        }
+
+        String nextCursor() {
+            return hasMore ? HistoryCursor.encode(lastTime, String.valueOf(lastId)) : null;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.xiaomiproject.service.history;
+
+import com.xiaomiproject.dto.ConversationPage;
+import com.xiaomiproject.entity.ConversationSummary;
+import com.xiaomiproject.repository.ConversationSummaryRepository;
+import com.xiaomiproject.repository.HistoryJdbcRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * 对话列表查询 (基于 conversation_summary 表的 keyset 分页)
+ */
+@Service
+public class ConversationSummaryService {
+
+    @Autowired
+    private ConversationSummaryRepository summaryRepository;
+
+    @Autowired
+    private HistoryJdbcRepository historyJdbcRepository;
+
+    @Value("${chat.history.page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${chat.history.max-page-size:200}")
+    private int maxPageSize;
+
+    /**
+     * 查询一页对话摘要
+     * @param cursor 上一页返回的游标，为空表示第一页
+     * @throws IllegalArgumentException 游标格式不正确
+     */
+    public ConversationPage listPage(Long userId, String cursor, Integer limit) {
+        int size = limit == null || limit <= 0 ? defaultPageSize : Math.min(limit, maxPageSize);
+        // 多取一条用于判断是否还有下一页
+        PageRequest page = PageRequest.of(0, size + 1);
+        List<ConversationSummary> rows;
+        if (cursor == null || cursor.isEmpty()) {
+            rows = summaryRepository.findFirstPage(userId, page);
+        } else {
+            HistoryCursor position = HistoryCursor.decode(cursor);
+            rows = summaryRepository.findPageAfter(userId, position.time, position.key, page);
+        }
+        if (rows.size() <= size) {
+            return new ConversationPage(rows, null);
+        }
+        List<ConversationSummary> items = rows.subList(0, size);
+        ConversationSummary last = items.get(size - 1);
+        return new ConversationPage(items, HistoryCursor.encode(last.getLastActivity(), last.getConversationId()));
+    }
+
+    /**
+     * 升级后首次启动时，从已有的历史记录生成摘要
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        int created = historyJdbcRepository.backfillSummariesIfEmpty();
+        if (created > 0) {
+            System.out.println("已根据历史记录生成对话摘要: " + created + " 条");
+        }
+    }
+}
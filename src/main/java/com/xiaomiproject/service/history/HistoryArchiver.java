@@ -0,0 +1,303 @@
+package com.xiaomiproject.service.history;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiaomiproject.entity.ConversationArchive;
+import com.xiaomiproject.entity.ConversationHistory;
+import com.xiaomiproject.entity.ConversationSummary;
+import com.xiaomiproject.repository.HistoryJdbcRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 对话历史冷归档：热表只保留最近活跃的对话，保证其索引能常驻内存。
+ * <p>
+ * 定时任务找出最后活跃时间早于 max-age-days 的对话，把它们在热表中的问答按行写成 NDJSON、
+ * 压缩为一个 gzip 成员，追加到按月划分的归档文件 (history-yyyy-MM.ndjson.gz，按对话最后活跃月份) 中；
+ * 文件落盘后在同一事务中写入归档索引 (conversation_archive) 并删除热表中的对应行。
+ * 对话摘要保留在摘要表中，列表接口不受影响；查看详情时按索引定位 gzip 成员单独解压读取。
+ * <p>
+ * 多个 gzip 成员首尾相接仍是合法的 gzip 文件，可以直接用 zcat 查看整个月份的数据。
+ * 多节点部署时归档目录需使用共享存储，并且只在一个节点上开启定时归档。
+ */
+@Service
+public class HistoryArchiver {
+
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final String SEGMENT_PREFIX = "history-";
+    private static final String SEGMENT_SUFFIX = ".ndjson.gz";
+
+    @Autowired
+    private HistoryJdbcRepository historyJdbcRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${chat.history.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.history.archive.path:data/archive}")
+    private String archivePath;
+
+    // 最后活跃时间早于多少天的对话移入归档
+    @Value("${chat.history.archive.max-age-days:90}")
+    private int maxAgeDays;
+
+    // 每批处理的对话数，每批一个数据库事务
+    @Value("${chat.history.archive.batch-size:200}")
+    private int batchSize;
+
+    // 归档文件保留月数，超过后整个文件连同索引和摘要一起删除；0 表示永久保留
+    @Value("${chat.history.archive.retention-months:0}")
+    private int retentionMonths;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong archivedConversations = new AtomicLong();
+    private final AtomicLong archivedTurns = new AtomicLong();
+    private final AtomicLong archivedBytes = new AtomicLong();
+    private final AtomicLong purgedSegments = new AtomicLong();
+    private volatile LocalDateTime lastRunAt;
+    private volatile String lastError;
+
+    @Scheduled(cron = "${chat.history.archive.cron:0 30 3 * * *}")
+    public void scheduledArchive() {
+        if (enabled) {
+            runArchive();
+        }
+    }
+
+    /**
+     * 执行一轮归档 (同一时间只运行一个)
+     * @return 本轮归档的对话数；已有归档在运行时返回 -1
+     */
+    public int runArchive() {
+        if (!running.compareAndSet(false, true)) {
+            return -1;
+        }
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minusDays(maxAgeDays);
+            int total = 0;
+            List<ConversationSummary> candidates;
+            do {
+                candidates = historyJdbcRepository.findArchiveCandidates(cutoff, batchSize);
+                if (!candidates.isEmpty()) {
+                    total += archiveBatch(candidates);
+                }
+            } while (candidates.size() >= batchSize);
+            if (retentionMonths > 0) {
+                purgeExpiredSegments();
+            }
+            lastError = null;
+            if (total > 0) {
+                System.out.println("对话历史归档完成，本轮归档对话数: " + total);
+            }
+            return total;
+        } catch (IOException | RuntimeException e) {
+            lastError = e.toString();
+            System.err.println("对话历史归档失败: " + e.getMessage());
+            return 0;
+        } finally {
+            lastRunAt = LocalDateTime.now();
+            running.set(false);
+        }
+    }
+
+    /**
+     * 先把一批对话写入归档文件并刷盘，再提交数据库事务；
+     * 刷盘后、提交前崩溃只会在文件中留下未被索引引用的数据，下次重新归档，不会丢失问答
+     */
+    private int archiveBatch(List<ConversationSummary> candidates) throws IOException {
+        Map<String, List<ConversationSummary>> bySegment = new LinkedHashMap<>();
+        for (ConversationSummary candidate : candidates) {
+            bySegment.computeIfAbsent(segmentOf(YearMonth.from(candidate.getLastActivity())), k -> new ArrayList<>())
+                    .add(candidate);
+        }
+        Files.createDirectories(Paths.get(archivePath));
+        List<ConversationArchive> archives = new ArrayList<>(candidates.size());
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<String, List<ConversationSummary>> entry : bySegment.entrySet()) {
+            String segment = entry.getKey();
+            try (FileChannel channel = FileChannel.open(Paths.get(archivePath, segment),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                for (ConversationSummary candidate : entry.getValue()) {
+                    MemberEncoder encoder = encodeMember(candidate.getConversationId());
+                    if (encoder.turns == 0) {
+                        continue;
+                    }
+                    byte[] member = encoder.toByteArray();
+                    long offset = channel.size();
+                    ByteBuffer buffer = ByteBuffer.wrap(member);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    ConversationArchive archive = new ConversationArchive();
+                    archive.setConversationId(candidate.getConversationId());
+                    archive.setUserId(candidate.getUserId());
+                    archive.setSegment(segment);
+                    archive.setMemberOffset(offset);
+                    archive.setMemberLength(member.length);
+                    archive.setFirstTime(encoder.firstTime);
+                    archive.setLastTime(encoder.lastTime);
+                    archive.setLastHistoryId(encoder.lastId);
+                    archive.setTurnCount(encoder.turns);
+                    archive.setArchivedAt(now);
+                    archives.add(archive);
+                    archivedBytes.addAndGet(member.length);
+                }
+                channel.force(true);
+            }
+        }
+        if (archives.isEmpty()) {
+            return 0;
+        }
+        historyJdbcRepository.completeArchive(archives);
+        for (ConversationArchive archive : archives) {
+            archivedTurns.addAndGet(archive.getTurnCount());
+        }
+        archivedConversations.addAndGet(archives.size());
+        return archives.size();
+    }
+
+    /**
+     * 用数据库游标逐行读取对话，直接写入 gzip 压缩流；每行一个 ConversationHistory 的 JSON
+     */
+    private MemberEncoder encodeMember(String conversationId) throws IOException {
+        MemberEncoder encoder = new MemberEncoder();
+        try (OutputStream gzip = new GZIPOutputStream(encoder)) {
+            historyJdbcRepository.streamTurns(conversationId, null, null, 0, rs -> {
+                ConversationHistory history = new ConversationHistory();
+                history.setId(rs.getLong("id"));
+                history.setUserId(rs.getLong("user_id"));
+                history.setConversationId(rs.getString("conversation_id"));
+                history.setQuestion(rs.getString("question"));
+                history.setAnswer(rs.getString("answer"));
+                history.setTimestamp(rs.getTimestamp("timestamp").toLocalDateTime());
+                try {
+                    gzip.write(objectMapper.writeValueAsBytes(history));
+                    gzip.write('\n');
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                if (encoder.turns == 0) {
+                    encoder.firstTime = history.getTimestamp();
+                }
+                encoder.lastTime = history.getTimestamp();
+                encoder.lastId = history.getId();
+                encoder.turns++;
+            });
+        }
+        return encoder;
+    }
+
+    /**
+     * 打开一个归档段：按偏移量只读取该 gzip 成员的字节，返回解压后的 NDJSON 输入流
+     */
+    public InputStream openMember(ConversationArchive archive) throws IOException {
+        byte[] member = new byte[Math.toIntExact(archive.getMemberLength())];
+        try (FileChannel channel = FileChannel.open(Paths.get(archivePath, archive.getSegment()), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(member);
+            long position = archive.getMemberOffset();
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("归档文件不完整: " + archive.getSegment());
+                }
+                position += read;
+            }
+        }
+        return new GZIPInputStream(new ByteArrayInputStream(member));
+    }
+
+    /**
+     * 删除超过保留期的整月归档文件：先删数据库中的索引和摘要，再删文件
+     */
+    private void purgeExpiredSegments() throws IOException {
+        Path dir = Paths.get(archivePath);
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        YearMonth oldestKept = YearMonth.now().minusMonths(retentionMonths);
+        Map<YearMonth, Path> expired = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String month = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+                try {
+                    YearMonth yearMonth = YearMonth.parse(month, MONTH_FORMAT);
+                    if (yearMonth.isBefore(oldestKept)) {
+                        expired.put(yearMonth, file);
+                    }
+                } catch (DateTimeParseException e) {
+                    // 不是归档任务生成的文件，忽略
+                }
+            }
+        }
+        for (Map.Entry<YearMonth, Path> entry : expired.entrySet()) {
+            int conversations = historyJdbcRepository.purgeArchiveSegment(segmentOf(entry.getKey()));
+            Files.deleteIfExists(entry.getValue());
+            purgedSegments.incrementAndGet();
+            System.out.println("已删除过期归档 " + entry.getValue().getFileName() + "，删除对话数: " + conversations);
+        }
+    }
+
+    private static String segmentOf(YearMonth month) {
+        return SEGMENT_PREFIX + MONTH_FORMAT.format(month) + SEGMENT_SUFFIX;
+    }
+
+    public Map<String, Object> statsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("running", running.get());
+        snapshot.put("maxAgeDays", maxAgeDays);
+        snapshot.put("retentionMonths", retentionMonths);
+        snapshot.put("archivedConversations", archivedConversations.get());
+        snapshot.put("archivedTurns", archivedTurns.get());
+        snapshot.put("archivedBytes", archivedBytes.get());
+        snapshot.put("purgedSegments", purgedSegments.get());
+        snapshot.put("lastRunAt", lastRunAt == null ? null : lastRunAt.toString());
+        snapshot.put("lastError", lastError);
+        return snapshot;
+    }
+
+    /**
+     * 压缩后的字节缓冲区，同时记录本段的轮数和首末位置
+     */
+    private static final class MemberEncoder extends ByteArrayOutputStream {
+        int turns;
+        LocalDateTime firstTime;
+        LocalDateTime lastTime;
+        long lastId;
+
+        MemberEncoder() {
+            super(4096);
+        }
+    }
+}
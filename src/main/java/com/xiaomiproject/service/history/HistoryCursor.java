@@ -0,0 +1,41 @@
+package com.xiaomiproject.service.history;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * keyset 分页游标：Base64(时间|键)，对客户端不透明
+ */
+final class HistoryCursor {
+
+    final LocalDateTime time;
+    final String key;
+
+    private HistoryCursor(LocalDateTime time, String key) {
+        this.time = time;
+        this.key = key;
+    }
+
+    static String encode(LocalDateTime time, String key) {
+        String raw = time + "|" + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException 游标格式不正确
+     */
+    static HistoryCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new HistoryCursor(LocalDateTime.parse(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
@@ -0,0 +1,677 @@
+package com.xiaomiproject.service.history;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.xiaomiproject.entity.ConversationHistory;
+import com.xiaomiproject.repository.HistoryJdbcRepository;
+import com.xiaomiproject.service.metrics.ChatMetrics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对话历史的异步批量写入 (write-behind)。
+ * <p>
+ * 请求线程只把记录放入内存队列即返回，后台线程攒够 batch-size 条或等待 flush-interval-ms 后
+ * 用一次 JDBC batch 写入数据库。数据库不可用时退避重试，不丢弃记录；
+ * 个别记录本身无法写入时拆批找出这些记录移入死信日志，不会卡住后面的记录。
+ * 队列容量有上限：队列满时调用方最多等待 enqueue-timeout-ms，仍无空位则在调用方线程直接写库 (背压)。
+ * 开启 journal 后，入队的记录先追加到本地 NDJSON 日志，批量写入成功后追加提交标记；
+ * 进程崩溃重启时重放未提交的记录。
+ */
+@Service
+public class HistoryWriter {
+
+    @Autowired
+    private HistoryJdbcRepository historyJdbcRepository;
+
+    @Autowired
+    private ChatMetrics chatMetrics;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${chat.history.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.history.batch-size:200}")
+    private int batchSize;
+
+    @Value("${chat.history.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${chat.history.enqueue-timeout-ms:50}")
+    private long enqueueTimeoutMs;
+
+    @Value("${chat.history.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    @Value("${chat.history.journal.enabled:false}")
+    private boolean journalEnabled;
+
+    @Value("${chat.history.journal.path:data/history-journal.ndjson}")
+    private String journalPath;
+
+    // 日志当前段超过该大小即轮转，旧段中的记录全部提交后删除
+    @Value("${chat.history.journal.max-bytes:67108864}")
+    private long journalMaxBytes;
+
+    // 读取或删除刚回答完的对话时，等待其记录写库的最长时间
+    @Value("${chat.history.read-after-write-timeout-ms:2000}")
+    private long readAfterWriteTimeoutMs;
+
+    // 非连接类错误 (数据超长、约束冲突等) 的最多重试次数，之后拆批找出坏记录
+    @Value("${chat.history.max-attempts:5}")
+    private int maxAttempts;
+
+    // 无法写入的记录 (死信) 追加到该文件
+    @Value("${chat.history.dead-letter.path:data/history-dead-letter.ndjson}")
+    private String deadLetterPath;
+
+    private static final class Pending {
+        final long seq;
+        final ConversationHistory history;
+        final long enqueuedNanos = System.nanoTime();
+
+        Pending(long seq, ConversationHistory history) {
+            this.seq = seq;
+            this.history = history;
+        }
+    }
+
+    /**
+     * 一个对话尚未写库的记录数 (队列中 + 正在写入)，由 journalLock 保护
+     */
+    private static final class PendingConversation {
+        final Long userId;
+        int count;
+
+        PendingConversation(Long userId) {
+            this.userId = userId;
+        }
+    }
+
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Map<String, PendingConversation> pendingConversations = new HashMap<>();
+    // 队列 + 正在写入的批次共同占用的名额，保证内存中待写记录数有上限
+    private Semaphore capacity;
+    // 入队与写日志在同一把锁内完成，保证日志顺序与队列顺序一致，提交标记之前的记录都已写库
+    private final Object journalLock = new Object();
+    private BufferedWriter journal;
+    private long lastSeq;
+    // 轮转出去的上一段日志中最大的记录序号，0 表示没有待删除的上一段
+    private long rotatedLastSeq;
+    private final AtomicLong journalRotations = new AtomicLong();
+
+    private Thread flusher;
+    private volatile boolean running;
+
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong failedBatchCount = new AtomicLong();
+    private final AtomicLong syncWriteCount = new AtomicLong();
+    private final AtomicLong deadLetterCount = new AtomicLong();
+    private final Object deadLetterLock = new Object();
+    private volatile long lastBatchMillis;
+
+    @PostConstruct
+    public void start() throws IOException {
+        int replayed = journalEnabled ? openJournal() : 0;
+        // 重放的记录超过容量时许可数为负，写完之前新记录走同步写入
+        capacity = new Semaphore(queueCapacity - replayed);
+        running = true;
+        flusher = new Thread(this::runFlusher, "history-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+        bindMetrics(meterRegistry);
+    }
+
+    /**
+     * 提交一条历史记录，通常立即返回
+     */
+    public void enqueue(ConversationHistory history) {
+        boolean acquired;
+        try {
+            acquired = running && capacity.tryAcquire(enqueueTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            // 队列已满或正在关闭：在调用方线程同步写入
+            syncWriteCount.incrementAndGet();
+            historyJdbcRepository.saveBatch(Collections.singletonList(history));
+            return;
+        }
+        synchronized (journalLock) {
+            Pending pending = new Pending(++lastSeq, history);
+            appendRecord(pending);
+            queue.add(pending);
+            addPending(pending);
+        }
+        enqueuedCount.incrementAndGet();
+    }
+
+    /**
+     * 某个对话尚未写库的记录 (队列中或正在写入) 所属的用户。
+     * 对话摘要由写入线程异步生成，刚回答完的对话在这段时间内只能通过这里确认归属
+     */
+    public Optional<Long> pendingOwner(String conversationId) {
+        synchronized (journalLock) {
+            PendingConversation pending = pendingConversations.get(conversationId);
+            return pending == null ? Optional.empty() : Optional.of(pending.userId);
+        }
+    }
+
+    /**
+     * 等待某个对话已提交的记录全部写库 (通常不超过一个 flush-interval)，用于读取自己刚写入的数据
+     * @return 超过 chat.history.read-after-write-timeout-ms 或被中断时返回 false
+     */
+    public boolean awaitWritten(String conversationId) {
+        long deadline = System.currentTimeMillis() + readAfterWriteTimeoutMs;
+        synchronized (journalLock) {
+            while (pendingConversations.containsKey(conversationId)) {
+                long waitMs = deadline - System.currentTimeMillis();
+                if (waitMs <= 0) {
+                    return false;
+                }
+                try {
+                    journalLock.wait(waitMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 丢弃某个对话尚未写库的记录 (删除对话时调用，避免删除后又被写入)。
+     * 已在写入中的批次无法撤回，等它写完后再返回，调用方随后的删除语句会一并删除。
+     * 日志中同时记下丢弃标记，崩溃重启时不会重放这些记录。
+     */
+    public void discardPending(String conversationId) {
+        int removed = 0;
+        synchronized (journalLock) {
+            Iterator<Pending> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                Pending pending = iterator.next();
+                if (conversationId.equals(pending.history.getConversationId())) {
+                    iterator.remove();
+                    removePending(pending);
+                    removed++;
+                }
+            }
+            if (removed > 0 && journal != null) {
+                ObjectNode node = objectMapper.createObjectNode();
+                node.put("discarded", conversationId);
+                node.put("upTo", lastSeq);
+                writeJournalLine(node);
+            }
+        }
+        capacity.release(removed);
+        awaitWritten(conversationId);
+    }
+
+    private void addPending(Pending pending) {
+        String conversationId = pending.history.getConversationId();
+        PendingConversation conversation = pendingConversations.get(conversationId);
+        if (conversation == null) {
+            conversation = new PendingConversation(pending.history.getUserId());
+            pendingConversations.put(conversationId, conversation);
+        }
+        conversation.count++;
+    }
+
+    /**
+     * 调用方持有 journalLock；对话的记录全部处理完时唤醒 awaitWritten
+     */
+    private void removePending(Pending pending) {
+        String conversationId = pending.history.getConversationId();
+        PendingConversation conversation = pendingConversations.get(conversationId);
+        if (conversation != null && --conversation.count <= 0) {
+            pendingConversations.remove(conversationId);
+            journalLock.notifyAll();
+        }
+    }
+
+    /**
+     * 一批记录已写库或移入死信日志
+     */
+    private void completed(List<Pending> batch) {
+        synchronized (journalLock) {
+            for (Pending pending : batch) {
+                removePending(pending);
+            }
+        }
+    }
+
+    private void runFlusher() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 攒批：达到 batch-size 或距第一条记录超过 flush-interval-ms 即写入
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long waitNanos = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || waitNanos <= 0 || !running) {
+                        break;
+                    }
+                    Pending next = queue.poll(waitNanos, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // 写入线程只在 running=false 时退出，忽略中断，把已取出的记录写完
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                writeWithRetry(batch);
+                capacity.release(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 写入一批记录。数据库不可用 (连接失败、超时、死锁等) 时按退避一直重试；
+     * 其他错误重试 max-attempts 次后认为批次中有坏记录，二分拆批找出坏记录写入死信日志，其余记录照常写入
+     */
+    private void writeWithRetry(List<Pending> batch) {
+        long backoffMs = 100;
+        int attempts = 0;
+        while (true) {
+            RuntimeException failure = trySave(batch);
+            if (failure == null) {
+                return;
+            }
+            attempts++;
+            System.err.println("对话历史批量写入失败 (第 " + attempts + " 次): " + failure.getMessage());
+            if (!isUnavailable(failure) && attempts >= maxAttempts) {
+                isolate(batch, failure);
+                return;
+            }
+            if (!running) {
+                // 关闭过程中数据库不可用：开启 journal 时记录会在下次启动时重放
+                System.err.println("对话历史写入放弃，未写入 " + batch.size() + " 条"
+                        + (journalEnabled ? "，已保留在日志中待重放" : ""));
+                return;
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                // 同上，忽略中断继续重试
+            }
+            backoffMs = Math.min(backoffMs * 2, 5000);
+        }
+    }
+
+    /**
+     * 二分拆批：能写入的一半直接提交，仍失败的一半继续拆分，直到单条记录写入死信日志
+     */
+    private void isolate(List<Pending> batch, RuntimeException failure) {
+        if (batch.size() == 1) {
+            deadLetter(batch.get(0), failure);
+            return;
+        }
+        int mid = batch.size() / 2;
+        for (List<Pending> half : Arrays.asList(batch.subList(0, mid), batch.subList(mid, batch.size()))) {
+            RuntimeException halfFailure = trySave(half);
+            if (halfFailure == null) {
+                continue;
+            }
+            if (isUnavailable(halfFailure)) {
+                // 拆分过程中数据库不可用了：按正常方式重试
+                writeWithRetry(half);
+            } else {
+                isolate(half, halfFailure);
+            }
+        }
+    }
+
+    /**
+     * 写入一次 (同一事务)，成功后提交日志
+     * @return 失败时的异常，成功返回 null
+     */
+    private RuntimeException trySave(List<Pending> batch) {
+        List<ConversationHistory> histories = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            histories.add(pending.history);
+        }
+        long start = System.nanoTime();
+        try {
+            historyJdbcRepository.saveBatch(histories);
+        } catch (RuntimeException e) {
+            failedBatchCount.incrementAndGet();
+            return e;
+        }
+        long elapsed = System.nanoTime() - start;
+        lastBatchMillis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+        chatMetrics.historyBatchWritten(batch.size(), elapsed, batch.get(0).enqueuedNanos);
+        batchCount.incrementAndGet();
+        writtenCount.addAndGet(batch.size());
+        commitJournal(batch.get(batch.size() - 1).seq);
+        completed(batch);
+        return null;
+    }
+
+    private static boolean isUnavailable(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof RecoverableDataAccessException;
+    }
+
+    /**
+     * 无法写入的记录追加到死信日志 (NDJSON，带错误信息，人工处理后可重新导入)，并视为已处理
+     */
+    private void deadLetter(Pending pending, RuntimeException failure) {
+        deadLetterCount.incrementAndGet();
+        ObjectNode node = toJson(pending);
+        node.put("error", String.valueOf(failure.getMessage()));
+        String line;
+        try {
+            line = objectMapper.writeValueAsString(node);
+        } catch (IOException e) {
+            line = node.toString();
+        }
+        synchronized (deadLetterLock) {
+            Path path = Paths.get(deadLetterPath).toAbsolutePath();
+            try {
+                Files.createDirectories(path.getParent());
+                try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            } catch (IOException e) {
+                System.err.println("写入对话历史死信日志失败，记录内容: " + line);
+            }
+        }
+        System.err.println("对话历史记录无法写入，已移入死信日志 " + deadLetterPath + ": " + failure.getMessage());
+        commitJournal(pending.seq);
+        completed(Collections.singletonList(pending));
+    }
+
+    private void bindMetrics(MeterRegistry registry) {
+        Gauge.builder("chat.history.queue.depth", queue, LinkedBlockingQueue::size)
+                .description("等待写入数据库的对话历史条数")
+                .register(registry);
+        FunctionCounter.builder("chat.history.written", writtenCount, AtomicLong::get).register(registry);
+        FunctionCounter.builder("chat.history.batch.failed", failedBatchCount, AtomicLong::get).register(registry);
+        FunctionCounter.builder("chat.history.dead.letter", deadLetterCount, AtomicLong::get)
+                .description("无法写入数据库、移入死信日志的条数")
+                .register(registry);
+        FunctionCounter.builder("chat.history.sync.write", syncWriteCount, AtomicLong::get)
+                .description("队列满时在调用方线程同步写入的条数")
+                .register(registry);
+    }
+
+    /**
+     * 停止接收新记录 (之后的记录同步写库)，并在超时时间内把队列中的记录写完
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // 不中断写入线程 (中断会破坏正在使用的 JDBC 连接)，它在下一次轮询时发现 running=false 并写完剩余记录
+        running = false;
+        flusher.join(shutdownTimeoutMs);
+        if (flusher.isAlive()) {
+            System.err.println("对话历史写入线程未在 " + shutdownTimeoutMs + "ms 内结束，剩余 " + queue.size() + " 条");
+        } else if (!queue.isEmpty()) {
+            // 关闭瞬间才入队的记录
+            List<Pending> rest = new ArrayList<>();
+            queue.drainTo(rest);
+            writeWithRetry(rest);
+        }
+        synchronized (journalLock) {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    System.err.println("关闭对话历史日志失败: " + e.getMessage());
+                }
+                journal = null;
+            }
+        }
+    }
+
+    // ---------------- journal ----------------
+
+    /**
+     * 读取已有日志 (先读轮转出去的上一段，再读当前段)，把最后一个提交标记之后的记录重新放入队列，
+     * 然后以追加方式继续写当前段
+     * @return 重放的记录数
+     */
+    private int openJournal() throws IOException {
+        Path path = journalFile();
+        Files.createDirectories(path.getParent());
+        long committed = 0;
+        List<Pending> records = new ArrayList<>();
+        Map<String, Long> discarded = new HashMap<>();
+        Path previous = previousJournalFile();
+        if (Files.exists(previous)) {
+            committed = readJournal(previous, records, discarded, committed);
+            rotatedLastSeq = lastSeq;
+        }
+        if (Files.exists(path)) {
+            committed = readJournal(path, records, discarded, committed);
+        }
+        List<Pending> uncommitted = new ArrayList<>();
+        for (Pending pending : records) {
+            Long discardedUpTo = discarded.get(pending.history.getConversationId());
+            if (pending.seq > committed && (discardedUpTo == null || pending.seq > discardedUpTo)) {
+                uncommitted.add(pending);
+                addPending(pending);
+            }
+        }
+        journal = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (rotatedLastSeq > 0 && committed >= rotatedLastSeq) {
+            Files.deleteIfExists(previous);
+            rotatedLastSeq = 0;
+        }
+        if (!uncommitted.isEmpty()) {
+            System.out.println("重放对话历史日志中未写入的记录: " + uncommitted.size() + " 条");
+            queue.addAll(uncommitted);
+        }
+        return uncommitted.size();
+    }
+
+    /**
+     * 读取一段日志：记录加入 records，丢弃标记加入 discarded (对话ID -> 丢弃时的最大序号)，返回读到的最大提交序号
+     */
+    private long readJournal(Path path, List<Pending> records, Map<String, Long> discarded, long committed)
+            throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonNode node;
+                try {
+                    node = objectMapper.readTree(line);
+                } catch (IOException e) {
+                    // 崩溃时最后一行可能只写了一半
+                    continue;
+                }
+                if (node == null || node.isMissingNode()) {
+                    continue;
+                }
+                if (node.has("committed")) {
+                    committed = Math.max(committed, node.get("committed").asLong());
+                } else if (node.has("discarded")) {
+                    discarded.merge(node.get("discarded").asText(), node.path("upTo").asLong(), Math::max);
+                    continue;
+                } else {
+                    records.add(fromJson(node));
+                }
+                lastSeq = Math.max(lastSeq, node.path("seq").asLong(node.path("committed").asLong()));
+            }
+        }
+        return committed;
+    }
+
+    private void appendRecord(Pending pending) {
+        if (journal == null) {
+            return;
+        }
+        writeJournalLine(toJson(pending));
+    }
+
+    private ObjectNode toJson(Pending pending) {
+        ConversationHistory history = pending.history;
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("seq", pending.seq);
+        node.put("userId", history.getUserId());
+        node.put("conversationId", history.getConversationId());
+        node.put("question", history.getQuestion());
+        node.put("answer", history.getAnswer());
+        node.put("timestamp", history.getTimestamp().toString());
+        return node;
+    }
+
+    /**
+     * 追加提交标记：序号不超过 seq 的记录都已写库 (或移入死信日志)。
+     * 当前段超过 max-bytes 时轮转为上一段，新记录写入新的当前段；上一段的记录全部提交后即删除。
+     * 只保留一段待删除的旧日志，持续写入时日志大小也保持在 max-bytes 的两倍左右。
+     */
+    private void commitJournal(long seq) {
+        if (!journalEnabled) {
+            return;
+        }
+        synchronized (journalLock) {
+            if (journal == null) {
+                return;
+            }
+            ObjectNode node = objectMapper.createObjectNode();
+            node.put("committed", seq);
+            writeJournalLine(node);
+            try {
+                if (rotatedLastSeq > 0 && seq >= rotatedLastSeq) {
+                    Files.deleteIfExists(previousJournalFile());
+                    rotatedLastSeq = 0;
+                }
+                if (rotatedLastSeq == 0 && journalSize() > journalMaxBytes) {
+                    rotateJournal(seq);
+                }
+            } catch (IOException e) {
+                System.err.println("轮转对话历史日志失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 当前段改名为上一段并开始新的当前段 (调用方持有 journalLock，入队的记录不会写到两段之间)
+     */
+    private void rotateJournal(long committedSeq) throws IOException {
+        journal.close();
+        Path path = journalFile();
+        Path previous = previousJournalFile();
+        Files.move(path, previous, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        journalRotations.incrementAndGet();
+        if (committedSeq >= lastSeq) {
+            // 所有记录都已写库，上一段无需保留
+            Files.deleteIfExists(previous);
+        } else {
+            rotatedLastSeq = lastSeq;
+        }
+    }
+
+    private Path journalFile() {
+        return Paths.get(journalPath).toAbsolutePath();
+    }
+
+    private Path previousJournalFile() {
+        return Paths.get(journalPath + ".1").toAbsolutePath();
+    }
+
+    private void writeJournalLine(JsonNode node) {
+        try {
+            journal.write(objectMapper.writeValueAsString(node));
+            journal.newLine();
+            // 写入操作系统缓冲区，进程崩溃不会丢失
+            journal.flush();
+        } catch (IOException e) {
+            System.err.println("写入对话历史日志失败: " + e.getMessage());
+        }
+    }
+
+    private long journalSize() {
+        try {
+            return Files.size(journalFile());
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static Pending fromJson(JsonNode node) {
+        ConversationHistory history = new ConversationHistory();
+        history.setUserId(node.get("userId").asLong());
+        history.setConversationId(node.get("conversationId").asText());
+        history.setQuestion(node.path("question").asText(null));
+        history.setAnswer(node.path("answer").asText(null));
+        history.setTimestamp(LocalDateTime.parse(node.get("timestamp").asText()));
+        return new Pending(node.get("seq").asLong(), history);
+    }
+
+    public Map<String, Object> statsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("queued", queue.size());
+        snapshot.put("queueCapacity", queueCapacity);
+        snapshot.put("enqueuedCount", enqueuedCount.get());
+        snapshot.put("writtenCount", writtenCount.get());
+        snapshot.put("batchCount", batchCount.get());
+        snapshot.put("failedBatchCount", failedBatchCount.get());
+        snapshot.put("syncWriteCount", syncWriteCount.get());
+        snapshot.put("deadLetterCount", deadLetterCount.get());
+        snapshot.put("lastBatchMillis", lastBatchMillis);
+        snapshot.put("journalEnabled", journalEnabled);
+        snapshot.put("journalRotations", journalRotations.get());
+        return snapshot;
+    }
+}
@@ -0,0 +1,136 @@
+package com.xiaomiproject.service.knowledge;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流式 CSV 解析 (RFC 4180)：逗号分隔，双引号包裹的字段中可以含逗号、换行，"" 表示一个引号；
+ * 行尾可以是 \n 或 \r\n，开头的 UTF-8 BOM 会被跳过。
+ * 只持有一个字符缓冲区和当前记录，文件大小不影响内存占用。
+ */
+final class CsvRecordReader {
+
+    private final Reader reader;
+    private final char[] buffer = new char[64 * 1024];
+    private int pos;
+    private int limit;
+    private boolean started;
+    private final StringBuilder field = new StringBuilder();
+
+    // 当前读到的物理行号，以及最近一条记录的起始行号 (用于报错)
+    private long line = 1;
+    private long recordLine;
+
+    CsvRecordReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * 读取下一条记录
+     * @return 各字段，文件结束时返回 null
+     * @throws IllegalArgumentException 引号未闭合
+     */
+    List<String> next() throws IOException {
+        int c = read();
+        if (!started) {
+            started = true;
+            if (c == '\uFEFF') {
+                c = read();
+            }
+        }
+        if (c == -1) {
+            return null;
+        }
+        recordLine = line;
+        List<String> fields = new ArrayList<>(2);
+        field.setLength(0);
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IllegalArgumentException("第" + recordLine + "行: 引号未闭合");
+                }
+                if (c == '"') {
+                    if (peek() == '"') {
+                        read();
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+                c = read();
+                continue;
+            }
+            switch (c) {
+                case -1:
+                    fields.add(field.toString());
+                    return fields;
+                case '\r':
+                    if (peek() == '\n') {
+                        read();
+                    }
+                    // fall through
+                case '\n':
+                    line++;
+                    fields.add(field.toString());
+                    return fields;
+                case ',':
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    break;
+                case '"':
+                    if (field.length() == 0) {
+                        quoted = true;
+                    } else {
+                        field.append('"');
+                    }
+                    break;
+                default:
+                    field.append((char) c);
+                    break;
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * 最近一条记录的起始行号 (从1开始)
+     */
+    long recordLine() {
+        return recordLine;
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++];
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos];
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = reader.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0) {
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+}
@@ -0,0 +1,363 @@
+package com.xiaomiproject.service.knowledge;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiaomiproject.entity.Knowledge;
+import com.xiaomiproject.event.KnowledgeBatchChangedEvent;
+import com.xiaomiproject.repository.KnowledgeJdbcRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 知识库批量导入：流式读取 CSV 或 JSONL，按批写入数据库并增量刷新内存索引。
+ * <p>
+ * 输入逐条解析，内存中只保留当前一批 (batch-size 条) 和已见过问题的哈希集合，
+ * 导入百万条目时内存占用也基本不变。问题按归一化结果去重 (knowledges.question_hash 唯一索引)：
+ * 文件内重复的问题只保留第一次出现的；数据库中已存在的问题，overwrite=true 时更新答案，否则跳过。
+ * <p>
+ * 每批先按哈希一次查出已有条目，分成新增、更新和未变化三组，新增和更新各用一条 JDBC batch 写入
+ * (同一事务)；提交后发布一次 {@link KnowledgeBatchChangedEvent}，由 {@link KnowledgeMatcher}
+ * 把整批加入索引、问答缓存失效相关条目，不需要重新加载整个知识库。
+ * 同一时间只允许一个导入任务。
+ */
+@Service
+public class KnowledgeImportService {
+
+    public enum Format {
+        CSV, JSONL;
+
+        /**
+         * 优先按参数判断，未指定时按请求的 Content-Type；都无法识别时返回 null
+         */
+        public static Format of(String format, String contentType) {
+            String value = format != null ? format : contentType;
+            if (value == null) {
+                return null;
+            }
+            value = value.toLowerCase(Locale.ROOT);
+            if (value.contains("csv")) {
+                return CSV;
+            }
+            if (value.contains("jsonl") || value.contains("ndjson") || value.contains("json")) {
+                return JSONL;
+            }
+            return null;
+        }
+    }
+
+    @Autowired
+    private KnowledgeJdbcRepository knowledgeJdbcRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 每批条数：一次查询已有条目、一次批量插入、一次批量更新
+    @Value("${chat.knowledge.import.batch-size:1000}")
+    private int batchSize;
+
+    // 报告中最多列出的错误行数
+    @Value("${chat.knowledge.import.max-reported-errors:20}")
+    private int maxReportedErrors;
+
+    private TransactionTemplate transactionTemplate;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile ImportRun current;
+    private volatile Map<String, Object> lastReport;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * 导入一个 UTF-8 编码的输入流 (调用方负责关闭)
+     * @param overwrite 数据库中已有同一问题时是否用导入的答案覆盖
+     * @return 导入报告；已有导入任务在运行时返回 null
+     */
+    public Map<String, Object> importFrom(InputStream in, Format format, boolean overwrite) throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        ImportRun run = new ImportRun(format, overwrite);
+        current = run;
+        try {
+            Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+            if (format == Format.CSV) {
+                readCsv(reader, run);
+            } else {
+                readJsonl(reader, run);
+            }
+            flush(run);
+            run.finish(null);
+        } catch (IOException | RuntimeException e) {
+            // 已提交的批次保留，报告中记录中断的位置
+            run.finish(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+            System.err.println("知识库导入中断: " + e.getMessage());
+        } finally {
+            lastReport = run.report();
+            current = null;
+            running.set(false);
+        }
+        System.out.println("知识库导入完成: " + lastReport);
+        return lastReport;
+    }
+
+    /**
+     * 第一行包含 question 和 answer 列时作为表头，按列名取值；否则第一列为问题、第二列为答案
+     */
+    private void readCsv(Reader reader, ImportRun run) throws IOException {
+        CsvRecordReader csv = new CsvRecordReader(reader);
+        int questionColumn = 0;
+        int answerColumn = 1;
+        boolean first = true;
+        List<String> record;
+        while ((record = csv.next()) != null) {
+            if (first) {
+                first = false;
+                int q = indexOfIgnoreCase(record, "question");
+                int a = indexOfIgnoreCase(record, "answer");
+                if (q >= 0 && a >= 0) {
+                    questionColumn = q;
+                    answerColumn = a;
+                    continue;
+                }
+            }
+            if (record.size() == 1 && record.get(0).isEmpty()) {
+                // 空行
+                continue;
+            }
+            String question = questionColumn < record.size() ? record.get(questionColumn) : null;
+            String answer = answerColumn < record.size() ? record.get(answerColumn) : null;
+            accept(run, csv.recordLine(), question, answer);
+        }
+    }
+
+    /**
+     * 每行一个 JSON 对象 {"question": ..., "answer": ...}，单行格式错误只跳过该行
+     */
+    private void readJsonl(Reader reader, ImportRun run) throws IOException {
+        BufferedReader lines = new BufferedReader(reader, 64 * 1024);
+        String line;
+        long lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            JsonNode node;
+            try {
+                node = objectMapper.readTree(line);
+            } catch (IOException e) {
+                run.invalid(lineNumber, "不是合法的JSON", maxReportedErrors);
+                continue;
+            }
+            accept(run, lineNumber, node.path("question").asText(null), node.path("answer").asText(null));
+        }
+    }
+
+    private void accept(ImportRun run, long lineNumber, String question, String answer) {
+        run.read.incrementAndGet();
+        if (question == null || question.trim().isEmpty() || answer == null || answer.trim().isEmpty()) {
+            run.invalid(lineNumber, "缺少问题或答案", maxReportedErrors);
+            return;
+        }
+        String hash = TextNormalizer.questionHash(question);
+        if (hash == null) {
+            run.invalid(lineNumber, "问题只包含标点或空白", maxReportedErrors);
+            return;
+        }
+        // 取哈希的前 64 位去重，百万条目下的碰撞概率可以忽略
+        if (!run.seen.add(Long.parseUnsignedLong(hash.substring(0, 16), 16))) {
+            run.duplicates.incrementAndGet();
+            return;
+        }
+        Knowledge knowledge = new Knowledge();
+        knowledge.setQuestion(question.trim());
+        knowledge.setAnswer(answer.trim());
+        knowledge.setQuestionHash(hash);
+        run.batch.add(knowledge);
+        if (run.batch.size() >= batchSize) {
+            flush(run);
+        }
+    }
+
+    /**
+     * 写入当前一批并刷新索引
+     */
+    private void flush(ImportRun run) {
+        if (run.batch.isEmpty()) {
+            return;
+        }
+        Map<String, Knowledge> pending = new LinkedHashMap<>();
+        for (Knowledge knowledge : run.batch) {
+            pending.put(knowledge.getQuestionHash(), knowledge);
+        }
+        run.batch.clear();
+
+        long dbStart = System.nanoTime();
+        List<Knowledge> toUpdate = new ArrayList<>();
+        for (Knowledge existing : knowledgeJdbcRepository.findByQuestionHashes(pending.keySet())) {
+            Knowledge incoming = pending.remove(existing.getQuestionHash());
+            if (incoming == null) {
+                continue;
+            }
+            if (!run.overwrite || (Objects.equals(existing.getQuestion(), incoming.getQuestion())
+                    && Objects.equals(existing.getAnswer(), incoming.getAnswer()))) {
+                run.unchanged.incrementAndGet();
+            } else {
+                incoming.setId(existing.getId());
+                toUpdate.add(incoming);
+            }
+        }
+        List<Knowledge> toInsert = new ArrayList<>(pending.values());
+        List<Knowledge> inserted = transactionTemplate.execute(status -> {
+            if (!toInsert.isEmpty()) {
+                knowledgeJdbcRepository.insertIgnoreBatch(toInsert);
+            }
+            if (!toUpdate.isEmpty()) {
+                knowledgeJdbcRepository.updateBatch(toUpdate);
+            }
+            // 读回新增行的自增ID (INSERT IGNORE 跳过的行读到的是并发写入的那条，同样需要加入索引)
+            return knowledgeJdbcRepository.findByQuestionHashes(pending.keySet());
+        });
+        if (inserted == null) {
+            inserted = Collections.emptyList();
+        }
+        run.dbNanos.addAndGet(System.nanoTime() - dbStart);
+        run.inserted.addAndGet(inserted.size());
+        run.updated.addAndGet(toUpdate.size());
+
+        // 已在事务外，事件监听器立即执行
+        long indexStart = System.nanoTime();
+        if (!inserted.isEmpty() || !toUpdate.isEmpty()) {
+            eventPublisher.publishEvent(new KnowledgeBatchChangedEvent(inserted, toUpdate));
+        }
+        run.indexNanos.addAndGet(System.nanoTime() - indexStart);
+        run.batches.incrementAndGet();
+    }
+
+    private static int indexOfIgnoreCase(List<String> record, String name) {
+        for (int i = 0; i < record.size(); i++) {
+            if (record.get(i).trim().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * 正在运行的导入任务的进度，以及上一次导入的报告
+     */
+    public Map<String, Object> statsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        ImportRun run = current;
+        snapshot.put("running", run != null);
+        if (run != null) {
+            snapshot.put("current", run.report());
+        }
+        snapshot.put("last", lastReport);
+        return snapshot;
+    }
+
+    /**
+     * 一次导入的状态和计数 (由导入线程写入，查询进度的线程只读取计数器)
+     */
+    private static final class ImportRun {
+        final Format format;
+        final boolean overwrite;
+        final long startedAt = System.currentTimeMillis();
+        final long startNanos = System.nanoTime();
+        final List<Knowledge> batch = new ArrayList<>();
+        final LongHashSet seen = new LongHashSet(1 << 16);
+        final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+        final AtomicLong read = new AtomicLong();
+        final AtomicLong inserted = new AtomicLong();
+        final AtomicLong updated = new AtomicLong();
+        final AtomicLong unchanged = new AtomicLong();
+        final AtomicLong duplicates = new AtomicLong();
+        final AtomicLong invalid = new AtomicLong();
+        final AtomicLong batches = new AtomicLong();
+        final AtomicLong dbNanos = new AtomicLong();
+        final AtomicLong indexNanos = new AtomicLong();
+        volatile long elapsedNanos = -1;
+        volatile String failure;
+
+        ImportRun(Format format, boolean overwrite) {
+            this.format = format;
+            this.overwrite = overwrite;
+        }
+
+        void invalid(long lineNumber, String reason, int maxReportedErrors) {
+            invalid.incrementAndGet();
+            if (errors.size() < maxReportedErrors) {
+                errors.add("第" + lineNumber + "行: " + reason);
+            }
+        }
+
+        void finish(String failure) {
+            this.failure = failure;
+            this.elapsedNanos = System.nanoTime() - startNanos;
+        }
+
+        Map<String, Object> report() {
+            long elapsed = elapsedNanos >= 0 ? elapsedNanos : System.nanoTime() - startNanos;
+            long rows = read.get();
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("format", format.name());
+            report.put("overwrite", overwrite);
+            report.put("startedAt", startedAt);
+            report.put("completed", elapsedNanos >= 0 && failure == null);
+            report.put("failure", failure);
+            report.put("read", rows);
+            report.put("inserted", inserted.get());
+            report.put("updated", updated.get());
+            report.put("unchanged", unchanged.get());
+            report.put("duplicates", duplicates.get());
+            report.put("invalid", invalid.get());
+            report.put("batches", batches.get());
+            report.put("elapsedMs", elapsed / 1_000_000);
+            report.put("rowsPerSecond", elapsed > 0 ? Math.round(rows * 1e9 / elapsed) : 0);
+            // 解析 (含去重) 的耗时 = 总耗时 - 数据库 - 索引
+            report.put("dbMs", dbNanos.get() / 1_000_000);
+            report.put("indexMs", indexNanos.get() / 1_000_000);
+            report.put("parseMs", Math.max(0, elapsed - dbNanos.get() - indexNanos.get()) / 1_000_000);
+            synchronized (errors) {
+                report.put("errors", new ArrayList<>(errors));
+            }
+            return report;
+        }
+    }
+}
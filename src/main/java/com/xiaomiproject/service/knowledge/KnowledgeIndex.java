@@ -0,0 +1,270 @@
+package com.xiaomiproject.service.knowledge;
+
+import com.xiaomiproject.entity.Knowledge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 知识库倒排索引，使用 BM25 打分。
+ * 支持按条目增量新增/更新/删除；查询持有读锁，写入持有写锁。
+ * 条目的词频用并列数组保存，词项字符串与倒排表共用同一个实例，百万条目时也能常驻内存。
+ */
+public class KnowledgeIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<Long, Entry> entries = new HashMap<>();
+    // 归一化问题 -> 条目ID，用于完全匹配的快速路径
+    private final Map<String, Long> exactIndex = new HashMap<>();
+    private long totalLength;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private static final class Entry {
+        final Long id;
+        final String question;
+        final String answer;
+        final String normalized;
+        // 不重复的词项及其在问题中出现的次数
+        final String[] terms;
+        final int[] freqs;
+        final int length;
+
+        Entry(Long id, String question, String answer, String normalized, String[] terms, int[] freqs, int length) {
+            this.id = id;
+            this.question = question;
+            this.answer = answer;
+            this.normalized = normalized;
+            this.terms = terms;
+            this.freqs = freqs;
+            this.length = length;
+        }
+    }
+
+    /**
+     * 一个词项的倒排表 (条目ID -> 词频)，同时保存词项的规范实例
+     */
+    private static final class Postings {
+        final String term;
+        final Map<Long, Integer> docs = new HashMap<>();
+
+        Postings(String term) {
+            this.term = term;
+        }
+    }
+
+    public void upsert(Long id, String question, String answer) {
+        Entry entry = newEntry(id, question, answer);
+        lock.writeLock().lock();
+        try {
+            upsertInternal(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 批量新增/更新 (批量导入使用)：分词在锁外完成，整批只获取一次写锁
+     */
+    public void upsertAll(Collection<Knowledge> knowledges) {
+        List<Entry> batch = new ArrayList<>(knowledges.size());
+        for (Knowledge knowledge : knowledges) {
+            batch.add(newEntry(knowledge.getId(), knowledge.getQuestion(), knowledge.getAnswer()));
+        }
+        lock.writeLock().lock();
+        try {
+            for (Entry entry : batch) {
+                upsertInternal(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static Entry newEntry(Long id, String question, String answer) {
+        String normalized = TextNormalizer.normalize(question);
+        List<String> tokens = TextNormalizer.tokenize(question);
+        Map<String, Integer> termFreqs = termFrequencies(tokens);
+        String[] terms = new String[termFreqs.size()];
+        int[] freqs = new int[termFreqs.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> tf : termFreqs.entrySet()) {
+            terms[i] = tf.getKey();
+            freqs[i++] = tf.getValue();
+        }
+        return new Entry(id, question, answer, normalized, terms, freqs, tokens.size());
+    }
+
+    private void upsertInternal(Entry entry) {
+        Long id = entry.id;
+        removeInternal(id);
+        entries.put(id, entry);
+        exactIndex.put(entry.normalized, id);
+        totalLength += entry.length;
+        for (int i = 0; i < entry.terms.length; i++) {
+            Postings termPostings = postings.computeIfAbsent(entry.terms[i], Postings::new);
+            entry.terms[i] = termPostings.term;
+            termPostings.docs.put(id, entry.freqs[i]);
+        }
+    }
+
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            entries.clear();
+            exactIndex.clear();
+            totalLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查找与问题最匹配的条目。
+     * 置信度 = 查询侧覆盖率 (BM25得分 / 理想得分) 与条目侧词项覆盖率的 F2 加权调和平均，
+     * 更看重条目问题是否被完整命中，用户在问题前后多说几句客套话不会拉低太多。
+     * 数字和型号词 (见 {@link TextNormalizer#isKeyTerm}) 必须两边一致，"小米15" 不会命中 "小米14" 的条目；
+     * 查询把条目中的词换掉了一个字 (如 "退货" 与 "退款") 时同样视为不同的问题。
+     */
+    public Optional<KnowledgeMatch> search(String question) {
+        String normalized = TextNormalizer.normalize(question);
+        if (normalized.isEmpty()) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            Long exactId = exactIndex.get(normalized);
+            if (exactId != null) {
+                Entry entry = entries.get(exactId);
+                return Optional.of(new KnowledgeMatch(entry.id, entry.question, entry.answer, 1.0));
+            }
+            if (entries.isEmpty()) {
+                return Optional.empty();
+            }
+
+            Map<String, Integer> queryTerms = termFrequencies(TextNormalizer.tokenize(question));
+            int docCount = entries.size();
+            double avgLength = Math.max(1.0, (double) totalLength / docCount);
+
+            Map<Long, Double> scores = new HashMap<>();
+            Map<Long, Double> matchedWeights = new HashMap<>();
+            double idealScore = 0;
+            for (String term : queryTerms.keySet()) {
+                Postings termPostings = postings.get(term);
+                Map<Long, Integer> docs = termPostings == null ? null : termPostings.docs;
+                int df = docs == null ? 0 : docs.size();
+                double idf = Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+                idealScore += idf;
+                if (docs == null) {
+                    continue;
+                }
+                for (Map.Entry<Long, Integer> posting : docs.entrySet()) {
+                    Entry entry = entries.get(posting.getKey());
+                    int tf = posting.getValue();
+                    double norm = K1 * (1 - B + B * entry.length / avgLength);
+                    double termScore = idf * tf * (K1 + 1) / (tf + norm);
+                    scores.merge(posting.getKey(), termScore, Double::sum);
+                    matchedWeights.merge(posting.getKey(), idf, Double::sum);
+                }
+            }
+            if (scores.isEmpty() || idealScore <= 0) {
+                return Optional.empty();
+            }
+
+            Entry best = null;
+            double bestConfidence = 0;
+            for (Map.Entry<Long, Double> candidate : scores.entrySet()) {
+                Entry entry = entries.get(candidate.getKey());
+                if (!TextNormalizer.sameKeyTerms(queryTerms.keySet(), Arrays.asList(entry.terms))) {
+                    continue;
+                }
+                double queryCoverage = Math.min(1.0, candidate.getValue() / idealScore);
+                double entryWeight = termWeight(entry, docCount);
+                double docCoverage = entryWeight <= 0 ? 0
+                        : Math.min(1.0, matchedWeights.get(candidate.getKey()) / entryWeight);
+                double denominator = 4 * queryCoverage + docCoverage;
+                double confidence = denominator == 0 ? 0 : 5 * queryCoverage * docCoverage / denominator;
+                if (confidence > bestConfidence
+                        && !TextNormalizer.substitutesWord(queryTerms.keySet(), Arrays.asList(entry.terms))) {
+                    bestConfidence = confidence;
+                    best = entry;
+                }
+            }
+            if (best == null) {
+                return Optional.empty();
+            }
+            return Optional.of(new KnowledgeMatch(best.id, best.question, best.answer, bestConfidence));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeInternal(Long id) {
+        Entry old = entries.remove(id);
+        if (old == null) {
+            return;
+        }
+        exactIndex.remove(old.normalized, id);
+        totalLength -= old.length;
+        for (String term : old.terms) {
+            Postings termPostings = postings.get(term);
+            if (termPostings != null) {
+                termPostings.docs.remove(id);
+                if (termPostings.docs.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    /**
+     * 条目全部词项的 IDF 之和
+     */
+    private double termWeight(Entry entry, int docCount) {
+        double weight = 0;
+        for (String term : entry.terms) {
+            Postings termPostings = postings.get(term);
+            int df = termPostings == null ? 0 : termPostings.docs.size();
+            weight += Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+        }
+        return weight;
+    }
+
+    private static Map<String, Integer> termFrequencies(List<String> terms) {
+        Map<String, Integer> freqs = new LinkedHashMap<>();
+        for (String term : terms) {
+            freqs.merge(term, 1, Integer::sum);
+        }
+        return freqs;
+    }
+}
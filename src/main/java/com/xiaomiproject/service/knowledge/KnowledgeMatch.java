@@ -0,0 +1,17 @@
+package com.xiaomiproject.service.knowledge;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 知识库匹配结果
+ */
+@Data
+@AllArgsConstructor
+public class KnowledgeMatch {
+    private Long knowledgeId;
+    private String question;
+    private String answer;
+    // 0~1 之间的置信度，1 表示归一化后完全相同
+    private double confidence;
+}
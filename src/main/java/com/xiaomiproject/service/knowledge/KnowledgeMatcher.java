@@ -0,0 +1,111 @@
+package com.xiaomiproject.service.knowledge;
+
+import com.xiaomiproject.entity.Knowledge;
+import com.xiaomiproject.event.KnowledgeBatchChangedEvent;
+import com.xiaomiproject.event.KnowledgeChangedEvent;
+import com.xiaomiproject.event.RemoteKnowledgeBatchChangedEvent;
+import com.xiaomiproject.event.RemoteKnowledgeChangedEvent;
+import com.xiaomiproject.repository.KnowledgeJdbcRepository;
+import com.xiaomiproject.repository.KnowledgeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 知识库模糊匹配服务。
+ * 启动时从 knowledges 表流式加载全部条目构建内存倒排索引，之后随知识库变更事件增量更新
+ * (批量导入按批更新)，查询完全在进程内完成，不再访问数据库。
+ */
+@Service
+public class KnowledgeMatcher {
+
+    @Autowired
+    private KnowledgeRepository knowledgeRepository;
+
+    @Autowired
+    private KnowledgeJdbcRepository knowledgeJdbcRepository;
+
+    @Value("${chat.knowledge.min-confidence:0.65}")
+    private double minConfidence;
+
+    private final KnowledgeIndex index = new KnowledgeIndex();
+
+    @PostConstruct
+    public void reload() {
+        int backfilled = knowledgeJdbcRepository.backfillQuestionHashes();
+        if (backfilled > 0) {
+            System.out.println("已为 " + backfilled + " 条知识库条目补齐问题哈希");
+        }
+        index.clear();
+        // 逐行加入索引，不经过 JPA 持久化上下文，条目很多时也不会一次性持有全部实体
+        knowledgeJdbcRepository.streamAll(rs ->
+                index.upsert(rs.getLong("id"), rs.getString("question"), rs.getString("answer")));
+    }
+
+    /**
+     * 查找置信度不低于阈值的知识库条目
+     */
+    public Optional<KnowledgeMatch> match(String question) {
+        return index.search(question).filter(m -> m.getConfidence() >= minConfidence);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    // 事务提交后再更新索引，避免回滚的修改被索引
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onKnowledgeChanged(KnowledgeChangedEvent event) {
+        if (event.getType() == KnowledgeChangedEvent.Type.DELETED) {
+            index.remove(event.getKnowledgeId());
+        } else {
+            index.upsert(event.getKnowledgeId(), event.getQuestion(), event.getAnswer());
+        }
+    }
+
+    /**
+     * 其他节点修改了知识库：从数据库重新读取该条目，已删除则从索引移除
+     */
+    @EventListener
+    public void onRemoteKnowledgeChanged(RemoteKnowledgeChangedEvent event) {
+        Optional<Knowledge> knowledge = knowledgeRepository.findById(event.getKnowledgeId());
+        if (knowledge.isPresent()) {
+            index.upsert(knowledge.get().getId(), knowledge.get().getQuestion(), knowledge.get().getAnswer());
+        } else {
+            index.remove(event.getKnowledgeId());
+        }
+    }
+
+    /**
+     * 批量导入的一批条目已提交：整批只获取一次索引写锁
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onKnowledgeBatchChanged(KnowledgeBatchChangedEvent event) {
+        index.upsertAll(event.getInserted());
+        index.upsertAll(event.getUpdated());
+    }
+
+    /**
+     * 其他节点批量导入了一批条目：一次查询读回整批，已不存在的条目从索引移除
+     */
+    @EventListener
+    public void onRemoteKnowledgeBatchChanged(RemoteKnowledgeBatchChangedEvent event) {
+        List<Knowledge> knowledges = knowledgeRepository.findAllById(event.getKnowledgeIds());
+        index.upsertAll(knowledges);
+        Set<Long> missing = new HashSet<>(event.getKnowledgeIds());
+        for (Knowledge knowledge : knowledges) {
+            missing.remove(knowledge.getId());
+        }
+        for (Long id : missing) {
+            index.remove(id);
+        }
+    }
+}
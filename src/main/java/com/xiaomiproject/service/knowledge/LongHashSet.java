@@ -0,0 +1,72 @@
+package com.xiaomiproject.service.knowledge;
+
+/**
+ * long 值集合 (开放寻址、线性探测)，不装箱，每个元素只占 8 字节左右。
+ * 批量导入用它记录已见过的问题哈希 (取前 64 位)，百万级条目约占十几 MB。非线程安全。
+ */
+final class LongHashSet {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    // 0 作为空槽标记，值 0 本身单独记录
+    private long[] table;
+    private int size;
+    private boolean containsZero;
+
+    LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        table = new long[capacity];
+    }
+
+    /**
+     * @return 集合中原先没有该值时返回 true
+     */
+    boolean add(long value) {
+        if (value == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int mask = table.length - 1;
+        int slot = mix(value) & mask;
+        while (table[slot] != 0) {
+            if (table[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = value;
+        size++;
+        if (size > table.length * LOAD_FACTOR) {
+            resize();
+        }
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void resize() {
+        long[] old = table;
+        table = new long[old.length << 1];
+        int mask = table.length - 1;
+        for (long value : old) {
+            if (value != 0) {
+                int slot = mix(value) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = value;
+            }
+        }
+    }
+
+    private static int mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,200 @@
+package com.xiaomiproject.service.knowledge;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 问题文本归一化与分词工具。
+ * 归一化：NFKC (全角转半角)、转小写、去掉标点符号和空白，用作缓存键和去重键；
+ * 分词：在原始文本上按空白/标点切分后，英文单词、数字各作为一个词，中文按字符二元组 (bigram) 切分。
+ */
+public final class TextNormalizer {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // 分词时的字符类别：分隔符 (空白、标点)、英文字母、数字、中文等其他文字
+    private static final int SEPARATOR = 0;
+    private static final int LETTERS = 1;
+    private static final int DIGITS = 2;
+    private static final int OTHER = 3;
+
+    // 区分同系列不同型号的英文词
+    private static final Set<String> MODEL_TERMS = new HashSet<>(Arrays.asList(
+            "pro", "ultra", "max", "plus", "lite", "mini", "se", "note", "fold", "flip",
+            "turbo", "civi", "mix", "redmi", "poco"));
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * 归一化问题文本，结果可直接作为缓存键或精确匹配键
+     */
+    public static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String nfkc = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        StringBuilder sb = new StringBuilder(nfkc.length());
+        for (int i = 0; i < nfkc.length(); ) {
+            int cp = nfkc.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.isLetterOrDigit(cp)) {
+                sb.appendCodePoint(Character.toLowerCase(cp));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 归一化问题的 SHA-256 (64 位十六进制)，作为知识库的去重键 (knowledges.question_hash)；
+     * 归一化后为空 (只有标点、空白) 时返回 null
+     */
+    public static String questionHash(String question) {
+        String normalized = normalize(question);
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        byte[] digest = SHA256.get().digest(normalized.getBytes(StandardCharsets.UTF_8));
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * 对原始问题文本分词 (不要先调用 {@link #normalize}，否则英文单词之间的空格已被去掉)。
+     * 空白和标点作为分隔符；连续的英文字母、连续的数字各作为一个词 ("14pro" 切为 "14"、"pro")，
+     * 中文等其他文字的连续片段按二元组切分，二元组不跨越分隔符和英文/数字。
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String nfkc = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        StringBuilder run = new StringBuilder();
+        int runType = SEPARATOR;
+        for (int i = 0; i < nfkc.length(); ) {
+            int cp = nfkc.codePointAt(i);
+            i += Character.charCount(cp);
+            int type = charType(cp);
+            if (type != runType) {
+                flush(run, runType, terms);
+                runType = type;
+            }
+            if (type != SEPARATOR) {
+                run.appendCodePoint(Character.toLowerCase(cp));
+            }
+        }
+        flush(run, runType, terms);
+        return terms;
+    }
+
+    /**
+     * 是否为关键词项：数字或型号词 (pro、ultra 等)。
+     * 这类词只差一个就是另一款产品，模糊匹配时要求查询与候选条目的关键词项一致
+     */
+    public static boolean isKeyTerm(String term) {
+        char first = term.charAt(0);
+        return (first >= '0' && first <= '9') || MODEL_TERMS.contains(term);
+    }
+
+    /**
+     * 查询中的关键词项都出现在候选问题中，且候选问题中的关键词项都出现在查询中
+     * @param queryTerms 查询的词项 (不重复)
+     * @param candidateTerms 候选问题的词项 (不重复)
+     */
+    public static boolean sameKeyTerms(Collection<String> queryTerms, Collection<String> candidateTerms) {
+        int candidateKeyTerms = 0;
+        for (String term : candidateTerms) {
+            if (isKeyTerm(term)) {
+                if (!queryTerms.contains(term)) {
+                    return false;
+                }
+                candidateKeyTerms++;
+            }
+        }
+        int queryKeyTerms = 0;
+        for (String term : queryTerms) {
+            if (isKeyTerm(term)) {
+                queryKeyTerms++;
+            }
+        }
+        // 候选问题的关键词项都在查询中，个数相同即两边一致
+        return queryKeyTerms == candidateKeyTerms;
+    }
+
+    /**
+     * 查询中未命中的二元组与候选问题中未命中的二元组首字相同、次字不同，
+     * 说明查询把候选问题里的词换了一个字 ("申请退货" 对 "申请退款")，相似度再高也是另一件事。
+     * 整词替换的同义说法 ("怎么" 对 "如何") 首字不同，不受影响。
+     * @param queryTerms 查询的词项 (不重复)
+     * @param candidateTerms 候选问题的词项 (不重复)
+     */
+    public static boolean substitutesWord(Collection<String> queryTerms, Collection<String> candidateTerms) {
+        Set<String> candidateSet = new HashSet<>(candidateTerms);
+        for (String candidateTerm : candidateTerms) {
+            if (candidateTerm.length() != 2 || queryTerms.contains(candidateTerm) || candidateTerm.charAt(0) < 0x80) {
+                continue;
+            }
+            for (String queryTerm : queryTerms) {
+                if (queryTerm.length() == 2 && queryTerm.charAt(0) == candidateTerm.charAt(0)
+                        && !candidateSet.contains(queryTerm)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int charType(int cp) {
+        if (cp < 0x80) {
+            if (cp >= '0' && cp <= '9') {
+                return DIGITS;
+            }
+            return Character.isLetter(cp) ? LETTERS : SEPARATOR;
+        }
+        return Character.isLetterOrDigit(cp) ? OTHER : SEPARATOR;
+    }
+
+    private static void flush(StringBuilder run, int runType, List<String> terms) {
+        if (run.length() == 0) {
+            return;
+        }
+        if (runType == OTHER) {
+            addBigrams(run.toString(), terms);
+        } else {
+            terms.add(run.toString());
+        }
+        run.setLength(0);
+    }
+
+    private static void addBigrams(String run, List<String> terms) {
+        int[] cps = run.codePoints().toArray();
+        if (cps.length == 1) {
+            terms.add(run);
+            return;
+        }
+        for (int i = 0; i + 1 < cps.length; i++) {
+            terms.add(new String(cps, i, 2));
+        }
+    }
+}
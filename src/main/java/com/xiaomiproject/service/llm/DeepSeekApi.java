@@ -1,48 +1,21 @@
 package com.xiaomiproject.service.llm;
 
-import com.xiaomiproject.dto.LlmRequest;
-import com.xiaomiproject.dto.Message;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.xiaomiproject.config.LlmWebClientFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
-import reactor.core.publisher.Flux;
-
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 
 @Service
-public class DeepSeekApi implements LlmApi {
-
-    @Value("${llm.deepseek.api.url}")
-    private String apiUrl;
-
-    @Value("${llm.deepseek.api.key}")
-    private String apiKey;
+public class DeepSeekApi extends OpenAiCompatibleApi {
 
-    @Autowired
-    private WebClient.Builder webClientBuilder;
+    public DeepSeekApi(LlmWebClientFactory webClientFactory,
+                       @Value("${llm.deepseek.api.url}") String apiUrl,
+                       @Value("${llm.deepseek.api.key}") String apiKey,
+                       @Value("${llm.deepseek.http2:true}") boolean http2) {
+        super(webClientFactory.create("deepseek", apiUrl, apiKey, http2), "deepseek-chat");
+    }
 
     @Override
     public String getModelType() {
         return "deepseek"; // 定义模型类型
     }
-
-    @Override
-    public Flux<String> getCompletionStream(String question) {
-        WebClient webClient = webClientBuilder.baseUrl(apiUrl)
-                .defaultHeader("Authorization", "Bearer " + apiKey)
-                .build();
-
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("model", "deepseek-chat");
-        requestBody.put("messages", Collections.singletonList(new Message("user", question)));
-        requestBody.put("stream", true);
-
-        return webClient.post()
-                .bodyValue(requestBody)
-                .retrieve()
-                .bodyToFlux(String.class);
-    }
 }
@@ -1,7 +1,11 @@
 package com.xiaomiproject.service.llm;
 
+import com.xiaomiproject.dto.Message;
 import reactor.core.publisher.Flux;
 
+import java.util.Collections;
+import java.util.List;
+
 public interface LlmApi {
 
     /**
@@ -11,9 +15,18 @@ public interface LlmApi {
     String getModelType();
 
     /**
-     * 调用大模型API获取流式回答
+     * 调用大模型API获取流式回答 (单轮，没有上下文)
      * @param question 用户的问题
-     * @return 包含AI回答数据块的Flux流
+     * @return AI回答的文本增量流，每个元素是一段可直接展示的文本 (已去掉SSE帧和JSON包装)
+     */
+    default Flux<String> getCompletionStream(String question) {
+        return getCompletionStream(Collections.singletonList(new Message("user", question)));
+    }
+
+    /**
+     * 带上下文的多轮调用
+     * @param messages 按顺序排列的消息，最后一条是当前问题
+     * @return AI回答的文本增量流
      */
-    Flux<String> getCompletionStream(String question);
+    Flux<String> getCompletionStream(List<Message> messages);
 }
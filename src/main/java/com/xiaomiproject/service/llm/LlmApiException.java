@@ -0,0 +1,15 @@
+package com.xiaomiproject.service.llm;
+
+/**
+ * 大模型接口在流中返回错误时抛出
+ */
+public class LlmApiException extends RuntimeException {
+
+    public LlmApiException(String message) {
+        super(message);
+    }
+
+    public LlmApiException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
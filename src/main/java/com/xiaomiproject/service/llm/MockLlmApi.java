@@ -0,0 +1,92 @@
+package com.xiaomiproject.service.llm;
+
+import com.xiaomiproject.dto.Message;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地模拟的模型服务，不访问网络，用于在本地验证对冲、故障转移和熔断。
+ * 首 token 延迟、token 间隔、失败率和失败前已输出的 token 数均可配置，见 {@link com.xiaomiproject.config.MockLlmConfig}。
+ */
+public class MockLlmApi implements LlmApi {
+
+    private final String modelType;
+    private final long firstTokenDelayMs;
+    private final long tokenDelayMs;
+    private volatile double failureRate;
+    // 失败的调用先输出多少个 token 再报错，0 表示在首 token 之前失败
+    private final int failAfterTokens;
+    private final List<String> tokens;
+
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong cancelCount = new AtomicLong();
+
+    public MockLlmApi(String modelType, long firstTokenDelayMs, long tokenDelayMs, double failureRate, String answer) {
+        this(modelType, firstTokenDelayMs, tokenDelayMs, failureRate, 0, answer);
+    }
+
+    public MockLlmApi(String modelType, long firstTokenDelayMs, long tokenDelayMs, double failureRate,
+                      int failAfterTokens, String answer) {
+        this.modelType = modelType;
+        this.firstTokenDelayMs = firstTokenDelayMs;
+        this.tokenDelayMs = tokenDelayMs;
+        this.failureRate = failureRate;
+        this.failAfterTokens = failAfterTokens;
+        // 每 4 个字符作为一个 token
+        this.tokens = new ArrayList<>();
+        for (int i = 0; i < answer.length(); i += 4) {
+            tokens.add(answer.substring(i, Math.min(answer.length(), i + 4)));
+        }
+    }
+
+    @Override
+    public String getModelType() {
+        return modelType;
+    }
+
+    @Override
+    public Flux<String> getCompletionStream(List<Message> messages) {
+        return Flux.defer(() -> {
+            callCount.incrementAndGet();
+            if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+                return tokenStream(tokens.subList(0, Math.min(failAfterTokens, tokens.size())))
+                        .concatWith(Flux.error(new LlmApiException(modelType + " 模拟失败")));
+            }
+            return tokenStream(tokens);
+        }).doOnCancel(cancelCount::incrementAndGet);
+    }
+
+    private Flux<String> tokenStream(List<String> emitted) {
+        Flux<String> stream = Flux.fromIterable(emitted);
+        if (tokenDelayMs > 0) {
+            stream = stream.delayElements(Duration.ofMillis(tokenDelayMs));
+        }
+        return stream.delaySubscription(Duration.ofMillis(firstTokenDelayMs));
+    }
+
+    /**
+     * 运行中调整失败率，模拟服务故障和恢复
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * 累计调用次数
+     */
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    /**
+     * 被调用方取消的次数 (如对冲请求中输掉的一方)
+     */
+    public long getCancelCount() {
+        return cancelCount.get();
+    }
+}
@@ -0,0 +1,53 @@
+package com.xiaomiproject.service.llm;
+
+import com.xiaomiproject.dto.LlmRequest;
+import com.xiaomiproject.dto.Message;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * OpenAI 兼容接口 (chat/completions) 的公共实现。
+ * WebClient 在构造时创建一次并长期复用，请求体使用 {@link LlmRequest} 直接序列化；
+ * 响应按原始字节交给 {@link SseTokenDecoder} 增量解码，对外只输出文本增量。
+ */
+public abstract class OpenAiCompatibleApi implements LlmApi {
+
+    private final WebClient webClient;
+    private final String modelName;
+
+    protected OpenAiCompatibleApi(WebClient webClient, String modelName) {
+        this.webClient = webClient;
+        this.modelName = modelName;
+    }
+
+    @Override
+    public Flux<String> getCompletionStream(List<Message> messages) {
+        LlmRequest request = new LlmRequest();
+        request.setModel(modelName);
+        request.setMessages(messages);
+        request.setStream(true);
+
+        return Flux.defer(() -> {
+            // 解码器有状态，每次订阅 (每个上游流) 使用独立实例
+            SseTokenDecoder decoder = new SseTokenDecoder();
+            return webClient.post()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(request)
+                    .retrieve()
+                    .bodyToFlux(DataBuffer.class)
+                    .concatMapIterable(dataBuffer -> {
+                        try {
+                            return decoder.decode(dataBuffer);
+                        } finally {
+                            DataBufferUtils.release(dataBuffer);
+                        }
+                    })
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(decoder.finish())));
+        });
+    }
+}
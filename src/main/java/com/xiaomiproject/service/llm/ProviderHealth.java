@@ -0,0 +1,241 @@
+package com.xiaomiproject.service.llm;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个模型服务的健康状况：首 token 延迟 (TTFT) 的滑动样本和熔断器 (线程安全)。
+ * <p>
+ * 熔断器统计最近 windowSize 次调用的结果，失败或首 token 超过慢调用阈值都记为"坏"调用；
+ * 调用数达到 minCalls 且坏调用比例超过阈值时打开，openMs 后进入半开状态，
+ * 只放行一个试探请求，试探成功则关闭，失败则重新打开。
+ */
+public class ProviderHealth {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 熔断与样本参数 (所有模型共用一份)
+     */
+    public static final class Settings {
+        final int sampleSize;
+        final int windowSize;
+        final int minCalls;
+        final double failureRate;
+        final long slowCallMs;
+        final long openMs;
+
+        public Settings(int sampleSize, int windowSize, int minCalls, double failureRate, long slowCallMs, long openMs) {
+            this.sampleSize = sampleSize;
+            this.windowSize = windowSize;
+            this.minCalls = minCalls;
+            this.failureRate = failureRate;
+            this.slowCallMs = slowCallMs;
+            this.openMs = openMs;
+        }
+    }
+
+    // 百分位缓存的最长有效期，避免每个请求都排序样本
+    private static final long PERCENTILE_REFRESH_MS = 1000;
+
+    private final String modelType;
+    private final Settings settings;
+
+    // 首 token 延迟样本 (环形缓冲)
+    private final long[] ttftSamples;
+    private int sampleNext;
+    private int sampleCount;
+    private long[] sortedSamples = new long[0];
+    private long sortedAt;
+    private boolean samplesDirty;
+
+    // 最近调用的结果 (环形缓冲)，true 表示失败或慢调用
+    private final boolean[] outcomes;
+    private int outcomeNext;
+    private int outcomeCount;
+    private int badCount;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    private final AtomicLong successCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong slowCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong openCount = new AtomicLong();
+
+    public ProviderHealth(String modelType, Settings settings) {
+        this.modelType = modelType;
+        this.settings = settings;
+        this.ttftSamples = new long[settings.sampleSize];
+        this.outcomes = new boolean[settings.windowSize];
+    }
+
+    /**
+     * 是否允许发起调用；半开状态下只放行一个试探请求
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt >= settings.openMs) {
+                    state = State.HALF_OPEN;
+                    trialInFlight = true;
+                    return true;
+                }
+                rejectedCount.incrementAndGet();
+                return false;
+            case HALF_OPEN:
+            default:
+                if (!trialInFlight) {
+                    trialInFlight = true;
+                    return true;
+                }
+                rejectedCount.incrementAndGet();
+                return false;
+        }
+    }
+
+    /**
+     * 收到首个 token
+     */
+    public synchronized void recordFirstToken(long ttftMs) {
+        ttftSamples[sampleNext] = ttftMs;
+        sampleNext = (sampleNext + 1) % ttftSamples.length;
+        if (sampleCount < ttftSamples.length) {
+            sampleCount++;
+        }
+        samplesDirty = true;
+    }
+
+    /**
+     * 调用正常结束
+     */
+    public synchronized void onSuccess(long ttftMs) {
+        boolean slow = ttftMs > settings.slowCallMs;
+        if (slow) {
+            slowCount.incrementAndGet();
+        } else {
+            successCount.incrementAndGet();
+        }
+        settle(slow);
+    }
+
+    public synchronized void onFailure() {
+        failureCount.incrementAndGet();
+        settle(true);
+    }
+
+    /**
+     * 对冲请求中输给另一个模型 (在它之前没有返回首 token)，按慢调用计
+     */
+    public synchronized void onLostRace() {
+        slowCount.incrementAndGet();
+        settle(true);
+    }
+
+    /**
+     * 调用方取消 (如客户端断开)，不计入统计，只归还半开状态下的试探名额
+     */
+    public synchronized void onCancelled() {
+        trialInFlight = false;
+    }
+
+    private void settle(boolean bad) {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            if (bad) {
+                open();
+            } else {
+                state = State.CLOSED;
+                resetWindow();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // 打开前已发出的请求陆续结束，不再计入
+            return;
+        }
+        if (outcomeCount == outcomes.length) {
+            if (outcomes[outcomeNext]) {
+                badCount--;
+            }
+        } else {
+            outcomeCount++;
+        }
+        outcomes[outcomeNext] = bad;
+        if (bad) {
+            badCount++;
+        }
+        outcomeNext = (outcomeNext + 1) % outcomes.length;
+        if (outcomeCount >= settings.minCalls && badCount >= settings.failureRate * outcomeCount) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        openCount.incrementAndGet();
+        resetWindow();
+        System.err.println("模型服务熔断: " + modelType + "，" + settings.openMs + "ms 后试探恢复");
+    }
+
+    private void resetWindow() {
+        Arrays.fill(outcomes, false);
+        outcomeNext = 0;
+        outcomeCount = 0;
+        badCount = 0;
+    }
+
+    /**
+     * 首 token 延迟的百分位 (毫秒)，样本不足 minSamples 时返回 -1
+     */
+    public synchronized long ttftPercentile(double percentile, int minSamples) {
+        if (sampleCount < minSamples || sampleCount == 0) {
+            return -1;
+        }
+        long now = System.currentTimeMillis();
+        if (samplesDirty && (now - sortedAt >= PERCENTILE_REFRESH_MS || sortedSamples.length < minSamples)) {
+            sortedSamples = Arrays.copyOf(ttftSamples, sampleCount);
+            Arrays.sort(sortedSamples);
+            sortedAt = now;
+            samplesDirty = false;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sortedSamples.length) - 1;
+        return sortedSamples[Math.max(0, Math.min(index, sortedSamples.length - 1))];
+    }
+
+    public String getModelType() {
+        return modelType;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public Map<String, Object> statsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        synchronized (this) {
+            snapshot.put("state", state.name());
+            snapshot.put("windowCalls", outcomeCount);
+            snapshot.put("windowBadCalls", badCount);
+            snapshot.put("ttftSamples", sampleCount);
+        }
+        snapshot.put("ttftP50Ms", ttftPercentile(50, 1));
+        snapshot.put("ttftP95Ms", ttftPercentile(95, 1));
+        snapshot.put("ttftP99Ms", ttftPercentile(99, 1));
+        snapshot.put("successCount", successCount.get());
+        snapshot.put("slowCount", slowCount.get());
+        snapshot.put("failureCount", failureCount.get());
+        snapshot.put("rejectedCount", rejectedCount.get());
+        snapshot.put("openCount", openCount.get());
+        return snapshot;
+    }
+}
@@ -0,0 +1,303 @@
+package com.xiaomiproject.service.llm;
+
+import com.xiaomiproject.dto.Message;
+import com.xiaomiproject.service.metrics.ChatMetrics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * 模型调用的容错层：超时、对冲请求、故障转移和熔断。
+ * <p>
+ * 每个模型服务有一个 {@link ProviderHealth}，记录首 token 延迟 (TTFT) 并维护熔断器。
+ * 调用时先选第一个熔断器允许的模型 (请求的模型优先，其次按 fallback-order)；
+ * 若它在自身 TTFT 的 P{hedge.percentile} 内还没有返回首 token，或在首 token 前就失败，
+ * 则向下一个可用模型发出对冲请求，哪个先返回首 token 就用哪个，另一个立即取消。
+ * 首 token 之后的失败不再切换 (已输出的内容无法撤回)，直接向调用方报错。
+ * 首 token 和相邻 token 之间都有超时，上游卡住时流会以错误结束，不会无限等待。
+ */
+@Service
+public class ResilientLlmRouter {
+
+    @Autowired
+    private List<LlmApi> llmApis;
+
+    @Autowired
+    private ChatMetrics chatMetrics;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${llm.resilience.enabled:true}")
+    private boolean enabled;
+
+    // 首 token 超时和 token 之间的空闲超时
+    @Value("${llm.resilience.first-token-timeout-ms:20000}")
+    private long firstTokenTimeoutMs;
+
+    @Value("${llm.resilience.idle-timeout-ms:30000}")
+    private long idleTimeoutMs;
+
+    // 故障转移/对冲的候选顺序 (逗号分隔的模型类型)，未列出的模型排在后面
+    @Value("${llm.resilience.fallback-order:}")
+    private String fallbackOrder;
+
+    @Value("${llm.resilience.hedge.enabled:true}")
+    private boolean hedgeEnabled;
+
+    @Value("${llm.resilience.hedge.percentile:95}")
+    private double hedgePercentile;
+
+    // 样本不足时使用固定的对冲延迟
+    @Value("${llm.resilience.hedge.min-samples:20}")
+    private int hedgeMinSamples;
+
+    @Value("${llm.resilience.hedge.default-delay-ms:3000}")
+    private long hedgeDefaultDelayMs;
+
+    @Value("${llm.resilience.hedge.min-delay-ms:500}")
+    private long hedgeMinDelayMs;
+
+    @Value("${llm.resilience.hedge.max-delay-ms:10000}")
+    private long hedgeMaxDelayMs;
+
+    @Value("${llm.resilience.ttft-sample-size:256}")
+    private int sampleSize;
+
+    @Value("${llm.resilience.breaker.window-size:50}")
+    private int breakerWindowSize;
+
+    @Value("${llm.resilience.breaker.min-calls:10}")
+    private int breakerMinCalls;
+
+    @Value("${llm.resilience.breaker.failure-rate:0.5}")
+    private double breakerFailureRate;
+
+    // 首 token 超过该值记为慢调用，慢调用与失败一起计入熔断比例
+    @Value("${llm.resilience.breaker.slow-call-ms:10000}")
+    private long breakerSlowCallMs;
+
+    @Value("${llm.resilience.breaker.open-ms:30000}")
+    private long breakerOpenMs;
+
+    private final Map<String, ProviderHealth> healthByModel = new LinkedHashMap<>();
+    private List<LlmApi> orderedApis;
+
+    private final AtomicLong hedgesStarted = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong failovers = new AtomicLong();
+    private final AtomicLong allUnavailable = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        ProviderHealth.Settings settings = new ProviderHealth.Settings(sampleSize, breakerWindowSize, breakerMinCalls,
+                breakerFailureRate, breakerSlowCallMs, breakerOpenMs);
+        List<String> order = Arrays.stream(fallbackOrder.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toList());
+        orderedApis = new ArrayList<>(llmApis);
+        orderedApis.sort((a, b) -> Integer.compare(rank(order, a), rank(order, b)));
+        for (LlmApi api : orderedApis) {
+            healthByModel.put(api.getModelType(), new ProviderHealth(api.getModelType(), settings));
+        }
+        bindMetrics(meterRegistry);
+    }
+
+    private static int rank(List<String> order, LlmApi api) {
+        int index = order.indexOf(api.getModelType());
+        return index < 0 ? Integer.MAX_VALUE : index;
+    }
+
+    /**
+     * 以容错方式调用模型；requested 为调用方选定的模型，不可用时自动换用其他模型
+     */
+    public Flux<String> stream(LlmApi requested, List<Message> messages) {
+        if (!enabled) {
+            return requested.getCompletionStream(messages);
+        }
+        return Flux.defer(() -> {
+            List<LlmApi> candidates = candidatesFor(requested);
+            LlmApi primary = acquireNext(candidates, null);
+            if (primary == null) {
+                allUnavailable.incrementAndGet();
+                return Flux.error(new LlmApiException("所有模型服务均处于熔断状态，请稍后重试"));
+            }
+            if (primary != requested) {
+                failovers.incrementAndGet();
+            }
+            AtomicReference<LlmApi> winner = new AtomicReference<>();
+            Sinks.Empty<Void> primaryFailed = Sinks.empty();
+            Flux<String> first = attempt(primary, messages, winner, primaryFailed);
+            if (!hedgeEnabled || candidates.size() < 2) {
+                return first;
+            }
+            // 超过对冲延迟或主请求在首 token 前失败时，向下一个可用模型发出请求
+            Flux<String> hedge = Mono.firstWithSignal(Mono.delay(Duration.ofMillis(hedgeDelayMs(primary))).then(),
+                            primaryFailed.asMono())
+                    .thenMany(Flux.defer(() -> {
+                        if (winner.get() != null) {
+                            return Flux.<String>empty();
+                        }
+                        LlmApi secondary = acquireNext(candidates, primary);
+                        if (secondary == null) {
+                            return Flux.<String>empty();
+                        }
+                        hedgesStarted.incrementAndGet();
+                        return attempt(secondary, messages, winner, null);
+                    }));
+            return Flux.firstWithValue(first, hedge)
+                    .onErrorMap(NoSuchElementException.class, e -> new LlmApiException("模型服务均未返回结果"));
+        });
+    }
+
+    private List<LlmApi> candidatesFor(LlmApi requested) {
+        List<LlmApi> candidates = new ArrayList<>(orderedApis.size());
+        candidates.add(requested);
+        for (LlmApi api : orderedApis) {
+            if (api != requested) {
+                candidates.add(api);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * 按顺序取第一个熔断器放行的模型 (跳过 exclude)
+     */
+    private LlmApi acquireNext(List<LlmApi> candidates, LlmApi exclude) {
+        for (LlmApi api : candidates) {
+            if (api != exclude && healthOf(api).tryAcquire()) {
+                return api;
+            }
+        }
+        return null;
+    }
+
+    private long hedgeDelayMs(LlmApi api) {
+        long percentile = healthOf(api).ttftPercentile(hedgePercentile, hedgeMinSamples);
+        if (percentile < 0) {
+            return hedgeDefaultDelayMs;
+        }
+        return Math.max(hedgeMinDelayMs, Math.min(hedgeMaxDelayMs, percentile));
+    }
+
+    /**
+     * 对单个模型的一次调用：加上超时，并把首 token 延迟和调用结果记入该模型的健康状况
+     * @param failedBeforeFirstToken 主请求在首 token 前失败时发出信号，用于立即触发对冲；对冲请求传 null
+     */
+    private Flux<String> attempt(LlmApi api, List<Message> messages, AtomicReference<LlmApi> winner,
+                                 Sinks.Empty<Void> failedBeforeFirstToken) {
+        ProviderHealth health = healthOf(api);
+        String provider = api.getModelType();
+        return Flux.defer(() -> {
+            long startNanos = System.nanoTime();
+            AtomicLong ttftNanos = new AtomicLong(-1);
+            AtomicLong tokens = new AtomicLong();
+            AtomicBoolean settled = new AtomicBoolean();
+            return api.getCompletionStream(messages)
+                    .timeout(Mono.delay(Duration.ofMillis(firstTokenTimeoutMs)),
+                            token -> Mono.delay(Duration.ofMillis(idleTimeoutMs)))
+                    .onErrorMap(TimeoutException.class,
+                            e -> new LlmApiException(provider + " 响应超时"))
+                    .doOnNext(token -> {
+                        tokens.incrementAndGet();
+                        if (ttftNanos.get() < 0) {
+                            long elapsed = System.nanoTime() - startNanos;
+                            ttftNanos.set(elapsed);
+                            health.recordFirstToken(TimeUnit.NANOSECONDS.toMillis(elapsed));
+                            chatMetrics.firstToken(provider, elapsed);
+                            // 对冲请求先于主请求返回首 token
+                            if (winner.compareAndSet(null, api) && failedBeforeFirstToken == null) {
+                                hedgeWins.incrementAndGet();
+                            }
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        if (settled.compareAndSet(false, true)) {
+                            long duration = System.nanoTime() - startNanos;
+                            long ttft = ttftNanos.get();
+                            health.onSuccess(TimeUnit.NANOSECONDS.toMillis(ttft < 0 ? duration : ttft));
+                            chatMetrics.streamFinished(provider, "success", duration, ttft, tokens.get());
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (settled.compareAndSet(false, true)) {
+                            health.onFailure();
+                            chatMetrics.streamFinished(provider, "error", System.nanoTime() - startNanos,
+                                    ttftNanos.get(), tokens.get());
+                            System.err.println("模型调用失败: " + provider + " - " + e.getMessage());
+                        }
+                        if (ttftNanos.get() < 0 && failedBeforeFirstToken != null) {
+                            failedBeforeFirstToken.tryEmitEmpty();
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (settled.compareAndSet(false, true)) {
+                            LlmApi won = winner.get();
+                            if (ttftNanos.get() < 0 && won != null && won != api) {
+                                health.onLostRace();
+                            } else {
+                                health.onCancelled();
+                            }
+                            chatMetrics.streamFinished(provider, "cancelled", System.nanoTime() - startNanos,
+                                    ttftNanos.get(), tokens.get());
+                        }
+                    });
+        });
+    }
+
+    private ProviderHealth healthOf(LlmApi api) {
+        return healthByModel.get(api.getModelType());
+    }
+
+    /**
+     * 对冲、故障转移计数，以及各模型的熔断状态 (0 关闭，1 打开，2 半开)
+     */
+    private void bindMetrics(MeterRegistry registry) {
+        FunctionCounter.builder("chat.llm.hedges", hedgesStarted, AtomicLong::get).register(registry);
+        FunctionCounter.builder("chat.llm.hedge.wins", hedgeWins, AtomicLong::get).register(registry);
+        FunctionCounter.builder("chat.llm.failovers", failovers, AtomicLong::get).register(registry);
+        for (ProviderHealth health : healthByModel.values()) {
+            Gauge.builder("chat.llm.breaker.state", health, h -> h.getState().ordinal())
+                    .tag("provider", health.getModelType())
+                    .register(registry);
+        }
+    }
+
+    public Map<String, Object> statsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("hedgesStarted", hedgesStarted.get());
+        snapshot.put("hedgeWins", hedgeWins.get());
+        snapshot.put("failovers", failovers.get());
+        snapshot.put("allUnavailable", allUnavailable.get());
+        Map<String, Object> providers = new LinkedHashMap<>();
+        for (ProviderHealth health : healthByModel.values()) {
+            providers.put(health.getModelType(), health.statsSnapshot());
+        }
+        snapshot.put("providers", providers);
+        return snapshot;
+    }
+}
@@ -0,0 +1,282 @@
+package com.xiaomiproject.service.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * OpenAI 兼容流式接口的增量 SSE 解码器 (每个上游流一个实例，非线程安全)。
+ * <p>
+ * 网络数据块按字节追加到内部缓冲区，按 SSE 规范以空行切分事件，能正确处理跨数据块的事件；
+ * 事件的 data 直接在缓冲区上用 Jackson 流式 {@link JsonParser} 解析，只提取
+ * {@code choices[0].delta.content}，不构建 JsonNode 树，也不为整段 JSON 创建字符串。
+ */
+public class SseTokenDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final byte[] DATA_FIELD = {'d', 'a', 't', 'a', ':'};
+    private static final byte[] DONE = {'[', 'D', 'O', 'N', 'E', ']'};
+    private static final byte[] NEWLINE = {'\n'};
+
+    // 未处理完的字节，从当前事件的起点开始
+    private byte[] buffer = new byte[8192];
+    private int length;
+    // 下一行的扫描起点
+    private int scanPos;
+    // 当前事件是否已有 data 行，以及第一条 data 行在缓冲区中的位置
+    private boolean hasData;
+    private int dataStart;
+    private int dataEnd;
+    // 同一事件有多条 data 行时，按规范用换行拼接到这里
+    private byte[] joined;
+    private int joinedLength;
+    private boolean done;
+
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * 解码一个网络数据块，返回其中完整事件携带的文本增量 (不释放 DataBuffer)
+     */
+    public List<String> decode(DataBuffer dataBuffer) {
+        int readable = dataBuffer.readableByteCount();
+        ensureCapacity(length + readable);
+        ByteBuffer byteBuffer = dataBuffer.asByteBuffer();
+        byteBuffer.get(buffer, length, readable);
+        length += readable;
+        return drain();
+    }
+
+    /**
+     * 解码一段字节 (便于测试和基准测试直接使用)
+     */
+    public List<String> decode(byte[] bytes, int offset, int count) {
+        ensureCapacity(length + count);
+        System.arraycopy(bytes, offset, buffer, length, count);
+        length += count;
+        return drain();
+    }
+
+    /**
+     * 上游结束时调用：处理最后一个没有以空行结尾的事件
+     */
+    public List<String> finish() {
+        if (scanPos < length) {
+            // 把剩余的半行当作完整行处理
+            processLine(scanPos, length);
+            scanPos = length;
+        }
+        List<String> tokens = new ArrayList<>(1);
+        dispatchEvent(tokens);
+        return tokens;
+    }
+
+    private List<String> drain() {
+        List<String> tokens = null;
+        int i = scanPos;
+        while (i < length) {
+            byte b = buffer[i];
+            if (b != '\n' && b != '\r') {
+                i++;
+                continue;
+            }
+            int lineEnd = i;
+            // 兼容 \r\n 换行；\r 在块末尾时等下一块再判断
+            if (b == '\r') {
+                if (i + 1 >= length) {
+                    break;
+                }
+                if (buffer[i + 1] == '\n') {
+                    i++;
+                }
+            }
+            i++;
+            if (lineEnd == scanPos) {
+                // 空行：事件结束
+                if (tokens == null) {
+                    tokens = new ArrayList<>(4);
+                }
+                dispatchEvent(tokens);
+            } else {
+                processLine(scanPos, lineEnd);
+            }
+            scanPos = i;
+        }
+        // 当前事件只有一条尚未拼接的 data 行时，需保留它以便原地解析
+        compact(hasData && joinedLength == 0 ? dataStart : scanPos);
+        return tokens == null ? Collections.<String>emptyList() : tokens;
+    }
+
+    private void processLine(int start, int end) {
+        if (!startsWith(start, end, DATA_FIELD)) {
+            // 注释行 (":" 开头)、event/id/retry 字段对取文本没有意义，直接忽略
+            return;
+        }
+        int valueStart = start + DATA_FIELD.length;
+        if (valueStart < end && buffer[valueStart] == ' ') {
+            valueStart++;
+        }
+        if (!hasData) {
+            hasData = true;
+            dataStart = valueStart;
+            dataEnd = end;
+            return;
+        }
+        // 多条 data 行：拼接到独立缓冲区
+        if (joined == null || joinedLength == 0) {
+            appendJoined(buffer, dataStart, dataEnd - dataStart);
+        }
+        appendJoined(NEWLINE, 0, 1);
+        appendJoined(buffer, valueStart, end - valueStart);
+    }
+
+    private void dispatchEvent(List<String> tokens) {
+        if (!hasData) {
+            return;
+        }
+        byte[] source = buffer;
+        int start = dataStart;
+        int end = dataEnd;
+        if (joinedLength > 0) {
+            source = joined;
+            start = 0;
+            end = joinedLength;
+        }
+        if (end - start == DONE.length && regionEquals(source, start, DONE)) {
+            done = true;
+        } else if (end > start) {
+            String content = extractContent(source, start, end - start);
+            if (content != null && !content.isEmpty()) {
+                tokens.add(content);
+            }
+        }
+        hasData = false;
+        joinedLength = 0;
+    }
+
+    /**
+     * 流式解析 {"choices":[{"delta":{"content":"..."}}]}，找到 content 即返回；
+     * 上游返回 {"error":{...}} 时抛出 {@link LlmApiException}
+     */
+    static String extractContent(byte[] source, int offset, int len) {
+        try (JsonParser parser = JSON_FACTORY.createParser(source, offset, len)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                    if (parser.nextToken() != JsonToken.START_OBJECT) {
+                        return null;
+                    }
+                    return readDeltaContent(parser);
+                } else if ("error".equals(field)) {
+                    throw new LlmApiException("LLM stream returned error: " + readErrorMessage(parser, value));
+                }
+                parser.skipChildren();
+            }
+            return null;
+        } catch (IOException e) {
+            // 单个事件解析失败不影响后续事件
+            return null;
+        }
+    }
+
+    private static String readDeltaContent(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("delta".equals(field) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String deltaField = parser.getCurrentName();
+                    JsonToken deltaValue = parser.nextToken();
+                    if ("content".equals(deltaField)) {
+                        return deltaValue == JsonToken.VALUE_STRING ? parser.getText() : null;
+                    }
+                    parser.skipChildren();
+                }
+                return null;
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    private static String readErrorMessage(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        if (value == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken fieldValue = parser.nextToken();
+                if ("message".equals(field) && fieldValue == JsonToken.VALUE_STRING) {
+                    return parser.getText();
+                }
+                parser.skipChildren();
+            }
+        }
+        return "unknown error";
+    }
+
+    private boolean startsWith(int start, int end, byte[] prefix) {
+        return end - start >= prefix.length && regionEquals(buffer, start, prefix);
+    }
+
+    private static boolean regionEquals(byte[] source, int start, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (source[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void appendJoined(byte[] source, int offset, int count) {
+        if (joined == null) {
+            joined = new byte[Math.max(256, count * 2)];
+        } else if (joinedLength + count > joined.length) {
+            byte[] grown = new byte[Math.max(joined.length * 2, joinedLength + count)];
+            System.arraycopy(joined, 0, grown, 0, joinedLength);
+            joined = grown;
+        }
+        System.arraycopy(source, offset, joined, joinedLength, count);
+        joinedLength += count;
+    }
+
+    /**
+     * 丢弃 keepFrom 之前已处理完的字节，并修正各位置
+     */
+    private void compact(int keepFrom) {
+        if (keepFrom == 0) {
+            return;
+        }
+        int remaining = length - keepFrom;
+        if (remaining > 0) {
+            System.arraycopy(buffer, keepFrom, buffer, 0, remaining);
+        }
+        length = remaining;
+        scanPos -= keepFrom;
+        if (hasData && joinedLength == 0) {
+            dataStart -= keepFrom;
+            dataEnd -= keepFrom;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, capacity)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+}
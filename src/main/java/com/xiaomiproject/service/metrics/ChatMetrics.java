@@ -0,0 +1,185 @@
+package com.xiaomiproject.service.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 问答链路的指标 (通过 /actuator/prometheus 暴露)。
+ * 计时器和计数器按标签组合创建一次后缓存，记录时只有一次 Map 查找和原子累加；
+ * 直方图的桶 (percentiles-histogram) 在 application.properties 中按指标名开启，由 Prometheus 端计算百分位。
+ * 队列深度、线程池、缓存命中率等状态类指标由各组件在启动时自行注册。
+ */
+@Component
+public class ChatMetrics {
+
+    /**
+     * 答案来源
+     */
+    public enum AnswerSource {
+        ANSWER_CACHE, KNOWLEDGE, LLM_CACHE, GENERATED_STORE, SEMANTIC_CACHE, LLM;
+
+        final String tag = name().toLowerCase();
+    }
+
+    private final MeterRegistry registry;
+
+    private final Map<AnswerSource, Counter> answerSources = new ConcurrentHashMap<>();
+    private final Map<String, Timer> ttftTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> streamTimers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> tokenRates = new ConcurrentHashMap<>();
+    private final Map<String, Counter> tokenCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> sseOutcomes = new ConcurrentHashMap<>();
+    private final AtomicInteger activeSse = new AtomicInteger();
+    private final Map<String, Counter> wsStreamOutcomes = new ConcurrentHashMap<>();
+    private final AtomicInteger activeWs = new AtomicInteger();
+    private final Map<String, Counter> resumeOutcomes = new ConcurrentHashMap<>();
+    private final Map<String, Counter> schedulerRejections = new ConcurrentHashMap<>();
+    private final Timer llmQueueWait;
+    private final Timer historyBatchWrite;
+    private final Timer historyPersistLatency;
+    private final DistributionSummary historyBatchSize;
+
+    public ChatMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        registry.gauge("chat.sse.active", activeSse);
+        registry.gauge("chat.ws.active", activeWs);
+        this.historyBatchWrite = Timer.builder("chat.history.batch.write")
+                .description("一批对话历史写入数据库的耗时")
+                .register(registry);
+        this.historyPersistLatency = Timer.builder("chat.history.persist.latency")
+                .description("对话历史从入队到写入数据库的耗时 (每批最早的一条)")
+                .register(registry);
+        this.historyBatchSize = DistributionSummary.builder("chat.history.batch.size")
+                .register(registry);
+        this.llmQueueWait = Timer.builder("chat.llm.queue.wait")
+                .description("大模型调用等待上游名额的时间")
+                .register(registry);
+    }
+
+    /**
+     * 记录一次回答的来源；各来源计数之比即缓存/知识库命中率
+     */
+    public void answerFrom(AnswerSource source) {
+        answerSources.computeIfAbsent(source, s -> Counter.builder("chat.answer.source")
+                .description("按来源统计的回答数")
+                .tag("source", s.tag)
+                .register(registry)).increment();
+    }
+
+    /**
+     * 首 token 延迟 (time to first token)
+     */
+    public void firstToken(String provider, long nanos) {
+        ttftTimers.computeIfAbsent(provider, p -> Timer.builder("chat.llm.ttft")
+                .description("大模型首个 token 的延迟")
+                .tag("provider", p)
+                .register(registry)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 一次上游流结束：总耗时、token 数，以及首 token 之后的生成速度 (tokens/s)
+     * @param outcome success / error / cancelled
+     */
+    public void streamFinished(String provider, String outcome, long durationNanos, long ttftNanos, long tokens) {
+        streamTimers.computeIfAbsent(provider + '|' + outcome, k -> Timer.builder("chat.llm.stream.duration")
+                .description("大模型流式回答的总耗时")
+                .tag("provider", provider)
+                .tag("outcome", outcome)
+                .register(registry)).record(durationNanos, TimeUnit.NANOSECONDS);
+        if (tokens <= 0) {
+            return;
+        }
+        tokenCounters.computeIfAbsent(provider, p -> Counter.builder("chat.llm.tokens")
+                .description("大模型输出的 token (流式增量) 数")
+                .tag("provider", p)
+                .register(registry)).increment(tokens);
+        long generationNanos = durationNanos - Math.max(0, ttftNanos);
+        if (tokens > 1 && generationNanos > 0) {
+            tokenRates.computeIfAbsent(provider, p -> DistributionSummary.builder("chat.llm.tokens.per.second")
+                    .description("首 token 之后的生成速度")
+                    .tag("provider", p)
+                    .register(registry)).record((tokens - 1) * 1e9 / generationNanos);
+        }
+    }
+
+    public void sseOpened() {
+        activeSse.incrementAndGet();
+    }
+
+    /**
+     * @param outcome completed / error / timeout / cancelled
+     */
+    public void sseClosed(String outcome) {
+        activeSse.decrementAndGet();
+        sseOutcomes.computeIfAbsent(outcome, o -> Counter.builder("chat.sse.closed")
+                .description("结束的 SSE 连接数")
+                .tag("outcome", o)
+                .register(registry)).increment();
+    }
+
+    public void wsOpened() {
+        activeWs.incrementAndGet();
+    }
+
+    public void wsClosed() {
+        activeWs.decrementAndGet();
+    }
+
+    /**
+     * WebSocket 连接上的一个问答流结束
+     * @param outcome completed / error / cancelled
+     */
+    public void wsStreamClosed(String outcome) {
+        wsStreamOutcomes.computeIfAbsent(outcome, o -> Counter.builder("chat.ws.stream.closed")
+                .description("结束的 WebSocket 问答流数")
+                .tag("outcome", o)
+                .register(registry)).increment();
+    }
+
+    /**
+     * 一次带 Last-Event-ID 的重连
+     * @param outcome local (本节点缓冲) / shared (共享缓冲) / miss (无法续传，重新生成)
+     */
+    public void streamResumed(String outcome) {
+        resumeOutcomes.computeIfAbsent(outcome, o -> Counter.builder("chat.stream.resume")
+                .description("SSE 断线重连的续传结果")
+                .tag("outcome", o)
+                .register(registry)).increment();
+    }
+
+    /**
+     * 长时间无人接收而被取消的回答
+     */
+    public void streamAbandoned() {
+        streamResumed("abandoned");
+    }
+
+    public void llmQueueWait(long nanos) {
+        llmQueueWait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 大模型调用被调度器拒绝
+     * @param reason user-quota / global-quota / user-queue / queue-full / queue-timeout
+     */
+    public void llmSchedulerRejected(String reason) {
+        schedulerRejections.computeIfAbsent(reason, r -> Counter.builder("chat.llm.scheduler.rejected")
+                .description("被配额或排队限制拒绝的大模型调用")
+                .tag("reason", r)
+                .register(registry)).increment();
+    }
+
+    public void historyBatchWritten(int size, long writeNanos, long oldestEnqueuedNanos) {
+        historyBatchWrite.record(writeNanos, TimeUnit.NANOSECONDS);
+        historyBatchSize.record(size);
+        historyPersistLatency.record(System.nanoTime() - oldestEnqueuedNanos, TimeUnit.NANOSECONDS);
+    }
+}
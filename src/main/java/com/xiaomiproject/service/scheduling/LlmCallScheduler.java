@@ -0,0 +1,412 @@
+package com.xiaomiproject.service.scheduling;
+
+import com.xiaomiproject.service.ChatOverloadedException;
+import com.xiaomiproject.service.QuotaExceededException;
+import com.xiaomiproject.service.metrics.ChatMetrics;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 大模型上游调用的调度器，由 LlmService 在真正发起上游调用时使用
+ * (缓存、知识库命中的问题，以及合并到进行中的相同调用的请求都不经过这里)。
+ * <p>
+ * 每次调用先扣减两个令牌桶：用户自己的配额和该模型的全局配额，任一用完即以 429 拒绝；
+ * 然后申请上游名额 (同时进行的调用数上限)，名额用完时进入排队，按加权公平排队 (起始时间公平排队) 决定下一个名额给谁：
+ * 每个请求的完成标签 = max(虚拟时间, 该用户上一个请求的完成标签) + 1 / 用户权重，标签最小者优先。
+ * 这样持续大量提问的用户只会排在自己的请求后面，偶尔提问的用户几乎不用等待，不会被挤占。
+ */
+@Service
+public class LlmCallScheduler {
+
+    private static final String USER_WEIGHT_PREFIX = "chat.llm.scheduler.user-weight.";
+    private static final String MODEL_QUOTA_PREFIX = "chat.llm.quota.model.";
+
+    @Autowired
+    private QuotaStore quotaStore;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private ChatMetrics chatMetrics;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.llm.scheduler.enabled:true}")
+    private boolean enabled;
+
+    // 同时进行的上游调用数上限
+    @Value("${chat.llm.scheduler.max-concurrent:64}")
+    private int maxConcurrent;
+
+    // 排队总数上限和每个用户的排队数上限
+    @Value("${chat.llm.scheduler.max-queued:1000}")
+    private int maxQueued;
+
+    @Value("${chat.llm.scheduler.max-queued-per-user:4}")
+    private int maxQueuedPerUser;
+
+    // 最长排队时间 (毫秒)，超时按服务繁忙处理
+    @Value("${chat.llm.scheduler.queue-timeout-ms:30000}")
+    private long queueTimeoutMs;
+
+    // 用户默认权重，可用 chat.llm.scheduler.user-weight.<用户ID> 单独设置
+    @Value("${chat.llm.scheduler.default-weight:1}")
+    private double defaultWeight;
+
+    @Value("${chat.llm.quota.user.capacity:30}")
+    private long userCapacity;
+
+    @Value("${chat.llm.quota.user.refill-per-minute:10}")
+    private double userRefillPerMinute;
+
+    // 全局配额按模型计，可用 chat.llm.quota.model.<模型>.capacity / refill-per-minute 单独设置
+    @Value("${chat.llm.quota.global.capacity:0}")
+    private long globalCapacity;
+
+    @Value("${chat.llm.quota.global.refill-per-minute:0}")
+    private double globalRefillPerMinute;
+
+    @Value("${chat.admission.retry-after-seconds:5}")
+    private long retryAfterSeconds;
+
+    private final Object lock = new Object();
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+            Comparator.comparingDouble((Waiter w) -> w.finishTag).thenComparingLong(w -> w.seq));
+    // 有排队请求 (或完成标签仍领先于虚拟时间) 的用户
+    private final Map<Long, Flow> flows = new HashMap<>();
+    private final Map<String, QuotaLimit> modelLimits = new HashMap<>();
+    private int running;
+    private double virtualTime;
+    private long nextSeq;
+
+    private final AtomicLong immediateCount = new AtomicLong();
+    private final AtomicLong queuedCount = new AtomicLong();
+
+    /**
+     * 一个用户的排队状态
+     */
+    private static final class Flow {
+        double lastFinish;
+        int queued;
+    }
+
+    /**
+     * 一个排队中的请求
+     */
+    private final class Waiter {
+        private static final int WAITING = 0;
+        private static final int GRANTED = 1;
+        private static final int CANCELLED = 2;
+
+        final Long userId;
+        final double startTag;
+        final double finishTag;
+        final long seq;
+        final MonoSink<Slot> sink;
+        final Slot slot = new Slot();
+        final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Waiter(Long userId, double startTag, double finishTag, long seq, MonoSink<Slot> sink) {
+            this.userId = userId;
+            this.startTag = startTag;
+            this.finishTag = finishTag;
+            this.seq = seq;
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * 一个上游名额，上游调用结束 (完成、出错、取消) 时归还，release 可重复调用
+     */
+    private final class Slot {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                releaseSlot();
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("chat.llm.scheduler.running", this, s -> s.snapshotInt(true))
+                .description("正在进行的上游调用")
+                .register(meterRegistry);
+        Gauge.builder("chat.llm.scheduler.queued", this, s -> s.snapshotInt(false))
+                .description("排队等待上游名额的调用")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 提问前的快速检查：用户或全局配额已经用完时直接以 429 拒绝 (不扣减配额)，
+     * 避免先建立 SSE 连接再在流中报错。问题命中缓存时不会真正扣减配额。
+     */
+    public void checkQuota(Long userId, String modelType) {
+        if (!enabled) {
+            return;
+        }
+        QuotaLimit userLimit = userLimit();
+        if (!userLimit.isUnlimited()) {
+            long wait = quotaStore.peek(userKey(userId), userLimit);
+            if (wait != 0) {
+                throw rejectUser(wait);
+            }
+        }
+        QuotaLimit globalLimit = globalLimit(modelType);
+        if (!globalLimit.isUnlimited()) {
+            long wait = quotaStore.peek(globalKey(modelType), globalLimit);
+            if (wait != 0) {
+                throw rejectGlobal(wait);
+            }
+        }
+    }
+
+    /**
+     * 在配额和上游名额的约束下执行一次上游调用 (订阅时才扣减配额、申请名额)
+     * @param modelType 实际使用的模型类型
+     */
+    public Flux<String> schedule(Long userId, String modelType, Supplier<Flux<String>> call) {
+        if (!enabled) {
+            return Flux.defer(call);
+        }
+        return Flux.defer(() -> {
+            consumeQuota(userId, modelType);
+            long enqueuedAt = System.nanoTime();
+            return acquireSlot(userId)
+                    .doOnError(e -> refundQuota(userId, modelType))
+                    .flatMapMany(slot -> {
+                        chatMetrics.llmQueueWait(System.nanoTime() - enqueuedAt);
+                        return call.get().doFinally(signal -> slot.release());
+                    });
+        });
+    }
+
+    private void consumeQuota(Long userId, String modelType) {
+        QuotaLimit userLimit = userLimit();
+        if (!userLimit.isUnlimited()) {
+            long wait = quotaStore.tryAcquire(userKey(userId), userLimit);
+            if (wait != 0) {
+                throw rejectUser(wait);
+            }
+        }
+        QuotaLimit globalLimit = globalLimit(modelType);
+        if (!globalLimit.isUnlimited()) {
+            long wait = quotaStore.tryAcquire(globalKey(modelType), globalLimit);
+            if (wait != 0) {
+                if (!userLimit.isUnlimited()) {
+                    quotaStore.refund(userKey(userId), userLimit);
+                }
+                throw rejectGlobal(wait);
+            }
+        }
+    }
+
+    private void refundQuota(Long userId, String modelType) {
+        QuotaLimit userLimit = userLimit();
+        if (!userLimit.isUnlimited()) {
+            quotaStore.refund(userKey(userId), userLimit);
+        }
+        QuotaLimit globalLimit = globalLimit(modelType);
+        if (!globalLimit.isUnlimited()) {
+            quotaStore.refund(globalKey(modelType), globalLimit);
+        }
+    }
+
+    /**
+     * 申请上游名额：有空闲名额且无人排队时立即获得，否则按完成标签排队
+     */
+    private Mono<Slot> acquireSlot(Long userId) {
+        return Mono.<Slot>create(sink -> {
+            Waiter waiter;
+            synchronized (lock) {
+                if (running < maxConcurrent && queue.isEmpty()) {
+                    running++;
+                    waiter = null;
+                } else {
+                    Flow flow = flows.computeIfAbsent(userId, id -> new Flow());
+                    if (flow.queued >= maxQueuedPerUser) {
+                        removeIfIdle(userId, flow);
+                        chatMetrics.llmSchedulerRejected("user-queue");
+                        sink.error(new QuotaExceededException("同时进行的提问过多，请等待之前的回答完成", retryAfterSeconds));
+                        return;
+                    }
+                    if (queue.size() >= maxQueued) {
+                        removeIfIdle(userId, flow);
+                        chatMetrics.llmSchedulerRejected("queue-full");
+                        sink.error(new ChatOverloadedException("服务繁忙，请稍后再试", retryAfterSeconds));
+                        return;
+                    }
+                    double start = Math.max(virtualTime, flow.lastFinish);
+                    double finish = start + 1.0 / weightOf(userId);
+                    flow.lastFinish = finish;
+                    flow.queued++;
+                    waiter = new Waiter(userId, start, finish, nextSeq++, sink);
+                    queue.add(waiter);
+                }
+            }
+            if (waiter == null) {
+                immediateCount.incrementAndGet();
+                sink.success(new Slot());
+                return;
+            }
+            queuedCount.incrementAndGet();
+            sink.onCancel(() -> cancel(waiter));
+        })
+                .timeout(Duration.ofMillis(queueTimeoutMs))
+                .onErrorMap(TimeoutException.class, e -> {
+                    chatMetrics.llmSchedulerRejected("queue-timeout");
+                    return new ChatOverloadedException("排队等待超时，请稍后再试", retryAfterSeconds);
+                })
+                // 名额分配与超时/取消同时发生时，未被使用的名额在这里归还
+                .doOnDiscard(Slot.class, Slot::release);
+    }
+
+    /**
+     * 排队中的请求被取消 (客户端断开或排队超时)
+     */
+    private void cancel(Waiter waiter) {
+        if (!waiter.state.compareAndSet(Waiter.WAITING, Waiter.CANCELLED)) {
+            // 名额已经分配给它，但订阅方已不再接收
+            waiter.slot.release();
+            return;
+        }
+        synchronized (lock) {
+            if (queue.remove(waiter)) {
+                Flow flow = flows.get(waiter.userId);
+                if (flow != null) {
+                    flow.queued--;
+                    removeIfIdle(waiter.userId, flow);
+                }
+            }
+        }
+    }
+
+    /**
+     * 归还名额：交给完成标签最小的排队请求，没有排队请求时空出名额
+     */
+    private void releaseSlot() {
+        Waiter next;
+        synchronized (lock) {
+            while ((next = queue.poll()) != null) {
+                Flow flow = flows.get(next.userId);
+                if (flow != null) {
+                    flow.queued--;
+                }
+                if (next.state.compareAndSet(Waiter.WAITING, Waiter.GRANTED)) {
+                    virtualTime = Math.max(virtualTime, next.startTag);
+                    if (flow != null) {
+                        removeIfIdle(next.userId, flow);
+                    }
+                    break;
+                }
+                if (flow != null) {
+                    removeIfIdle(next.userId, flow);
+                }
+            }
+            if (next == null) {
+                running--;
+            }
+        }
+        if (next != null) {
+            // running 不变：名额直接转交
+            next.sink.success(next.slot);
+        }
+    }
+
+    /**
+     * 没有排队请求、完成标签也不再领先于虚拟时间的用户不需要保留状态 (下次从虚拟时间开始计)
+     */
+    private void removeIfIdle(Long userId, Flow flow) {
+        if (flow.queued <= 0 && flow.lastFinish <= virtualTime) {
+            flows.remove(userId);
+        }
+    }
+
+    private double weightOf(Long userId) {
+        Double weight = environment.getProperty(USER_WEIGHT_PREFIX + userId, Double.class, defaultWeight);
+        return weight > 0 ? weight : defaultWeight;
+    }
+
+    private QuotaLimit userLimit() {
+        return new QuotaLimit(userCapacity, userRefillPerMinute);
+    }
+
+    private QuotaLimit globalLimit(String modelType) {
+        synchronized (modelLimits) {
+            return modelLimits.computeIfAbsent(modelType, model -> new QuotaLimit(
+                    environment.getProperty(MODEL_QUOTA_PREFIX + model + ".capacity", Long.class, globalCapacity),
+                    environment.getProperty(MODEL_QUOTA_PREFIX + model + ".refill-per-minute", Double.class,
+                            globalRefillPerMinute)));
+        }
+    }
+
+    private static String userKey(Long userId) {
+        return "user:" + userId;
+    }
+
+    private static String globalKey(String modelType) {
+        return "global:" + modelType;
+    }
+
+    private QuotaExceededException rejectUser(long waitMs) {
+        chatMetrics.llmSchedulerRejected("user-quota");
+        return new QuotaExceededException("提问过于频繁，请稍后再试", retryAfterOf(waitMs));
+    }
+
+    private QuotaExceededException rejectGlobal(long waitMs) {
+        chatMetrics.llmSchedulerRejected("global-quota");
+        return new QuotaExceededException("服务繁忙，请稍后再试", retryAfterOf(waitMs));
+    }
+
+    /**
+     * 距离下一个令牌可用的时间，向上取整到秒；不会补充 (-1) 时使用默认值
+     */
+    private long retryAfterOf(long waitMs) {
+        return waitMs < 0 ? retryAfterSeconds : Math.max(1, (waitMs + 999) / 1000);
+    }
+
+    private int snapshotInt(boolean runningCount) {
+        synchronized (lock) {
+            return runningCount ? running : queue.size();
+        }
+    }
+
+    public Map<String, Object> statsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        synchronized (lock) {
+            snapshot.put("enabled", enabled);
+            snapshot.put("running", running);
+            snapshot.put("maxConcurrent", maxConcurrent);
+            snapshot.put("queued", queue.size());
+            snapshot.put("queuedUsers", flows.size());
+            snapshot.put("virtualTime", virtualTime);
+        }
+        snapshot.put("immediateCount", immediateCount.get());
+        snapshot.put("queuedCount", queuedCount.get());
+        snapshot.put("quotaStore", quotaStore.getClass().getSimpleName());
+        return snapshot;
+    }
+}
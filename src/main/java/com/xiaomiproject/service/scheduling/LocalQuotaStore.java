@@ -0,0 +1,73 @@
+package com.xiaomiproject.service.scheduling;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+
+/**
+ * 进程内的令牌桶 (默认实现)。桶按需创建、初始为满，长时间未使用的桶被淘汰 (淘汰时早已补满，等同于新建)。
+ */
+@Component
+@ConditionalOnProperty(name = "chat.llm.quota.store", havingValue = "local", matchIfMissing = true)
+public class LocalQuotaStore implements QuotaStore {
+
+    // 桶空闲多久后淘汰 (毫秒)，应大于从空补满所需的时间
+    @Value("${chat.llm.quota.idle-expire-ms:600000}")
+    private long idleExpireMs;
+
+    private Cache<String, Bucket> buckets;
+
+    private static final class Bucket {
+        double tokens;
+        long updatedAt;
+
+        Bucket(double tokens, long updatedAt) {
+            this.tokens = tokens;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMillis(idleExpireMs))
+                .build();
+    }
+
+    @Override
+    public long tryAcquire(String key, QuotaLimit limit) {
+        return take(key, limit, 1, true);
+    }
+
+    @Override
+    public long peek(String key, QuotaLimit limit) {
+        return take(key, limit, 1, false);
+    }
+
+    @Override
+    public void refund(String key, QuotaLimit limit) {
+        take(key, limit, -1, true);
+    }
+
+    private long take(String key, QuotaLimit limit, double cost, boolean consume) {
+        long now = System.currentTimeMillis();
+        Bucket bucket = buckets.get(key, k -> new Bucket(limit.getCapacity(), now));
+        synchronized (bucket) {
+            double rate = limit.refillPerMs();
+            bucket.tokens = Math.min(limit.getCapacity(), bucket.tokens + Math.max(0, now - bucket.updatedAt) * rate);
+            bucket.updatedAt = now;
+            if (bucket.tokens < cost) {
+                return rate > 0 ? (long) Math.ceil((cost - bucket.tokens) / rate) : -1;
+            }
+            if (consume) {
+                bucket.tokens = Math.min(limit.getCapacity(), bucket.tokens - cost);
+            }
+            return 0;
+        }
+    }
+}
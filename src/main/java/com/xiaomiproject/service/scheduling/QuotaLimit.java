@@ -0,0 +1,22 @@
+package com.xiaomiproject.service.scheduling;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 令牌桶参数：桶容量 (允许的突发次数) 和每分钟补充的次数；容量不大于 0 表示不限制
+ */
+@Data
+@AllArgsConstructor
+public class QuotaLimit {
+    private long capacity;
+    private double refillPerMinute;
+
+    public boolean isUnlimited() {
+        return capacity <= 0;
+    }
+
+    public double refillPerMs() {
+        return refillPerMinute / 60000.0;
+    }
+}
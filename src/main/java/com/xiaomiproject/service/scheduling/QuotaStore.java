@@ -0,0 +1,23 @@
+package com.xiaomiproject.service.scheduling;
+
+/**
+ * 令牌桶计数的存储。单节点使用进程内计数；多节点部署时可用 Redis 实现，所有节点共用同一组配额。
+ */
+public interface QuotaStore {
+
+    /**
+     * 尝试从桶中取出一个令牌
+     * @return 0 表示成功；否则为距离下一个令牌可用的毫秒数 (-1 表示不会补充)
+     */
+    long tryAcquire(String key, QuotaLimit limit);
+
+    /**
+     * 只检查桶中是否还有令牌，不扣减；返回值含义同 {@link #tryAcquire}
+     */
+    long peek(String key, QuotaLimit limit);
+
+    /**
+     * 归还一个令牌 (后续步骤被拒绝时调用)
+     */
+    void refund(String key, QuotaLimit limit);
+}
@@ -0,0 +1,81 @@
+package com.xiaomiproject.service.scheduling;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+
+/**
+ * 基于 Redis 的令牌桶，所有节点共用配额。补充和扣减在一个 Lua 脚本中原子完成，时间取 Redis 服务器时间，
+ * 不受各节点时钟偏差影响。Redis 不可用时放行 (配额是保护措施，不应成为可用性的单点)。
+ */
+@Component
+@ConditionalOnProperty(name = "chat.llm.quota.store", havingValue = "redis")
+public class RedisQuotaStore implements QuotaStore {
+
+    private static final String KEY_PREFIX = "chat:quota:";
+
+    // KEYS[1] 桶; ARGV: 容量, 每毫秒补充数, 本次取出数 (负数为归还), 是否扣减, 过期时间 (毫秒)
+    private static final RedisScript<Long> TAKE_SCRIPT = new DefaultRedisScript<>(
+            "redis.replicate_commands()\n"
+                    + "local capacity = tonumber(ARGV[1])\n"
+                    + "local rate = tonumber(ARGV[2])\n"
+                    + "local cost = tonumber(ARGV[3])\n"
+                    + "local consume = ARGV[4] == '1'\n"
+                    + "local time = redis.call('TIME')\n"
+                    + "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)\n"
+                    + "local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')\n"
+                    + "local tokens = tonumber(state[1]) or capacity\n"
+                    + "local ts = tonumber(state[2]) or now\n"
+                    + "tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate)\n"
+                    + "if tokens < cost then\n"
+                    + "  if rate > 0 then return math.ceil((cost - tokens) / rate) end\n"
+                    + "  return -1\n"
+                    + "end\n"
+                    + "if consume then\n"
+                    + "  tokens = math.min(capacity, tokens - cost)\n"
+                    + "  redis.call('HMSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now)\n"
+                    + "  redis.call('PEXPIRE', KEYS[1], ARGV[5])\n"
+                    + "end\n"
+                    + "return 0\n",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Value("${chat.llm.quota.idle-expire-ms:600000}")
+    private long idleExpireMs;
+
+    @Override
+    public long tryAcquire(String key, QuotaLimit limit) {
+        return take(key, limit, 1, true);
+    }
+
+    @Override
+    public long peek(String key, QuotaLimit limit) {
+        return take(key, limit, 1, false);
+    }
+
+    @Override
+    public void refund(String key, QuotaLimit limit) {
+        take(key, limit, -1, true);
+    }
+
+    private long take(String key, QuotaLimit limit, int cost, boolean consume) {
+        try {
+            Long wait = redisTemplate.execute(TAKE_SCRIPT, Collections.singletonList(KEY_PREFIX + key),
+                    String.valueOf(limit.getCapacity()), String.valueOf(limit.refillPerMs()),
+                    String.valueOf(cost), consume ? "1" : "0", String.valueOf(idleExpireMs));
+            return wait == null ? 0 : wait;
+        } catch (DataAccessException e) {
+            System.err.println("Redis配额检查失败，本次放行: " + e.getMessage());
+            return 0;
+        }
+    }
+}
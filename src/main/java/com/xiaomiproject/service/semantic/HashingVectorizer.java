@@ -0,0 +1,69 @@
+package com.xiaomiproject.service.semantic;
+
+import com.xiaomiproject.service.knowledge.TextNormalizer;
+
+/**
+ * 本地文本向量化：把归一化后问题的字符 1~3 元组通过哈希映射到固定维度，
+ * 使用符号哈希减少冲突偏差，对词频取对数后做 L2 归一化。
+ * 不依赖任何外部模型或网络，余弦相似度可直接用点积计算。
+ */
+public class HashingVectorizer {
+
+    private static final int MAX_GRAM = 3;
+
+    private final int dimension;
+
+    public HashingVectorizer(int dimension) {
+        this.dimension = dimension;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public float[] vectorize(String text) {
+        float[] vector = new float[dimension];
+        int[] cps = TextNormalizer.normalize(text).codePoints().toArray();
+        for (int n = 1; n <= MAX_GRAM; n++) {
+            // 长的n元组更能体现语序，权重略高
+            float weight = n == 1 ? 0.5f : 1.0f;
+            for (int i = 0; i + n <= cps.length; i++) {
+                int hash = hash(cps, i, n);
+                int slot = (hash >>> 1) % dimension;
+                vector[slot] += (hash & 1) == 0 ? weight : -weight;
+            }
+        }
+        double norm = 0;
+        for (int i = 0; i < dimension; i++) {
+            float v = vector[i];
+            // 亚线性词频：sign(v) * log(1 + |v|)
+            v = (float) (Math.signum(v) * Math.log1p(Math.abs(v)));
+            vector[i] = v;
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float inv = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < dimension; i++) {
+                vector[i] *= inv;
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * 按码点做 FNV-1a 哈希，再做一次 murmur3 风格的混淆以打散低位
+     */
+    private static int hash(int[] cps, int offset, int length) {
+        int h = 0x811c9dc5 ^ length;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= cps[i];
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,236 @@
+package com.xiaomiproject.service.semantic;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * 内存 HNSW (Hierarchical Navigable Small World) 近似最近邻索引。
+ * 向量须事先做 L2 归一化，相似度即点积。节点ID为插入顺序 (从0开始)。
+ * 写入不是线程安全的，需由调用方互斥；查询只读共享结构，可与其他查询并发执行。
+ */
+public class HnswIndex {
+
+    /**
+     * 查询结果：节点ID与相似度
+     */
+    public static final class Result {
+        private final int id;
+        private final float similarity;
+
+        Result(int id, float similarity) {
+            this.id = id;
+            this.similarity = similarity;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public float getSimilarity() {
+            return similarity;
+        }
+    }
+
+    private static final class Node {
+        final float[] vector;
+        final int[][] links;
+        final int[] linkCounts;
+
+        Node(float[] vector, int level, int m) {
+            this.vector = vector;
+            this.links = new int[level + 1][];
+            this.linkCounts = new int[level + 1];
+            for (int l = 0; l <= level; l++) {
+                // 第0层允许 2M 个邻居，其余层 M 个
+                links[l] = new int[l == 0 ? 2 * m : m];
+            }
+        }
+
+        int level() {
+            return links.length - 1;
+        }
+    }
+
+    private static final Comparator<Result> BY_SIMILARITY = Comparator.comparingDouble(r -> r.similarity);
+
+    private final int m;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+    private final List<Node> nodes = new ArrayList<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswIndex(int m, int efConstruction) {
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public int add(float[] vector) {
+        int id = nodes.size();
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        Node node = new Node(vector, level, m);
+        nodes.add(node);
+        if (entryPoint < 0) {
+            entryPoint = id;
+            maxLevel = level;
+            return id;
+        }
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedySearch(vector, current, l);
+        }
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Result> candidates = searchLayer(vector, current, efConstruction, l);
+            int count = Math.min(m, candidates.size());
+            for (int i = 0; i < count; i++) {
+                int neighbor = candidates.get(i).id;
+                node.links[l][node.linkCounts[l]++] = neighbor;
+                connect(neighbor, id, l);
+            }
+            current = candidates.get(0).id;
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = id;
+        }
+        return id;
+    }
+
+    /**
+     * 查找与向量最相似的 k 个节点，按相似度降序返回
+     */
+    public List<Result> search(float[] vector, int k, int ef) {
+        if (entryPoint < 0) {
+            return new ArrayList<>();
+        }
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedySearch(vector, current, l);
+        }
+        List<Result> results = searchLayer(vector, current, Math.max(ef, k), 0);
+        return results.size() > k ? new ArrayList<>(results.subList(0, k)) : results;
+    }
+
+    public float[] vectorOf(int id) {
+        return nodes.get(id).vector;
+    }
+
+    /**
+     * 把 target 加入 nodeId 在第 level 层的邻居表，超出容量时只保留最相似的邻居
+     */
+    private void connect(int nodeId, int target, int level) {
+        Node node = nodes.get(nodeId);
+        int[] links = node.links[level];
+        if (node.linkCounts[level] < links.length) {
+            links[node.linkCounts[level]++] = target;
+            return;
+        }
+        float targetSimilarity = dot(node.vector, nodes.get(target).vector);
+        int weakest = -1;
+        float weakestSimilarity = targetSimilarity;
+        for (int i = 0; i < links.length; i++) {
+            float similarity = dot(node.vector, nodes.get(links[i]).vector);
+            if (similarity < weakestSimilarity) {
+                weakestSimilarity = similarity;
+                weakest = i;
+            }
+        }
+        if (weakest >= 0) {
+            links[weakest] = target;
+        }
+    }
+
+    private int greedySearch(float[] vector, int start, int level) {
+        int current = start;
+        float best = dot(vector, nodes.get(current).vector);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            Node node = nodes.get(current);
+            for (int i = 0; i < node.linkCounts[level]; i++) {
+                int neighbor = node.links[level][i];
+                float similarity = dot(vector, nodes.get(neighbor).vector);
+                if (similarity > best) {
+                    best = similarity;
+                    current = neighbor;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在单层内做 beam search，返回按相似度降序排列的至多 ef 个结果
+     */
+    private List<Result> searchLayer(float[] vector, int start, int ef, int level) {
+        // 每次查询独立的访问标记，保证并发查询互不干扰
+        BitSet visited = new BitSet(nodes.size());
+        PriorityQueue<Result> candidates = new PriorityQueue<>(BY_SIMILARITY.reversed());
+        PriorityQueue<Result> results = new PriorityQueue<>(BY_SIMILARITY);
+        Result first = new Result(start, dot(vector, nodes.get(start).vector));
+        visited.set(start);
+        candidates.add(first);
+        results.add(first);
+
+        while (!candidates.isEmpty()) {
+            Result candidate = candidates.poll();
+            if (results.size() >= ef && candidate.similarity < results.peek().similarity) {
+                break;
+            }
+            Node node = nodes.get(candidate.id);
+            if (node.level() < level) {
+                continue;
+            }
+            for (int i = 0; i < node.linkCounts[level]; i++) {
+                int neighbor = node.links[level][i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float similarity = dot(vector, nodes.get(neighbor).vector);
+                if (results.size() < ef || similarity > results.peek().similarity) {
+                    Result result = new Result(neighbor, similarity);
+                    candidates.add(result);
+                    results.add(result);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        List<Result> sorted = new ArrayList<>(results);
+        sorted.sort(BY_SIMILARITY.reversed());
+        return sorted;
+    }
+
+    /**
+     * 点积。使用4路累加器打破浮点加法的依赖链，比朴素循环快数倍
+     */
+    static float dot(float[] a, float[] b) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        int bound = a.length & ~3;
+        for (; i < bound; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
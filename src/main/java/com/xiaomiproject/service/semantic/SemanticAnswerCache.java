@@ -0,0 +1,363 @@
+package com.xiaomiproject.service.semantic;
+
+import com.xiaomiproject.service.knowledge.TextNormalizer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 语义近似问答缓存。
+ * 大模型生成的答案按问题向量存入 HNSW 索引，换一种说法提问时只要相似度超过阈值，
+ * 就直接返回已有答案，不再调用大模型。
+ * 条目按模型区分，只返回同一模型生成的答案；
+ * 问题向量只看字面相似度，"小米14 Pro" 和 "小米13 Pro" 的问题也会很接近，
+ * 因此命中前还要求数字和型号词一致、没有换掉词中的一个字 (与知识库模糊匹配的规则相同)。
+ * 条目数有上限，超出时在后台线程丢弃最旧的一批并重建索引，建好后替换当前索引，重建期间查询不受影响；
+ * 定期及关闭时落盘，重启后自动加载。
+ */
+@Component
+public class SemanticAnswerCache {
+
+    private static final int FILE_MAGIC = 0x53454d43; // "SEMC"
+    private static final int FILE_VERSION = 1;
+    private static final int HNSW_M = 16;
+    private static final int HNSW_EF_CONSTRUCTION = 100;
+
+    @Value("${chat.semantic-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.semantic-cache.min-similarity:0.92}")
+    private double minSimilarity;
+
+    @Value("${chat.semantic-cache.max-entries:20000}")
+    private int maxEntries;
+
+    @Value("${chat.semantic-cache.ef-search:64}")
+    private int efSearch;
+
+    @Value("${chat.semantic-cache.persist-path:data/semantic-cache.bin}")
+    private String persistPath;
+
+    private final HashingVectorizer vectorizer;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private HnswIndex index;
+    // 与 HNSW 节点ID一一对应
+    private List<Entry> entries = new ArrayList<>();
+    private volatile boolean dirty;
+    // 每次 clear 加一，重建期间被清空时丢弃重建结果
+    private long generation;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong rebuildCount = new AtomicLong();
+    private volatile long lastRebuildMillis;
+
+    private static final class Entry {
+        final String question;
+        final String answer;
+        final String modelType;
+        final long createdAt;
+
+        Entry(String question, String answer, String modelType, long createdAt) {
+            this.question = question;
+            this.answer = answer;
+            this.modelType = modelType;
+            this.createdAt = createdAt;
+        }
+    }
+
+    public SemanticAnswerCache(@Value("${chat.semantic-cache.dimension:256}") int dimension) {
+        this.vectorizer = new HashingVectorizer(dimension);
+        this.index = newIndex();
+    }
+
+    /**
+     * 查找同一模型下语义相近问题的已缓存答案
+     */
+    public Optional<String> lookup(String question, String modelType) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        float[] vector = vectorizer.vectorize(question);
+        Set<String> queryTerms = new HashSet<>(TextNormalizer.tokenize(question));
+        lock.readLock().lock();
+        try {
+            Entry entry = nearest(vector, queryTerms, modelType, minSimilarity);
+            if (entry != null) {
+                hitCount.incrementAndGet();
+                return Optional.of(entry.answer);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        missCount.incrementAndGet();
+        return Optional.empty();
+    }
+
+    /**
+     * 相似度不低于 minSimilarity 的结果中，属于该模型、且与查询是同一个问题的最相近条目；调用方持有锁
+     * @param queryTerms 查询问题的词项
+     */
+    private Entry nearest(float[] vector, Set<String> queryTerms, String modelType, double minSimilarity) {
+        // 候选按相似度降序，其他模型的条目和问的是另一款产品的条目跳过
+        for (HnswIndex.Result result : index.search(vector, efSearch, efSearch)) {
+            if (result.getSimilarity() < minSimilarity) {
+                break;
+            }
+            Entry entry = entries.get(result.getId());
+            if (Objects.equals(entry.modelType, modelType) && sameQuestion(queryTerms, entry)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static boolean sameQuestion(Set<String> queryTerms, Entry entry) {
+        Set<String> entryTerms = new HashSet<>(TextNormalizer.tokenize(entry.question));
+        return TextNormalizer.sameKeyTerms(queryTerms, entryTerms)
+                && !TextNormalizer.substitutesWord(queryTerms, entryTerms);
+    }
+
+    /**
+     * 记录一条大模型生成的答案
+     */
+    public void put(String question, String answer, String modelType) {
+        if (!enabled || answer == null || answer.isEmpty()) {
+            return;
+        }
+        float[] vector = vectorizer.vectorize(question);
+        Set<String> queryTerms = new HashSet<>(TextNormalizer.tokenize(question));
+        boolean full;
+        lock.writeLock().lock();
+        try {
+            if (nearest(vector, queryTerms, modelType, 0.999) != null) {
+                // 同一模型的同一个问题已经缓存过，不再重复插入
+                return;
+            }
+            if (entries.size() >= maxEntries + evictBatch()) {
+                // 后台重建还没完成，暂不接收新条目
+                return;
+            }
+            index.add(vector);
+            entries.add(new Entry(question, answer, modelType, System.currentTimeMillis()));
+            dirty = true;
+            full = entries.size() >= maxEntries;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (full && rebuilding.compareAndSet(false, true)) {
+            Thread rebuilder = new Thread(this::evictOldest, "semantic-cache-rebuild");
+            rebuilder.setDaemon(true);
+            rebuilder.start();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            index = newIndex();
+            entries = new ArrayList<>();
+            generation++;
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Map<String, Object> statsSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            snapshot.put("size", entries.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+        snapshot.put("maxEntries", maxEntries);
+        snapshot.put("hitCount", hitCount.get());
+        snapshot.put("missCount", missCount.get());
+        snapshot.put("rebuilding", rebuilding.get());
+        snapshot.put("rebuildCount", rebuildCount.get());
+        snapshot.put("lastRebuildMillis", lastRebuildMillis);
+        return snapshot;
+    }
+
+    /**
+     * 每次淘汰最旧的 10% 条目
+     */
+    private int evictBatch() {
+        return Math.max(1, maxEntries / 10);
+    }
+
+    /**
+     * HNSW 不便删除节点：容量满时保留较新的条目重建索引。
+     * 在后台线程中执行：只在读锁下复制当前条目和向量，不持锁建索引，
+     * 最后在写锁下补上重建期间新增的条目并替换当前索引。
+     */
+    private void evictOldest() {
+        try {
+            long start = System.currentTimeMillis();
+            List<Entry> kept;
+            List<float[]> vectors;
+            long startGeneration;
+            int snapshotSize;
+            lock.readLock().lock();
+            try {
+                startGeneration = generation;
+                snapshotSize = entries.size();
+                int keepFrom = Math.max(0, snapshotSize - (maxEntries - evictBatch()));
+                kept = new ArrayList<>(entries.subList(keepFrom, snapshotSize));
+                vectors = new ArrayList<>(snapshotSize - keepFrom);
+                for (int i = keepFrom; i < snapshotSize; i++) {
+                    vectors.add(index.vectorOf(i));
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            HnswIndex rebuilt = newIndex();
+            for (float[] vector : vectors) {
+                rebuilt.add(vector);
+            }
+            lock.writeLock().lock();
+            try {
+                if (generation != startGeneration) {
+                    // 重建期间缓存被清空
+                    return;
+                }
+                // entries 只追加，快照之后新增的条目依次补入
+                for (int i = snapshotSize; i < entries.size(); i++) {
+                    rebuilt.add(index.vectorOf(i));
+                    kept.add(entries.get(i));
+                }
+                index = rebuilt;
+                entries = kept;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            rebuildCount.incrementAndGet();
+            lastRebuildMillis = System.currentTimeMillis() - start;
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    private HnswIndex newIndex() {
+        return new HnswIndex(HNSW_M, HNSW_EF_CONSTRUCTION);
+    }
+
+    @PostConstruct
+    public void load() {
+        Path path = Paths.get(persistPath);
+        if (!enabled || !Files.exists(path)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            // 文件按写入顺序保存 (最旧的在前)，超出上限时保留最新的条目
+            int skip = Math.max(0, count - maxEntries);
+            List<Entry> loaded = new ArrayList<>(count - skip);
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(readString(in), readString(in), readString(in), in.readLong());
+                if (i >= skip) {
+                    loaded.add(entry);
+                }
+            }
+            // 只持久化文本，向量在加载时重新计算，向量维度调整后旧文件依然可用
+            HnswIndex loadedIndex = newIndex();
+            for (Entry entry : loaded) {
+                loadedIndex.add(vectorizer.vectorize(entry.question));
+            }
+            lock.writeLock().lock();
+            try {
+                index = loadedIndex;
+                entries = loaded;
+                dirty = skip > 0;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            System.err.println("语义缓存加载失败，将以空缓存启动: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 定期把新增条目落盘，先写临时文件再原子替换，避免写到一半时进程退出损坏文件
+     */
+    @Scheduled(fixedDelayString = "${chat.semantic-cache.persist-interval-ms:60000}")
+    @PreDestroy
+    public void persist() {
+        if (!enabled || !dirty) {
+            return;
+        }
+        List<Entry> snapshot;
+        lock.readLock().lock();
+        try {
+            snapshot = new ArrayList<>(entries);
+            dirty = false;
+        } finally {
+            lock.readLock().unlock();
+        }
+        Path path = Paths.get(persistPath).toAbsolutePath();
+        try {
+            Files.createDirectories(path.getParent());
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeInt(snapshot.size());
+                for (Entry entry : snapshot) {
+                    writeString(out, entry.question);
+                    writeString(out, entry.answer);
+                    writeString(out, entry.modelType);
+                    out.writeLong(entry.createdAt);
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true;
+            System.err.println("语义缓存落盘失败: " + e.getMessage());
+        }
+    }
+
+    // DataOutputStream.writeUTF 限制 64KB，长答案改用 长度+UTF-8字节 的格式
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
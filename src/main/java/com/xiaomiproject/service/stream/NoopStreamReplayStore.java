@@ -0,0 +1,34 @@
+package com.xiaomiproject.service.stream;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 单节点部署时的默认实现：只使用进程内的重放缓冲，重连必须回到同一节点 (负载均衡按会话保持)
+ */
+@Component
+@ConditionalOnProperty(name = "chat.stream.resume.store", havingValue = "local", matchIfMissing = true)
+public class NoopStreamReplayStore implements StreamReplayStore {
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    @Override
+    public void append(String streamId, Long userId, List<StreamToken> tokens) {
+    }
+
+    @Override
+    public void finish(String streamId, Long userId, String outcome) {
+    }
+
+    @Override
+    public Optional<Flux<StreamToken>> read(String streamId, Long userId, long afterSeq) {
+        return Optional.empty();
+    }
+}
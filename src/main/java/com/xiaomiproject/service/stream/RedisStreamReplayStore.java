@@ -0,0 +1,171 @@
+package com.xiaomiproject.service.stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 基于 Redis Streams 的共享续传缓冲。
+ * <p>
+ * 每个回答对应一个 Stream，每批片段写为一条记录，记录ID为 "0-批内最后一个序号"，
+ * 按断点读取时直接用 XRANGE 从 "0-(断点+1)" 开始取；回答结束时追加ID为 "1-0" 的结束记录。
+ * 读取方按固定间隔轮询新记录 (不使用阻塞的 XREAD，避免占用专用连接)，直到读到结束记录。
+ * Redis 不可用时写入失败只记录日志，重连降级为重新生成。
+ */
+@Component
+@ConditionalOnProperty(name = "chat.stream.resume.store", havingValue = "redis")
+public class RedisStreamReplayStore implements StreamReplayStore {
+
+    private static final String KEY_PREFIX = "chat:stream:";
+    private static final String OWNER_PREFIX = "chat:stream-owner:";
+    private static final String END_RECORD_ID = "1-0";
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private Scheduler chatBlockingScheduler;
+
+    // 共享缓冲的保留时间 (毫秒)，每次追加时刷新
+    @Value("${chat.stream.resume.shared-ttl-ms:600000}")
+    private long ttlMs;
+
+    // 读取方轮询新记录的间隔 (毫秒)
+    @Value("${chat.stream.resume.shared-poll-interval-ms:200}")
+    private long pollIntervalMs;
+
+    /**
+     * 一次轮询读到的片段；outcome 不为 null 表示已读到结束记录
+     */
+    private static final class Chunk {
+        final List<StreamToken> tokens = new ArrayList<>();
+        long lastSeq;
+        String outcome;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void append(String streamId, Long userId, List<StreamToken> tokens) {
+        if (tokens.isEmpty()) {
+            return;
+        }
+        long firstSeq = tokens.get(0).getSeq();
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("first", String.valueOf(firstSeq));
+        for (int i = 0; i < tokens.size(); i++) {
+            fields.put("t" + i, tokens.get(i).getData());
+        }
+        String key = KEY_PREFIX + streamId;
+        try {
+            if (firstSeq == 1) {
+                redisTemplate.opsForValue().set(OWNER_PREFIX + streamId, String.valueOf(userId), Duration.ofMillis(ttlMs));
+            }
+            redisTemplate.opsForStream().add(StreamRecords.newRecord().in(key)
+                    .withId(RecordId.of("0-" + tokens.get(tokens.size() - 1).getSeq()))
+                    .ofMap(fields));
+            redisTemplate.expire(key, Duration.ofMillis(ttlMs));
+        } catch (DataAccessException e) {
+            System.err.println("续传缓冲写入Redis失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void finish(String streamId, Long userId, String outcome) {
+        String key = KEY_PREFIX + streamId;
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("end", outcome);
+        try {
+            redisTemplate.opsForValue().set(OWNER_PREFIX + streamId, String.valueOf(userId), Duration.ofMillis(ttlMs));
+            redisTemplate.opsForStream().add(StreamRecords.newRecord().in(key)
+                    .withId(RecordId.of(END_RECORD_ID))
+                    .ofMap(fields));
+            redisTemplate.expire(key, Duration.ofMillis(ttlMs));
+        } catch (DataAccessException e) {
+            System.err.println("续传缓冲写入Redis失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Optional<Flux<StreamToken>> read(String streamId, Long userId, long afterSeq) {
+        String owner;
+        try {
+            owner = redisTemplate.opsForValue().get(OWNER_PREFIX + streamId);
+        } catch (DataAccessException e) {
+            System.err.println("续传缓冲读取Redis失败: " + e.getMessage());
+            return Optional.empty();
+        }
+        if (owner == null || !owner.equals(String.valueOf(userId))) {
+            return Optional.empty();
+        }
+        return Optional.of(follow(KEY_PREFIX + streamId, afterSeq));
+    }
+
+    /**
+     * 读取断点之后的记录；未结束时间隔 pollIntervalMs 后从新的断点继续读取
+     */
+    private Flux<StreamToken> follow(String key, long afterSeq) {
+        return Mono.fromCallable(() -> fetch(key, afterSeq))
+                .subscribeOn(chatBlockingScheduler)
+                .flatMapMany(chunk -> {
+                    Flux<StreamToken> tokens = Flux.fromIterable(chunk.tokens);
+                    if (chunk.outcome == null) {
+                        return tokens.concatWith(Mono.delay(Duration.ofMillis(pollIntervalMs))
+                                .thenMany(Flux.defer(() -> follow(key, chunk.lastSeq))));
+                    }
+                    if ("completed".equals(chunk.outcome)) {
+                        return tokens;
+                    }
+                    return tokens.concatWith(Flux.error(new IllegalStateException("回答生成失败")));
+                });
+    }
+
+    private Chunk fetch(String key, long afterSeq) {
+        List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream()
+                .range(key, Range.rightUnbounded(Range.Bound.inclusive("0-" + (afterSeq + 1))));
+        if ((records == null || records.isEmpty()) && !Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+            throw new IllegalStateException("续传缓冲已过期");
+        }
+        Chunk chunk = new Chunk();
+        chunk.lastSeq = afterSeq;
+        if (records == null) {
+            return chunk;
+        }
+        for (MapRecord<String, Object, Object> record : records) {
+            Map<Object, Object> fields = record.getValue();
+            Object end = fields.get("end");
+            if (end != null) {
+                chunk.outcome = end.toString();
+                break;
+            }
+            long seq = Long.parseLong(fields.get("first").toString());
+            for (int i = 0; fields.containsKey("t" + i); i++, seq++) {
+                if (seq > afterSeq) {
+                    chunk.tokens.add(new StreamToken(seq, fields.get("t" + i).toString()));
+                    chunk.lastSeq = seq;
+                }
+            }
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,117 @@
+package com.xiaomiproject.service.stream;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一次正在生成 (或刚生成完) 的回答。
+ * 上游的答案片段按顺序编号后写入有界的重放缓冲，客户端断开不会取消生成；
+ * 重连的客户端先收到缓冲中断点之后的片段，再继续接收实时数据。
+ */
+class ResumableStream {
+
+    // 上游结束后仍可能并发地取消 (清理任务)，遇到并发发射时自旋重试
+    private static final Sinks.EmitFailureHandler RETRY_NON_SERIALIZED =
+            (signalType, result) -> result == Sinks.EmitResult.FAIL_NON_SERIALIZED;
+
+    private final String id;
+    private final Long userId;
+    private final int capacity;
+    private final Sinks.Many<StreamToken> sink;
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    // 只由上游线程递增
+    private volatile long lastSeq;
+    private volatile long detachedSince = System.currentTimeMillis();
+    // 0 表示仍在生成
+    private volatile long finishedAt;
+    private volatile Disposable upstream;
+
+    ResumableStream(String id, Long userId, int capacity) {
+        this.id = id;
+        this.userId = userId;
+        this.capacity = capacity;
+        this.sink = Sinks.many().replay().limit(capacity);
+    }
+
+    String getId() {
+        return id;
+    }
+
+    Long getUserId() {
+        return userId;
+    }
+
+    long getLastSeq() {
+        return lastSeq;
+    }
+
+    boolean isFinished() {
+        return finishedAt != 0;
+    }
+
+    long getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * 没有客户端连接的起始时间；有客户端连接时返回 0
+     */
+    long getDetachedSince() {
+        return subscribers.get() > 0 ? 0 : detachedSince;
+    }
+
+    /**
+     * 断点之后的片段是否都还在缓冲中
+     */
+    boolean covers(long afterSeq) {
+        return afterSeq >= 0 && afterSeq <= lastSeq && afterSeq >= lastSeq - capacity;
+    }
+
+    /**
+     * 订阅上游 (与客户端连接无关)
+     */
+    void start(Flux<String> tokens) {
+        upstream = tokens
+                .doFinally(signal -> finishedAt = System.currentTimeMillis())
+                .subscribe(
+                        token -> sink.emitNext(new StreamToken(++lastSeq, token), RETRY_NON_SERIALIZED),
+                        e -> sink.emitError(e, RETRY_NON_SERIALIZED),
+                        () -> sink.emitComplete(RETRY_NON_SERIALIZED));
+    }
+
+    /**
+     * 取消仍在进行的生成，已连接或之后重连的客户端收到错误
+     */
+    void cancel() {
+        Disposable disposable = upstream;
+        if (disposable != null && !disposable.isDisposed()) {
+            disposable.dispose();
+            sink.emitError(new IllegalStateException("回答已中断"), RETRY_NON_SERIALIZED);
+        }
+    }
+
+    /**
+     * 原始片段流 (从缓冲中最早的片段开始)，不计入客户端连接
+     */
+    Flux<StreamToken> tokens() {
+        return sink.asFlux();
+    }
+
+    /**
+     * 客户端订阅的片段流：只包含断点之后的片段，连接数用于判断回答是否无人接收
+     */
+    Flux<StreamToken> tokensAfter(long afterSeq) {
+        return sink.asFlux()
+                .filter(token -> token.getSeq() > afterSeq)
+                .doOnSubscribe(s -> subscribers.incrementAndGet())
+                .doFinally(signal -> {
+                    if (subscribers.decrementAndGet() == 0) {
+                        detachedSince = System.currentTimeMillis();
+                    }
+                });
+    }
+}
@@ -0,0 +1,208 @@
+package com.xiaomiproject.service.stream;
+
+import com.xiaomiproject.service.metrics.ChatMetrics;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 可续传的流式回答。
+ * <p>
+ * 每个回答的片段带有递增的事件ID ("流ID:序号")，生成过程与客户端连接分离：
+ * 客户端 (如移动端网络切换) 断开后回答继续生成并写入重放缓冲，
+ * 带 Last-Event-ID 重连时从缓冲中补发断点之后的部分，回答仍在生成时继续跟随，不会再次调用大模型。
+ * 长时间无人连接的回答会被取消，结束的回答在 retention-ms 内仍可续传。
+ * <p>
+ * 多节点部署时可配置 chat.stream.resume.store=redis，片段同时分批写入 Redis Streams，
+ * 重连到其他节点也能续传。
+ */
+@Service
+public class ResumableStreamService {
+
+    @Autowired
+    private StreamReplayStore sharedStore;
+
+    @Autowired
+    private Scheduler chatBlockingScheduler;
+
+    @Autowired
+    private ChatMetrics chatMetrics;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.stream.resume.enabled:true}")
+    private boolean enabled;
+
+    // 每个回答在内存中保留的片段数上限，断点早于缓冲起点时无法续传
+    @Value("${chat.stream.resume.buffer-size:4096}")
+    private int bufferSize;
+
+    // 回答结束后仍可续传的时间 (毫秒)
+    @Value("${chat.stream.resume.retention-ms:60000}")
+    private long retentionMs;
+
+    // 没有客户端连接的回答继续生成的最长时间 (毫秒)，超过后取消上游调用
+    @Value("${chat.stream.resume.detached-timeout-ms:60000}")
+    private long detachedTimeoutMs;
+
+    // 写入共享缓冲时每批的片段数和最长等待时间 (毫秒)
+    @Value("${chat.stream.resume.shared-batch-size:32}")
+    private int sharedBatchSize;
+
+    @Value("${chat.stream.resume.shared-flush-ms:100}")
+    private long sharedFlushMs;
+
+    private final Map<String, ResumableStream> streams = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("chat.stream.resumable", streams, Map::size)
+                .description("内存中可续传的回答数 (含仍在生成的)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 开始一个可续传的回答并返回首次连接的事件流。
+     * 上游立即在后台订阅，客户端取消订阅只是断开连接，不会取消生成；未启用续传时直接透传上游。
+     */
+    public Flux<StreamEvent> open(Long userId, Flux<String> tokens) {
+        if (!enabled) {
+            return tokens.map(StreamEvent::of);
+        }
+        ResumableStream stream = new ResumableStream(UUID.randomUUID().toString(), userId, bufferSize);
+        streams.put(stream.getId(), stream);
+        // 先取得事件流，确保镜像写入和客户端都能从第一个片段开始
+        Flux<StreamEvent> events = events(stream, 0);
+        if (sharedStore.isEnabled()) {
+            mirror(stream);
+        }
+        stream.start(tokens);
+        return events;
+    }
+
+    /**
+     * 按 Last-Event-ID 续传：先查本节点的重放缓冲，再查共享缓冲。
+     * 无法续传 (未带ID、已过期、断点已移出缓冲、不属于该用户) 时返回 empty，由调用方重新生成回答。
+     */
+    public Optional<Flux<StreamEvent>> resume(String lastEventId, Long userId) {
+        if (!enabled || lastEventId == null || lastEventId.isEmpty()) {
+            return Optional.empty();
+        }
+        int separator = lastEventId.lastIndexOf(':');
+        if (separator <= 0) {
+            chatMetrics.streamResumed("miss");
+            return Optional.empty();
+        }
+        String streamId = lastEventId.substring(0, separator);
+        long afterSeq;
+        try {
+            afterSeq = Long.parseLong(lastEventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            chatMetrics.streamResumed("miss");
+            return Optional.empty();
+        }
+
+        ResumableStream stream = streams.get(streamId);
+        if (stream != null) {
+            if (stream.getUserId().equals(userId) && stream.covers(afterSeq)) {
+                chatMetrics.streamResumed("local");
+                return Optional.of(events(stream, afterSeq));
+            }
+            chatMetrics.streamResumed("miss");
+            return Optional.empty();
+        }
+        Optional<Flux<StreamToken>> shared = sharedStore.read(streamId, userId, afterSeq);
+        if (shared.isPresent()) {
+            chatMetrics.streamResumed("shared");
+            return Optional.of(shared.get()
+                    .map(token -> StreamEvent.token(streamId, token))
+                    .concatWith(Mono.just(StreamEvent.end())));
+        }
+        chatMetrics.streamResumed("miss");
+        return Optional.empty();
+    }
+
+    private Flux<StreamEvent> events(ResumableStream stream, long afterSeq) {
+        return stream.tokensAfter(afterSeq)
+                .map(token -> StreamEvent.token(stream.getId(), token))
+                .concatWith(Mono.just(StreamEvent.end()));
+    }
+
+    /**
+     * 把片段分批写入共享缓冲 (在有界的阻塞调度器上执行)，回答结束后写入结束标记
+     */
+    private void mirror(ResumableStream stream) {
+        stream.tokens()
+                .bufferTimeout(sharedBatchSize, Duration.ofMillis(sharedFlushMs))
+                .concatMap(batch -> Mono.fromRunnable(() -> sharedStore.append(stream.getId(), stream.getUserId(), batch))
+                        .subscribeOn(chatBlockingScheduler))
+                .then(Mono.just("completed"))
+                .onErrorReturn("error")
+                .flatMap(outcome -> Mono.fromRunnable(() -> sharedStore.finish(stream.getId(), stream.getUserId(), outcome))
+                        .subscribeOn(chatBlockingScheduler))
+                .subscribe(null, e -> System.err.println("续传缓冲镜像写入失败: " + e.getMessage()));
+    }
+
+    /**
+     * 取消长时间无人接收的回答，移除已过保留期的回答
+     */
+    @Scheduled(fixedDelayString = "${chat.stream.resume.sweep-interval-ms:5000}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        Iterator<ResumableStream> iterator = streams.values().iterator();
+        while (iterator.hasNext()) {
+            ResumableStream stream = iterator.next();
+            if (stream.isFinished()) {
+                if (now - stream.getFinishedAt() > retentionMs) {
+                    iterator.remove();
+                }
+                continue;
+            }
+            long detachedSince = stream.getDetachedSince();
+            if (detachedSince > 0 && now - detachedSince > detachedTimeoutMs) {
+                stream.cancel();
+                chatMetrics.streamAbandoned();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Map<String, Object> statsSnapshot() {
+        int running = 0;
+        int detached = 0;
+        for (ResumableStream stream : streams.values()) {
+            if (!stream.isFinished()) {
+                running++;
+                if (stream.getDetachedSince() > 0) {
+                    detached++;
+                }
+            }
+        }
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("enabled", enabled);
+        snapshot.put("sharedStore", sharedStore.isEnabled());
+        snapshot.put("streams", streams.size());
+        snapshot.put("running", running);
+        snapshot.put("detached", detached);
+        return snapshot;
+    }
+}
@@ -0,0 +1,40 @@
+package com.xiaomiproject.service.stream;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 推送给客户端的一条 SSE 事件。
+ * 答案片段的 id 为 "流ID:序号"，客户端重连时通过 Last-Event-ID 带回；
+ * 具名事件 end 表示回答已完整结束 (客户端收到后应关闭连接，不再自动重连)，
+ * reset 表示断点已无法续传、服务端重新生成回答，客户端应丢弃已显示的部分。
+ */
+@Data
+@AllArgsConstructor
+public class StreamEvent {
+
+    public static final String END = "end";
+    public static final String RESET = "reset";
+
+    // 为 null 时不输出 id
+    private String id;
+    // 为 null 时为默认的 message 事件
+    private String name;
+    private String data;
+
+    public static StreamEvent of(String data) {
+        return new StreamEvent(null, null, data);
+    }
+
+    static StreamEvent token(String streamId, StreamToken token) {
+        return new StreamEvent(streamId + ':' + token.getSeq(), null, token.getData());
+    }
+
+    public static StreamEvent end() {
+        return new StreamEvent(null, END, "");
+    }
+
+    public static StreamEvent reset() {
+        return new StreamEvent(null, RESET, "");
+    }
+}
@@ -0,0 +1,35 @@
+package com.xiaomiproject.service.stream;
+
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 跨节点共享的续传缓冲。生成回答的节点把答案片段分批追加进来，
+ * 客户端重连到其他节点时从这里读取断点之后的部分，并继续跟随仍在生成的回答。
+ * 单节点部署不需要共享缓冲，使用空实现。
+ */
+public interface StreamReplayStore {
+
+    /**
+     * 是否实际保存数据；空实现返回 false，调用方据此跳过镜像写入
+     */
+    boolean isEnabled();
+
+    /**
+     * 追加一批连续的答案片段
+     */
+    void append(String streamId, Long userId, List<StreamToken> tokens);
+
+    /**
+     * 标记回答结束
+     * @param outcome completed / error
+     */
+    void finish(String streamId, Long userId, String outcome);
+
+    /**
+     * 读取 afterSeq 之后的片段，直到回答结束；流不存在或不属于该用户时返回 empty
+     */
+    Optional<Flux<StreamToken>> read(String streamId, Long userId, long afterSeq);
+}
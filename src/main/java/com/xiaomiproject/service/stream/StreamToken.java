@@ -0,0 +1,14 @@
+package com.xiaomiproject.service.stream;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 回答流中的一段，序号从 1 开始连续递增
+ */
+@Data
+@AllArgsConstructor
+public class StreamToken {
+    private long seq;
+    private String data;
+}
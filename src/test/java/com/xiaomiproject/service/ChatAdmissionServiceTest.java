@@ -0,0 +1,101 @@
+package com.xiaomiproject.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 排队深度取自 chatBlockingScheduler 实际使用的问答线程池
+ */
+class ChatAdmissionServiceTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CountDownLatch blocker = new CountDownLatch(1);
+    private ThreadPoolExecutor chatExecutor;
+    private Scheduler chatBlockingScheduler;
+
+    @BeforeEach
+    void setUp() {
+        chatExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(10));
+        chatBlockingScheduler = Schedulers.fromExecutorService(chatExecutor, "chat-blocking");
+    }
+
+    private ChatAdmissionService newService(int maxActiveStreams) {
+        ChatAdmissionService admissionService = new ChatAdmissionService();
+        ReflectionTestUtils.setField(admissionService, "chatExecutor", chatExecutor);
+        ReflectionTestUtils.setField(admissionService, "meterRegistry", registry);
+        ReflectionTestUtils.setField(admissionService, "maxActiveStreams", maxActiveStreams);
+        ReflectionTestUtils.setField(admissionService, "maxQueueDepth", 3);
+        ReflectionTestUtils.setField(admissionService, "retryAfterSeconds", 5L);
+        admissionService.init();
+        return admissionService;
+    }
+
+    @AfterEach
+    void tearDown() {
+        blocker.countDown();
+        chatBlockingScheduler.dispose();
+    }
+
+    /**
+     * 在 chatBlockingScheduler 上执行一个阻塞操作 (与 ChatService 查本地来源的方式相同)
+     */
+    private void blockingWork() {
+        Mono.fromRunnable(() -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }).subscribeOn(chatBlockingScheduler).subscribe();
+    }
+
+    @Test
+    void rejectsWhenBlockingSchedulerQueueIsTooDeep() throws InterruptedException {
+        ChatAdmissionService admissionService = newService(10);
+        // 1 个正在执行，3 个排队
+        for (int i = 0; i < 4; i++) {
+            blockingWork();
+        }
+        assertEquals(3, admissionService.statsSnapshot().get("queueDepth"));
+        assertEquals(3.0, registry.get("chat.admission.queue.depth").gauge().value());
+
+        ChatOverloadedException e = assertThrows(ChatOverloadedException.class, admissionService::acquire);
+        assertEquals(5L, e.getRetryAfterSeconds());
+        assertEquals(1L, admissionService.statsSnapshot().get("rejectedCount"));
+
+        blocker.countDown();
+        for (int i = 0; i < 100 && chatExecutor.getQueue().size() > 0; i++) {
+            Thread.sleep(10);
+        }
+        admissionService.acquire().release();
+        assertEquals(1L, admissionService.statsSnapshot().get("admittedCount"));
+    }
+
+    @Test
+    void rejectsWhenPermitsAreUsedUp() {
+        ChatAdmissionService admissionService = newService(2);
+        ChatAdmissionService.Permit first = admissionService.acquire();
+        admissionService.acquire();
+
+        assertThrows(ChatOverloadedException.class, admissionService::acquire);
+        // 重复归还只算一次
+        first.release();
+        first.release();
+        admissionService.acquire();
+        assertThrows(ChatOverloadedException.class, admissionService::acquire);
+    }
+}
@@ -0,0 +1,103 @@
+package com.xiaomiproject.service;
+
+import com.xiaomiproject.service.cache.AnswerCache;
+import com.xiaomiproject.service.cache.AnswerReplayer;
+import com.xiaomiproject.service.cache.GeneratedAnswerStore;
+import com.xiaomiproject.service.context.ConversationContextService;
+import com.xiaomiproject.service.history.HistoryWriter;
+import com.xiaomiproject.service.knowledge.KnowledgeMatch;
+import com.xiaomiproject.service.knowledge.KnowledgeMatcher;
+import com.xiaomiproject.service.metrics.ChatMetrics;
+import com.xiaomiproject.service.scheduling.LlmCallScheduler;
+import com.xiaomiproject.service.semantic.SemanticAnswerCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 配额已用完的用户：缓存和知识库命中照常回答，只有需要调用大模型时才被拒绝
+ */
+class ChatServiceQuotaTest {
+
+    private static final Long USER_ID = 1L;
+    private static final String MODEL = "deepseek";
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final AnswerCache answerCache = mock(AnswerCache.class);
+    private final KnowledgeMatcher knowledgeMatcher = mock(KnowledgeMatcher.class);
+    private final LlmService llmService = mock(LlmService.class);
+    private final LlmCallScheduler llmCallScheduler = mock(LlmCallScheduler.class);
+    private ChatService chatService;
+
+    @BeforeEach
+    void setUp() {
+        AnswerReplayer answerReplayer = mock(AnswerReplayer.class);
+        when(answerReplayer.replay(anyString())).thenAnswer(invocation -> Flux.just((String) invocation.getArgument(0)));
+        when(llmService.resolveModelType(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        doThrow(new QuotaExceededException("提问过于频繁，请稍后再试", 30))
+                .when(llmCallScheduler).checkQuota(anyLong(), anyString());
+
+        chatService = new ChatService();
+        ReflectionTestUtils.setField(chatService, "knowledgeMatcher", knowledgeMatcher);
+        ReflectionTestUtils.setField(chatService, "historyWriter", mock(HistoryWriter.class));
+        ReflectionTestUtils.setField(chatService, "llmService", llmService);
+        ReflectionTestUtils.setField(chatService, "answerCache", answerCache);
+        ReflectionTestUtils.setField(chatService, "semanticAnswerCache", mock(SemanticAnswerCache.class));
+        ReflectionTestUtils.setField(chatService, "generatedAnswerStore", mock(GeneratedAnswerStore.class));
+        ReflectionTestUtils.setField(chatService, "answerReplayer", answerReplayer);
+        ReflectionTestUtils.setField(chatService, "chatBlockingScheduler", Schedulers.immediate());
+        ReflectionTestUtils.setField(chatService, "conversationContextService", mock(ConversationContextService.class));
+        ReflectionTestUtils.setField(chatService, "chatMetrics", new ChatMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(chatService, "llmCallScheduler", llmCallScheduler);
+    }
+
+    @Test
+    void answerCacheHitIsServedWithoutQuota() {
+        when(answerCache.get(AnswerCache.keyOf("小米14多少钱"))).thenReturn(Optional.of("3999元"));
+
+        StepVerifier.create(chatService.streamAnswer("小米14多少钱", "c1", USER_ID, MODEL))
+                .expectNext("3999元")
+                .expectComplete()
+                .verify(TIMEOUT);
+        verify(llmCallScheduler, never()).checkQuota(anyLong(), anyString());
+        verify(llmService, never()).getCompletionStream(anyList(), any(), any());
+    }
+
+    @Test
+    void knowledgeHitIsServedWithoutQuota() {
+        when(knowledgeMatcher.match("如何申请退款"))
+                .thenReturn(Optional.of(new KnowledgeMatch(7L, "如何申请退款", "在订单页点击申请退款", 1.0)));
+
+        StepVerifier.create(chatService.streamAnswer("如何申请退款", "c1", USER_ID, MODEL))
+                .expectNext("在订单页点击申请退款")
+                .expectComplete()
+                .verify(TIMEOUT);
+        verify(llmCallScheduler, never()).checkQuota(anyLong(), anyString());
+        verify(llmService, never()).getCompletionStream(anyList(), any(), any());
+    }
+
+    @Test
+    void localMissIsRejectedBeforeCallingTheModel() {
+        StepVerifier.create(chatService.streamAnswer("小米14和13有什么区别", "c1", USER_ID, MODEL))
+                .expectError(QuotaExceededException.class)
+                .verify(TIMEOUT);
+        verify(llmService, never()).getCompletionStream(anyList(), any(), any());
+    }
+}
@@ -0,0 +1,102 @@
+package com.xiaomiproject.service.cache;
+
+import com.xiaomiproject.event.KnowledgeChangedEvent;
+import com.xiaomiproject.event.RemoteKnowledgeChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 两个 AnswerCache 共享一个 LocalAnswerCacheL2，模拟两个节点
+ */
+class AnswerCacheInvalidationTest {
+
+    private LocalAnswerCacheL2 l2;
+    private AnswerCache nodeA;
+    private AnswerCache nodeB;
+    private final List<Object> eventsOnB = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        l2 = new LocalAnswerCacheL2(1_000_000);
+        nodeA = new AnswerCache(1_000_000, 3600, 300, l2, event -> { }, new SimpleMeterRegistry());
+        nodeB = new AnswerCache(1_000_000, 3600, 300, l2, eventsOnB::add, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void otherNodeReadsThroughL2() {
+        nodeA.put(AnswerCache.keyOf("小米14多少钱"), "3999元");
+
+        assertEquals(Optional.of("3999元"), nodeB.get(AnswerCache.keyOf("小米14 多少钱？")));
+        assertEquals(1L, nodeB.statsSnapshot().get("l2HitCount"));
+    }
+
+    @Test
+    void invalidateKeyClearsBothLevelsOnAllNodes() {
+        String key = AnswerCache.keyOf("小米14多少钱");
+        nodeA.put(key, "3999元");
+        // B 的一级缓存中也有一份
+        assertTrue(nodeB.get(key).isPresent());
+
+        nodeA.invalidate(key);
+
+        assertFalse(l2.get(key).isPresent());
+        assertFalse(nodeA.get(key).isPresent());
+        assertFalse(nodeB.get(key).isPresent());
+    }
+
+    @Test
+    void knowledgeChangeEvictsFuzzyMatchedAnswersOnAllNodes() {
+        String exact = AnswerCache.keyOf("如何申请退款");
+        String fuzzy = AnswerCache.keyOf("请问怎么申请退款呢");
+        String unrelated = AnswerCache.keyOf("发票怎么开");
+        nodeA.put(exact, "旧答案", 7L);
+        nodeA.put(fuzzy, "旧答案", 7L);
+        nodeA.put(unrelated, "开票答案", 8L);
+        assertTrue(nodeB.get(fuzzy).isPresent());
+        assertTrue(nodeB.get(unrelated).isPresent());
+
+        nodeA.onKnowledgeChanged(new KnowledgeChangedEvent(KnowledgeChangedEvent.Type.SAVED, 7L,
+                "如何申请退款", "新答案", "如何申请退款"));
+
+        assertFalse(nodeA.get(fuzzy).isPresent());
+        assertFalse(nodeB.get(exact).isPresent());
+        assertFalse(nodeB.get(fuzzy).isPresent());
+        assertEquals(Optional.of("开票答案"), nodeB.get(unrelated));
+        // B 收到广播后还要让自己的知识库索引重新加载该条目
+        assertEquals(1, eventsOnB.size());
+        assertEquals(7L, ((RemoteKnowledgeChangedEvent) eventsOnB.get(0)).getKnowledgeId());
+    }
+
+    @Test
+    void invalidateAllClearsEveryNode() {
+        nodeA.put("a", "1");
+        nodeA.put("b", "2");
+        assertTrue(nodeB.get("a").isPresent());
+
+        nodeB.invalidateAll();
+
+        assertFalse(nodeA.get("a").isPresent());
+        assertFalse(nodeA.get("b").isPresent());
+        assertFalse(nodeB.get("a").isPresent());
+    }
+
+    @Test
+    void l2EntriesExpireByTheirOwnTtl() throws InterruptedException {
+        l2.put("short", new CachedAnswer("x", null), Duration.ofMillis(50));
+        l2.put("long", new CachedAnswer("y", null), Duration.ofMinutes(5));
+        Thread.sleep(120);
+
+        assertFalse(l2.get("short").isPresent());
+        assertTrue(l2.get("long").isPresent());
+    }
+}
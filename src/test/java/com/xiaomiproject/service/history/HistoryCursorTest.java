@@ -0,0 +1,153 @@
+package com.xiaomiproject.service.history;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiaomiproject.entity.ConversationHistory;
+import com.xiaomiproject.repository.ConversationArchiveRepository;
+import com.xiaomiproject.repository.HistoryJdbcRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HistoryCursorTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2024, 3, 1, 10, 0, 0);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private JdbcTemplate jdbcTemplate;
+    private HistoryJdbcRepository historyJdbcRepository;
+    private ConversationDetailService detailService;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:cursor-test;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE conversation_history (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "user_id BIGINT, conversation_id VARCHAR(64), question TEXT, answer TEXT, timestamp TIMESTAMP)");
+
+        historyJdbcRepository = new HistoryJdbcRepository();
+        ReflectionTestUtils.setField(historyJdbcRepository, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(historyJdbcRepository, "streamFetchSize", 100);
+        historyJdbcRepository.init();
+
+        ConversationArchiveRepository archiveRepository = mock(ConversationArchiveRepository.class);
+        when(archiveRepository.findByConversationIdOrderByFirstTimeAsc(anyString())).thenReturn(Collections.emptyList());
+        detailService = new ConversationDetailService();
+        ReflectionTestUtils.setField(detailService, "historyJdbcRepository", historyJdbcRepository);
+        ReflectionTestUtils.setField(detailService, "archiveRepository", archiveRepository);
+        ReflectionTestUtils.setField(detailService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(detailService, "maxPageSize", 200);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP TABLE conversation_history");
+    }
+
+    private void insertTurns(String conversationId, LocalDateTime... timestamps) {
+        List<ConversationHistory> histories = new ArrayList<>();
+        for (LocalDateTime timestamp : timestamps) {
+            ConversationHistory history = new ConversationHistory();
+            history.setUserId(1L);
+            history.setConversationId(conversationId);
+            history.setQuestion("q" + histories.size());
+            history.setAnswer("a" + histories.size());
+            history.setTimestamp(timestamp);
+            histories.add(history);
+        }
+        historyJdbcRepository.batchInsert(histories);
+    }
+
+    private JsonNode page(String conversationId, String cursor, Integer limit) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        detailService.streamTurns(conversationId, cursor, limit).writeTo(out);
+        return objectMapper.readTree(new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void cursorRoundTripsTimeAndKey() {
+        LocalDateTime time = LocalDateTime.of(2024, 3, 1, 10, 0, 0, 123_000_000);
+        HistoryCursor cursor = HistoryCursor.decode(HistoryCursor.encode(time, "conv|with|bars"));
+
+        assertEquals(time, cursor.time);
+        assertEquals("conv|with|bars", cursor.key);
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> HistoryCursor.decode("not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> HistoryCursor.decode(
+                HistoryCursor.encode(T0, "x").substring(3)));
+        assertThrows(IllegalArgumentException.class, () -> detailService.streamTurns("c1", "%%%", 10));
+    }
+
+    @Test
+    void pagesCoverEveryTurnOnceEvenWithEqualTimestamps() throws Exception {
+        // 同一时刻的多轮只能靠 id 区分先后
+        insertTurns("c1", T0, T0, T0, T0.plusSeconds(1), T0.plusSeconds(1), T0.plusSeconds(2), T0.plusSeconds(2),
+                T0.plusSeconds(2));
+        insertTurns("c2", T0, T0);
+
+        List<String> questions = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            JsonNode page = page("c1", cursor, 3);
+            for (JsonNode turn : page.get("items")) {
+                questions.add(turn.get("question").asText());
+                ids.add(turn.get("id").asLong());
+            }
+            cursor = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(8, questions.size());
+        for (int i = 0; i < questions.size(); i++) {
+            assertEquals("q" + i, questions.get(i));
+        }
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(ids.get(i) > ids.get(i - 1));
+        }
+    }
+
+    @Test
+    void exactPageBoundaryHasNoEmptyTrailingPage() throws Exception {
+        insertTurns("c1", T0, T0.plusSeconds(1), T0.plusSeconds(2), T0.plusSeconds(3));
+
+        JsonNode first = page("c1", null, 2);
+        JsonNode second = page("c1", first.get("nextCursor").asText(), 2);
+
+        assertEquals(2, second.get("items").size());
+        assertTrue(second.get("nextCursor").isNull());
+    }
+
+    @Test
+    void withoutLimitWritesPlainArray() throws Exception {
+        insertTurns("c1", T0, T0.plusSeconds(1), T0.plusSeconds(2));
+
+        JsonNode all = page("c1", null, null);
+
+        assertTrue(all.isArray());
+        assertEquals(3, all.size());
+    }
+}
@@ -0,0 +1,238 @@
+package com.xiaomiproject.service.history;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiaomiproject.entity.ConversationHistory;
+import com.xiaomiproject.repository.HistoryJdbcRepository;
+import com.xiaomiproject.service.metrics.ChatMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class HistoryWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<HistoryWriter> started = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (HistoryWriter writer : started) {
+            writer.shutdown();
+        }
+    }
+
+    /**
+     * 模拟的历史表：记录写入的问题；问题包含 "bad" 的记录违反约束，down=true 时数据库不可用
+     */
+    private static final class FakeTable {
+        final List<String> saved = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean down;
+
+        HistoryJdbcRepository repository() {
+            HistoryJdbcRepository repository = mock(HistoryJdbcRepository.class);
+            doAnswer(invocation -> {
+                if (down) {
+                    throw new DataAccessResourceFailureException("connection refused");
+                }
+                List<ConversationHistory> histories = invocation.getArgument(0);
+                for (ConversationHistory history : histories) {
+                    if (history.getQuestion().contains("bad")) {
+                        throw new DataIntegrityViolationException("value too long");
+                    }
+                }
+                for (ConversationHistory history : histories) {
+                    saved.add(history.getQuestion());
+                }
+                return null;
+            }).when(repository).saveBatch(anyList());
+            return repository;
+        }
+    }
+
+    private HistoryWriter newWriter(FakeTable table, long journalMaxBytes) throws Exception {
+        HistoryWriter writer = new HistoryWriter();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(writer, "historyJdbcRepository", table.repository());
+        ReflectionTestUtils.setField(writer, "chatMetrics", new ChatMetrics(registry));
+        ReflectionTestUtils.setField(writer, "meterRegistry", registry);
+        ReflectionTestUtils.setField(writer, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(writer, "queueCapacity", 1000);
+        ReflectionTestUtils.setField(writer, "batchSize", 50);
+        ReflectionTestUtils.setField(writer, "flushIntervalMs", 20L);
+        ReflectionTestUtils.setField(writer, "enqueueTimeoutMs", 50L);
+        ReflectionTestUtils.setField(writer, "shutdownTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(writer, "readAfterWriteTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(writer, "maxAttempts", 2);
+        ReflectionTestUtils.setField(writer, "journalEnabled", true);
+        ReflectionTestUtils.setField(writer, "journalPath", journal().toString());
+        ReflectionTestUtils.setField(writer, "journalMaxBytes", journalMaxBytes);
+        ReflectionTestUtils.setField(writer, "deadLetterPath", tempDir.resolve("dead-letter.ndjson").toString());
+        writer.start();
+        started.add(writer);
+        return writer;
+    }
+
+    private Path journal() {
+        return tempDir.resolve("history-journal.ndjson");
+    }
+
+    private static ConversationHistory history(String conversationId, String question) {
+        ConversationHistory history = new ConversationHistory();
+        history.setUserId(1L);
+        history.setConversationId(conversationId);
+        history.setQuestion(question);
+        history.setAnswer("answer to " + question);
+        history.setTimestamp(LocalDateTime.of(2024, 1, 1, 12, 0));
+        return history;
+    }
+
+    private static String record(long seq, String conversationId, String question) {
+        return "{\"seq\":" + seq + ",\"userId\":1,\"conversationId\":\"" + conversationId + "\",\"question\":\""
+                + question + "\",\"answer\":\"a\",\"timestamp\":\"2024-01-01T12:00\"}";
+    }
+
+    private static void awaitWritten(HistoryWriter writer, String... conversationIds) {
+        for (String conversationId : conversationIds) {
+            assertTrue(writer.awaitWritten(conversationId), conversationId + " 未在超时前写完");
+        }
+    }
+
+    @Test
+    void replaysOnlyUncommittedAndUndiscardedRecords() throws Exception {
+        Files.write(journal(), Arrays.asList(
+                record(1, "c1", "q1"),
+                record(2, "c1", "q2"),
+                "{\"committed\":2}",
+                record(3, "c2", "q3"),
+                record(4, "c3", "q4"),
+                "{\"discarded\":\"c3\",\"upTo\":4}",
+                record(5, "c1", "q5"),
+                // 崩溃时只写了一半的行
+                "{\"seq\":6,\"userId\":1,\"conv"), StandardCharsets.UTF_8);
+        FakeTable table = new FakeTable();
+
+        HistoryWriter writer = newWriter(table, 1 << 20);
+        awaitWritten(writer, "c1", "c2", "c3");
+
+        assertEquals(Arrays.asList("q3", "q5"), table.saved);
+        // 重放后继续编号，不与日志中已有的序号重复
+        writer.enqueue(history("c4", "q6"));
+        awaitWritten(writer, "c4");
+        List<String> lines = Files.readAllLines(journal(), StandardCharsets.UTF_8);
+        JsonNode last = objectMapper.readTree(lines.get(lines.size() - 2));
+        assertEquals(6, last.get("seq").asLong());
+    }
+
+    @Test
+    void recordsLeftUnwrittenAtShutdownAreReplayedOnNextStart() throws Exception {
+        FakeTable table = new FakeTable();
+        table.down = true;
+        HistoryWriter first = newWriter(table, 1 << 20);
+        first.enqueue(history("c1", "q1"));
+        first.enqueue(history("c2", "q2"));
+        first.shutdown();
+        started.remove(first);
+        assertTrue(table.saved.isEmpty());
+
+        table.down = false;
+        HistoryWriter second = newWriter(table, 1 << 20);
+        awaitWritten(second, "c1", "c2");
+
+        assertEquals(Arrays.asList("q1", "q2"), table.saved);
+        assertEquals(2L, second.statsSnapshot().get("writtenCount"));
+    }
+
+    @Test
+    void discardedRecordsAreNotReplayed() throws Exception {
+        FakeTable table = new FakeTable();
+        table.down = true;
+        HistoryWriter first = newWriter(table, 1 << 20);
+        // 写入线程卡在第一批上，后入队的记录仍在队列中
+        first.enqueue(history("c1", "q1"));
+        Thread.sleep(100);
+        first.enqueue(history("c2", "q2"));
+        first.enqueue(history("c2", "q3"));
+        assertTrue(first.pendingOwner("c2").isPresent());
+        ReflectionTestUtils.setField(first, "readAfterWriteTimeoutMs", 10L);
+        first.discardPending("c2");
+        assertFalse(first.pendingOwner("c2").isPresent());
+        first.shutdown();
+        started.remove(first);
+
+        table.down = false;
+        HistoryWriter second = newWriter(table, 1 << 20);
+        awaitWritten(second, "c1", "c2");
+
+        assertEquals(Collections.singletonList("q1"), table.saved);
+    }
+
+    @Test
+    void badRowGoesToDeadLetterAndTheRestOfTheBatchIsWritten() throws Exception {
+        FakeTable table = new FakeTable();
+        HistoryWriter writer = newWriter(table, 1 << 20);
+        // 暂停写入线程攒批：数据库先不可用，恢复后整批一起写
+        table.down = true;
+        for (int i = 0; i < 10; i++) {
+            writer.enqueue(history("c1", i == 6 ? "bad-" + i : "q" + i));
+        }
+        Thread.sleep(50);
+        table.down = false;
+        awaitWritten(writer, "c1");
+
+        assertEquals(9, table.saved.size());
+        assertFalse(table.saved.contains("bad-6"));
+        assertEquals(1L, writer.statsSnapshot().get("deadLetterCount"));
+        List<String> deadLetters = Files.readAllLines(tempDir.resolve("dead-letter.ndjson"), StandardCharsets.UTF_8);
+        assertEquals(1, deadLetters.size());
+        JsonNode deadLetter = objectMapper.readTree(deadLetters.get(0));
+        assertEquals("bad-6", deadLetter.get("question").asText());
+        assertEquals("value too long", deadLetter.get("error").asText());
+
+        // 死信记录已提交，重启后不会重放
+        writer.shutdown();
+        started.remove(writer);
+        table.saved.clear();
+        newWriter(table, 1 << 20);
+        assertTrue(table.saved.isEmpty());
+    }
+
+    @Test
+    void journalRotatesUnderSteadyLoadAndOldSegmentIsDeleted() throws Exception {
+        FakeTable table = new FakeTable();
+        HistoryWriter writer = newWriter(table, 2048);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 5; i++) {
+                writer.enqueue(history("c" + round, "q" + round + "-" + i));
+            }
+            awaitWritten(writer, "c" + round);
+        }
+
+        assertEquals(100, table.saved.size());
+        assertTrue((Long) writer.statsSnapshot().get("journalRotations") > 0);
+        assertFalse(Files.exists(tempDir.resolve("history-journal.ndjson.1")));
+        assertTrue(Files.size(journal()) < 2 * 2048);
+    }
+}
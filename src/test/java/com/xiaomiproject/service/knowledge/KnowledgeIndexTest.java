@@ -0,0 +1,118 @@
+package com.xiaomiproject.service.knowledge;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KnowledgeIndexTest {
+
+    // 与 chat.knowledge.min-confidence 默认值一致
+    private static final double MIN_CONFIDENCE = 0.65;
+
+    private static final String[] QUESTIONS = {
+            "小米14多少钱",
+            "如何申请退款",
+            "小米14 Pro的电池容量是多少",
+            "How do I reset my password?",
+            "快递一般几天送达",
+            "发票怎么开",
+            "小米手环8支持哪些运动模式",
+            "怎样修改收货地址",
+            "小米14有哪些颜色",
+            "如何查询订单物流",
+            "如何联系人工客服",
+            "如何修改绑定手机号",
+            "如何注销小米账号",
+            "如何使用以旧换新",
+            "如何申请价格保护",
+            "会员积分如何使用",
+            "如何取消订单",
+    };
+
+    private KnowledgeIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new KnowledgeIndex();
+        for (int i = 0; i < QUESTIONS.length; i++) {
+            index.upsert((long) i + 1, QUESTIONS[i], "answer-" + (i + 1));
+        }
+    }
+
+    private Optional<KnowledgeMatch> match(String question) {
+        return index.search(question).filter(m -> m.getConfidence() >= MIN_CONFIDENCE);
+    }
+
+    private void assertMatches(String question, String expected) {
+        Optional<KnowledgeMatch> match = match(question);
+        assertTrue(match.isPresent(), question + " 应命中 " + expected);
+        assertEquals(expected, match.get().getQuestion(), question);
+    }
+
+    private void assertNoMatch(String question) {
+        Optional<KnowledgeMatch> match = match(question);
+        assertFalse(match.isPresent(), () -> question + " 不应命中 " + match.get().getQuestion()
+                + " (" + match.get().getConfidence() + ")");
+    }
+
+    @Test
+    void tokenizeSplitsEnglishWordsBeforeDroppingSeparators() {
+        assertEquals(Arrays.asList("how", "do", "i", "reset", "my", "password"),
+                TextNormalizer.tokenize("How do I reset my password?"));
+        assertEquals(Arrays.asList("小米", "14", "pro", "多少", "少钱"),
+                TextNormalizer.tokenize("小米１４Pro，多少钱"));
+    }
+
+    @Test
+    void exactMatchIgnoresCaseWidthAndPunctuation() {
+        Optional<KnowledgeMatch> match = index.search("HOW DO I RESET MY PASSWORD！");
+        assertTrue(match.isPresent());
+        assertEquals(1.0, match.get().getConfidence(), 1e-9);
+        assertEquals("answer-4", match.get().getAnswer());
+    }
+
+    @Test
+    void paraphrasesWithExtraWordsMatch() {
+        assertMatches("请问小米14多少钱？", "小米14多少钱");
+        assertMatches("小米14现在卖多少钱", "小米14多少钱");
+        assertMatches("如何申请退款？谢谢", "如何申请退款");
+        assertMatches("请问怎样修改收货地址呢", "怎样修改收货地址");
+        assertMatches("how do i reset my password please", "How do I reset my password?");
+        assertMatches("how can I reset the password", "How do I reset my password?");
+    }
+
+    @Test
+    void differentModelNumberDoesNotMatch() {
+        assertNoMatch("小米15多少钱");
+        assertNoMatch("小米手环9支持哪些运动模式");
+    }
+
+    @Test
+    void modelTermsMustAgreeOnBothSides() {
+        // 查询多了 Pro
+        assertNoMatch("小米14 Pro多少钱");
+        // 条目是 Pro 的，查询没有 Pro
+        Optional<KnowledgeMatch> match = index.search("小米14的电池容量是多少");
+        assertFalse(match.isPresent() && match.get().getQuestion().contains("Pro"));
+    }
+
+    @Test
+    void singleCharacterSubstitutionDoesNotMatch() {
+        assertNoMatch("如何申请退货");
+        assertNoMatch("如何申请退货呀");
+    }
+
+    @Test
+    void removedEntryIsNoLongerMatched() {
+        assertMatches("请问小米14多少钱", "小米14多少钱");
+        index.remove(1L);
+        assertNoMatch("请问小米14多少钱");
+        assertEquals(QUESTIONS.length - 1, index.size());
+    }
+}
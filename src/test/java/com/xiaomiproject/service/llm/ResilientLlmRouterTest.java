@@ -0,0 +1,194 @@
+package com.xiaomiproject.service.llm;
+
+import com.xiaomiproject.dto.Message;
+import com.xiaomiproject.service.metrics.ChatMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用两个本地模拟模型 (可配置延迟和失败) 验证对冲、故障转移和熔断
+ */
+class ResilientLlmRouterTest {
+
+    private static final List<Message> MESSAGES = Collections.singletonList(new Message("user", "小米14电池多大"));
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    private static final String PRIMARY_ANSWER = "主模型的回答内容";
+    private static final String BACKUP_ANSWER = "备用模型的回答内容";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private ResilientLlmRouter router;
+
+    @BeforeEach
+    void setUp() {
+        router = new ResilientLlmRouter();
+        ReflectionTestUtils.setField(router, "chatMetrics", new ChatMetrics(registry));
+        ReflectionTestUtils.setField(router, "meterRegistry", registry);
+        ReflectionTestUtils.setField(router, "enabled", true);
+        ReflectionTestUtils.setField(router, "firstTokenTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(router, "idleTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(router, "fallbackOrder", "");
+        ReflectionTestUtils.setField(router, "hedgeEnabled", true);
+        ReflectionTestUtils.setField(router, "hedgePercentile", 95.0);
+        // 样本始终不足，对冲延迟固定为 default-delay-ms
+        ReflectionTestUtils.setField(router, "hedgeMinSamples", 1000);
+        ReflectionTestUtils.setField(router, "hedgeDefaultDelayMs", 5000L);
+        ReflectionTestUtils.setField(router, "hedgeMinDelayMs", 0L);
+        ReflectionTestUtils.setField(router, "hedgeMaxDelayMs", 10000L);
+        ReflectionTestUtils.setField(router, "sampleSize", 16);
+        ReflectionTestUtils.setField(router, "breakerWindowSize", 10);
+        ReflectionTestUtils.setField(router, "breakerMinCalls", 4);
+        ReflectionTestUtils.setField(router, "breakerFailureRate", 0.5);
+        ReflectionTestUtils.setField(router, "breakerSlowCallMs", 10000L);
+        ReflectionTestUtils.setField(router, "breakerOpenMs", 300L);
+    }
+
+    private void start(LlmApi... apis) {
+        ReflectionTestUtils.setField(router, "llmApis", Arrays.asList(apis));
+        router.init();
+    }
+
+    private String answer(LlmApi requested) {
+        return String.join("", router.stream(requested, MESSAGES).collectList().block(TIMEOUT));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> provider(String modelType) {
+        return (Map<String, Object>) ((Map<String, Object>) router.statsSnapshot().get("providers")).get(modelType);
+    }
+
+    private String breakerState(String modelType) {
+        return (String) provider(modelType).get("state");
+    }
+
+    @Test
+    void hedgeFiresAfterDelayAndCancelsTheLosingProvider() {
+        ReflectionTestUtils.setField(router, "hedgeDefaultDelayMs", 100L);
+        MockLlmApi primary = new MockLlmApi("primary", 3000, 0, 0.0, PRIMARY_ANSWER);
+        MockLlmApi backup = new MockLlmApi("backup", 20, 0, 0.0, BACKUP_ANSWER);
+        start(primary, backup);
+
+        long startNanos = System.nanoTime();
+        assertEquals(BACKUP_ANSWER, answer(primary));
+        long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+
+        // 不等主模型的 3 秒首 token
+        assertTrue(elapsedMs >= 100 && elapsedMs < 2000, "elapsed " + elapsedMs + "ms");
+        assertEquals(1L, backup.getCallCount());
+        // 输掉的主请求被取消，并按慢调用计入熔断统计
+        assertEquals(1L, primary.getCancelCount());
+        assertEquals(0L, backup.getCancelCount());
+        assertEquals(1L, provider("primary").get("slowCount"));
+        assertEquals(1L, router.statsSnapshot().get("hedgesStarted"));
+        assertEquals(1L, router.statsSnapshot().get("hedgeWins"));
+        assertEquals(0L, router.statsSnapshot().get("failovers"));
+    }
+
+    @Test
+    void noHedgeWhenPrimaryAnswersWithinTheDelay() throws InterruptedException {
+        ReflectionTestUtils.setField(router, "hedgeDefaultDelayMs", 300L);
+        MockLlmApi primary = new MockLlmApi("primary", 20, 0, 0.0, PRIMARY_ANSWER);
+        MockLlmApi backup = new MockLlmApi("backup", 20, 0, 0.0, BACKUP_ANSWER);
+        start(primary, backup);
+
+        assertEquals(PRIMARY_ANSWER, answer(primary));
+        // 等过对冲延迟，确认没有补发请求
+        Thread.sleep(400);
+
+        assertEquals(0L, backup.getCallCount());
+        assertEquals(0L, router.statsSnapshot().get("hedgesStarted"));
+    }
+
+    @Test
+    void failsOverImmediatelyWhenPrimaryFailsBeforeFirstToken() {
+        MockLlmApi primary = new MockLlmApi("primary", 20, 0, 1.0, PRIMARY_ANSWER);
+        MockLlmApi backup = new MockLlmApi("backup", 20, 0, 0.0, BACKUP_ANSWER);
+        start(primary, backup);
+
+        long startNanos = System.nanoTime();
+        assertEquals(BACKUP_ANSWER, answer(primary));
+        long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+
+        // 不等 5 秒的对冲延迟
+        assertTrue(elapsedMs < 2000, "elapsed " + elapsedMs + "ms");
+        assertEquals(1L, primary.getCallCount());
+        assertEquals(1L, backup.getCallCount());
+        assertEquals(1L, provider("primary").get("failureCount"));
+        assertEquals(1L, provider("backup").get("successCount"));
+    }
+
+    @Test
+    void noFailoverAfterFirstTokenHasBeenEmitted() {
+        // 80ms 输出首 token，过了对冲延迟后在第 2 个 token 之后失败
+        ReflectionTestUtils.setField(router, "hedgeDefaultDelayMs", 100L);
+        MockLlmApi primary = new MockLlmApi("primary", 0, 80, 1.0, 2, "主模型的回答内容还没说完");
+        MockLlmApi backup = new MockLlmApi("backup", 20, 0, 0.0, BACKUP_ANSWER);
+        start(primary, backup);
+
+        StepVerifier.create(router.stream(primary, MESSAGES))
+                .expectNext("主模型的", "回答内容")
+                .expectErrorMatches(e -> e instanceof LlmApiException && e.getMessage().contains("primary"))
+                .verify(TIMEOUT);
+
+        // 已输出的内容无法撤回，错误直接交给调用方
+        assertEquals(0L, backup.getCallCount());
+        assertEquals(0L, router.statsSnapshot().get("hedgesStarted"));
+        assertEquals(1L, provider("primary").get("failureCount"));
+    }
+
+    @Test
+    void circuitBreakerOpensHalfOpensAndCloses() throws InterruptedException {
+        MockLlmApi primary = new MockLlmApi("primary", 100, 0, 1.0, PRIMARY_ANSWER);
+        MockLlmApi backup = new MockLlmApi("backup", 20, 0, 0.0, BACKUP_ANSWER);
+        start(primary, backup);
+
+        // 连续失败达到 min-calls 后熔断，每次都由备用模型接手
+        for (int i = 0; i < 4; i++) {
+            assertEquals(BACKUP_ANSWER, answer(primary));
+        }
+        assertEquals("OPEN", breakerState("primary"));
+        assertEquals(1.0, registry.get("chat.llm.breaker.state").tag("provider", "primary").gauge().value());
+
+        // 熔断期间不再调用主模型，直接转到备用模型
+        assertEquals(BACKUP_ANSWER, answer(primary));
+        assertEquals(4L, primary.getCallCount());
+        assertEquals(1L, router.statsSnapshot().get("failovers"));
+
+        // open-ms 后放行一个试探请求，试探失败则重新熔断
+        Thread.sleep(400);
+        assertEquals(BACKUP_ANSWER, answer(primary));
+        assertEquals(5L, primary.getCallCount());
+        assertEquals("OPEN", breakerState("primary"));
+        assertEquals(2L, provider("primary").get("openCount"));
+
+        // 服务恢复后，试探进行中为半开状态，其他请求不会打到主模型
+        primary.setFailureRate(0.0);
+        Thread.sleep(400);
+        Disposable trial = router.stream(primary, MESSAGES).subscribe();
+        assertEquals("HALF_OPEN", breakerState("primary"));
+        assertEquals(BACKUP_ANSWER, answer(primary));
+        assertEquals(6L, primary.getCallCount());
+
+        // 试探成功后关闭，请求重新由主模型处理
+        for (int i = 0; i < 100 && !"CLOSED".equals(breakerState("primary")); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(trial.isDisposed());
+        assertEquals("CLOSED", breakerState("primary"));
+        assertEquals(PRIMARY_ANSWER, answer(primary));
+        assertEquals(7L, primary.getCallCount());
+        assertEquals(0.0, registry.get("chat.llm.breaker.state").tag("provider", "primary").gauge().value());
+    }
+}
@@ -0,0 +1,108 @@
+package com.xiaomiproject.service.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SseTokenDecoderTest {
+
+    private static String chunk(String content) {
+        return "data: {\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"choices\":[{\"index\":0,"
+                + "\"delta\":{\"content\":\"" + content + "\"},\"finish_reason\":null}]}";
+    }
+
+    // 中文 (多字节 UTF-8)、转义字符、注释行、CRLF 换行、多条 data 行的事件、结束标记
+    private static final String STREAM = ": keep-alive\n\n"
+            + "data: {\"choices\":[{\"delta\":{\"role\":\"assistant\",\"content\":\"\"}}]}\n\n"
+            + chunk("您好") + "\n\n"
+            + "event: message\r\nid: 3\r\n" + chunk("，小米14") + "\r\n\r\n"
+            + chunk("\\\"Pro\\\"\\n") + "\n\n"
+            + "data: {\"choices\":[{\"delta\":\n"
+            + "data: {\"content\":\"支持快充\"}}]}\n\n"
+            + "data: [DONE]\n\n";
+
+    private static final List<String> EXPECTED = Arrays.asList("您好", "，小米14", "\"Pro\"\n", "支持快充");
+
+    private static List<String> decodeInChunks(byte[] bytes, int... splits) {
+        SseTokenDecoder decoder = new SseTokenDecoder();
+        List<String> tokens = new ArrayList<>();
+        int offset = 0;
+        for (int split : splits) {
+            tokens.addAll(decoder.decode(bytes, offset, split - offset));
+            offset = split;
+        }
+        tokens.addAll(decoder.decode(bytes, offset, bytes.length - offset));
+        tokens.addAll(decoder.finish());
+        assertTrue(decoder.isDone());
+        return tokens;
+    }
+
+    @Test
+    void decodesWholeStream() {
+        assertEquals(EXPECTED, decodeInChunks(STREAM.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void everySplitPointGivesSameTokens() {
+        byte[] bytes = STREAM.getBytes(StandardCharsets.UTF_8);
+        // 任意位置切成两块，包括切在多字节字符、\r\n 和 "data:" 中间
+        for (int split = 1; split < bytes.length; split++) {
+            assertEquals(EXPECTED, decodeInChunks(bytes, split), "split at " + split);
+        }
+    }
+
+    @Test
+    void oneByteChunksGiveSameTokens() {
+        byte[] bytes = STREAM.getBytes(StandardCharsets.UTF_8);
+        int[] splits = new int[bytes.length - 1];
+        for (int i = 0; i < splits.length; i++) {
+            splits[i] = i + 1;
+        }
+        assertEquals(EXPECTED, decodeInChunks(bytes, splits));
+    }
+
+    @Test
+    void eventLargerThanInitialBufferIsDecoded() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            content.append("长");
+        }
+        byte[] bytes = (chunk(content.toString()) + "\n\ndata: [DONE]\n\n").getBytes(StandardCharsets.UTF_8);
+        assertEquals(Collections.singletonList(content.toString()), decodeInChunks(bytes, 100, 9000));
+    }
+
+    @Test
+    void lastEventWithoutTrailingBlankLineIsFlushedOnFinish() {
+        SseTokenDecoder decoder = new SseTokenDecoder();
+        byte[] bytes = (chunk("之前") + "\n\n" + chunk("最后")).getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(Collections.singletonList("之前"), decoder.decode(bytes, 0, bytes.length));
+        assertFalse(decoder.isDone());
+        assertEquals(Collections.singletonList("最后"), decoder.finish());
+    }
+
+    @Test
+    void upstreamErrorEventThrows() {
+        SseTokenDecoder decoder = new SseTokenDecoder();
+        byte[] bytes = "data: {\"error\":{\"message\":\"rate limited\",\"type\":\"server_error\"}}\n\n"
+                .getBytes(StandardCharsets.UTF_8);
+        LlmApiException e = assertThrows(LlmApiException.class, () -> decoder.decode(bytes, 0, bytes.length));
+        assertTrue(e.getMessage().contains("rate limited"));
+    }
+
+    @Test
+    void malformedEventIsSkipped() {
+        byte[] bytes = ("data: {not json\n\n" + chunk("继续") + "\n\n").getBytes(StandardCharsets.UTF_8);
+        SseTokenDecoder decoder = new SseTokenDecoder();
+        assertEquals(Collections.singletonList("继续"), decoder.decode(bytes, 0, bytes.length));
+    }
+}
@@ -0,0 +1,220 @@
+package com.xiaomiproject.service.scheduling;
+
+import com.xiaomiproject.service.ChatOverloadedException;
+import com.xiaomiproject.service.QuotaExceededException;
+import com.xiaomiproject.service.metrics.ChatMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LlmCallSchedulerTest {
+
+    private static final String MODEL = "deepseek";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MockEnvironment environment = new MockEnvironment();
+    private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+    private LocalQuotaStore quotaStore;
+    private LlmCallScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        quotaStore = new LocalQuotaStore();
+        ReflectionTestUtils.setField(quotaStore, "idleExpireMs", 600000L);
+        quotaStore.init();
+
+        scheduler = new LlmCallScheduler();
+        ReflectionTestUtils.setField(scheduler, "quotaStore", quotaStore);
+        ReflectionTestUtils.setField(scheduler, "environment", environment);
+        ReflectionTestUtils.setField(scheduler, "chatMetrics", new ChatMetrics(registry));
+        ReflectionTestUtils.setField(scheduler, "meterRegistry", registry);
+        ReflectionTestUtils.setField(scheduler, "enabled", true);
+        ReflectionTestUtils.setField(scheduler, "maxConcurrent", 1);
+        ReflectionTestUtils.setField(scheduler, "maxQueued", 100);
+        ReflectionTestUtils.setField(scheduler, "maxQueuedPerUser", 4);
+        ReflectionTestUtils.setField(scheduler, "queueTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(scheduler, "defaultWeight", 1.0);
+        ReflectionTestUtils.setField(scheduler, "userCapacity", 100L);
+        ReflectionTestUtils.setField(scheduler, "userRefillPerMinute", 0.0);
+        ReflectionTestUtils.setField(scheduler, "globalCapacity", 0L);
+        ReflectionTestUtils.setField(scheduler, "globalRefillPerMinute", 0.0);
+        ReflectionTestUtils.setField(scheduler, "retryAfterSeconds", 5L);
+        scheduler.init();
+    }
+
+    /**
+     * 立即完成的上游调用，开始时记录名称 (名额的分配顺序)
+     */
+    private Supplier<Flux<String>> call(String name) {
+        return () -> {
+            started.add(name);
+            return Flux.just(name);
+        };
+    }
+
+    /**
+     * 占住唯一的上游名额，直到返回的 sink 结束
+     */
+    private Sinks.Many<String> holdSlot(Long userId) {
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        scheduler.schedule(userId, MODEL, upstream::asFlux).subscribe();
+        assertEquals(1, scheduler.statsSnapshot().get("running"));
+        return upstream;
+    }
+
+    private Throwable subscribeForError(Long userId, Supplier<Flux<String>> call) {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        scheduler.schedule(userId, MODEL, call).subscribe(null, error::set);
+        return error.get();
+    }
+
+    private double rejected(String reason) {
+        return registry.counter("chat.llm.scheduler.rejected", "reason", reason).count();
+    }
+
+    @Test
+    void occasionalUserIsNotStuckBehindHeavyUser() {
+        Sinks.Many<String> blocker = holdSlot(9L);
+        for (int i = 1; i <= 3; i++) {
+            scheduler.schedule(1L, MODEL, call("heavy-" + i)).subscribe();
+        }
+        scheduler.schedule(2L, MODEL, call("light")).subscribe();
+        assertEquals(4, scheduler.statsSnapshot().get("queued"));
+
+        blocker.tryEmitComplete();
+
+        // 轻量用户的完成标签与重度用户的第一个请求相同，排在重度用户剩余请求之前
+        assertEquals(Arrays.asList("heavy-1", "light", "heavy-2", "heavy-3"), started);
+        assertEquals(0, scheduler.statsSnapshot().get("running"));
+    }
+
+    @Test
+    void higherWeightUserGetsProportionallyMoreSlots() {
+        environment.setProperty("chat.llm.scheduler.user-weight.3", "2");
+        Sinks.Many<String> blocker = holdSlot(9L);
+        for (int i = 1; i <= 4; i++) {
+            scheduler.schedule(1L, MODEL, call("normal-" + i)).subscribe();
+        }
+        for (int i = 1; i <= 4; i++) {
+            scheduler.schedule(3L, MODEL, call("double-" + i)).subscribe();
+        }
+
+        blocker.tryEmitComplete();
+
+        assertEquals(Arrays.asList("double-1", "normal-1", "double-2", "double-3", "normal-2", "double-4",
+                "normal-3", "normal-4"), started);
+    }
+
+    @Test
+    void perUserQueueLimitRejectsAndRefundsQuota() {
+        ReflectionTestUtils.setField(scheduler, "maxQueuedPerUser", 2);
+        ReflectionTestUtils.setField(scheduler, "userCapacity", 3L);
+        Sinks.Many<String> blocker = holdSlot(9L);
+        scheduler.schedule(1L, MODEL, call("a")).subscribe();
+        scheduler.schedule(1L, MODEL, call("b")).subscribe();
+
+        Throwable error = subscribeForError(1L, call("c"));
+
+        assertInstanceOf(QuotaExceededException.class, error);
+        assertEquals(1.0, rejected("user-queue"));
+        // 被拒绝的调用退还了配额：3 - 2 = 1，预检仍能通过
+        scheduler.checkQuota(1L, MODEL);
+        // 其他用户不受影响
+        scheduler.schedule(2L, MODEL, call("other")).subscribe();
+        blocker.tryEmitComplete();
+        assertEquals(Arrays.asList("a", "other", "b"), started);
+    }
+
+    @Test
+    void userQuotaRejectsBeforeQueueing() {
+        ReflectionTestUtils.setField(scheduler, "userCapacity", 1L);
+        scheduler.schedule(1L, MODEL, call("first")).blockLast(Duration.ofSeconds(5));
+
+        assertThrows(QuotaExceededException.class, () -> scheduler.checkQuota(1L, MODEL));
+        Throwable error = subscribeForError(1L, call("second"));
+
+        assertInstanceOf(QuotaExceededException.class, error);
+        // 不会补充时使用默认的 Retry-After
+        assertEquals(5L, ((QuotaExceededException) error).getRetryAfterSeconds());
+        assertEquals(Collections.singletonList("first"), started);
+        assertEquals(0, scheduler.statsSnapshot().get("running"));
+    }
+
+    @Test
+    void globalQuotaRejectionRefundsUserQuota() {
+        ReflectionTestUtils.setField(scheduler, "userCapacity", 1L);
+        environment.setProperty("chat.llm.quota.model." + MODEL + ".capacity", "1");
+        scheduler.schedule(1L, MODEL, call("first")).blockLast(Duration.ofSeconds(5));
+
+        Throwable error = subscribeForError(2L, call("second"));
+
+        assertInstanceOf(QuotaExceededException.class, error);
+        assertEquals(1.0, rejected("global-quota"));
+        assertEquals(0L, quotaStore.peek("user:2", new QuotaLimit(1, 0)));
+        // 全局配额按模型计，其他模型不受影响
+        scheduler.schedule(2L, "qwen", call("other-model")).blockLast(Duration.ofSeconds(5));
+        assertEquals(Arrays.asList("first", "other-model"), started);
+    }
+
+    @Test
+    void queueTimeoutRefundsQuotaAndLeavesQueue() throws InterruptedException {
+        ReflectionTestUtils.setField(scheduler, "queueTimeoutMs", 50L);
+        ReflectionTestUtils.setField(scheduler, "userCapacity", 1L);
+        Sinks.Many<String> blocker = holdSlot(9L);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        scheduler.schedule(1L, MODEL, call("late")).subscribe(null, error::set);
+
+        Thread.sleep(300);
+
+        assertInstanceOf(ChatOverloadedException.class, error.get());
+        assertEquals(1.0, rejected("queue-timeout"));
+        assertEquals(0, scheduler.statsSnapshot().get("queued"));
+        scheduler.checkQuota(1L, MODEL);
+        // 超时的请求不会再拿到名额
+        blocker.tryEmitComplete();
+        assertEquals(Collections.emptyList(), started);
+        assertEquals(0, scheduler.statsSnapshot().get("running"));
+    }
+
+    @Test
+    void slotIsReleasedWhenCallFailsOrIsCancelled() {
+        Throwable error = subscribeForError(1L, () -> Flux.error(new IllegalStateException("upstream down")));
+        assertEquals("upstream down", error.getMessage());
+        assertEquals(0, scheduler.statsSnapshot().get("running"));
+
+        Sinks.Many<String> never = Sinks.many().unicast().onBackpressureBuffer();
+        Disposable running = scheduler.schedule(1L, MODEL, never::asFlux).subscribe();
+        AtomicReference<Throwable> queuedError = new AtomicReference<>();
+        Disposable queued = scheduler.schedule(2L, MODEL, call("cancelled")).subscribe(null, queuedError::set);
+        assertEquals(1, scheduler.statsSnapshot().get("queued"));
+
+        // 排队中取消：离开队列，之后不会被调用
+        queued.dispose();
+        assertEquals(0, scheduler.statsSnapshot().get("queued"));
+        // 进行中取消：名额归还，下一个调用立即开始
+        running.dispose();
+        assertEquals(0, scheduler.statsSnapshot().get("running"));
+        scheduler.schedule(3L, MODEL, call("next")).blockLast(Duration.ofSeconds(5));
+
+        assertEquals(Collections.singletonList("next"), started);
+        assertNull(queuedError.get());
+    }
+}
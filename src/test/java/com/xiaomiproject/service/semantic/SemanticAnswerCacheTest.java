@@ -0,0 +1,108 @@
+package com.xiaomiproject.service.semantic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SemanticAnswerCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private SemanticAnswerCache newCache(int maxEntries) {
+        SemanticAnswerCache cache = new SemanticAnswerCache(256);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "minSimilarity", 0.92);
+        ReflectionTestUtils.setField(cache, "maxEntries", maxEntries);
+        ReflectionTestUtils.setField(cache, "efSearch", 64);
+        ReflectionTestUtils.setField(cache, "persistPath", tempDir.resolve("semantic-cache.bin").toString());
+        return cache;
+    }
+
+    private static void awaitRebuild(SemanticAnswerCache cache) throws InterruptedException {
+        for (int i = 0; i < 500 && (Boolean) cache.statsSnapshot().get("rebuilding"); i++) {
+            Thread.sleep(10);
+        }
+        assertFalse((Boolean) cache.statsSnapshot().get("rebuilding"));
+    }
+
+    @Test
+    void lookupOnlyReturnsAnswersOfTheSameModel() {
+        SemanticAnswerCache cache = newCache(100);
+        cache.put("小米14的续航怎么样", "deepseek-answer", "deepseek");
+
+        assertEquals(Optional.of("deepseek-answer"), cache.lookup("小米14的续航怎么样", "deepseek"));
+        assertFalse(cache.lookup("小米14的续航怎么样", "dashscope").isPresent());
+
+        cache.put("小米14的续航怎么样", "dashscope-answer", "dashscope");
+        assertEquals(Optional.of("dashscope-answer"), cache.lookup("小米14的续航怎么样", "dashscope"));
+        assertEquals(Optional.of("deepseek-answer"), cache.lookup("小米14的续航怎么样", "deepseek"));
+    }
+
+    @Test
+    void differentProductModelIsAMissEvenWhenVectorsAreClose() {
+        SemanticAnswerCache cache = newCache(100);
+        cache.put("请问小米14 Pro的电池容量是多少毫安，支持多少瓦的有线快充和无线快充", "14pro-answer", "deepseek");
+        cache.put("小米手环8 NFC版本买了不到七天屏幕有划痕，怎么申请换货", "band8-answer", "deepseek");
+
+        assertFalse(cache.lookup("请问小米13 Pro的电池容量是多少毫安，支持多少瓦的有线快充和无线快充", "deepseek").isPresent());
+        assertFalse(cache.lookup("小米手环7 NFC版本买了不到七天屏幕有划痕，怎么申请换货", "deepseek").isPresent());
+        assertFalse(cache.lookup("请问小米14的电池容量是多少毫安，支持多少瓦的有线快充和无线快充", "deepseek").isPresent());
+        // 换了一个字的另一件事 (换货 / 退货)
+        assertFalse(cache.lookup("小米手环8 NFC版本买了不到七天屏幕有划痕，怎么申请退货", "deepseek").isPresent());
+        // 同一个问题换种说法仍然命中
+        assertEquals(Optional.of("14pro-answer"),
+                cache.lookup("请问小米14 Pro的电池容量是多少毫安，支持多少瓦的有线快充和无线快充呢", "deepseek"));
+        assertEquals(Optional.of("band8-answer"),
+                cache.lookup("小米手环8 NFC版本买了不到七天屏幕有划痕，怎么申请换货？", "deepseek"));
+    }
+
+    @Test
+    void sameQuestionForAnotherModelIsStoredSeparately() {
+        SemanticAnswerCache cache = newCache(100);
+        cache.put("请问小米14 Pro的电池容量是多少毫安，支持多少瓦的有线快充和无线快充", "14pro-answer", "deepseek");
+        cache.put("请问小米13 Pro的电池容量是多少毫安，支持多少瓦的有线快充和无线快充", "13pro-answer", "deepseek");
+
+        assertEquals(2, cache.statsSnapshot().get("size"));
+        assertEquals(Optional.of("13pro-answer"),
+                cache.lookup("请问小米13 Pro的电池容量是多少毫安，支持多少瓦的有线快充和无线快充", "deepseek"));
+    }
+
+    @Test
+    void evictionDropsOldestEntriesInBackground() throws InterruptedException {
+        SemanticAnswerCache cache = newCache(20);
+        for (int i = 0; i < 20; i++) {
+            cache.put("question number " + i + " about phone model " + i, "answer-" + i, "deepseek");
+        }
+        awaitRebuild(cache);
+
+        assertEquals(18, cache.statsSnapshot().get("size"));
+        assertEquals(1L, cache.statsSnapshot().get("rebuildCount"));
+        assertFalse(cache.lookup("question number 0 about phone model 0", "deepseek").isPresent());
+        assertEquals(Optional.of("answer-19"), cache.lookup("question number 19 about phone model 19", "deepseek"));
+    }
+
+    @Test
+    void loadKeepsNewestEntriesWhenFileExceedsLimit() {
+        SemanticAnswerCache writer = newCache(100);
+        for (int i = 0; i < 10; i++) {
+            writer.put("question number " + i + " about phone model " + i, "answer-" + i, "deepseek");
+        }
+        writer.persist();
+
+        SemanticAnswerCache reader = newCache(4);
+        reader.load();
+
+        assertEquals(4, reader.statsSnapshot().get("size"));
+        assertFalse(reader.lookup("question number 5 about phone model 5", "deepseek").isPresent());
+        assertTrue(reader.lookup("question number 6 about phone model 6", "deepseek").isPresent());
+        assertEquals(Optional.of("answer-9"), reader.lookup("question number 9 about phone model 9", "deepseek"));
+    }
+}
@@ -0,0 +1,123 @@
+package com.xiaomiproject.service.semantic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 语义缓存索引的离线基准 (不属于单元测试，不会随 mvn test 运行)：
+ * 用合成的客服问题建 HNSW 索引，对换了说法的查询比较 HNSW 与暴力搜索的最近邻，输出
+ * recall@1、查询延迟百分位、建索引耗时和索引占用的堆内存 (GC 前后之差，粗略值)。
+ * <pre>
+ * mvn test-compile
+ * java -cp target/test-classes:target/classes com.xiaomiproject.service.semantic.SemanticCacheBenchmark --entries=20000
+ * </pre>
+ * 参数：--entries (20000)、--queries (2000)、--dimension (256)、--ef-search (64)、--seed (42)
+ */
+public class SemanticCacheBenchmark {
+
+    private static final String[] PRODUCTS = {
+            "小米14", "小米14 Pro", "小米14 Ultra", "小米13", "小米13 Pro", "Redmi K70", "Redmi Note 13",
+            "小米手环8", "小米手环8 NFC版", "小米平板6", "小米平板6 Pro", "小米电视S Pro", "小米路由器BE7000",
+            "小米扫地机器人X10", "小米空气净化器4", "小米电动牙刷T700", "Xiaomi Watch S3", "Redmi Buds 5"};
+    private static final String[] TOPICS = {
+            "电池容量是多少", "支持多少瓦快充", "怎么申请退货", "怎么申请换货", "保修期多久", "屏幕碎了怎么维修",
+            "支持无线充电吗", "怎么恢复出厂设置", "蓝牙连不上怎么办", "发货要几天", "能开增值税发票吗",
+            "有几种颜色", "重量是多少", "防水等级是多少", "怎么升级系统", "耗电很快怎么办", "发热严重正常吗",
+            "以旧换新怎么折价", "支持NFC门禁卡吗", "充电器是否标配"};
+    private static final String[] PREFIXES = {"", "请问", "你好，", "想问一下", "麻烦问下", "客服你好，"};
+    private static final String[] SUFFIXES = {"", "？", "呢", "，谢谢", "，急", "啊"};
+
+    public static void main(String[] args) {
+        int entries = intArg(args, "entries", 20000);
+        int queries = intArg(args, "queries", 2000);
+        int dimension = intArg(args, "dimension", 256);
+        int efSearch = intArg(args, "ef-search", 64);
+        Random random = new Random(intArg(args, "seed", 42));
+        HashingVectorizer vectorizer = new HashingVectorizer(dimension);
+
+        List<String> questions = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            questions.add(question(random, i));
+        }
+
+        long heapBefore = usedHeap();
+        long buildStart = System.nanoTime();
+        HnswIndex index = new HnswIndex(16, 100);
+        for (int i = 0; i < entries; i++) {
+            index.add(vectorizer.vectorize(questions.get(i)));
+        }
+        double buildSeconds = (System.nanoTime() - buildStart) / 1e9;
+        long heapAfter = usedHeap();
+
+        int matched = 0;
+        long[] latencies = new long[queries];
+        for (int q = 0; q < queries; q++) {
+            String stored = questions.get(random.nextInt(entries));
+            float[] vector = vectorizer.vectorize(PREFIXES[random.nextInt(PREFIXES.length)] + stored
+                    + SUFFIXES[random.nextInt(SUFFIXES.length)]);
+            long start = System.nanoTime();
+            List<HnswIndex.Result> results = index.search(vector, 1, efSearch);
+            latencies[q] = System.nanoTime() - start;
+            if (!results.isEmpty() && results.get(0).getId() == bruteForce(index, vector)) {
+                matched++;
+            }
+        }
+        Arrays.sort(latencies);
+
+        System.out.println(String.format("条目 %d，维度 %d，ef-search %d，查询 %d", entries, dimension, efSearch, queries));
+        System.out.println(String.format("recall@1 %.4f", (double) matched / queries));
+        System.out.println(String.format("查询 p50 %.3fms p90 %.3fms p99 %.3fms max %.3fms",
+                percentileMs(latencies, 50), percentileMs(latencies, 90), percentileMs(latencies, 99),
+                percentileMs(latencies, 100)));
+        System.out.println(String.format("建索引 %.1fs，堆内存约 %.1fMB", buildSeconds,
+                (heapAfter - heapBefore) / 1024.0 / 1024.0));
+    }
+
+    /**
+     * 产品 + 问题主题 + 随机的说法变化，同一组合重复出现时带上序号区分
+     */
+    private static String question(Random random, int i) {
+        String product = PRODUCTS[random.nextInt(PRODUCTS.length)];
+        String topic = TOPICS[random.nextInt(TOPICS.length)];
+        String prefix = PREFIXES[random.nextInt(PREFIXES.length)];
+        return prefix + product + topic + "，订单尾号" + (1000 + i);
+    }
+
+    private static int bruteForce(HnswIndex index, float[] vector) {
+        int best = -1;
+        float bestSimilarity = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < index.size(); i++) {
+            float similarity = HnswIndex.dot(index.vectorOf(i), vector);
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static double percentileMs(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank))] / 1e6;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static int intArg(String[] args, String name, int defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return Integer.parseInt(arg.substring(prefix.length()));
+            }
+        }
+        return defaultValue;
+    }
+}
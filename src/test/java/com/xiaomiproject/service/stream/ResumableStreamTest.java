@@ -0,0 +1,173 @@
+package com.xiaomiproject.service.stream;
+
+import com.xiaomiproject.service.metrics.ChatMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResumableStreamTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private ResumableStreamService newService(int bufferSize) {
+        ResumableStreamService service = new ResumableStreamService();
+        ReflectionTestUtils.setField(service, "sharedStore", new NoopStreamReplayStore());
+        ReflectionTestUtils.setField(service, "chatBlockingScheduler", Schedulers.immediate());
+        ReflectionTestUtils.setField(service, "chatMetrics", new ChatMetrics(registry));
+        ReflectionTestUtils.setField(service, "meterRegistry", registry);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "bufferSize", bufferSize);
+        ReflectionTestUtils.setField(service, "retentionMs", 60000L);
+        ReflectionTestUtils.setField(service, "detachedTimeoutMs", 60000L);
+        service.init();
+        return service;
+    }
+
+    private double resumed(String outcome) {
+        return registry.counter("chat.stream.resume", "outcome", outcome).count();
+    }
+
+    private static Flux<String> tokens(String... tokens) {
+        return Flux.fromArray(tokens);
+    }
+
+    @Test
+    void coversOnlyBreakPointsStillInTheBuffer() {
+        ResumableStream stream = new ResumableStream("s", 1L, 3);
+        stream.start(tokens("a", "b", "c", "d", "e", "f"));
+
+        assertEquals(6, stream.getLastSeq());
+        assertFalse(stream.covers(-1));
+        // 缓冲只保留最后 3 个片段 (4、5、6)，断点 3 之后的片段都还在
+        assertFalse(stream.covers(2));
+        assertTrue(stream.covers(3));
+        assertTrue(stream.covers(5));
+        // 已收到全部片段，续传只剩结束事件
+        assertTrue(stream.covers(6));
+        assertFalse(stream.covers(7));
+    }
+
+    @Test
+    void tokensAfterReplaysFromBreakPointThenFollowsLive() {
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        ResumableStream stream = new ResumableStream("s", 1L, 16);
+        stream.start(upstream.asFlux());
+        upstream.tryEmitNext("a");
+        upstream.tryEmitNext("b");
+        upstream.tryEmitNext("c");
+
+        StepVerifier.create(stream.tokensAfter(1).map(StreamToken::getData))
+                .expectNext("b", "c")
+                .then(() -> upstream.tryEmitNext("d"))
+                .expectNext("d")
+                .then(upstream::tryEmitComplete)
+                .expectComplete()
+                .verify(TIMEOUT);
+        assertTrue(stream.isFinished());
+    }
+
+    @Test
+    void cancelStopsUpstreamAndFailsSubscribers() {
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        ResumableStream stream = new ResumableStream("s", 1L, 16);
+        stream.start(upstream.asFlux());
+        upstream.tryEmitNext("a");
+
+        StepVerifier.create(stream.tokensAfter(0).map(StreamToken::getData))
+                .expectNext("a")
+                .then(stream::cancel)
+                .expectErrorMessage("回答已中断")
+                .verify(TIMEOUT);
+        assertEquals(0, upstream.currentSubscriberCount());
+        // 之后重连的客户端先收到缓冲中的片段，再收到同样的错误
+        StepVerifier.create(stream.tokensAfter(0).map(StreamToken::getData))
+                .expectNext("a")
+                .expectErrorMessage("回答已中断")
+                .verify(TIMEOUT);
+    }
+
+    @Test
+    void detachedSinceTracksClientConnections() {
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        ResumableStream stream = new ResumableStream("s", 1L, 16);
+        stream.start(upstream.asFlux());
+        assertTrue(stream.getDetachedSince() > 0);
+
+        Disposable first = stream.tokensAfter(0).subscribe();
+        Disposable second = stream.tokensAfter(0).subscribe();
+        assertEquals(0, stream.getDetachedSince());
+        first.dispose();
+        assertEquals(0, stream.getDetachedSince());
+        second.dispose();
+        assertTrue(stream.getDetachedSince() > 0);
+        // 客户端断开不影响生成
+        assertFalse(stream.isFinished());
+        assertEquals(1, upstream.currentSubscriberCount());
+    }
+
+    @Test
+    void serviceResumesByLastEventIdWithoutCallingUpstreamAgain() {
+        ResumableStreamService service = newService(16);
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        int[] subscriptions = {0};
+
+        Flux<StreamEvent> first = service.open(7L, upstream.asFlux().doOnSubscribe(s -> subscriptions[0]++));
+        upstream.tryEmitNext("您好");
+        upstream.tryEmitNext("，小米14");
+
+        // 首次连接收到两个片段后断开
+        List<StreamEvent> firstEvents = first
+                .take(2)
+                .collectList()
+                .block(TIMEOUT);
+        String lastEventId = firstEvents.get(1).getId();
+        upstream.tryEmitNext("支持快充");
+        upstream.tryEmitComplete();
+
+        Optional<Flux<StreamEvent>> resumed = service.resume(lastEventId, 7L);
+
+        assertTrue(resumed.isPresent());
+        List<StreamEvent> events = resumed.get().collectList().block(TIMEOUT);
+        assertEquals(Arrays.asList("支持快充", ""),
+                events.stream().map(StreamEvent::getData).collect(Collectors.toList()));
+        assertEquals(StreamEvent.END, events.get(1).getName());
+        assertTrue(events.get(0).getId().endsWith(":3"));
+        assertEquals(1, subscriptions[0]);
+        assertEquals(1.0, resumed("local"));
+    }
+
+    @Test
+    void serviceRefusesOtherUsersAndEvictedOrMalformedIds() {
+        ResumableStreamService service = newService(2);
+        List<StreamEvent> events = service.open(7L, tokens("a", "b", "c", "d")).collectList().block(TIMEOUT);
+        String streamId = events.get(0).getId().substring(0, events.get(0).getId().lastIndexOf(':'));
+
+        assertTrue(service.resume(streamId + ":3", 7L).isPresent());
+        // 其他用户、断点已移出缓冲、格式错误、未知流都无法续传
+        assertFalse(service.resume(streamId + ":3", 8L).isPresent());
+        assertFalse(service.resume(streamId + ":1", 7L).isPresent());
+        assertFalse(service.resume(streamId + ":x", 7L).isPresent());
+        assertFalse(service.resume("no-separator", 7L).isPresent());
+        assertFalse(service.resume("unknown:1", 7L).isPresent());
+        assertFalse(service.resume(null, 7L).isPresent());
+        assertEquals(1.0, resumed("local"));
+        assertEquals(5.0, resumed("miss"));
+    }
+}